@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package io.atomix.copycat.server.storage.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the primitive {@link TermIndex} with the synchronized {@link TreeMap} based term index it replaced.
+ * <p>
+ * Lookups are measured for the last entry in the index, which is the common case when appending to and reading
+ * from the head of the log, and for random offsets throughout the index. Indexing is measured by building an index
+ * with a term change every {@code entriesPerTerm} offsets.
+ *
+ * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TermIndexBenchmark {
+
+  @Param({"1", "1024"})
+  private int entriesPerTerm;
+
+  @Param({"1024", "65536"})
+  private int entries;
+
+  private TermIndex termIndex;
+  private TreeMapTermIndex treeMapIndex;
+
+  @Setup
+  public void setup() {
+    termIndex = new TermIndex();
+    treeMapIndex = new TreeMapTermIndex();
+    for (long offset = 0; offset < entries; offset++) {
+      long term = offset / entriesPerTerm + 1;
+      termIndex.index(offset, term);
+      treeMapIndex.index(offset, term);
+    }
+  }
+
+  @Benchmark
+  @Threads(4)
+  public long lookupLast() {
+    return termIndex.lookup(entries - 1);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public long lookupLastTreeMap() {
+    return treeMapIndex.lookup(entries - 1);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public long lookupRandom() {
+    return termIndex.lookup(ThreadLocalRandom.current().nextInt(entries));
+  }
+
+  @Benchmark
+  @Threads(4)
+  public long lookupRandomTreeMap() {
+    return treeMapIndex.lookup(ThreadLocalRandom.current().nextInt(entries));
+  }
+
+  @Benchmark
+  public TermIndex index() {
+    TermIndex index = new TermIndex();
+    for (long offset = 0; offset < entries; offset++) {
+      index.index(offset, offset / entriesPerTerm + 1);
+    }
+    return index;
+  }
+
+  @Benchmark
+  public TreeMapTermIndex indexTreeMap() {
+    TreeMapTermIndex index = new TreeMapTermIndex();
+    for (long offset = 0; offset < entries; offset++) {
+      index.index(offset, offset / entriesPerTerm + 1);
+    }
+    return index;
+  }
+
+  /**
+   * The synchronized {@link TreeMap} based term index used as a baseline.
+   */
+  static final class TreeMapTermIndex {
+    private final TreeMap<Long, Long> terms = new TreeMap<>();
+
+    synchronized void index(long offset, long term) {
+      if (lookup(offset) != term) {
+        terms.put(offset, term);
+      }
+    }
+
+    synchronized long lookup(long offset) {
+      Map.Entry<Long, Long> entry = terms.floorEntry(offset);
+      return entry != null ? entry.getValue() : 0;
+    }
+  }
+
+}
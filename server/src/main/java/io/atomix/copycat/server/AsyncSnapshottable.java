@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server;
+
+import io.atomix.copycat.server.storage.snapshot.SnapshotWriter;
+
+/**
+ * Support for writing {@link StateMachine} snapshots without blocking the application of commands.
+ * <p>
+ * When a {@link Snapshottable} state machine is snapshotted, {@link #snapshot(SnapshotWriter)} is called in the
+ * state machine thread, and no commands can be applied to the state machine until the entire state has been written
+ * to the snapshot. For state machines with large state, this can delay the application of commands for a significant
+ * amount of time. State machines that implement this interface instead {@link #snapshotView() capture a view} of their
+ * state in the state machine thread. The view is then written to the snapshot in a background thread while commands
+ * continue to be applied to the state machine.
+ * <pre>
+ *   {@code
+ *   public class MyStateMachine extends StateMachine implements AsyncSnapshottable {
+ *     private PersistentMap<String, String> map = PersistentMap.empty();
+ *
+ *     public SnapshotView snapshotView() {
+ *       PersistentMap<String, String> frozen = map;
+ *       return writer -> writer.writeObject(frozen);
+ *     }
+ *   }
+ *   }
+ * </pre>
+ * The view must reflect the state of the state machine at the time it was captured and must not be affected by
+ * commands applied after it was captured. Typically, state machines return a reference to an immutable or
+ * copy-on-write data structure. Snapshots written from views are completed under the same conditions as snapshots
+ * written synchronously.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public interface AsyncSnapshottable extends Snapshottable {
+
+  /**
+   * Captures a view of the state machine state to be written to a snapshot.
+   * <p>
+   * This method will be called in the state machine thread once all commands up to the snapshot index have been
+   * applied to the state machine. Implementations should capture the state as quickly as possible, deferring any
+   * I/O to {@link SnapshotView#write(SnapshotWriter)}.
+   *
+   * @return A view of the state machine state.
+   */
+  SnapshotView snapshotView();
+
+  /**
+   * Takes a snapshot of the state machine state by writing a view of the state in the calling thread.
+   *
+   * @param writer The snapshot writer.
+   */
+  @Override
+  default void snapshot(SnapshotWriter writer) {
+    try (SnapshotView view = snapshotView()) {
+      view.write(writer);
+    }
+  }
+
+  /**
+   * Point-in-time view of state machine state.
+   */
+  @FunctionalInterface
+  interface SnapshotView extends AutoCloseable {
+
+    /**
+     * Writes the view to the given snapshot writer.
+     * <p>
+     * This method will be called in a background thread, concurrently with the application of commands to the
+     * state machine.
+     *
+     * @param writer The snapshot writer.
+     */
+    void write(SnapshotWriter writer);
+
+    /**
+     * Releases any resources held by the view once it has been written.
+     */
+    @Override
+    default void close() {
+    }
+  }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server;
+
+import io.atomix.copycat.server.storage.snapshot.DeltaSnapshotReader;
+import io.atomix.copycat.server.storage.snapshot.DeltaSnapshotWriter;
+import io.atomix.copycat.server.storage.snapshot.SnapshotReader;
+import io.atomix.copycat.server.storage.snapshot.SnapshotWriter;
+
+/**
+ * Support for writing {@link StateMachine} snapshots that contain only the state that changed since the prior snapshot.
+ * <p>
+ * When a {@link Snapshottable} state machine is snapshotted, the entire state machine state is written to each
+ * snapshot. For state machines with large state of which only a small fraction changes between snapshots, this
+ * means rewriting mostly unchanged state. State machines that implement this interface store their state as keyed
+ * records and track the keys that change between snapshots. The first snapshot of the state machine is a
+ * {@link #snapshot(DeltaSnapshotWriter) full snapshot}, and subsequent snapshots are
+ * {@link #snapshotDelta(DeltaSnapshotWriter) deltas} which contain only the keys that changed since the prior snapshot.
+ * <pre>
+ *   {@code
+ *   public class MyStateMachine extends StateMachine implements DeltaSnapshottable {
+ *     private final Map<String, String> map = new HashMap<>();
+ *     private final Set<String> changes = new HashSet<>();
+ *
+ *     public void snapshot(DeltaSnapshotWriter writer) {
+ *       map.forEach(writer::put);
+ *       changes.clear();
+ *     }
+ *
+ *     public void snapshotDelta(DeltaSnapshotWriter writer) {
+ *       for (String key : changes) {
+ *         if (map.containsKey(key)) {
+ *           writer.put(key, map.get(key));
+ *         } else {
+ *           writer.remove(key);
+ *         }
+ *       }
+ *       changes.clear();
+ *     }
+ *
+ *     public void install(DeltaSnapshotReader reader) {
+ *       if (!reader.isDelta()) {
+ *         map.clear();
+ *       }
+ *       while (reader.next()) {
+ *         if (reader.isRemove()) {
+ *           map.remove(reader.key());
+ *         } else {
+ *           map.put(reader.key(), reader.value());
+ *         }
+ *       }
+ *       changes.clear();
+ *     }
+ *   }
+ *   }
+ * </pre>
+ * The {@link io.atomix.copycat.server.storage.snapshot.SnapshotStore snapshot store} retains the chain of snapshots
+ * required to restore the state machine state and periodically merges the chain into a new full snapshot in the
+ * background. When a snapshot is installed, the full snapshot at the start of the chain is installed followed by
+ * each delta in the chain.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public interface DeltaSnapshottable extends Snapshottable {
+
+  /**
+   * Writes the complete keyed state of the state machine to a snapshot.
+   * <p>
+   * Once the snapshot has been written, the state machine should reset the set of keys that have changed.
+   *
+   * @param writer The snapshot writer.
+   */
+  void snapshot(DeltaSnapshotWriter writer);
+
+  /**
+   * Writes the keys that changed since the prior snapshot to a delta snapshot.
+   * <p>
+   * Keys that were removed since the prior snapshot must be written as {@link DeltaSnapshotWriter#remove(String) removals}.
+   * Once the snapshot has been written, the state machine should reset the set of keys that have changed.
+   *
+   * @param writer The snapshot writer.
+   */
+  void snapshotDelta(DeltaSnapshotWriter writer);
+
+  /**
+   * Installs a snapshot of the state machine state.
+   * <p>
+   * If the snapshot is not a {@link DeltaSnapshotReader#isDelta() delta}, the state machine should replace its
+   * keyed state with the snapshot state. Otherwise, the records in the snapshot should be applied on top of the
+   * existing state. Once the snapshot has been installed, the state machine should reset the set of keys that
+   * have changed.
+   *
+   * @param reader The snapshot reader.
+   */
+  void install(DeltaSnapshotReader reader);
+
+  @Override
+  default void snapshot(SnapshotWriter writer) {
+    snapshot(new DeltaSnapshotWriter(writer));
+  }
+
+  @Override
+  default void install(SnapshotReader reader) {
+    install(new DeltaSnapshotReader(reader, false));
+  }
+
+}
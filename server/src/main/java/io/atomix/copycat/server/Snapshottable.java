@@ -89,6 +89,9 @@ import io.atomix.copycat.server.storage.snapshot.SnapshotWriter;
  * and other commands, and state machine implementations should take care not to overwrite non-snapshot command
  * state with snapshots. For simpler state machines, <em>users should use either snapshotting or log cleaning
  * but not both</em>.
+ * <p>
+ * Snapshots are written in the state machine thread, so commands cannot be applied while a snapshot is being written.
+ * State machines with large state should implement {@link AsyncSnapshottable} to write snapshots in a background thread.
  *
  * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
  */
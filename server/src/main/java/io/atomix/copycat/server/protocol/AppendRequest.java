@@ -20,10 +20,12 @@ import io.atomix.catalyst.buffer.BufferOutput;
 import io.atomix.catalyst.serializer.Serializer;
 import io.atomix.catalyst.util.Assert;
 import io.atomix.copycat.protocol.AbstractRequest;
+import io.atomix.copycat.server.storage.EntryRecord;
 import io.atomix.copycat.server.storage.entry.Entry;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
@@ -33,6 +35,11 @@ import java.util.Objects;
  * Append entries requests are at the core of the replication protocol. Leaders send append requests
  * to followers to replicate and commit log entries, and followers sent append requests to passive members
  * to replicate committed log entries.
+ * <p>
+ * Requests carry either deserialized {@link #entries() entries} or serialized entry {@link #records() records}.
+ * Requests built with an {@link EntryBatch} carry the batch's records, which are written in their pre-encoded form
+ * when the request is serialized. Records are appended to the receiver's log as-is, so entries replicated as records
+ * are neither deserialized nor reserialized until they're read from the receiver's log.
  *
  * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
  */
@@ -62,6 +69,8 @@ public class AppendRequest extends AbstractRequest {
   private long logIndex;
   private long logTerm;
   private List<Entry> entries;
+  private List<EntryRecord> records = Collections.emptyList();
+  private EntryBatch batch;
   private long commitIndex = -1;
   private long globalIndex = -1;
 
@@ -103,6 +112,8 @@ public class AppendRequest extends AbstractRequest {
 
   /**
    * Returns the log entries to append.
+   * <p>
+   * Requests that carry entries as {@link #records() records} contain no deserialized entries.
    *
    * @return A list of log entries.
    */
@@ -110,6 +121,40 @@ public class AppendRequest extends AbstractRequest {
     return entries;
   }
 
+  /**
+   * Returns the serialized entry records to append.
+   * <p>
+   * Requests that carry deserialized {@link #entries() entries} contain no records.
+   *
+   * @return A list of entry records.
+   */
+  public List<EntryRecord> records() {
+    return records;
+  }
+
+  /**
+   * Returns a boolean indicating whether the request contains no entries or records.
+   *
+   * @return Indicates whether the request is empty.
+   */
+  public boolean isEmpty() {
+    return entries.isEmpty() && records.isEmpty();
+  }
+
+  /**
+   * Returns the index of the last entry or record in the request.
+   *
+   * @return The index of the last entry in the request, or the {@link #logIndex() log index} if the request is empty.
+   */
+  public long lastEntryIndex() {
+    if (!records.isEmpty()) {
+      return records.get(records.size() - 1).index();
+    } else if (!entries.isEmpty()) {
+      return entries.get(entries.size() - 1).getIndex();
+    }
+    return logIndex;
+  }
+
   /**
    * Returns the leader's commit index.
    *
@@ -137,10 +182,20 @@ public class AppendRequest extends AbstractRequest {
       .writeLong(commitIndex)
       .writeLong(globalIndex);
 
-    buffer.writeInt(entries.size());
-    for (Entry entry : entries) {
-      buffer.writeLong(entry.getIndex()).writeLong(entry.getTerm());
-      serializer.writeObject(entry, buffer);
+    buffer.writeBoolean(!records.isEmpty());
+    if (batch != null) {
+      batch.writeTo(buffer);
+    } else if (!records.isEmpty()) {
+      buffer.writeInt(records.size());
+      for (EntryRecord record : records) {
+        EntryBatch.writeRecord(record, buffer);
+      }
+    } else {
+      buffer.writeInt(entries.size());
+      for (Entry entry : entries) {
+        buffer.writeLong(entry.getIndex()).writeLong(entry.getTerm());
+        serializer.writeObject(entry, buffer);
+      }
     }
   }
 
@@ -153,7 +208,18 @@ public class AppendRequest extends AbstractRequest {
     commitIndex = buffer.readLong();
     globalIndex = buffer.readLong();
 
+    boolean hasRecords = buffer.readBoolean();
     int numEntries = buffer.readInt();
+    if (hasRecords) {
+      entries = Collections.emptyList();
+      records = new ArrayList<>(numEntries);
+      for (int i = 0; i < numEntries; i++) {
+        records.add(EntryBatch.readRecord(buffer));
+      }
+      return;
+    }
+
+    records = Collections.emptyList();
     entries = new ArrayList<>(numEntries);
     for (int i = 0; i < numEntries; i++) {
       long index = buffer.readLong();
@@ -166,7 +232,7 @@ public class AppendRequest extends AbstractRequest {
 
   @Override
   public int hashCode() {
-    return Objects.hash(getClass(), term, leader, logIndex, logTerm, entries, commitIndex, globalIndex);
+    return Objects.hash(getClass(), term, leader, logIndex, logTerm, entries, records, commitIndex, globalIndex);
   }
 
   @Override
@@ -178,6 +244,7 @@ public class AppendRequest extends AbstractRequest {
         && request.logIndex == logIndex
         && request.logTerm == logTerm
         && request.entries.equals(entries)
+        && request.records.equals(records)
         && request.commitIndex == commitIndex
         && request.globalIndex == globalIndex;
     }
@@ -186,7 +253,7 @@ public class AppendRequest extends AbstractRequest {
 
   @Override
   public String toString() {
-    return String.format("%s[term=%d, leader=%s, logIndex=%d, logTerm=%d, entries=[%d], commitIndex=%d, globalIndex=%d]", getClass().getSimpleName(), term, leader, logIndex, logTerm, entries.size(), commitIndex, globalIndex);
+    return String.format("%s[term=%d, leader=%s, logIndex=%d, logTerm=%d, entries=[%d], commitIndex=%d, globalIndex=%d]", getClass().getSimpleName(), term, leader, logIndex, logTerm, entries.size() + records.size(), commitIndex, globalIndex);
   }
 
   /**
@@ -266,6 +333,39 @@ public class AppendRequest extends AbstractRequest {
     @SuppressWarnings("unchecked")
     public Builder withEntries(List<? extends Entry> entries) {
       request.entries = (List<Entry>) Assert.notNull(entries, "entries");
+      request.records = Collections.emptyList();
+      request.batch = null;
+      return this;
+    }
+
+    /**
+     * Sets the request entry records.
+     *
+     * @param records The request entry records.
+     * @return The append request builder.
+     * @throws NullPointerException if {@code records} is null
+     */
+    public Builder withRecords(List<EntryRecord> records) {
+      request.records = Assert.notNull(records, "records");
+      request.entries = Collections.emptyList();
+      request.batch = null;
+      return this;
+    }
+
+    /**
+     * Sets the request entry records from a pre-encoded batch.
+     * <p>
+     * The batch may be shared by any number of requests. Its records will be written to the request in their
+     * encoded form.
+     *
+     * @param batch The encoded entry records.
+     * @return The append request builder.
+     * @throws NullPointerException if {@code batch} is null
+     */
+    public Builder withEntries(EntryBatch batch) {
+      request.batch = Assert.notNull(batch, "batch");
+      request.records = batch.records();
+      request.entries = Collections.emptyList();
       return this;
     }
 
@@ -277,6 +377,7 @@ public class AppendRequest extends AbstractRequest {
      * @throws NullPointerException if {@code entry} is {@code null}
      */
     public Builder addEntry(Entry entry) {
+      Assert.stateNot(request.batch != null || !request.records.isEmpty(), "cannot add entries to a request with records");
       request.entries.add(Assert.notNull(entry, "entry"));
       return this;
     }
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package io.atomix.copycat.server.protocol;
+
+import io.atomix.catalyst.buffer.BufferInput;
+import io.atomix.catalyst.buffer.BufferOutput;
+import io.atomix.catalyst.buffer.HeapBuffer;
+import io.atomix.catalyst.util.Assert;
+import io.atomix.copycat.server.storage.EntryRecord;
+import io.atomix.copycat.server.storage.compaction.Compaction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable batch of entry records encoded for an {@link AppendRequest}.
+ * <p>
+ * Entries are replicated as {@link EntryRecord}s: the serialized bytes and checksums of entries as they're stored
+ * in the leader's log. Receivers verify each record's checksum and append the bytes to their own log without
+ * deserializing the entries. Entry batches are encoded once in the format in which {@link AppendRequest}s write
+ * their records, allowing the same batch to be shared by requests to any number of members. When a request built
+ * with a batch is serialized, the encoded bytes are written directly rather than writing each record again for each
+ * member.
+ * <p>
+ * Each record is encoded as follows:
+ * <ul>
+ *   <li>64-bit entry index</li>
+ *   <li>64-bit entry term</li>
+ *   <li>32-bit unsigned entry checksum</li>
+ *   <li>8-bit {@link Compaction.Mode compaction mode}</li>
+ *   <li>32-bit entry type</li>
+ *   <li>32-bit entry length followed by the serialized entry bytes</li>
+ * </ul>
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public final class EntryBatch {
+  private static final Compaction.Mode[] MODES = Compaction.Mode.values();
+
+  /**
+   * Encodes a batch of entry records.
+   *
+   * @param records The records to encode.
+   * @return The encoded batch.
+   * @throws NullPointerException if {@code records} is null
+   */
+  public static EntryBatch encode(List<EntryRecord> records) {
+    Assert.notNull(records, "records");
+    try (HeapBuffer buffer = HeapBuffer.allocate()) {
+      buffer.writeInt(records.size());
+      for (EntryRecord record : records) {
+        writeRecord(record, buffer);
+      }
+
+      byte[] bytes = new byte[(int) buffer.position()];
+      buffer.flip().read(bytes);
+      return new EntryBatch(new ArrayList<>(records), bytes);
+    }
+  }
+
+  /**
+   * Writes a record to the given buffer.
+   */
+  static void writeRecord(EntryRecord record, BufferOutput<?> buffer) {
+    buffer.writeLong(record.index())
+      .writeLong(record.term())
+      .writeUnsignedInt(record.checksum())
+      .writeByte(record.mode().ordinal())
+      .writeInt(record.type())
+      .writeInt(record.size())
+      .write(record.bytes());
+  }
+
+  /**
+   * Reads a record from the given buffer.
+   */
+  static EntryRecord readRecord(BufferInput<?> buffer) {
+    long index = buffer.readLong();
+    long term = buffer.readLong();
+    long checksum = buffer.readUnsignedInt();
+    int mode = buffer.readByte();
+    int type = buffer.readInt();
+    byte[] bytes = new byte[buffer.readInt()];
+    buffer.read(bytes);
+    Assert.state(mode >= 0 && mode < MODES.length, "invalid compaction mode: %s", mode);
+    return new EntryRecord(index, term, checksum, MODES[mode], type, bytes);
+  }
+
+  private final List<EntryRecord> records;
+  private final byte[] bytes;
+
+  private EntryBatch(List<EntryRecord> records, byte[] bytes) {
+    this.records = Collections.unmodifiableList(records);
+    this.bytes = bytes;
+  }
+
+  /**
+   * Returns the records in the batch.
+   *
+   * @return An unmodifiable list of the records in the batch.
+   */
+  public List<EntryRecord> records() {
+    return records;
+  }
+
+  /**
+   * Returns the number of bytes in the encoded batch.
+   *
+   * @return The number of encoded bytes.
+   */
+  public int length() {
+    return bytes.length;
+  }
+
+  /**
+   * Writes the encoded batch to the given buffer.
+   */
+  void writeTo(BufferOutput<?> buffer) {
+    buffer.write(bytes);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[records=%d, length=%d]", getClass().getSimpleName(), records.size(), bytes.length);
+  }
+
+}
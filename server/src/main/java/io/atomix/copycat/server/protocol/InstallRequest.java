@@ -15,6 +15,7 @@
  */
 package io.atomix.copycat.server.protocol;
 
+import io.atomix.catalyst.buffer.Buffer;
 import io.atomix.catalyst.buffer.BufferInput;
 import io.atomix.catalyst.buffer.BufferOutput;
 import io.atomix.catalyst.serializer.Serializer;
@@ -33,6 +34,10 @@ import java.util.Objects;
  * the follower, the snapshot is reconstructed based on the provided {@link #offset()} and other
  * metadata. The last install request will be sent with {@link #complete()} being {@code true} to
  * indicate that all chunks of the snapshot have been sent.
+ * <p>
+ * Snapshot chunks can be provided either as a byte array or as a {@link Buffer} view of the snapshot. When built
+ * from a buffer, the chunk is serialized directly from the buffer without first being copied to an array, and
+ * the buffer must remain readable until the request has been sent.
  *
  * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
  */
@@ -60,8 +65,11 @@ public class InstallRequest extends AbstractRequest {
   private long term;
   private int leader;
   protected long index;
+  protected long baseIndex;
+  protected int codec;
   protected int offset;
   protected byte[] data;
+  private Buffer buffer;
   protected boolean complete;
 
   /**
@@ -91,6 +99,31 @@ public class InstallRequest extends AbstractRequest {
     return index;
   }
 
+  /**
+   * Returns the index of the snapshot on which the snapshot is based.
+   * <p>
+   * If the base index is {@code 0}, the snapshot is a full snapshot. Otherwise, the snapshot is a delta
+   * of the snapshot at the base index.
+   *
+   * @return The snapshot base index.
+   */
+  public long baseIndex() {
+    return baseIndex;
+  }
+
+  /**
+   * Returns the identifier of the codec with which the snapshot is compressed.
+   * <p>
+   * Compressed snapshots are sent as stored, and the receiving server stores the snapshot data without
+   * decompressing it.
+   *
+   * @return The snapshot {@link io.atomix.copycat.server.storage.compression.Codec#id() codec identifier}, or
+   * {@code 0} if the snapshot is not compressed.
+   */
+  public int codec() {
+    return codec;
+  }
+
   /**
    * Returns the offset of the snapshot chunk.
    *
@@ -106,6 +139,11 @@ public class InstallRequest extends AbstractRequest {
    * @return The snapshot data.
    */
   public byte[] data() {
+    if (data == null && buffer != null) {
+      data = new byte[(int) buffer.rewind().remaining()];
+      buffer.read(data);
+      buffer.rewind();
+    }
     return data;
   }
 
@@ -123,9 +161,15 @@ public class InstallRequest extends AbstractRequest {
     buffer.writeLong(term)
       .writeInt(leader)
       .writeLong(index)
+      .writeLong(baseIndex)
+      .writeUnsignedByte(codec)
       .writeInt(offset)
       .writeBoolean(complete);
-    serializer.writeObject(data, buffer);
+    if (data != null) {
+      buffer.writeInt(data.length).write(data);
+    } else {
+      buffer.writeInt((int) this.buffer.rewind().remaining()).write(this.buffer);
+    }
   }
 
   @Override
@@ -133,14 +177,17 @@ public class InstallRequest extends AbstractRequest {
     term = buffer.readLong();
     leader = buffer.readInt();
     index = buffer.readLong();
+    baseIndex = buffer.readLong();
+    codec = buffer.readUnsignedByte();
     offset = buffer.readInt();
     complete = buffer.readBoolean();
-    data = serializer.<byte[]>readObject(buffer);
+    data = new byte[buffer.readInt()];
+    buffer.read(data);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(getClass(), term, leader, index, offset, complete, data);
+    return Objects.hash(getClass(), term, leader, index, baseIndex, codec, offset, complete, Arrays.hashCode(data()));
   }
 
   @Override
@@ -150,16 +197,18 @@ public class InstallRequest extends AbstractRequest {
       return request.term == term
         && request.leader == leader
         && request.index == index
+        && request.baseIndex == baseIndex
+        && request.codec == codec
         && request.offset == offset
         && request.complete == complete
-        && Arrays.equals(request.data, data);
+        && Arrays.equals(request.data(), data());
     }
     return false;
   }
 
   @Override
   public String toString() {
-    return String.format("%s[term=%d, leader=%d, index=%d, offset=%d, data=%s, complete=%b]", getClass().getSimpleName(), term, leader, index, offset, data, complete);
+    return String.format("%s[term=%d, leader=%d, index=%d, baseIndex=%d, codec=%d, offset=%d, data=byte[%d], complete=%b]", getClass().getSimpleName(), term, leader, index, baseIndex, codec, offset, data != null ? data.length : buffer != null ? buffer.limit() : 0, complete);
   }
 
   /**
@@ -205,6 +254,29 @@ public class InstallRequest extends AbstractRequest {
       return this;
     }
 
+    /**
+     * Sets the request base index.
+     *
+     * @param baseIndex The index of the snapshot on which the snapshot is based, or {@code 0} for full snapshots.
+     * @return The request builder.
+     */
+    public Builder withBaseIndex(long baseIndex) {
+      request.baseIndex = Assert.argNot(baseIndex, baseIndex < 0, "baseIndex must be positive");
+      return this;
+    }
+
+    /**
+     * Sets the identifier of the codec with which the snapshot is compressed.
+     *
+     * @param codec The snapshot codec identifier, or {@code 0} if the snapshot is not compressed.
+     * @return The request builder.
+     * @throws IllegalArgumentException if the codec identifier is not between {@code 0} and {@code 255}
+     */
+    public Builder withCodec(int codec) {
+      request.codec = Assert.arg(codec, codec >= 0 && codec <= 255, "codec must be between 0 and 255");
+      return this;
+    }
+
     /**
      * Sets the request offset.
      *
@@ -224,6 +296,22 @@ public class InstallRequest extends AbstractRequest {
      */
     public Builder withData(byte[] snapshot) {
       request.data = Assert.notNull(snapshot, "data");
+      request.buffer = null;
+      return this;
+    }
+
+    /**
+     * Sets the request snapshot bytes as a view of the snapshot.
+     * <p>
+     * The remaining bytes in the buffer will be sent without being copied to an intermediate array. The buffer
+     * must not be closed until the request has been sent.
+     *
+     * @param snapshot The snapshot buffer.
+     * @return The request builder.
+     */
+    public Builder withData(Buffer snapshot) {
+      request.buffer = Assert.notNull(snapshot, "data");
+      request.data = null;
       return this;
     }
 
@@ -247,7 +335,7 @@ public class InstallRequest extends AbstractRequest {
       super.build();
       Assert.stateNot(request.term <= 0, "term must be positive");
       Assert.argNot(request.index < 0, "index must be positive");
-      Assert.notNull(request.data, "data");
+      Assert.state(request.data != null || request.buffer != null, "data cannot be null");
       return request;
     }
   }
@@ -15,14 +15,17 @@
  */
 package io.atomix.copycat.server.state;
 
+import io.atomix.catalyst.buffer.Buffer;
 import io.atomix.catalyst.transport.Connection;
 import io.atomix.catalyst.util.Assert;
 import io.atomix.copycat.protocol.Response;
 import io.atomix.copycat.server.CopycatServer;
 import io.atomix.copycat.server.protocol.*;
+import io.atomix.copycat.server.storage.EntryRecord;
+import io.atomix.copycat.server.storage.LogCursor;
 import io.atomix.copycat.server.storage.entry.Entry;
 import io.atomix.copycat.server.storage.snapshot.Snapshot;
-import io.atomix.copycat.server.storage.snapshot.SnapshotReader;
+import io.atomix.copycat.server.storage.snapshot.SnapshotStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,6 +42,7 @@ abstract class AbstractAppender implements AutoCloseable {
   private static final int MAX_BATCH_SIZE = 1024 * 32;
   protected final Logger logger = LoggerFactory.getLogger(getClass());
   protected final ServerContext context;
+  private final EntryBatchCache batches = new EntryBatchCache();
   protected boolean open = true;
 
   AbstractAppender(ServerContext context) {
@@ -78,14 +82,14 @@ abstract class AbstractAppender implements AutoCloseable {
    */
   @SuppressWarnings("unchecked")
   protected AppendRequest buildAppendEmptyRequest(MemberState member) {
-    Entry prevEntry = getPrevEntry(member);
+    long prevIndex = getPrevIndex(member);
 
     ServerMember leader = context.getLeader();
     return AppendRequest.builder()
       .withTerm(context.getTerm())
       .withLeader(leader != null ? leader.id() : 0)
-      .withLogIndex(prevEntry != null ? prevEntry.getIndex() : 0)
-      .withLogTerm(prevEntry != null ? prevEntry.getTerm() : 0)
+      .withLogIndex(prevIndex)
+      .withLogTerm(prevIndex != 0 ? context.getLog().term(prevIndex) : 0)
       .withEntries(Collections.EMPTY_LIST)
       .withCommitIndex(context.getCommitIndex())
       .withGlobalIndex(context.getGlobalIndex())
@@ -94,25 +98,35 @@ abstract class AbstractAppender implements AutoCloseable {
 
   /**
    * Builds a populated AppendEntries request.
+   * <p>
+   * Entries are read from the log as serialized records without being deserialized, and each range of the log is
+   * read and encoded once and shared by requests to all members with the same next index. Requests write the
+   * encoded records directly when they're serialized by the transport.
    */
   @SuppressWarnings("unchecked")
   protected AppendRequest buildAppendEntriesRequest(MemberState member, long lastIndex) {
-    Entry prevEntry = getPrevEntry(member);
+    long prevIndex = getPrevIndex(member);
 
     ServerMember leader = context.getLeader();
     AppendRequest.Builder builder = AppendRequest.builder()
       .withTerm(context.getTerm())
       .withLeader(leader != null ? leader.id() : 0)
-      .withLogIndex(prevEntry != null ? prevEntry.getIndex() : 0)
-      .withLogTerm(prevEntry != null ? prevEntry.getTerm() : 0)
+      .withLogIndex(prevIndex)
+      .withLogTerm(prevIndex != 0 ? context.getLog().term(prevIndex) : 0)
       .withCommitIndex(context.getCommitIndex())
       .withGlobalIndex(context.getGlobalIndex());
 
     // Calculate the starting index of the list of entries.
-    final long index = prevEntry != null ? prevEntry.getIndex() + 1 : context.getLog().firstIndex();
+    final long index = prevIndex != 0 ? prevIndex + 1 : context.getLog().firstIndex();
+
+    // If a batch starting at the same index has already been encoded for another member, reuse it.
+    EntryBatch batch = batches.get(index, lastIndex);
+    if (batch != null) {
+      return builder.withEntries(batch).build();
+    }
 
-    // Build a list of entries to send to the member.
-    List<Entry> entries = new ArrayList<>((int) Math.min(8, lastIndex - index + 1));
+    // Build a list of entry records to send to the member.
+    List<EntryRecord> records = new ArrayList<>((int) Math.min(8, lastIndex - index + 1));
 
     // Build a list of entries up to the MAX_BATCH_SIZE. Note that entries in the log may
     // be null if they've been compacted and the member to which we're sending entries is just
@@ -121,63 +135,70 @@ abstract class AbstractAppender implements AutoCloseable {
     // If there exists an entry in the log with size >= MAX_BATCH_SIZE the logic ensures that
     // entry will be sent in a batch of size one
     int size = 0;
-
-    // Iterate through remaining entries in the log up to the last index.
-    for (long i = index; i <= lastIndex; i++) {
-      // Get the entry from the log and append it if it's not null. Entries in the log can be null
-      // if they've been cleaned or compacted from the log. Each entry sent in the append request
-      // has a unique index to handle gaps in the log.
-      Entry entry = context.getLog().get(i);
-      if (entry != null) {
-        if (!entries.isEmpty() && size + entry.size() > MAX_BATCH_SIZE) {
-          break;
+    long endIndex = index - 1;
+    boolean full = false;
+
+    // Iterate through remaining entries in the log up to the last index. Entries are read sequentially
+    // with a cursor rather than looking up the position of each entry in the log.
+    try (LogCursor cursor = context.getLog().cursor(index)) {
+      while (cursor.index() <= lastIndex) {
+        // Read the entry's record from the log and append it if the entry exists. Entries in the log may
+        // not exist if they've been cleaned or compacted from the log. Each record sent in the append request
+        // has a unique index to handle gaps in the log.
+        if (cursor.advance()) {
+          if (!records.isEmpty() && size + cursor.size() > MAX_BATCH_SIZE) {
+            full = true;
+            break;
+          }
+          size += cursor.size();
+          records.add(cursor.record());
         }
-        size += entry.size();
-        entries.add(entry);
+        endIndex = cursor.index() - 1;
       }
     }
 
-    // Release the previous entry back to the entry pool.
-    if (prevEntry != null) {
-      prevEntry.release();
-    }
+    // Encode the records and cache the batch for requests to other members.
+    batch = EntryBatch.encode(records);
+    batches.put(index, endIndex, full, batch);
 
     // Add the entries to the request builder and build the request.
-    return builder.withEntries(entries).build();
+    return builder.withEntries(batch).build();
   }
 
   /**
-   * Gets the previous entry.
+   * Gets the index of the previous entry, or {@code 0} if no previous entry exists.
+   * <p>
+   * Only the visibility of entries is checked, so the previous entry is located without deserializing entries.
    */
-  @SuppressWarnings("unused")
-  protected Entry getPrevEntry(MemberState member) {
+  protected long getPrevIndex(MemberState member) {
     long prevIndex = Math.min(member.getNextIndex() - 1, context.getLog().lastIndex());
     while (prevIndex > 0) {
-      Entry entry = context.getLog().get(prevIndex);
-      if (entry != null) {
-        return entry;
+      if (context.getLog().isVisible(prevIndex)) {
+        return prevIndex;
       }
       prevIndex--;
     }
-    return null;
+    return 0;
   }
 
   /**
    * Connects to the member and sends a commit message.
    */
   protected void sendAppendRequest(MemberState member, AppendRequest request) {
-    // Start the append to the member.
-    member.startAppend();
+    // Start the append to the member, counting the entry bytes in the request against the member's window.
+    int bytes = entriesSize(request);
+    long generation = member.getNextIndexGeneration();
+    member.startAppend(bytes);
 
     context.getConnections().getConnection(member.getMember().address()).whenComplete((connection, error) -> {
       context.checkThread();
 
       if (open) {
         if (error == null) {
-          sendAppendRequest(connection, member, request);
+          sendAppendRequest(connection, member, request, bytes, generation);
         } else {
           // Complete the append to the member.
-          member.completeAppend();
+          member.failAppend(bytes);
 
           // Trigger reactions to the request failure.
           handleAppendRequestFailure(member, request, error);
@@ -188,37 +209,89 @@ abstract class AbstractAppender implements AutoCloseable {
 
   /**
    * Sends a commit message.
+   * <p>
+   * Append requests are pipelined up to the member's append window, so responses may be received after the
+   * member's next index has been reset by the rejection of a later request. Rejections of requests sent before
+   * the next index was reset are ignored to prevent the leader from repeatedly resending the same entries.
    */
-  protected void sendAppendRequest(Connection connection, MemberState member, AppendRequest request) {
-    long timestamp = System.nanoTime();
-
+  private void sendAppendRequest(Connection connection, MemberState member, AppendRequest request, int bytes, long generation) {
     logger.trace("{} - Sending {} to {}", context.getCluster().member().address(), request, member.getMember().address());
     connection.<AppendRequest, AppendResponse>sendAndReceive(request).whenComplete((response, error) -> {
       context.checkThread();
 
-      // Complete the append to the member.
-      if (!request.entries().isEmpty()) {
-        member.completeAppend(System.nanoTime() - timestamp);
-      } else {
-        member.completeAppend();
-      }
+      // Complete the append to the member, adjusting the member's append window.
+      completeAppend(member, request, response, error, bytes);
 
       if (open) {
         if (error == null) {
           logger.trace("{} - Received {} from {}", context.getCluster().member().address(), response, member.getMember().address());
-          handleAppendResponse(member, request, response);
+          if (isStaleRejection(member, request, response, generation)) {
+            logger.trace("{} - Ignoring stale rejection from {}", context.getCluster().member().address(), member.getMember().address());
+            if (hasMoreEntries(member)) {
+              appendEntries(member);
+            }
+          } else {
+            handleAppendResponse(member, request, response);
+          }
         } else {
           handleAppendResponseFailure(member, request, error);
         }
       }
     });
 
-    updateNextIndex(member, request);
-    if (!request.entries().isEmpty() && hasMoreEntries(member)) {
+    // If the member's next index was reset while connecting, the request is stale and must not advance it.
+    if (generation == member.getNextIndexGeneration()) {
+      updateNextIndex(member, request);
+    }
+    if (!request.isEmpty() && hasMoreEntries(member)) {
       appendEntries(member);
     }
   }
 
+  /**
+   * Completes an append request to the member, adjusting the member's append window.
+   * <p>
+   * The append window is halved if the request fails and grows only when the member accepts the request's entries.
+   * Empty requests and rejections complete the append without adjusting the window, since rejections are expected
+   * while the member's next index is being reset.
+   */
+  static void completeAppend(MemberState member, AppendRequest request, AppendResponse response, Throwable error, int bytes) {
+    if (error != null || response.status() != Response.Status.OK) {
+      member.failAppend(bytes);
+    } else if (response.succeeded() && !request.isEmpty()) {
+      member.succeedAppend(bytes);
+    } else {
+      member.completeAppend(bytes);
+    }
+  }
+
+  /**
+   * Returns a boolean indicating whether the given response is a stale rejection of a pipelined request.
+   * <p>
+   * A rejection is stale if the member's next index has been reset since the request was sent or if the member
+   * has since acknowledged entries beyond the request's previous index.
+   */
+  private boolean isStaleRejection(MemberState member, AppendRequest request, AppendResponse response, long generation) {
+    return response.status() == Response.Status.OK
+      && !response.succeeded()
+      && response.term() <= context.getTerm()
+      && (generation != member.getNextIndexGeneration() || request.logIndex() <= member.getMatchIndex());
+  }
+
+  /**
+   * Returns the number of entry bytes in the given request.
+   */
+  private static int entriesSize(AppendRequest request) {
+    int size = 0;
+    for (Entry entry : request.entries()) {
+      size += entry.size();
+    }
+    for (EntryRecord record : request.records()) {
+      size += record.size();
+    }
+    return size;
+  }
+
   /**
    * Handles an append failure.
    */
@@ -326,8 +399,11 @@ abstract class AbstractAppender implements AutoCloseable {
    * Updates the match index when a response is received.
    */
   protected void updateMatchIndex(MemberState member, AppendResponse response) {
-    // If the replica returned a valid match index then update the existing match index.
-    member.setMatchIndex(response.logIndex());
+    // If the replica returned a valid match index then update the existing match index. Responses to pipelined
+    // requests may be received out of order, so the match index is only ever increased.
+    if (response.logIndex() > member.getMatchIndex()) {
+      member.setMatchIndex(response.logIndex());
+    }
   }
 
   /**
@@ -335,8 +411,8 @@ abstract class AbstractAppender implements AutoCloseable {
    */
   protected void updateNextIndex(MemberState member, AppendRequest request) {
     // If the match index was set, update the next index to be greater than the match index if necessary.
-    if (!request.entries().isEmpty()) {
-      member.setNextIndex(request.entries().get(request.entries().size()-1).getIndex()+1);
+    if (!request.isEmpty()) {
+      member.setNextIndex(request.lastEntryIndex() + 1);
     }
   }
 
@@ -353,9 +429,9 @@ abstract class AbstractAppender implements AutoCloseable {
    */
   protected void resetNextIndex(MemberState member) {
     if (member.getMatchIndex() != 0) {
-      member.setNextIndex(member.getMatchIndex() + 1);
+      member.resetNextIndex(member.getMatchIndex() + 1);
     } else {
-      member.setNextIndex(context.getLog().firstIndex());
+      member.resetNextIndex(context.getLog().firstIndex());
     }
     logger.trace("{} - Reset next index for {} to {}", context.getCluster().member().address(), member, member.getNextIndex());
   }
@@ -478,35 +554,61 @@ abstract class AbstractAppender implements AutoCloseable {
    * Builds an install request for the given member.
    */
   protected InstallRequest buildInstallRequest(MemberState member) {
-    Snapshot snapshot = context.getSnapshotStore().currentSnapshot();
-    if (member.getNextSnapshotIndex() != snapshot.index()) {
-      member.setNextSnapshotIndex(snapshot.index()).setNextSnapshotOffset(0);
+    // Acquire the current snapshot chain while selecting the next snapshot to ensure the snapshot isn't deleted
+    // by a background merge before the transfer acquires it.
+    SnapshotStore store = context.getSnapshotStore();
+    List<Snapshot> chain = store.acquireChain(store.currentSnapshot());
+    Snapshot snapshot;
+    SnapshotTransfer transfer;
+    try {
+      snapshot = nextSnapshot(member, chain);
+
+      // If the member is not already receiving the next snapshot, start a new transfer from the beginning
+      // of the snapshot. The transfer holds a reader open across requests so that chunks are read sequentially.
+      transfer = member.getSnapshotTransfer();
+      if (transfer == null || transfer.snapshot() != snapshot || member.getNextSnapshotIndex() != snapshot.index()) {
+        transfer = new SnapshotTransfer(store, snapshot, MAX_BATCH_SIZE);
+        member.setSnapshotTransfer(transfer)
+          .setNextSnapshotIndex(snapshot.index())
+          .setNextSnapshotOffset(0);
+      }
+    } finally {
+      store.releaseChain(chain);
     }
 
-    InstallRequest request;
-    synchronized (snapshot) {
-      // Open a new snapshot reader.
-      try (SnapshotReader reader = snapshot.reader()) {
-        // Skip to the next batch of bytes according to the snapshot chunk size and current offset.
-        reader.skip(member.getNextSnapshotOffset() * MAX_BATCH_SIZE);
-        byte[] data = new byte[Math.min(MAX_BATCH_SIZE, (int) reader.remaining())];
-        reader.read(data);
-
-        // Create the install request, indicating whether this is the last chunk of data based on the number
-        // of bytes remaining in the buffer.
-        ServerMember leader = context.getLeader();
-        request = InstallRequest.builder()
-          .withTerm(context.getTerm())
-          .withLeader(leader != null ? leader.id() : 0)
-          .withIndex(member.getNextSnapshotIndex())
-          .withOffset(member.getNextSnapshotOffset())
-          .withData(data)
-          .withComplete(!reader.hasRemaining())
-          .build();
+    // Read the next chunk as a slice of the snapshot reader. The slice is serialized directly from the snapshot
+    // buffer, so it must not be released until the request has been sent.
+    int offset = transfer.nextOffset();
+    Buffer data = transfer.next();
+
+    // Create the install request, indicating whether this is the last chunk of data based on the number
+    // of bytes remaining in the snapshot.
+    ServerMember leader = context.getLeader();
+    return InstallRequest.builder()
+      .withTerm(context.getTerm())
+      .withLeader(leader != null ? leader.id() : 0)
+      .withIndex(transfer.index())
+      .withBaseIndex(snapshot.baseIndex())
+      .withCodec(snapshot.codec())
+      .withOffset(offset)
+      .withData(data)
+      .withComplete(transfer.isComplete())
+      .build();
+  }
+
+  /**
+   * Returns the next snapshot to send to the given member.
+   * <p>
+   * If the current snapshot is a delta snapshot, the chain of snapshots leading to the current snapshot is sent to
+   * the member in order, beginning after the last snapshot in the chain that the member has installed.
+   */
+  private Snapshot nextSnapshot(MemberState member, List<Snapshot> chain) {
+    for (int i = chain.size() - 1; i > 0; i--) {
+      if (chain.get(i - 1).index() == member.getSnapshotIndex()) {
+        return chain.get(i);
       }
     }
-
-    return request;
+    return chain.get(0);
   }
 
   /**
@@ -516,15 +618,20 @@ abstract class AbstractAppender implements AutoCloseable {
     // Start the install to the member.
     member.startInstall();
 
+    // Get the transfer from which the request was read to release the request's chunk once it has been sent.
+    SnapshotTransfer transfer = member.getSnapshotTransfer();
+    long generation = member.getSnapshotTransferGeneration();
+
     context.getConnections().getConnection(member.getMember().serverAddress()).whenComplete((connection, error) -> {
       context.checkThread();
 
       if (open) {
         if (error == null) {
-          sendInstallRequest(connection, member, request);
+          sendInstallRequest(connection, member, request, transfer, generation);
         } else {
           // Complete the install to the member.
           member.completeInstall();
+          transfer.release();
 
           // Trigger reactions to the install request failure.
           handleInstallRequestFailure(member, request, error);
@@ -535,19 +642,31 @@ abstract class AbstractAppender implements AutoCloseable {
 
   /**
    * Sends a snapshot message.
+   * <p>
+   * Install requests are pipelined up to the member's install limit, so a request may fail after the member's
+   * snapshot transfer has already been reset by the failure of a later request. Failures of requests sent before
+   * the transfer was reset are ignored to prevent late failures from resetting the transfer again.
    */
-  protected void sendInstallRequest(Connection connection, MemberState member, InstallRequest request) {
+  protected void sendInstallRequest(Connection connection, MemberState member, InstallRequest request, SnapshotTransfer transfer, long generation) {
     logger.trace("{} - Sending {} to {}", context.getCluster().member().address(), request, member.getMember().serverAddress());
     connection.<InstallRequest, InstallResponse>sendAndReceive(request).whenComplete((response, error) -> {
       context.checkThread();
 
       // Complete the install to the member.
       member.completeInstall();
+      transfer.release();
 
       if (open) {
         if (error == null) {
           logger.trace("{} - Received {} from {}", context.getCluster().member().address(), response, member.getMember().serverAddress());
-          handleInstallResponse(member, request, response);
+          if (response.status() == Response.Status.ERROR && isStaleInstall(member, request, generation)) {
+            logger.trace("{} - Ignoring stale install failure from {}", context.getCluster().member().address(), member.getMember().serverAddress());
+          } else {
+            handleInstallResponse(member, request, response);
+          }
+        } else if (isStaleInstall(member, request, generation)) {
+          // Log the failed attempt to contact the member without resetting the current transfer.
+          handleInstallRequestFailure(member, request, error);
         } else {
           logger.warn("{} - Failed to install {}", context.getCluster().member().address(), member.getMember().serverAddress());
 
@@ -558,6 +677,16 @@ abstract class AbstractAppender implements AutoCloseable {
     });
   }
 
+  /**
+   * Returns a boolean indicating whether the given request belongs to a prior snapshot transfer.
+   * <p>
+   * A request is stale if the member's snapshot transfer has changed since the request was sent or if the member
+   * is no longer being sent the request's snapshot.
+   */
+  private boolean isStaleInstall(MemberState member, InstallRequest request, long generation) {
+    return generation != member.getSnapshotTransferGeneration() || request.index() != member.getNextSnapshotIndex();
+  }
+
   /**
    * Handles an install request failure.
    */
@@ -570,9 +699,9 @@ abstract class AbstractAppender implements AutoCloseable {
    * Handles an install response failure.
    */
   protected void handleInstallResponseFailure(MemberState member, InstallRequest request, Throwable error) {
-    // Reset the member's snapshot index and offset to resend the snapshot from the start
-    // once a connection to the member is re-established.
-    member.setNextSnapshotIndex(0).setNextSnapshotOffset(0);
+    // Resume the transfer from the first chunk the member has not acknowledged once a connection to the
+    // member is re-established.
+    resumeInstall(member);
 
     // Log the failed attempt to contact the member.
     failAttempt(member, error);
@@ -599,14 +728,18 @@ abstract class AbstractAppender implements AutoCloseable {
 
     // If the install request was completed successfully, set the member's snapshotIndex and reset
     // the next snapshot index/offset.
-    if (request.complete()) {
-      member.setSnapshotIndex(request.index())
-        .setNextSnapshotIndex(0)
-        .setNextSnapshotOffset(0);
-    }
-    // If more install requests remain, increment the member's snapshot offset.
-    else {
-      member.setNextSnapshotOffset(request.offset() + 1);
+    if (request.index() == member.getNextSnapshotIndex()) {
+      if (request.complete()) {
+        member.setSnapshotIndex(request.index())
+          .setSnapshotTransfer(null)
+          .setNextSnapshotIndex(0)
+          .setNextSnapshotOffset(0);
+      }
+      // If more install requests remain, advance the member's snapshot offset. Responses may be received out of
+      // order, but the member only acknowledges a chunk once all prior chunks have been written.
+      else {
+        member.setNextSnapshotOffset(Math.max(member.getNextSnapshotOffset(), request.offset() + 1));
+      }
     }
 
     // Recursively append entries to the member.
@@ -619,12 +752,42 @@ abstract class AbstractAppender implements AutoCloseable {
   @SuppressWarnings("unused")
   protected void handleInstallResponseError(MemberState member, InstallRequest request, InstallResponse response) {
     logger.warn("{} - Failed to install {}", context.getCluster().member().address(), member.getMember().serverAddress());
-    member.setNextSnapshotIndex(0).setNextSnapshotOffset(0);
+
+    // If the member rejected a chunk beyond the chunks it has acknowledged, a prior chunk was lost, so resume the
+    // transfer from the first chunk the member has not acknowledged.
+    if (request.offset() > member.getNextSnapshotOffset()) {
+      resumeInstall(member);
+      return;
+    }
+
+    // Otherwise, the member has discarded the partial snapshot, so resend the snapshot from the start.
+    member.setSnapshotTransfer(null).setNextSnapshotIndex(0).setNextSnapshotOffset(0);
+
+    // If the member rejected the first chunk of a delta snapshot, it may not have the snapshot on which the delta
+    // is based, so resend the snapshot chain from the start.
+    if (request.baseIndex() > 0 && request.offset() == 0) {
+      member.setSnapshotIndex(0);
+    }
+  }
+
+  /**
+   * Resumes the member's snapshot transfer from the first chunk the member has not acknowledged.
+   * <p>
+   * Chunks are read sequentially from the transfer's reader, so the transfer is replaced with a new transfer that
+   * skips the acknowledged chunks. Chunks sent after the acknowledged chunks are resent, and the member acknowledges
+   * chunks it has already written without writing them again.
+   */
+  private void resumeInstall(MemberState member) {
+    SnapshotTransfer transfer = member.getSnapshotTransfer();
+    if (transfer != null) {
+      member.setSnapshotTransfer(new SnapshotTransfer(context.getSnapshotStore(), transfer.snapshot(), MAX_BATCH_SIZE, member.getNextSnapshotOffset()));
+    }
   }
 
   @Override
   public void close() {
     open = false;
+    batches.clear();
   }
 
 }
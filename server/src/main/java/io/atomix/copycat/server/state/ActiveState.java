@@ -15,10 +15,13 @@
  */
 package io.atomix.copycat.server.state;
 
+import io.atomix.copycat.error.CopycatError;
 import io.atomix.copycat.protocol.Request;
 import io.atomix.copycat.protocol.Response;
 import io.atomix.copycat.server.CopycatServer;
 import io.atomix.copycat.server.protocol.*;
+import io.atomix.copycat.server.storage.EntryRecord;
+import io.atomix.copycat.server.storage.StorageException;
 import io.atomix.copycat.server.storage.entry.Entry;
 
 import java.util.concurrent.CompletableFuture;
@@ -40,11 +43,32 @@ abstract class ActiveState extends PassiveState {
     context.checkThread();
     logRequest(request);
 
+    long startTime = System.nanoTime();
+
     // If the request indicates a term that is greater than the current term then
     // assign that term and leader to the current context and transition to follower.
     boolean transition = updateTermAndLeader(request.term(), request.leader());
 
-    CompletableFuture<AppendResponse> future = CompletableFuture.completedFuture(logResponse(handleAppend(request)));
+    AppendResponse response = handleAppend(request);
+
+    // If entries were appended to the log, only acknowledge the request once the entries have been flushed
+    // to disk. If the entries are truncated before they're flushed, respond with an error.
+    CompletableFuture<AppendResponse> future;
+    if (response.status() == Response.Status.OK && response.succeeded() && !request.isEmpty()) {
+      future = context.getLog().sync(response.logIndex()).handle((syncIndex, error) -> {
+        if (error == null) {
+          // Report the time taken to append and flush the entries so compaction can back off under load.
+          context.getLog().compactor().recordAppendLatency(System.nanoTime() - startTime);
+          return logResponse(response);
+        }
+        return logResponse(AppendResponse.builder()
+          .withStatus(Response.Status.ERROR)
+          .withError(CopycatError.Type.INTERNAL_ERROR)
+          .build());
+      });
+    } else {
+      future = CompletableFuture.completedFuture(logResponse(response));
+    }
 
     // If a transition is required then transition back to the follower state.
     // If the node is already a follower then the transition will be ignored.
@@ -92,36 +116,37 @@ abstract class ActiveState extends PassiveState {
   @Override
   protected AppendResponse appendEntries(AppendRequest request) {
     // Get the last entry index or default to the request log index.
-    long lastEntryIndex = request.logIndex();
-    if (!request.entries().isEmpty()) {
-      lastEntryIndex = request.entries().get(request.entries().size() - 1).getIndex();
-    }
+    long lastEntryIndex = request.lastEntryIndex();
 
     // Ensure the commitIndex is not increased beyond the index of the last entry in the request.
     long commitIndex = Math.max(context.getCommitIndex(), Math.min(request.commitIndex(), lastEntryIndex));
 
-    // Iterate through request entries and append them to the log.
-    for (Entry entry : request.entries()) {
-      // If the entry index is greater than the last log index, skip missing entries.
-      if (context.getLog().lastIndex() < entry.getIndex()) {
-        context.getLog().skip(entry.getIndex() - context.getLog().lastIndex() - 1).append(entry);
-        LOGGER.trace("{} - Appended {} to log at index {}", context.getCluster().member().address(), entry, entry.getIndex());
-      } else if (entry.getIndex() > context.getCommitIndex()) {
-        // Compare the term of the received entry with the matching entry in the log.
-        long term = context.getLog().term(entry.getIndex());
-        if (term != 0) {
-          if (entry.getTerm() != term) {
-            // We found an invalid entry in the log. Remove the invalid entry and append the new entry.
-            // If appending to the log fails, apply commits and reply false to the append request.
-            LOGGER.debug("{} - Appended entry term does not match local log, removing incorrect entries", context.getCluster().member().address());
-            context.getLog().truncate(entry.getIndex() - 1).append(entry);
-            LOGGER.trace("{} - Appended {} to log at index {}", context.getCluster().member().address(), entry, entry.getIndex());
-          }
-        } else {
-          context.getLog().truncate(entry.getIndex() - 1).append(entry);
+    try {
+      // Iterate through request entries and append them to the log.
+      for (Entry entry : request.entries()) {
+        if (prepareAppend(entry.getIndex(), entry.getTerm())) {
+          context.getLog().append(entry);
           LOGGER.trace("{} - Appended {} to log at index {}", context.getCluster().member().address(), entry, entry.getIndex());
         }
       }
+
+      // Iterate through request records and append them to the log. Records are written to the log in their
+      // serialized form and are only deserialized once they're read from the log to be applied.
+      for (EntryRecord record : request.records()) {
+        if (prepareAppend(record.index(), record.term())) {
+          context.getLog().append(record);
+          LOGGER.trace("{} - Appended {} to log at index {}", context.getCluster().member().address(), record, record.index());
+        }
+      }
+    } catch (StorageException e) {
+      // If a record is corrupt, reject the request without committing any entries. Entries and records appended
+      // before the corrupt record remain in the log, and the leader will resend the request.
+      LOGGER.warn("{} - Rejected {}: {}", context.getCluster().member().address(), request, e.getMessage());
+      return AppendResponse.builder()
+        .withStatus(Response.Status.ERROR)
+        .withTerm(context.getTerm())
+        .withError(CopycatError.Type.INTERNAL_ERROR)
+        .build();
     }
 
     // If we've made it this far, apply commits and send a successful response.
@@ -144,6 +169,39 @@ abstract class ActiveState extends PassiveState {
       .build();
   }
 
+  /**
+   * Prepares the log for appending the entry with the given index and term.
+   * <p>
+   * If the entry index is greater than the last index in the log, missing entries are skipped. If the log contains
+   * an uncommitted entry at the given index with a different term, the entry and all entries following it are
+   * removed from the log.
+   *
+   * @return Indicates whether the entry should be appended to the log.
+   */
+  private boolean prepareAppend(long index, long term) {
+    // If the entry index is greater than the last log index, skip missing entries.
+    if (context.getLog().lastIndex() < index) {
+      context.getLog().skip(index - context.getLog().lastIndex() - 1);
+      return true;
+    } else if (index > context.getCommitIndex()) {
+      // Compare the term of the received entry with the matching entry in the log.
+      long localTerm = context.getLog().term(index);
+      if (localTerm != 0) {
+        if (term != localTerm) {
+          // We found an invalid entry in the log. Remove the invalid entry and append the new entry.
+          // If appending to the log fails, apply commits and reply false to the append request.
+          LOGGER.debug("{} - Appended entry term does not match local log, removing incorrect entries", context.getCluster().member().address());
+          context.getLog().truncate(index - 1);
+          return true;
+        }
+      } else {
+        context.getLog().truncate(index - 1);
+        return true;
+      }
+    }
+    return false;
+  }
+
   @Override
   public CompletableFuture<PollResponse> poll(PollRequest request) {
     context.checkThread();
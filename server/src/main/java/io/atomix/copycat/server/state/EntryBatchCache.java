@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package io.atomix.copycat.server.state;
+
+import io.atomix.copycat.server.protocol.EntryBatch;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of encoded entry batches shared by append requests to all members.
+ * <p>
+ * Batches are cached by the index at which they start. When multiple members have the same next index, the batch
+ * read and encoded for the first member is reused for the rest. A cached batch is only reused if it covers the same
+ * range of the log that would be read for the request: either the batch reached the maximum batch size or it was
+ * read up to the requested last index. The cache retains a fixed number of the most recently used batches and is
+ * not thread safe.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+final class EntryBatchCache {
+  private static final int MAX_BATCHES = 32;
+  private final Map<Long, CachedBatch> batches = new LinkedHashMap<Long, CachedBatch>(MAX_BATCHES, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Long, CachedBatch> eldest) {
+      return size() > MAX_BATCHES;
+    }
+  };
+
+  /**
+   * Returns the cached batch starting at the given index.
+   *
+   * @param index The index at which the batch starts.
+   * @param lastIndex The last index that can be included in the batch.
+   * @return The cached batch or {@code null} if no batch covering the range is cached.
+   */
+  EntryBatch get(long index, long lastIndex) {
+    CachedBatch batch = batches.get(index);
+    if (batch != null && batch.endIndex <= lastIndex && (batch.full || batch.endIndex == lastIndex)) {
+      return batch.batch;
+    }
+    return null;
+  }
+
+  /**
+   * Caches a batch.
+   *
+   * @param index The index at which the batch starts.
+   * @param endIndex The last index read for the batch.
+   * @param full Whether the batch reached the maximum batch size.
+   * @param batch The encoded batch.
+   */
+  void put(long index, long endIndex, boolean full, EntryBatch batch) {
+    batches.put(index, new CachedBatch(endIndex, full, batch));
+  }
+
+  /**
+   * Clears the cache.
+   */
+  void clear() {
+    batches.clear();
+  }
+
+  /**
+   * Cached batch.
+   */
+  private static final class CachedBatch {
+    private final long endIndex;
+    private final boolean full;
+    private final EntryBatch batch;
+
+    private CachedBatch(long endIndex, boolean full, EntryBatch batch) {
+      this.endIndex = endIndex;
+      this.full = full;
+      this.batch = batch;
+    }
+  }
+
+}
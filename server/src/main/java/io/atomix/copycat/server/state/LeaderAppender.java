@@ -26,6 +26,7 @@ import io.atomix.copycat.server.protocol.ConfigureRequest;
 import io.atomix.copycat.server.protocol.ConfigureResponse;
 import io.atomix.copycat.server.protocol.InstallRequest;
 import io.atomix.copycat.server.protocol.InstallResponse;
+import io.atomix.copycat.server.storage.system.Configuration;
 
 import java.time.Instant;
 import java.util.HashMap;
@@ -50,6 +51,9 @@ final class LeaderAppender extends AbstractAppender {
   private CompletableFuture<Long> heartbeatFuture;
   private CompletableFuture<Long> nextHeartbeatFuture;
   private final Map<Long, CompletableFuture<Long>> appendFutures = new HashMap<>();
+  private final QuorumTracker matchIndexes = new QuorumTracker(MemberState::getMatchIndex);
+  private final QuorumTracker heartbeatTimes = new QuorumTracker(MemberState::getHeartbeatTime);
+  private Configuration configuration;
 
   LeaderAppender(LeaderState leader) {
     super(leader.context);
@@ -87,6 +91,22 @@ final class LeaderAppender extends AbstractAppender {
     return context.getClusterState().getQuorum() - 2;
   }
 
+  /**
+   * Resets the quorum trackers if the cluster configuration has changed since they were last reset.
+   * <p>
+   * Member states are reset when the configuration changes, so the trackers are reset to read the current values
+   * of the configured active members.
+   */
+  private void checkQuorumTrackers() {
+    Configuration configuration = context.getClusterState().getConfiguration();
+    List<MemberState> members = context.getClusterState().getActiveMemberStates();
+    if (configuration != this.configuration || matchIndexes.size() != members.size()) {
+      this.configuration = configuration;
+      matchIndexes.reset(members);
+      heartbeatTimes.reset(members);
+    }
+  }
+
   /**
    * Triggers a heartbeat to a majority of the cluster.
    * <p>
@@ -140,21 +160,30 @@ final class LeaderAppender extends AbstractAppender {
     if (index <= context.getCommitIndex())
       return CompletableFuture.completedFuture(index);
 
-    // If there are no other stateful servers in the cluster, immediately commit the index.
+    // If there are no other stateful servers in the cluster, commit the index once it has been persisted locally.
     if (context.getClusterState().getActiveMemberStates().isEmpty() && context.getClusterState().getPassiveMemberStates().isEmpty()) {
-      long previousCommitIndex = context.getCommitIndex();
-      context.setCommitIndex(index);
-      context.setGlobalIndex(index);
-      completeCommits(previousCommitIndex, index);
-      return CompletableFuture.completedFuture(index);
+      return context.getLog().sync(index).thenApply(syncIndex -> {
+        long previousCommitIndex = context.getCommitIndex();
+        if (index > previousCommitIndex) {
+          context.setCommitIndex(index);
+          context.setGlobalIndex(index);
+          completeCommits(previousCommitIndex, index);
+        }
+        return index;
+      });
     }
-    // If there are no other active members in the cluster, update the commit index and complete the commit.
-    // The updated commit index will be sent to passive/reserve members on heartbeats.
+    // If there are no other active members in the cluster, update the commit index and complete the commit
+    // once the entry has been persisted locally. The updated commit index will be sent to passive/reserve
+    // members on heartbeats.
     else if (context.getClusterState().getActiveMemberStates().isEmpty()) {
-      long previousCommitIndex = context.getCommitIndex();
-      context.setCommitIndex(index);
-      completeCommits(previousCommitIndex, index);
-      return CompletableFuture.completedFuture(index);
+      return context.getLog().sync(index).thenApply(syncIndex -> {
+        long previousCommitIndex = context.getCommitIndex();
+        if (index > previousCommitIndex) {
+          context.setCommitIndex(index);
+          completeCommits(previousCommitIndex, index);
+        }
+        return index;
+      });
     }
 
     // Only send entry-specific AppendRequests to active members of the cluster.
@@ -162,6 +191,17 @@ final class LeaderAppender extends AbstractAppender {
       for (MemberState member : context.getClusterState().getActiveMemberStates()) {
         appendEntries(member);
       }
+
+      // If the entry has not yet been persisted locally, recompute the commit index once it has been.
+      // The leader's log only counts toward the quorum up to the index that has been flushed to disk.
+      CompletableFuture<Long> syncFuture = context.getLog().sync(index);
+      if (!syncFuture.isDone()) {
+        syncFuture.whenComplete((syncIndex, error) -> {
+          if (open && error == null) {
+            commitEntries();
+          }
+        });
+      }
       return new CompletableFuture<>();
     });
   }
@@ -202,7 +242,8 @@ final class LeaderAppender extends AbstractAppender {
     else if (member.getMember().type() == Member.Type.ACTIVE && context.getSnapshotStore().currentSnapshot() != null
       && context.getSnapshotStore().currentSnapshot().index() >= member.getNextIndex()
       && context.getSnapshotStore().currentSnapshot().index() > member.getSnapshotIndex()) {
-      if (member.canInstall()) {
+      // Send chunks until the member's window of in-flight install requests is full.
+      while (member.canInstall()) {
         sendInstallRequest(member, buildInstallRequest(member));
       }
     }
@@ -223,14 +264,16 @@ final class LeaderAppender extends AbstractAppender {
   /**
    * Returns the last time a majority of the cluster was contacted.
    * <p>
-   * This is calculated by sorting the list of active members and getting the last time the majority of
-   * the cluster was contacted based on the index of a majority of the members. So, in a list of 3 ACTIVE
-   * members, index 1 (the second member) will be used to determine the commit time in a sorted members list.
+   * This is calculated from the heartbeat times of active members in descending order, getting the last time the
+   * majority of the cluster was contacted based on the index of a majority of the members. So, in a list of 3 ACTIVE
+   * members, index 1 (the second member) will be used to determine the commit time. Members are kept in order by
+   * a {@link QuorumTracker} as their heartbeat times are updated rather than sorted for each response.
    */
   private long heartbeatTime() {
     int quorumIndex = quorumIndex();
     if (quorumIndex >= 0) {
-      return context.getClusterState().getActiveMemberStates((m1, m2)-> Long.compare(m2.getHeartbeatTime(), m1.getHeartbeatTime())).get(quorumIndex).getHeartbeatTime();
+      checkQuorumTrackers();
+      return heartbeatTimes.get(quorumIndex);
     }
     return System.currentTimeMillis();
   }
@@ -255,6 +298,7 @@ final class LeaderAppender extends AbstractAppender {
       }
     } else {
       member.setHeartbeatTime(System.currentTimeMillis());
+      heartbeatTimes.update(member);
 
       // Sort the list of commit times. Use the quorum index to get the last time the majority of the cluster
       // was contacted. If the current heartbeatFuture's time is less than the commit time then trigger the
@@ -309,24 +353,28 @@ final class LeaderAppender extends AbstractAppender {
   private void commitEntries() {
     context.checkThread();
 
-    // Sort the list of replicas, order by the last index that was replicated
-    // to the replica. This will allow us to determine the median index
-    // for all known replicated entries across all cluster members.
-    List<MemberState> members = context.getClusterState().getActiveMemberStates((m1, m2) ->
-      Long.compare(m2.getMatchIndex() != 0 ? m2.getMatchIndex() : 0L, m1.getMatchIndex() != 0 ? m1.getMatchIndex() : 0L));
+    // Replicas are kept in order by the last index that was replicated to the replica. This will allow us
+    // to determine the median index for all known replicated entries across all cluster members.
+    checkQuorumTrackers();
 
     // If the active members list is empty (a configuration change occurred between an append request/response)
     // ensure all commit futures are completed and cleared.
-    if (members.isEmpty()) {
+    if (matchIndexes.size() == 0) {
       long previousCommitIndex = context.getCommitIndex();
-      long commitIndex = context.getLog().lastIndex();
+      long commitIndex = context.getLog().syncIndex();
       context.setCommitIndex(commitIndex);
       completeCommits(previousCommitIndex, commitIndex);
       return;
     }
 
-    // Calculate the current commit index as the median matchIndex.
-    long commitIndex = members.get(quorumIndex()).getMatchIndex();
+    // Calculate the current commit index as the median matchIndex. The leader's own log only counts toward
+    // the quorum up to the index that has been flushed to disk. If enough followers have stored an entry to
+    // form a quorum without the leader, the entry can be committed regardless of the leader's sync index.
+    int quorumIndex = quorumIndex();
+    long commitIndex = Math.min(matchIndexes.get(quorumIndex), context.getLog().syncIndex());
+    if (matchIndexes.size() > quorumIndex + 1) {
+      commitIndex = Math.max(commitIndex, matchIndexes.get(quorumIndex + 1));
+    }
 
     // If the commit index has increased then update the commit index. Note that in order to ensure
     // the leader completeness property holds, we verify that the commit index is greater than or equal to
@@ -361,6 +409,18 @@ final class LeaderAppender extends AbstractAppender {
     super.sendAppendRequest(member, request);
   }
 
+  @Override
+  protected void updateMatchIndex(MemberState member, AppendResponse response) {
+    super.updateMatchIndex(member, response);
+    matchIndexes.update(member);
+  }
+
+  @Override
+  protected void resetMatchIndex(MemberState member, AppendResponse response) {
+    super.resetMatchIndex(member, response);
+    matchIndexes.update(member);
+  }
+
   /**
    * Handles an append failure.
    */
@@ -403,7 +463,7 @@ final class LeaderAppender extends AbstractAppender {
       updateMatchIndex(member, response);
 
       // If entries were committed to the replica then check commit indexes.
-      if (!request.entries().isEmpty()) {
+      if (!request.isEmpty()) {
         commitEntries();
       }
 
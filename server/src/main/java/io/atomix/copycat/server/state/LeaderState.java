@@ -516,7 +516,8 @@ final class LeaderState extends ActiveState {
       LOGGER.trace("{} - Appended {}", context.getCluster().member().address(), entry);
     }
 
-    // Replicate the command to followers.
+    // Replicate the command to followers. The commit future is not completed until the entry has been
+    // flushed to disk on a majority of the cluster, so the command is only acknowledged once it's durable.
     appender.appendEntries(index).whenComplete((commitIndex, commitError) -> {
       context.checkThread();
       if (isOpen()) {
@@ -20,11 +20,21 @@ import io.atomix.copycat.server.storage.Log;
 
 /**
  * Cluster member state.
+ * <p>
+ * In addition to replication progress, the member state tracks the flow control window for {@link
+ * io.atomix.copycat.server.protocol.AppendRequest}s pipelined to the member. The window limits both the number
+ * of requests and the number of entry bytes in flight. The request window is sized by additive increase,
+ * multiplicative decrease: it grows by one request each time a full window of appends succeeds and is halved
+ * when an append fails. This allows the leader to keep high latency links full without overwhelming slow or
+ * failing members.
  *
  * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
  */
 final class MemberState {
-  private static final int MAX_APPENDS = 2;
+  private static final int INITIAL_APPEND_WINDOW = 2;
+  private static final int MAX_APPEND_WINDOW = 64;
+  private static final int MAX_APPEND_BYTES = 1024 * 1024 * 4;
+  private static final int MAX_INSTALLS = 4;
   private final ServerMember member;
   private long term;
   private long configIndex;
@@ -33,14 +43,18 @@ final class MemberState {
   private int nextSnapshotOffset;
   private long matchIndex;
   private long nextIndex;
+  private long nextIndexGeneration;
   private long heartbeatTime;
   private long heartbeatStartTime;
   private int appending;
-  private long appendTime;
+  private int appendingBytes;
+  private int appendWindow = INITIAL_APPEND_WINDOW;
+  private int appendAcks;
   private boolean configuring;
-  private boolean installing;
+  private int installing;
+  private SnapshotTransfer snapshotTransfer;
+  private long snapshotTransferGeneration;
   private int failures;
-  private final TimeBuffer timeBuffer = new TimeBuffer(8);
 
   public MemberState(ServerMember member, ClusterState cluster) {
     this.member = Assert.notNull(member, "member").setCluster(cluster);
@@ -54,12 +68,16 @@ final class MemberState {
     nextSnapshotOffset = 0;
     matchIndex = 0;
     nextIndex = log.lastIndex() + 1;
+    nextIndexGeneration++;
     heartbeatTime = 0;
     heartbeatStartTime = 0;
     appending = 0;
-    timeBuffer.reset();
+    appendingBytes = 0;
+    appendWindow = INITIAL_APPEND_WINDOW;
+    appendAcks = 0;
     configuring = false;
-    installing = false;
+    installing = 0;
+    setSnapshotTransfer(null);
     failures = 0;
   }
 
@@ -212,45 +230,101 @@ final class MemberState {
     return this;
   }
 
+  /**
+   * Resets the member's next index after the member rejected an append request.
+   * <p>
+   * Resetting the next index begins a new generation of append requests. Responses to requests sent in prior
+   * generations are stale once the next index has been reset.
+   *
+   * @param nextIndex The member's next index.
+   * @return The member state.
+   */
+  MemberState resetNextIndex(long nextIndex) {
+    setNextIndex(nextIndex);
+    nextIndexGeneration++;
+    return this;
+  }
+
+  /**
+   * Returns the generation of the member's next index.
+   *
+   * @return The number of times the member's next index has been reset.
+   */
+  long getNextIndexGeneration() {
+    return nextIndexGeneration;
+  }
+
   /**
    * Returns a boolean indicating whether an append request can be sent to the member.
+   * <p>
+   * An append request can always be sent if no other append request is in flight. Otherwise, the number of
+   * requests in flight must be less than the current append window and the number of entry bytes in flight
+   * must be less than the maximum number of bytes allowed in flight.
    *
    * @return Indicates whether an append request can be sent to the member.
    */
   boolean canAppend() {
-    return appending == 0 || (appending < MAX_APPENDS && System.nanoTime() - (timeBuffer.average() / MAX_APPENDS) >= appendTime);
+    return appending == 0 || (appending < appendWindow && appendingBytes < MAX_APPEND_BYTES);
+  }
+
+  /**
+   * Returns the number of append requests that can be in flight to the member.
+   *
+   * @return The member's append window.
+   */
+  int getAppendWindow() {
+    return appendWindow;
   }
 
   /**
    * Starts an append request to the member.
    *
+   * @param bytes The number of entry bytes in the request.
    * @return The member state.
    */
-  MemberState startAppend() {
+  MemberState startAppend(int bytes) {
     appending++;
-    appendTime = System.nanoTime();
+    appendingBytes += bytes;
     return this;
   }
 
   /**
-   * Completes an append request to the member.
+   * Completes an append request to the member without adjusting the append window.
    *
+   * @param bytes The number of entry bytes in the request.
    * @return The member state.
    */
-  MemberState completeAppend() {
-    appending--;
+  MemberState completeAppend(int bytes) {
+    appending = Math.max(appending - 1, 0);
+    appendingBytes = Math.max(appendingBytes - bytes, 0);
     return this;
   }
 
   /**
-   * Completes an append request to the member.
+   * Completes a successful append request to the member, growing the append window once a full window of
+   * appends has succeeded.
    *
-   * @param time The time in milliseconds for the append.
+   * @param bytes The number of entry bytes in the request.
    * @return The member state.
    */
-  MemberState completeAppend(long time) {
-    timeBuffer.record(time);
-    return completeAppend();
+  MemberState succeedAppend(int bytes) {
+    if (++appendAcks >= appendWindow) {
+      appendAcks = 0;
+      appendWindow = Math.min(appendWindow + 1, MAX_APPEND_WINDOW);
+    }
+    return completeAppend(bytes);
+  }
+
+  /**
+   * Completes a failed append request to the member, halving the append window.
+   *
+   * @param bytes The number of entry bytes in the request.
+   * @return The member state.
+   */
+  MemberState failAppend(int bytes) {
+    appendAcks = 0;
+    appendWindow = Math.max(appendWindow / 2, 1);
+    return completeAppend(bytes);
   }
 
   /**
@@ -288,7 +362,7 @@ final class MemberState {
    * @return Indicates whether an install request can be sent to the member.
    */
   boolean canInstall() {
-    return !installing;
+    return installing == 0 || (installing < MAX_INSTALLS && snapshotTransfer != null && snapshotTransfer.hasNext());
   }
 
   /**
@@ -297,7 +371,7 @@ final class MemberState {
    * @return The member state.
    */
   MemberState startInstall() {
-    installing = true;
+    installing++;
     return this;
   }
 
@@ -307,10 +381,48 @@ final class MemberState {
    * @return The member state.
    */
   MemberState completeInstall() {
-    installing = false;
+    installing = Math.max(installing - 1, 0);
     return this;
   }
 
+  /**
+   * Returns the member's current snapshot transfer.
+   *
+   * @return The member's snapshot transfer or {@code null} if no snapshot is being transferred.
+   */
+  SnapshotTransfer getSnapshotTransfer() {
+    return snapshotTransfer;
+  }
+
+  /**
+   * Sets the member's current snapshot transfer, closing the previous transfer if necessary.
+   * <p>
+   * Changing the transfer begins a new generation of install requests. Failures of requests sent in prior
+   * generations are stale once the transfer has been changed.
+   *
+   * @param snapshotTransfer The member's snapshot transfer.
+   * @return The member state.
+   */
+  MemberState setSnapshotTransfer(SnapshotTransfer snapshotTransfer) {
+    if (this.snapshotTransfer != snapshotTransfer) {
+      if (this.snapshotTransfer != null) {
+        this.snapshotTransfer.close();
+      }
+      snapshotTransferGeneration++;
+    }
+    this.snapshotTransfer = snapshotTransfer;
+    return this;
+  }
+
+  /**
+   * Returns the generation of the member's snapshot transfer.
+   *
+   * @return The number of times the member's snapshot transfer has been changed.
+   */
+  long getSnapshotTransferGeneration() {
+    return snapshotTransferGeneration;
+  }
+
   /**
    * Returns the member heartbeat time.
    *
@@ -384,53 +496,4 @@ final class MemberState {
     return member.serverAddress().toString();
   }
 
-  /**
-   * Timestamp ring buffer.
-   */
-  private static class TimeBuffer {
-    private final long[] buffer;
-    private int position;
-
-    public TimeBuffer(int size) {
-      this.buffer = new long[size];
-    }
-
-    /**
-     * Records a request round trip time.
-     *
-     * @param time The request round trip time to record.
-     */
-    public void record(long time) {
-      buffer[position++] = time;
-      if (position >= buffer.length) {
-        position = 0;
-      }
-    }
-
-    /**
-     * Returns the average of all recorded round trip times.
-     *
-     * @return The average of all recorded round trip times.
-     */
-    public long average() {
-      long total = 0;
-      for (long time : buffer) {
-        if (time > 0) {
-          total += time;
-        }
-      }
-      return total / buffer.length;
-    }
-
-    /**
-     * Resets the recorded round trip times.
-     */
-    public void reset() {
-      for (int i = 0; i < buffer.length; i++) {
-        buffer[i] = 0;
-      }
-      position = 0;
-    }
-  }
-
 }
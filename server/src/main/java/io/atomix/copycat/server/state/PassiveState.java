@@ -27,11 +27,18 @@ import io.atomix.copycat.server.protocol.AppendResponse;
 import io.atomix.copycat.server.protocol.InstallRequest;
 import io.atomix.copycat.server.protocol.InstallResponse;
 import io.atomix.copycat.server.session.ServerSession;
+import io.atomix.copycat.server.storage.EntryRecord;
+import io.atomix.copycat.server.storage.StorageException;
 import io.atomix.copycat.server.storage.entry.Entry;
 import io.atomix.copycat.server.storage.entry.QueryEntry;
 import io.atomix.copycat.server.storage.snapshot.Snapshot;
+import io.atomix.copycat.server.storage.snapshot.SnapshotDescriptor;
+import io.atomix.copycat.server.storage.snapshot.SnapshotStore;
 import io.atomix.copycat.server.storage.snapshot.SnapshotWriter;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
@@ -44,6 +51,7 @@ import java.util.stream.Collectors;
 class PassiveState extends ReserveState {
   private Snapshot pendingSnapshot;
   private int nextSnapshotOffset;
+  private final List<Snapshot> pendingChain = new ArrayList<>();
 
   public PassiveState(ServerContext context) {
     super(context);
@@ -189,22 +197,39 @@ class PassiveState extends ReserveState {
    */
   protected AppendResponse appendEntries(AppendRequest request) {
     // Get the last entry index or default to the request log index.
-    long lastEntryIndex = request.logIndex();
-    if (!request.entries().isEmpty()) {
-      lastEntryIndex = request.entries().get(request.entries().size() - 1).getIndex();
-    }
+    long lastEntryIndex = request.lastEntryIndex();
 
     // Ensure the commitIndex is not increased beyond the index of the last entry in the request.
     long commitIndex = Math.max(context.getCommitIndex(), Math.min(request.commitIndex(), lastEntryIndex));
 
-    // Append entries to the log starting at the last log index.
-    for (Entry entry : request.entries()) {
-      // If the entry index is greater than the last index and less than the commit index, append the entry.
-      // We perform no additional consistency checks here since passive members may only receive committed entries.
-      if (context.getLog().lastIndex() < entry.getIndex() && entry.getIndex() <= commitIndex) {
-        context.getLog().skip(entry.getIndex() - context.getLog().lastIndex() - 1).append(entry);
-        LOGGER.trace("{} - Appended {} to log at index {}", context.getCluster().member().address(), entry, entry.getIndex());
+    try {
+      // Append entries to the log starting at the last log index.
+      for (Entry entry : request.entries()) {
+        // If the entry index is greater than the last index and less than the commit index, append the entry.
+        // We perform no additional consistency checks here since passive members may only receive committed entries.
+        if (context.getLog().lastIndex() < entry.getIndex() && entry.getIndex() <= commitIndex) {
+          context.getLog().skip(entry.getIndex() - context.getLog().lastIndex() - 1).append(entry);
+          LOGGER.trace("{} - Appended {} to log at index {}", context.getCluster().member().address(), entry, entry.getIndex());
+        }
       }
+
+      // Append records to the log in their serialized form. Records are only deserialized once they're read from
+      // the log to be applied.
+      for (EntryRecord record : request.records()) {
+        if (context.getLog().lastIndex() < record.index() && record.index() <= commitIndex) {
+          context.getLog().skip(record.index() - context.getLog().lastIndex() - 1).append(record);
+          LOGGER.trace("{} - Appended {} to log at index {}", context.getCluster().member().address(), record, record.index());
+        }
+      }
+    } catch (StorageException e) {
+      // If a record is corrupt, reject the request without committing any entries. Entries and records appended
+      // before the corrupt record remain in the log, and the leader will resend the request.
+      LOGGER.warn("{} - Rejected {}: {}", context.getCluster().member().address(), request, e.getMessage());
+      return AppendResponse.builder()
+        .withStatus(Response.Status.ERROR)
+        .withTerm(context.getTerm())
+        .withError(CopycatError.Type.INTERNAL_ERROR)
+        .build();
     }
 
     // Update the context commit and global indices.
@@ -417,7 +442,8 @@ class PassiveState extends ReserveState {
     // where snapshots must be sent since entries can still legitimately exist prior to the snapshot,
     // and so snapshots aren't simply sent at the beginning of the follower's log, but rather the
     // leader dictates when a snapshot needs to be sent.
-    if (pendingSnapshot != null && request.index() != pendingSnapshot.index()) {
+    if (pendingSnapshot != null && (request.index() != pendingSnapshot.index() || request.baseIndex() != pendingSnapshot.baseIndex()
+      || request.codec() != pendingSnapshot.codec())) {
       pendingSnapshot.close();
       pendingSnapshot.delete();
       pendingSnapshot = null;
@@ -434,7 +460,32 @@ class PassiveState extends ReserveState {
           .build()));
       }
 
-      pendingSnapshot = context.getSnapshotStore().createSnapshot(request.index());
+      // Delta snapshots can only be received once the snapshot on which they're based has been received.
+      // Snapshots are stored as they were sent, so compressed snapshots are stored without being decompressed.
+      // Snapshots compressed with a codec other than the configured codec can't be read and are rejected.
+      SnapshotStore store = context.getSnapshotStore();
+      if (request.baseIndex() == 0 || store.snapshot(request.baseIndex()) != null
+        || (!pendingChain.isEmpty() && pendingChain.get(pendingChain.size() - 1).index() == request.baseIndex())) {
+        try {
+          pendingSnapshot = store.createSnapshot(SnapshotDescriptor.builder()
+            .withIndex(request.index())
+            .withTimestamp(System.currentTimeMillis())
+            .withBaseIndex(request.baseIndex())
+            .withCodec(request.codec())
+            .build());
+        } catch (StorageException e) {
+          LOGGER.error("{} - Rejected {}: {}", context.getCluster().member().address(), request, e.getMessage());
+          return CompletableFuture.completedFuture(logResponse(InstallResponse.builder()
+            .withStatus(Response.Status.ERROR)
+            .withError(CopycatError.Type.INTERNAL_ERROR)
+            .build()));
+        }
+      } else {
+        return CompletableFuture.completedFuture(logResponse(InstallResponse.builder()
+          .withStatus(Response.Status.ERROR)
+          .withError(CopycatError.Type.ILLEGAL_MEMBER_STATE_ERROR)
+          .build()));
+      }
       nextSnapshotOffset = 0;
     }
 
@@ -446,14 +497,22 @@ class PassiveState extends ReserveState {
         .build()));
     }
 
+    // If the chunk has already been written, acknowledge it without writing it again. Leaders resume
+    // snapshot transfers from the first unacknowledged chunk when requests fail, so chunks may be resent.
+    if (request.offset() < nextSnapshotOffset) {
+      return CompletableFuture.completedFuture(logResponse(InstallResponse.builder()
+        .withStatus(Response.Status.OK)
+        .build()));
+    }
+
     // Write the data to the snapshot.
-    try (SnapshotWriter writer = pendingSnapshot.writer()) {
+    try (SnapshotWriter writer = pendingSnapshot.streamWriter()) {
       writer.write(request.data());
     }
 
     // If the snapshot is complete, store the snapshot and reset state, otherwise update the next snapshot offset.
     if (request.complete()) {
-      pendingSnapshot.complete();
+      completeSnapshot(pendingSnapshot);
       pendingSnapshot = null;
       nextSnapshotOffset = 0;
     } else {
@@ -465,6 +524,42 @@ class PassiveState extends ReserveState {
       .build()));
   }
 
+  /**
+   * Completes a snapshot received from the leader.
+   * <p>
+   * Leaders send the chain of snapshots leading to their current snapshot in order. Snapshots in the chain that
+   * precede this server's current snapshot are held until a snapshot that follows the current snapshot is received,
+   * at which point the held chain is completed from its last snapshot to its first. Completing the chain in reverse
+   * ensures the snapshot store doesn't discard earlier snapshots in the chain as stale before the chain is complete.
+   */
+  private void completeSnapshot(Snapshot snapshot) {
+    if (!snapshot.isDelta() || (!pendingChain.isEmpty() && pendingChain.get(pendingChain.size() - 1).index() != snapshot.baseIndex())) {
+      discardPendingChain();
+    }
+
+    Snapshot currentSnapshot = context.getSnapshotStore().currentSnapshot();
+    if (currentSnapshot == null || snapshot.index() > currentSnapshot.index()) {
+      snapshot.complete();
+      for (int i = pendingChain.size() - 1; i >= 0; i--) {
+        pendingChain.get(i).complete();
+      }
+      pendingChain.clear();
+    } else {
+      pendingChain.add(snapshot);
+    }
+  }
+
+  /**
+   * Discards snapshots held until the chain to which they belong is complete.
+   */
+  private void discardPendingChain() {
+    for (Snapshot snapshot : pendingChain) {
+      snapshot.close();
+      snapshot.delete();
+    }
+    pendingChain.clear();
+  }
+
   @Override
   public CompletableFuture<Void> close() {
     if (pendingSnapshot != null) {
@@ -472,6 +567,7 @@ class PassiveState extends ReserveState {
       pendingSnapshot.delete();
       pendingSnapshot = null;
     }
+    discardPendingChain();
     return super.close();
   }
 
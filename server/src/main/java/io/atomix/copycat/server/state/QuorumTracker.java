@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package io.atomix.copycat.server.state;
+
+import io.atomix.catalyst.util.Assert;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * Tracks a value for a set of members in descending order.
+ * <p>
+ * The tracker keeps members ordered by a value such as the match index or heartbeat time, allowing the value of the
+ * nth member to be read without sorting the members. When the value of a single member changes, the member is
+ * {@link #update(MemberState) moved} to its new position in the order. Since values typically only increase and
+ * members tend to report in a similar order, members rarely move more than a position or two. The set of members is
+ * only changed by {@link #reset(List) resetting} the tracker, and no memory is allocated after the tracker has been
+ * reset unless the number of members grows. The tracker is not thread safe.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+final class QuorumTracker {
+  private final ToLongFunction<MemberState> function;
+  private MemberState[] members = new MemberState[0];
+  private long[] values = new long[0];
+  private int size;
+
+  QuorumTracker(ToLongFunction<MemberState> function) {
+    this.function = Assert.notNull(function, "function");
+  }
+
+  /**
+   * Resets the tracker to track the given members.
+   * <p>
+   * The current value of each member is read and the members are sorted by value.
+   *
+   * @param members The members to track.
+   */
+  void reset(List<MemberState> members) {
+    size = members.size();
+    if (this.members.length < size) {
+      this.members = new MemberState[size];
+      this.values = new long[size];
+    } else {
+      Arrays.fill(this.members, size, this.members.length, null);
+    }
+
+    for (int i = 0; i < size; i++) {
+      this.members[i] = members.get(i);
+      this.values[i] = function.applyAsLong(this.members[i]);
+      moveUp(i);
+    }
+  }
+
+  /**
+   * Updates the position of the given member after its value has changed.
+   * <p>
+   * Members that are not tracked are ignored.
+   *
+   * @param member The member whose value has changed.
+   */
+  void update(MemberState member) {
+    for (int i = 0; i < size; i++) {
+      if (members[i] == member) {
+        long value = function.applyAsLong(member);
+        if (value > values[i]) {
+          values[i] = value;
+          moveUp(i);
+        } else if (value < values[i]) {
+          values[i] = value;
+          moveDown(i);
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * Moves the member at the given position towards the front of the order until it's in order.
+   */
+  private void moveUp(int i) {
+    while (i > 0 && values[i - 1] < values[i]) {
+      swap(i - 1, i);
+      i--;
+    }
+  }
+
+  /**
+   * Moves the member at the given position towards the back of the order until it's in order.
+   */
+  private void moveDown(int i) {
+    while (i < size - 1 && values[i + 1] > values[i]) {
+      swap(i, i + 1);
+      i++;
+    }
+  }
+
+  /**
+   * Swaps the members at the given positions.
+   */
+  private void swap(int i, int j) {
+    MemberState member = members[i];
+    members[i] = members[j];
+    members[j] = member;
+    long value = values[i];
+    values[i] = values[j];
+    values[j] = value;
+  }
+
+  /**
+   * Returns the number of tracked members.
+   *
+   * @return The number of tracked members.
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Returns the value at the given position in descending order.
+   *
+   * @param index The position of the value, where {@code 0} is the highest value.
+   * @return The value at the given position.
+   * @throws IndexOutOfBoundsException if {@code index} is not the position of a tracked member
+   */
+  long get(int index) {
+    Assert.index(index >= 0 && index < size, "invalid index: %s", index);
+    return values[index];
+  }
+
+}
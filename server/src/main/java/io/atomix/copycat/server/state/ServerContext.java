@@ -167,6 +167,9 @@ public class ServerContext implements AutoCloseable {
    */
   public ServerContext setElectionTimeout(Duration electionTimeout) {
     this.electionTimeout = electionTimeout;
+    if (log != null) {
+      log.compactor().withAppendLatencyThreshold(electionTimeout.dividedBy(4));
+    }
     return this;
   }
 
@@ -311,8 +314,7 @@ public class ServerContext implements AutoCloseable {
       this.term = term;
       this.leader = 0;
       this.lastVotedFor = 0;
-      meta.storeTerm(this.term);
-      meta.storeVote(this.lastVotedFor);
+      meta.storeTermAndVote(this.term, this.lastVotedFor);
       LOGGER.debug("{} - Set term {}", cluster.member().address(), term);
     }
     return this;
@@ -489,6 +491,9 @@ public class ServerContext implements AutoCloseable {
       log.compactor().withDefaultCompactionMode(Compaction.Mode.SEQUENTIAL);
     }
 
+    // Back off compaction while appends to the log approach the election timeout.
+    log.compactor().withAppendLatencyThreshold(electionTimeout.dividedBy(4));
+
     // Create a new internal server state machine.
     this.stateMachine = new ServerStateMachine(stateMachine, this, stateContext);
     return this;
@@ -15,25 +15,35 @@
  */
 package io.atomix.copycat.server.state;
 
+import io.atomix.catalyst.concurrent.CatalystThreadFactory;
 import io.atomix.catalyst.concurrent.ComposableFuture;
 import io.atomix.catalyst.concurrent.Futures;
 import io.atomix.catalyst.concurrent.ThreadContext;
 import io.atomix.catalyst.util.Assert;
 import io.atomix.copycat.error.InternalException;
 import io.atomix.copycat.error.UnknownSessionException;
+import io.atomix.copycat.server.AsyncSnapshottable;
+import io.atomix.copycat.server.DeltaSnapshottable;
 import io.atomix.copycat.server.Snapshottable;
 import io.atomix.copycat.server.StateMachine;
 import io.atomix.copycat.server.session.SessionListener;
 import io.atomix.copycat.server.storage.Log;
+import io.atomix.copycat.server.storage.LogCursor;
 import io.atomix.copycat.server.storage.entry.*;
+import io.atomix.copycat.server.storage.snapshot.DeltaSnapshotReader;
+import io.atomix.copycat.server.storage.snapshot.DeltaSnapshotWriter;
 import io.atomix.copycat.server.storage.snapshot.Snapshot;
 import io.atomix.copycat.server.storage.snapshot.SnapshotReader;
+import io.atomix.copycat.server.storage.snapshot.SnapshotStore;
 import io.atomix.copycat.server.storage.snapshot.SnapshotWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Internal server state machine.
@@ -53,6 +63,9 @@ final class ServerStateMachine implements AutoCloseable {
   private volatile long lastApplied;
   private long lastCompleted;
   private volatile Snapshot pendingSnapshot;
+  private CompletableFuture<Void> pendingSnapshotWrite;
+  private ExecutorService snapshotExecutor;
+  private long deltaBaseIndex;
 
   ServerStateMachine(StateMachine stateMachine, ServerContext state, ThreadContext executor) {
     this.stateMachine = Assert.notNull(stateMachine, "stateMachine");
@@ -88,21 +101,108 @@ final class ServerStateMachine implements AutoCloseable {
     Snapshot currentSnapshot = state.getSnapshotStore().currentSnapshot();
     if (pendingSnapshot == null && stateMachine instanceof Snapshottable
       && (currentSnapshot == null || (log.compactor().compactIndex() > currentSnapshot.index() && lastApplied > currentSnapshot.index()))) {
-      pendingSnapshot = state.getSnapshotStore().createSnapshot(lastApplied);
+      // If the state machine supports delta snapshots and its changes are tracked relative to the current snapshot,
+      // write only the changes since the current snapshot. Otherwise, write a full snapshot.
+      boolean delta = stateMachine instanceof DeltaSnapshottable && currentSnapshot != null && currentSnapshot.index() == deltaBaseIndex;
+      if (delta) {
+        pendingSnapshot = state.getSnapshotStore().createDeltaSnapshot(lastApplied, currentSnapshot.index());
+      } else {
+        pendingSnapshot = state.getSnapshotStore().createSnapshot(lastApplied);
+      }
 
       // Write the snapshot data. Note that we don't complete the snapshot here since the completion
       // of a snapshot is predicated on session events being received by clients up to the snapshot index.
       LOGGER.info("{} - Taking snapshot {}", state.getCluster().member().address(), pendingSnapshot.index());
-      executor.executor().execute(() -> {
-        synchronized (pendingSnapshot) {
-          try (SnapshotWriter writer = pendingSnapshot.writer()) {
-            ((Snapshottable) stateMachine).snapshot(writer);
+      if (delta) {
+        Snapshot snapshot = pendingSnapshot;
+        executor.executor().execute(() -> {
+          synchronized (snapshot) {
+            try (SnapshotWriter writer = snapshot.writer()) {
+              ((DeltaSnapshottable) stateMachine).snapshotDelta(new DeltaSnapshotWriter(writer));
+            }
           }
+        });
+      } else if (stateMachine instanceof AsyncSnapshottable) {
+        takeAsyncSnapshot(pendingSnapshot);
+      } else {
+        executor.executor().execute(() -> {
+          synchronized (pendingSnapshot) {
+            try (SnapshotWriter writer = pendingSnapshot.writer()) {
+              ((Snapshottable) stateMachine).snapshot(writer);
+            }
+          }
+        });
+      }
+    }
+  }
+
+  /**
+   * Takes a snapshot of an {@link AsyncSnapshottable} state machine.
+   * <p>
+   * A view of the state machine state is captured in the state machine thread, and the view is written to the
+   * snapshot in a background thread so that commands can continue to be applied while the snapshot is written.
+   * The snapshot will not be completed until the view has been written.
+   */
+  private void takeAsyncSnapshot(Snapshot snapshot) {
+    CompletableFuture<Void> future = new CompletableFuture<>();
+    pendingSnapshotWrite = future;
+
+    ExecutorService snapshotExecutor = snapshotExecutor();
+    executor.executor().execute(() -> {
+      AsyncSnapshottable.SnapshotView view;
+      try {
+        view = ((AsyncSnapshottable) stateMachine).snapshotView();
+      } catch (Exception e) {
+        future.completeExceptionally(e);
+        return;
+      }
+
+      snapshotExecutor.execute(() -> {
+        try (AsyncSnapshottable.SnapshotView snapshotView = view; SnapshotWriter writer = snapshot.writer()) {
+          snapshotView.write(writer);
+        } catch (Exception e) {
+          future.completeExceptionally(e);
+          return;
         }
+        future.complete(null);
       });
+    });
+
+    future.whenComplete((result, error) -> state.getThreadContext().executor().execute(() -> snapshotWritten(snapshot, error)));
+  }
+
+  /**
+   * Handles the completion of writing an asynchronous snapshot.
+   */
+  private void snapshotWritten(Snapshot snapshot, Throwable error) {
+    if (pendingSnapshot != snapshot) {
+      return;
+    }
+
+    if (error != null) {
+      LOGGER.warn("{} - Failed to write snapshot {}: {}", state.getCluster().member().address(), snapshot.index(), error.getMessage());
+      pendingSnapshot = null;
+      pendingSnapshotWrite = null;
+      deltaBaseIndex = 0;
+      snapshot.close();
+      snapshot.delete();
+    } else {
+      // The snapshot may only be completed once the view has been successfully written.
+      pendingSnapshotWrite = null;
+      completeSnapshot();
     }
   }
 
+  /**
+   * Returns the executor with which to write asynchronous snapshots, creating it if necessary.
+   */
+  private ExecutorService snapshotExecutor() {
+    if (snapshotExecutor == null) {
+      snapshotExecutor = Executors.newSingleThreadExecutor(new CatalystThreadFactory("copycat-snapshot-%d"));
+    }
+    return snapshotExecutor;
+  }
+
   /**
    * Installs a snapshot of the state machine state if necessary.
    * <p>
@@ -122,15 +222,33 @@ final class ServerStateMachine implements AutoCloseable {
       // synchronize on the snapshot object. In practice, this probably isn't even necessary and could prove
       // to be an expensive operation. Snapshots can be read concurrently with separate SnapshotReaders since
       // memory snapshots are copied to the reader and file snapshots open a separate FileBuffer for each reader.
+      // If the snapshot is a delta snapshot, install each snapshot in its chain, beginning with the full snapshot.
+      // The chain is acquired until it has been installed to prevent a background merge from deleting or replacing
+      // the snapshots in the chain before they're read.
       LOGGER.info("{} - Installing snapshot {}", state.getCluster().member().address(), currentSnapshot.index());
+      SnapshotStore store = state.getSnapshotStore();
+      List<Snapshot> chain = store.acquireChain(currentSnapshot);
       executor.executor().execute(() -> {
-        synchronized (currentSnapshot) {
-          try (SnapshotReader reader = currentSnapshot.reader()) {
-            ((Snapshottable) stateMachine).install(reader);
+        try {
+          for (Snapshot snapshot : chain) {
+            synchronized (snapshot) {
+              try (SnapshotReader reader = snapshot.reader()) {
+                if (snapshot.isDelta()) {
+                  ((DeltaSnapshottable) stateMachine).install(new DeltaSnapshotReader(reader, true));
+                } else {
+                  ((Snapshottable) stateMachine).install(reader);
+                }
+              }
+            }
           }
+        } finally {
+          store.releaseChain(chain);
         }
       });
 
+      // Changes to the state machine are now tracked relative to the installed snapshot.
+      deltaBaseIndex = currentSnapshot.index();
+
       // Once a snapshot has been applied, snapshot dependent entries can be cleaned from the log.
       log.compactor().snapshotIndex(currentSnapshot.index());
     }
@@ -150,18 +268,23 @@ final class ServerStateMachine implements AutoCloseable {
 
     // If a snapshot is pending to be persisted and the last completed index is greater than the
     // waiting snapshot index and no current or newer snapshot exists,
-    // persist the snapshot and update the last snapshot index.
-    if (pendingSnapshot != null && lastCompleted > pendingSnapshot.index()) {
+    // persist the snapshot and update the last snapshot index. Snapshots that are written asynchronously
+    // are not completed until the state machine state has been successfully written, at which point the
+    // pending write is cleared in snapshotWritten. Snapshots whose writes failed are discarded there.
+    if (pendingSnapshot != null && lastCompleted > pendingSnapshot.index() && pendingSnapshotWrite == null) {
       long snapshotIndex = pendingSnapshot.index();
       LOGGER.debug("{} - Completing snapshot {}", state.getCluster().member().address(), snapshotIndex);
       synchronized (pendingSnapshot) {
         Snapshot currentSnapshot = state.getSnapshotStore().currentSnapshot();
         if (currentSnapshot == null || snapshotIndex > currentSnapshot.index()) {
           pendingSnapshot.complete();
+          deltaBaseIndex = snapshotIndex;
         } else {
           LOGGER.debug("{} - Discarding pending snapshot at index {} since the current snapshot is at index {}", state.getCluster().member().address(), pendingSnapshot.index(), currentSnapshot.index());
+          deltaBaseIndex = 0;
         }
         pendingSnapshot = null;
+        pendingSnapshotWrite = null;
       }
 
       // Once the snapshot has been completed, snapshot dependent entries can be cleaned from the log.
@@ -273,13 +396,17 @@ final class ServerStateMachine implements AutoCloseable {
 
     // If the effective commit index is greater than the last index applied to the state machine then apply remaining entries.
     long lastIndex = Math.min(index, log.lastIndex());
+    // Entries are read with a cursor to avoid looking up the segment and position of each entry.
     if (lastIndex > lastApplied) {
-      for (long i = lastApplied + 1; i <= lastIndex; i++) {
-        Entry entry = log.get(i);
-        if (entry != null) {
-          apply(entry).whenComplete((result, error) -> entry.release());
+      try (LogCursor cursor = log.cursor(lastApplied + 1)) {
+        while (cursor.index() <= lastIndex) {
+          long i = cursor.index();
+          Entry entry = cursor.next();
+          if (entry != null) {
+            apply(entry).whenComplete((result, error) -> entry.release());
+          }
+          setLastApplied(i);
         }
-        setLastApplied(i);
       }
     }
   }
@@ -985,6 +1112,9 @@ final class ServerStateMachine implements AutoCloseable {
   @Override
   public void close() {
     executor.close();
+    if (snapshotExecutor != null) {
+      snapshotExecutor.shutdown();
+    }
   }
 
   /**
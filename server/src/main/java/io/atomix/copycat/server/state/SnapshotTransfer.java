@@ -0,0 +1,166 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.state;
+
+import io.atomix.catalyst.buffer.Buffer;
+import io.atomix.catalyst.util.Assert;
+import io.atomix.copycat.server.storage.snapshot.Snapshot;
+import io.atomix.copycat.server.storage.snapshot.SnapshotReader;
+import io.atomix.copycat.server.storage.snapshot.SnapshotStore;
+
+/**
+ * Transfer of a snapshot to a single member.
+ * <p>
+ * The transfer holds a {@link Snapshot#streamReader() stream reader} open for the duration of the transfer so that
+ * each chunk is read sequentially from the position at which the previous chunk ended. Chunks are returned as
+ * {@link SnapshotReader#readSlice(long) slices} of the reader and are therefore only valid while the reader is open.
+ * To ensure slices are not invalidated while requests are still being sent, the transfer counts the chunks that
+ * have been read but not yet {@link #release() released}, and {@link #close() closing} the transfer only closes the
+ * reader once all chunks have been released. The snapshot is {@link SnapshotStore#acquire(Snapshot) acquired} from
+ * the snapshot store until the reader is closed so that the snapshot isn't deleted or replaced during the transfer.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+final class SnapshotTransfer implements AutoCloseable {
+  private final SnapshotStore store;
+  private final Snapshot snapshot;
+  private final SnapshotReader reader;
+  private final int chunkSize;
+  private int nextOffset;
+  private int references;
+  private boolean closed;
+
+  SnapshotTransfer(SnapshotStore store, Snapshot snapshot, int chunkSize) {
+    this(store, snapshot, chunkSize, 0);
+  }
+
+  /**
+   * Creates a transfer that resumes from the chunk at the given offset.
+   * <p>
+   * Every chunk but the last is {@code chunkSize} bytes, so the chunks preceding the offset are skipped without
+   * being read.
+   */
+  SnapshotTransfer(SnapshotStore store, Snapshot snapshot, int chunkSize, int offset) {
+    this.store = Assert.notNull(store, "store");
+    this.snapshot = Assert.notNull(snapshot, "snapshot");
+    this.chunkSize = Assert.arg(chunkSize, chunkSize > 0, "chunkSize must be positive");
+    this.nextOffset = Assert.argNot(offset, offset < 0, "offset cannot be negative");
+    this.reader = snapshot.streamReader();
+    if (offset > 0) {
+      reader.skip(Math.min((long) offset * chunkSize, reader.remaining()));
+    }
+    store.acquire(snapshot);
+  }
+
+  /**
+   * Returns the snapshot being transferred.
+   *
+   * @return The snapshot being transferred.
+   */
+  Snapshot snapshot() {
+    return snapshot;
+  }
+
+  /**
+   * Returns the index of the snapshot being transferred.
+   *
+   * @return The snapshot index.
+   */
+  long index() {
+    return snapshot.index();
+  }
+
+  /**
+   * Returns the offset of the next chunk to be read.
+   *
+   * @return The offset of the next chunk.
+   */
+  int nextOffset() {
+    return nextOffset;
+  }
+
+  /**
+   * Returns a boolean indicating whether chunks remain to be read.
+   * <p>
+   * At least one chunk is always read, even for empty snapshots.
+   *
+   * @return Indicates whether chunks remain to be read.
+   */
+  boolean hasNext() {
+    return !closed && (nextOffset == 0 || reader.hasRemaining());
+  }
+
+  /**
+   * Reads the next chunk of the snapshot.
+   * <p>
+   * The returned chunk must be {@link #release() released} once it's no longer needed.
+   *
+   * @return The next chunk of the snapshot.
+   * @throws IllegalStateException if the transfer is closed
+   */
+  Buffer next() {
+    Assert.state(!closed, "transfer closed");
+    Buffer chunk = reader.readSlice(Math.min(chunkSize, reader.remaining()));
+    nextOffset++;
+    references++;
+    return chunk;
+  }
+
+  /**
+   * Returns a boolean indicating whether the last chunk of the snapshot has been read.
+   *
+   * @return Indicates whether the last chunk has been read.
+   */
+  boolean isComplete() {
+    return nextOffset > 0 && !reader.hasRemaining();
+  }
+
+  /**
+   * Releases a chunk read from the snapshot.
+   */
+  void release() {
+    if (--references == 0 && closed) {
+      closeReader();
+    }
+  }
+
+  /**
+   * Closes the transfer, closing the snapshot reader once all chunks have been released.
+   */
+  @Override
+  public void close() {
+    if (!closed) {
+      closed = true;
+      if (references == 0) {
+        closeReader();
+      }
+    }
+  }
+
+  /**
+   * Closes the snapshot reader and releases the snapshot.
+   */
+  private void closeReader() {
+    reader.close();
+    store.release(snapshot);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[index=%d, offset=%d]", getClass().getSimpleName(), snapshot.index(), nextOffset);
+  }
+
+}
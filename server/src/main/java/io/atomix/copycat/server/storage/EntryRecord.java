@@ -0,0 +1,136 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.catalyst.util.Assert;
+import io.atomix.copycat.server.storage.compaction.Compaction;
+
+import java.util.zip.CRC32;
+
+/**
+ * Immutable log entry in its serialized segment record form.
+ * <p>
+ * Records carry an entry's serialized bytes along with the checksum of those bytes and the header fields needed to
+ * store the entry in a segment. Records can be read from one log via {@link LogCursor#record()} and
+ * {@link Log#append(EntryRecord) appended} to another without deserializing or reserializing the entry. The entry
+ * is only deserialized once it's read from the log to which it was appended. Records are only meaningful between
+ * logs whose serializers are configured with the same entry types.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public final class EntryRecord {
+  private final long index;
+  private final long term;
+  private final long checksum;
+  private final Compaction.Mode mode;
+  private final int type;
+  private final byte[] bytes;
+
+  /**
+   * @throws NullPointerException if {@code mode} or {@code bytes} is null
+   * @throws IllegalArgumentException if {@code index} or {@code term} is not positive
+   */
+  public EntryRecord(long index, long term, long checksum, Compaction.Mode mode, int type, byte[] bytes) {
+    this.index = Assert.arg(index, index > 0, "index must be positive");
+    this.term = Assert.arg(term, term > 0, "term must be positive");
+    this.checksum = checksum;
+    this.mode = Assert.notNull(mode, "mode");
+    this.type = type;
+    this.bytes = Assert.notNull(bytes, "bytes");
+  }
+
+  /**
+   * Returns the entry index.
+   *
+   * @return The entry index.
+   */
+  public long index() {
+    return index;
+  }
+
+  /**
+   * Returns the entry term.
+   *
+   * @return The entry term.
+   */
+  public long term() {
+    return term;
+  }
+
+  /**
+   * Returns the checksum of the entry's serialized bytes.
+   *
+   * @return The 32-bit unsigned CRC32 checksum of the entry bytes.
+   */
+  public long checksum() {
+    return checksum;
+  }
+
+  /**
+   * Returns the entry's compaction mode.
+   *
+   * @return The entry's compaction mode.
+   */
+  public Compaction.Mode mode() {
+    return mode;
+  }
+
+  /**
+   * Returns the serialization type ID of the entry.
+   *
+   * @return The entry's serialization type ID.
+   */
+  public int type() {
+    return type;
+  }
+
+  /**
+   * Returns the serialized bytes of the entry.
+   * <p>
+   * The returned array is not copied and must not be modified.
+   *
+   * @return The serialized entry bytes.
+   */
+  public byte[] bytes() {
+    return bytes;
+  }
+
+  /**
+   * Returns the serialized size of the entry.
+   *
+   * @return The number of bytes in the entry's serialized form, excluding the record header.
+   */
+  public int size() {
+    return bytes.length;
+  }
+
+  /**
+   * Returns a boolean indicating whether the record's checksum matches its bytes.
+   *
+   * @return Indicates whether the record's checksum is valid.
+   */
+  public boolean isValid() {
+    CRC32 crc32 = new CRC32();
+    crc32.update(bytes, 0, bytes.length);
+    return crc32.getValue() == checksum;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[index=%d, term=%d, mode=%s, size=%d]", getClass().getSimpleName(), index, term, mode, bytes.length);
+  }
+
+}
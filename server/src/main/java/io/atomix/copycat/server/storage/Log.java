@@ -18,12 +18,14 @@ package io.atomix.copycat.server.storage;
 import io.atomix.catalyst.serializer.Serializer;
 import io.atomix.catalyst.util.Assert;
 import io.atomix.catalyst.concurrent.CatalystThreadFactory;
+import io.atomix.catalyst.concurrent.ThreadContext;
 import io.atomix.copycat.server.storage.compaction.Compaction;
 import io.atomix.copycat.server.storage.compaction.Compactor;
 import io.atomix.copycat.server.storage.entry.Entry;
 import io.atomix.copycat.server.storage.entry.TypedEntryPool;
-import io.atomix.copycat.server.storage.util.EntryBuffer;
+import io.atomix.copycat.server.storage.util.EntryCache;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
 
 /**
@@ -111,6 +113,11 @@ import java.util.concurrent.Executors;
  * live entries, it combines multiple segments up to the configured segment capacity. When a segment becomes full during
  * major compaction, the compaction process rolls over to a new segment and continues compaction. This results in a
  * significantly smaller number of files.
+ * <p>
+ * When {@link Storage#groupCommit() group commit} is enabled, appended entries are not flushed to disk individually.
+ * Instead, callers that require durability {@link #sync(long) sync} the index of an appended entry and wait for the
+ * returned future to be completed. The log flushes the current segment once per batch of entries, completing all
+ * pending syncs covered by the flush.
  *
  * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
  */
@@ -118,7 +125,9 @@ public class Log implements AutoCloseable {
   private final Storage storage;
   final SegmentManager segments;
   private final Compactor compactor;
-  private final EntryBuffer entryBuffer;
+  private final EntryCache entryCache;
+  private long cacheCompactions;
+  private final LogFlusher flusher;
   private final TypedEntryPool entryPool = new TypedEntryPool();
   private boolean open = true;
 
@@ -129,7 +138,8 @@ public class Log implements AutoCloseable {
     this.storage = Assert.notNull(storage, "storage");
     this.segments = new SegmentManager(name, storage, serializer);
     this.compactor = new Compactor(storage, segments, Executors.newScheduledThreadPool(storage.compactionThreads(), new CatalystThreadFactory("copycat-compactor-%d")));
-    this.entryBuffer = new EntryBuffer(storage.entryBufferSize());
+    this.entryCache = new EntryCache(storage.entryCacheSize());
+    this.flusher = new LogFlusher(segments, storage, ThreadContext.currentContext());
   }
 
   /**
@@ -141,6 +151,26 @@ public class Log implements AutoCloseable {
     return compactor;
   }
 
+  /**
+   * Returns the log entry cache.
+   * <p>
+   * The entry cache holds recently appended and read entries in memory and tracks cache hits and misses
+   * for reads from the log. Like the log, the cache must only be accessed on the log's thread. Compaction replaces
+   * segments on background threads, so rather than modifying the cache from compaction threads, the cache is
+   * cleared when it's next accessed after segments have been replaced. This ensures entries that have been
+   * compacted from the log are not served from the cache.
+   *
+   * @return The log entry cache.
+   */
+  public EntryCache cache() {
+    long compactions = segments.compactions();
+    if (compactions != cacheCompactions) {
+      entryCache.clear();
+      cacheCompactions = compactions;
+    }
+    return entryCache;
+  }
+
   /**
    * Returns the log entry serializer.
    *
@@ -253,7 +283,6 @@ public class Log implements AutoCloseable {
   private Segment currentSegment() {
     Segment segment = segments.currentSegment();
     if (segment.isFull()) {
-      segments.currentSegment().flush();
       segment = segments.nextSegment();
     }
     return segment;
@@ -292,10 +321,71 @@ public class Log implements AutoCloseable {
 
     // Append the entry to the appropriate segment.
     long index = currentSegment().append(entry);
-    entryBuffer.append(entry);
+    cache().put(entry);
+    if (storage.groupCommit()) {
+      flusher.append();
+    }
+    return index;
+  }
+
+  /**
+   * Appends a serialized entry record to the log.
+   * <p>
+   * The record's bytes are written to the log as-is without deserializing the entry, and the entry is not added to
+   * the log's entry cache. The entry will be deserialized when it's first read from the log.
+   *
+   * @param record The record to append.
+   * @return The appended entry index.
+   * @throws IllegalStateException If the log is not open
+   * @throws NullPointerException If {@code record} is {@code null}
+   * @throws IndexOutOfBoundsException If the record's index does not match the expected next log index.
+   * @throws StorageException If the record's checksum does not match its bytes.
+   */
+  public long append(EntryRecord record) {
+    Assert.notNull(record, "record");
+    assertIsOpen();
+
+    // Append the record to the appropriate segment.
+    long index = currentSegment().append(record);
+    if (storage.groupCommit()) {
+      flusher.append();
+    }
     return index;
   }
 
+  /**
+   * Returns a future to be completed once the entry at the given index has been flushed to disk.
+   * <p>
+   * If {@link Storage#groupCommit() group commit} is disabled, the returned future will be completed immediately.
+   * Otherwise, the future will be completed on the log's thread once a flush covering the given index has completed.
+   * If the entry is {@link #truncate(long) truncated} before it's flushed, the future will be completed exceptionally.
+   *
+   * @param index The index to sync.
+   * @return A future to be completed with the highest flushed index once the given index is durable.
+   * @throws IllegalStateException If the log is not open.
+   */
+  public CompletableFuture<Long> sync(long index) {
+    assertIsOpen();
+    if (!storage.groupCommit()) {
+      return CompletableFuture.completedFuture(index);
+    }
+    return flusher.sync(index);
+  }
+
+  /**
+   * Returns the highest index known to have been flushed to disk.
+   * <p>
+   * If {@link Storage#groupCommit() group commit} is disabled, all appended entries are considered durable and the
+   * sync index is the {@link #lastIndex()}.
+   *
+   * @return The highest index known to have been flushed to disk.
+   * @throws IllegalStateException If the log is not open.
+   */
+  public long syncIndex() {
+    assertIsOpen();
+    return storage.groupCommit() ? Math.min(flusher.flushIndex(), lastIndex()) : lastIndex();
+  }
+
   /**
    * Returns the term for the entry at the given index.
    * <p>
@@ -347,60 +437,143 @@ public class Log implements AutoCloseable {
     Segment segment = segments.segment(index);
     Assert.index(segment != null, "invalid index: " + index);
 
-    // Get the entry from the segment. If the entry hasn't already been compacted from the segment,
-    // it will be non-null.
-    T entry = entryBuffer.get(index);
+    // Get the entry from the cache or the segment. If the entry hasn't already been compacted from the segment,
+    // it will be non-null. Entries read from the segment are cached for subsequent reads.
+    EntryCache cache = cache();
+    T entry = cache.get(index);
     if (entry == null) {
-      entry = segment.get(index);
+      entry = segment.get(index, this);
+      if (entry != null) {
+        cache.put(entry);
+      }
     }
 
+    return visible(index, entry, segment);
+  }
+
+  /**
+   * Returns the given entry if it should be exposed to the Raft algorithm, otherwise releases it.
+   * <p>
+   * Whether an entry is visible is determined based on the type of entry and whether it has been released.
+   *
+   * @param index The index of the entry.
+   * @param entry The entry at the given index, or {@code null} if the entry has been compacted.
+   * @param segment The segment containing the entry.
+   * @return The entry if it's visible, otherwise {@code null}.
+   */
+  <T extends Entry> T visible(long index, T entry, Segment segment) {
     // For non-null entries, we determine whether the entry should be exposed to the Raft algorithm
     // based on the type of entry and whether it has been released.
     if (entry != null) {
-      // The last entry in the log is always visible. This is necessary to ensure that candidates
-      // can properly read the last entry term for the voting protocol.
-      if (index == lastIndex()) {
+      if (isVisible(index, entry.getCompactionMode(), segment)) {
         return entry;
       }
 
-      Compaction.Mode mode = entry.getCompactionMode();
-      if (mode == Compaction.Mode.DEFAULT) {
-        mode = compactor.getDefaultCompactionMode();
-      }
-
-      // Return the entry according to the compaction mode.
-      switch (mode) {
-        // SNAPSHOT entries are returned if the snapshotIndex is less than the entry index.
-        case SNAPSHOT:
-          if (index > compactor.snapshotIndex()) {
-            return entry;
-          }
-          break;
-        // RELEASE and QUORUM entries are returned if the minorIndex is less than the entry index or the
-        // entry is still live.
-        case RELEASE:
-        case QUORUM:
-          if (index > compactor.minorIndex() || segment.isLive(index)) {
-            return entry;
-          }
-          break;
-        // FULL, SEQUENTIAL, EXPIRING, and TOMBSTONE entries are returned if the minorIndex or majorIndex is less than the
-        // entry index or if the entry is still live.
-        case FULL:
-        case SEQUENTIAL:
-        case EXPIRING:
-        case TOMBSTONE:
-          if (index > compactor.minorIndex() || index > compactor.majorIndex() || segment.isLive(index)) {
-            return entry;
-          }
-          break;
-        default:
-          break;
-      }
+      // If the entry is not visible, release it back to the entry pool.
+      entry.release();
     }
     return null;
   }
 
+  /**
+   * Returns a boolean value indicating whether the entry at the given index is exposed to the Raft algorithm.
+   * <p>
+   * Whether the entry is visible is determined in the same manner as in {@link #get(long)}, but where possible the
+   * entry's compaction mode is read from the entry's record header rather than by deserializing the entry.
+   *
+   * @param index The index of the entry to check.
+   * @return Indicates whether {@link #get(long)} would return a non-null entry for the given index.
+   * @throws IllegalStateException If the log is not open.
+   * @throws IndexOutOfBoundsException If the given index is not within the bounds of the log.
+   */
+  public boolean isVisible(long index) {
+    assertIsOpen();
+    assertValidIndex(index);
+
+    Segment segment = segments.segment(index);
+    Assert.index(segment != null, "invalid index: " + index);
+
+    // Peek at the cache so that visibility checks aren't counted as cache hits or misses.
+    Compaction.Mode mode;
+    Entry entry = cache().peek(index);
+    if (entry != null) {
+      mode = entry.getCompactionMode();
+      entry.release();
+    } else {
+      mode = segment.mode(index);
+    }
+    return mode != null && isVisible(index, mode, segment);
+  }
+
+  /**
+   * Returns a boolean value indicating whether an entry with the given compaction mode is visible at the given index.
+   */
+  boolean isVisible(long index, Compaction.Mode mode, Segment segment) {
+    // The last entry in the log is always visible. This is necessary to ensure that candidates
+    // can properly read the last entry term for the voting protocol.
+    if (index == lastIndex()) {
+      return true;
+    }
+
+    if (mode == Compaction.Mode.DEFAULT) {
+      mode = compactor.getDefaultCompactionMode();
+    }
+
+    // Return whether the entry is visible according to the compaction mode.
+    switch (mode) {
+      // SNAPSHOT entries are returned if the snapshotIndex is less than the entry index.
+      case SNAPSHOT:
+        return index > compactor.snapshotIndex();
+      // RELEASE and QUORUM entries are returned if the minorIndex is less than the entry index or the
+      // entry is still live.
+      case RELEASE:
+      case QUORUM:
+        return index > compactor.minorIndex() || segment.isLive(index);
+      // FULL, SEQUENTIAL, EXPIRING, and TOMBSTONE entries are returned if the minorIndex or majorIndex is less than the
+      // entry index or if the entry is still live.
+      case FULL:
+      case SEQUENTIAL:
+      case EXPIRING:
+      case TOMBSTONE:
+        return index > compactor.minorIndex() || index > compactor.majorIndex() || segment.isLive(index);
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Creates a new reader for the log.
+   * <p>
+   * Readers hold their own read buffers and serializers, allowing multiple threads to read entries from the log
+   * concurrently with one another and with the writer without contending on shared locks. Unlike {@link #get(long)},
+   * readers return entries as they're stored in segments without regard for their compaction modes. Each reader
+   * must be used by only a single thread and should be closed once reading is complete.
+   *
+   * @return A new log reader.
+   * @throws IllegalStateException If the log is not open.
+   */
+  public SegmentReader reader() {
+    assertIsOpen();
+    return segments.createReader();
+  }
+
+  /**
+   * Creates a new cursor for reading entries sequentially, starting at the given index.
+   * <p>
+   * Cursors read entries in index order from the position of the previous entry in each segment, avoiding the
+   * per-entry segment and index lookups performed by {@link #get(long)}. Entries are returned by the cursor according
+   * to the same compaction rules as {@link #get(long)}. The cursor must be used only on the thread on which the log
+   * is accessed and should be closed once reading is complete.
+   *
+   * @param index The index at which to start reading entries.
+   * @return A new log cursor.
+   * @throws IllegalStateException If the log is not open.
+   */
+  public LogCursor cursor(long index) {
+    assertIsOpen();
+    return new LogCursor(segments, new SegmentReader(segments, segments.serializer().clone(), LogCursor.DEFAULT_READ_AHEAD_SIZE), this, index);
+  }
+
   /**
    * Returns a boolean value indicating whether the given index is within the bounds of the log.
    * <p>
@@ -462,8 +635,8 @@ public class Log implements AutoCloseable {
     if (index > 0) {
       assertValidIndex(index);
       segments.commitIndex(index);
-      if (storage.flushOnCommit()) {
-        segments.currentSegment().flush();
+      if (storage.flushOnCommit() && !storage.groupCommit()) {
+        segments.flush();
       }
     }
     return this;
@@ -517,6 +690,9 @@ public class Log implements AutoCloseable {
     if (lastIndex() == index)
       return this;
 
+    // Ensure no segment is being sealed while it's truncated.
+    segments.awaitSealed();
+
     for (Segment segment : segments.reverseSegments()) {
       if (segment.validIndex(index)) {
         segment.truncate(index);
@@ -525,7 +701,10 @@ public class Log implements AutoCloseable {
         segments.removeSegment(segment);
       }
     }
-    entryBuffer.clear();
+    cache().truncate(index);
+    if (storage.groupCommit()) {
+      flusher.truncate(index);
+    }
     return this;
   }
 
@@ -536,7 +715,11 @@ public class Log implements AutoCloseable {
    */
   public void flush() {
     assertIsOpen();
-    segments.currentSegment().flush();
+    if (storage.groupCommit()) {
+      flusher.flush();
+    } else {
+      segments.flush();
+    }
   }
 
   /**
@@ -547,10 +730,15 @@ public class Log implements AutoCloseable {
   @Override
   public void close() {
     assertIsOpen();
-    flush();
-    compactor.close();
-    segments.close();
-    open = false;
+    try {
+      flush();
+    } finally {
+      flusher.close();
+      entryCache.clear();
+      compactor.close();
+      open = false;
+      segments.close();
+    }
   }
 
   /**
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.catalyst.util.Assert;
+import io.atomix.copycat.server.storage.compaction.Compaction;
+import io.atomix.copycat.server.storage.entry.Entry;
+import io.atomix.copycat.server.storage.util.StorageSerialization;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+
+/**
+ * Forward-only cursor for reading sequential entries from a {@link Log}.
+ * <p>
+ * Cursors read entries in index order, starting at the index with which the cursor was created. Rather than looking
+ * up the segment and position of each entry, the cursor tracks the position of the next entry in the current
+ * segment and reads entries sequentially from the segment's buffer. Once the end of a segment is reached, the cursor
+ * moves to the next segment in the log. Entries in file segments are read ahead into an in-memory buffer, so scans
+ * of file segments are performed with large sequential reads rather than a read per entry.
+ * <pre>
+ *   {@code
+ *   try (LogCursor cursor = log.cursor(index)) {
+ *     while (cursor.hasNext()) {
+ *       try (Entry entry = cursor.next()) {
+ *         ...
+ *       }
+ *     }
+ *   }
+ *   }
+ * </pre>
+ * Cursors created via {@link Log#cursor(long)} return entries according to the same compaction rules as
+ * {@link Log#get(long)}. Cursors created via {@link SegmentManager#createCursor(long)} or
+ * {@link SegmentManager#createCursor(Segment)} return entries as they're stored in segments. Entries read by cursors are not added to the log's entry cache, so bulk scans do not evict
+ * recently used entries.
+ * <p>
+ * Cursors are not thread safe. Each thread that reads from the log should create its own cursor.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public class LogCursor implements AutoCloseable {
+  static final int DEFAULT_READ_AHEAD_SIZE = 1024 * 64;
+  private final SegmentManager manager;
+  private final SegmentReader reader;
+  private final Log log;
+  private final Iterator<Segment> segments;
+  private final Segment lastSegment;
+  private Segment segment;
+  private long index;
+  private long position = -1;
+  private boolean read;
+
+  LogCursor(SegmentManager manager, SegmentReader reader, Log log, long index) {
+    this(manager, reader, log, manager.segments(index), null, index);
+  }
+
+  LogCursor(SegmentManager manager, SegmentReader reader, Segment segment) {
+    this(manager, reader, null, Collections.singletonList(segment), segment, segment.firstIndex());
+  }
+
+  private LogCursor(SegmentManager manager, SegmentReader reader, Log log, Collection<Segment> segments, Segment lastSegment, long index) {
+    this.manager = Assert.notNull(manager, "manager");
+    this.reader = Assert.notNull(reader, "reader");
+    this.log = log;
+    this.segments = segments.iterator();
+    this.lastSegment = lastSegment;
+    this.index = index;
+  }
+
+  /**
+   * Returns the index of the next entry to be read by the cursor.
+   *
+   * @return The index of the next entry.
+   */
+  public long index() {
+    return index;
+  }
+
+  /**
+   * Returns a boolean indicating whether the cursor has more entries to read.
+   *
+   * @return Indicates whether the cursor has more entries to read.
+   */
+  public boolean hasNext() {
+    return index <= (lastSegment != null ? lastSegment.lastIndex() : manager.currentSegment().lastIndex());
+  }
+
+  /**
+   * Reads the next entry and advances the cursor.
+   * <p>
+   * If the entry at the cursor's index has been compacted from the log, {@code null} will be returned and the cursor
+   * will be advanced to the next index.
+   *
+   * @param <T> The entry type.
+   * @return The entry at the cursor's index or {@code null} if the entry doesn't exist.
+   * @throws IndexOutOfBoundsException If the cursor's index is not within the bounds of the log.
+   */
+  public <T extends Entry> T next() {
+    read = false;
+    long index = this.index++;
+    Segment segment = segment(index);
+    Assert.index(segment != null, "invalid index: " + index);
+
+    // If the entry is cached, use the cached entry. Otherwise, read the entry from the position following the
+    // previous entry.
+    T entry = log != null ? log.cache().get(index) : null;
+    if (entry != null) {
+      position = -1;
+    } else {
+      entry = segment.get(index, position, reader, log);
+      position = reader.position;
+    }
+    return log != null ? log.visible(index, entry, segment) : entry;
+  }
+
+  /**
+   * Reads the serialized bytes of the next entry without deserializing the entry and advances the cursor.
+   * <p>
+   * Cursors created via {@link SegmentManager} read entries as they're stored in segments without regard for their
+   * compaction modes. Cursors created via {@link Log#cursor(long)} skip entries that would not be returned by
+   * {@link Log#get(long)}, reading the compaction mode of each entry from its record header where possible. Once an
+   * entry has been read, it can be deserialized via {@link #entry()}, copied to another segment via
+   * {@link #transfer(Segment)}, or read as a {@link #record() record}. This allows entries to be copied between
+   * segments and logs without the cost of deserializing and reserializing them.
+   *
+   * @return Indicates whether the entry exists. If the entry has been compacted from its segment, {@code false}.
+   * @throws IndexOutOfBoundsException If the cursor's index is not within the bounds of the log.
+   */
+  public boolean advance() {
+    long index = this.index++;
+    Segment segment = segment(index);
+    Assert.index(segment != null, "invalid index: " + index);
+    read = segment.readRaw(index, position, reader);
+    position = reader.position;
+    if (read && log != null) {
+      read = log.isVisible(index, readMode(), segment);
+    }
+    return read;
+  }
+
+  /**
+   * Returns the compaction mode of the entry read into the reader, deserializing the entry if the mode is not stored
+   * in the entry's header.
+   */
+  private Compaction.Mode readMode() {
+    if (reader.entryMode != null) {
+      return reader.entryMode;
+    }
+    try (Entry entry = Segment.readObject(reader)) {
+      return entry.getCompactionMode();
+    }
+  }
+
+  /**
+   * Returns the compaction mode of the entry last read via {@link #advance()}.
+   * <p>
+   * The compaction mode is read from the entry's record header. Entries read from segments written in the
+   * {@link SegmentDescriptor#FORMAT_V1 original format} do not store their compaction mode in their headers, in which
+   * case the entry must be {@link #entry() deserialized} to determine its compaction mode.
+   *
+   * @return The entry's compaction mode or {@code null} if the mode is not stored in the entry's header.
+   * @throws IllegalStateException If no entry has been read.
+   */
+  public Compaction.Mode mode() {
+    Assert.state(read, "no entry read");
+    return reader.entryMode;
+  }
+
+  /**
+   * Returns the serialized size of the entry last read via {@link #advance()}.
+   *
+   * @return The number of bytes in the entry's serialized form, excluding the record header.
+   * @throws IllegalStateException If no entry has been read.
+   */
+  public int size() {
+    Assert.state(read, "no entry read");
+    return reader.entryLength;
+  }
+
+  /**
+   * Deserializes the entry last read via {@link #advance()}.
+   *
+   * @param <T> The entry type.
+   * @return The deserialized entry.
+   * @throws IllegalStateException If no entry has been read.
+   */
+  public <T extends Entry> T entry() {
+    Assert.state(read, "no entry read");
+    return Segment.readObject(reader);
+  }
+
+  /**
+   * Returns the entry last read via {@link #advance()} as a serialized record.
+   * <p>
+   * The record holds a copy of the entry's serialized bytes and stored checksum and can be
+   * {@link Log#append(EntryRecord) appended} to another log without deserializing the entry. If the entry was read
+   * from a {@link SegmentDescriptor#FORMAT_V1} segment, its header does not contain the entry's compaction mode and
+   * type, so the entry is deserialized to read them.
+   *
+   * @return The entry's record.
+   * @throws IllegalStateException If no entry has been read.
+   */
+  public EntryRecord record() {
+    Assert.state(read, "no entry read");
+    Compaction.Mode mode = reader.entryMode;
+    int type = reader.entryType;
+    if (mode == null) {
+      try (Entry entry = Segment.readObject(reader)) {
+        mode = entry.getCompactionMode();
+        type = StorageSerialization.typeId(entry.getClass());
+      }
+    }
+    byte[] bytes = Arrays.copyOf(reader.memory.array(), (int) reader.memory.limit());
+    return new EntryRecord(reader.entryIndex, reader.entryTerm, reader.entryChecksum, mode, type, bytes);
+  }
+
+  /**
+   * Appends the entry last read via {@link #advance()} to the given segment.
+   * <p>
+   * The entry's serialized bytes and checksum are copied to the segment as-is.
+   *
+   * @param segment The segment to which to append the entry.
+   * @return The index of the appended entry.
+   * @throws IllegalStateException If no entry has been read or the segment is full.
+   * @throws IndexOutOfBoundsException If the entry's index is not the next index in the segment.
+   */
+  public long transfer(Segment segment) {
+    Assert.state(read, "no entry read");
+    return segment.append(reader);
+  }
+
+  /**
+   * Returns the segment containing the given index.
+   * <p>
+   * If the index is not contained in the current segment, the cursor moves to the next segment in the log. The
+   * segment is looked up in the segment manager only if the next segment does not contain the index, which can
+   * occur if segments were added or replaced since the cursor was created. Cursors over a single segment never
+   * leave that segment.
+   */
+  private Segment segment(long index) {
+    if (segment != null && segment.isOpen() && segment.validIndex(index)) {
+      return segment;
+    }
+
+    position = -1;
+    Segment next = segments.hasNext() ? segments.next() : null;
+    if ((next == null || !next.isOpen() || !next.validIndex(index)) && lastSegment == null) {
+      next = manager.segment(index);
+    }
+    segment = next;
+    return segment;
+  }
+
+  @Override
+  public void close() {
+    reader.close();
+    segment = null;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[index=%d]", getClass().getSimpleName(), index);
+  }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.catalyst.concurrent.Scheduled;
+import io.atomix.catalyst.concurrent.ThreadContext;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Batches log flushes for group commit.
+ * <p>
+ * The flusher tracks the highest index that has been flushed to disk and a set of futures awaiting the flush of
+ * later indexes. Rather than flushing the current {@link Segment} for each entry, pending syncs are completed by
+ * a single flush once the {@link Storage#groupCommitInterval() group commit interval} expires or the
+ * {@link Storage#groupCommitSize() group commit size} is reached. All flushes and future completions occur on the
+ * {@link ThreadContext} on which the log was opened.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+final class LogFlusher implements AutoCloseable {
+  private final SegmentManager segments;
+  private final Storage storage;
+  private final ThreadContext context;
+  private final NavigableMap<Long, CompletableFuture<Long>> futures = new TreeMap<>();
+  private long flushIndex;
+  private int unflushed;
+  private Scheduled flushTimer;
+
+  LogFlusher(SegmentManager segments, Storage storage, ThreadContext context) {
+    this.segments = segments;
+    this.storage = storage;
+    this.context = context;
+    this.flushIndex = segments.currentSegment().lastIndex();
+  }
+
+  /**
+   * Returns the highest index known to have been flushed to disk.
+   *
+   * @return The highest flushed index.
+   */
+  long flushIndex() {
+    return flushIndex;
+  }
+
+  /**
+   * Records that an entry has been appended to the log.
+   * <p>
+   * If the number of entries appended since the last flush has reached the group commit size, the log will be
+   * flushed immediately. Flushes complete syncs up to the last index in the log, so the appended index need not be
+   * tracked.
+   */
+  void append() {
+    if (++unflushed >= storage.groupCommitSize()) {
+      flush();
+    }
+  }
+
+  /**
+   * Returns a future to be completed once the given index has been flushed to disk.
+   *
+   * @param index The index to sync.
+   * @return A future to be completed once the given index has been flushed.
+   */
+  CompletableFuture<Long> sync(long index) {
+    if (index <= flushIndex) {
+      return CompletableFuture.completedFuture(flushIndex);
+    }
+
+    // If the log was not opened on a thread context then flushes cannot be scheduled, so flush synchronously.
+    if (context == null) {
+      flush();
+      return CompletableFuture.completedFuture(flushIndex);
+    }
+
+    CompletableFuture<Long> future = futures.computeIfAbsent(index, i -> new CompletableFuture<>());
+    if (flushTimer == null) {
+      flushTimer = context.schedule(storage.groupCommitInterval(), this::flush);
+    }
+    return future;
+  }
+
+  /**
+   * Flushes the current segment and completes all syncs up to the last index in the log.
+   * <p>
+   * If the flush fails, all pending syncs are failed since the entries they await may never be written to disk.
+   *
+   * @throws StorageException if the log failed to be flushed
+   */
+  void flush() {
+    if (flushTimer != null) {
+      flushTimer.cancel();
+      flushTimer = null;
+    }
+
+    // Flushing the segment manager ensures previous segments sealed in the background are also flushed.
+    try {
+      segments.flush();
+    } catch (StorageException e) {
+      Iterator<CompletableFuture<Long>> iterator = futures.values().iterator();
+      while (iterator.hasNext()) {
+        iterator.next().completeExceptionally(e);
+        iterator.remove();
+      }
+      throw e;
+    }
+    flushIndex = segments.currentSegment().lastIndex();
+    unflushed = 0;
+
+    NavigableMap<Long, CompletableFuture<Long>> completed = futures.headMap(flushIndex, true);
+    Iterator<Map.Entry<Long, CompletableFuture<Long>>> iterator = completed.entrySet().iterator();
+    while (iterator.hasNext()) {
+      iterator.next().getValue().complete(flushIndex);
+      iterator.remove();
+    }
+  }
+
+  /**
+   * Fails syncs for indexes that have been truncated from the log.
+   *
+   * @param index The index after which entries were truncated.
+   */
+  void truncate(long index) {
+    flushIndex = Math.min(flushIndex, index);
+    NavigableMap<Long, CompletableFuture<Long>> truncated = futures.tailMap(index, false);
+    Iterator<Map.Entry<Long, CompletableFuture<Long>>> iterator = truncated.entrySet().iterator();
+    while (iterator.hasNext()) {
+      iterator.next().getValue().completeExceptionally(new StorageException("entry truncated before flush"));
+      iterator.remove();
+    }
+    if (futures.isEmpty() && flushTimer != null) {
+      flushTimer.cancel();
+      flushTimer = null;
+    }
+  }
+
+  @Override
+  public void close() {
+    if (flushTimer != null) {
+      flushTimer.cancel();
+      flushTimer = null;
+    }
+
+    Iterator<CompletableFuture<Long>> iterator = futures.values().iterator();
+    while (iterator.hasNext()) {
+      iterator.next().completeExceptionally(new StorageException("log closed"));
+      iterator.remove();
+    }
+  }
+
+}
@@ -15,18 +15,35 @@
  */
 package io.atomix.copycat.server.storage;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.locks.StampedLock;
 import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
 import java.util.zip.Checksum;
 
 import io.atomix.catalyst.buffer.*;
 import io.atomix.catalyst.serializer.Serializer;
 import io.atomix.catalyst.util.Assert;
+import io.atomix.copycat.server.storage.compaction.Compaction;
 import io.atomix.copycat.server.storage.entry.Entry;
 import io.atomix.copycat.server.storage.index.OffsetIndex;
 import io.atomix.copycat.server.storage.util.OffsetPredicate;
+import io.atomix.copycat.server.storage.util.StorageSerialization;
 import io.atomix.copycat.server.storage.util.TermIndex;
 
 import static io.atomix.catalyst.buffer.Bytes.BOOLEAN;
+import static io.atomix.catalyst.buffer.Bytes.BYTE;
 import static io.atomix.catalyst.buffer.Bytes.INTEGER;
 import static io.atomix.catalyst.buffer.Bytes.LONG;
 
@@ -49,11 +66,21 @@ import static io.atomix.catalyst.buffer.Bytes.LONG;
  * {@link Buffer}. This is done by reading a 32-bit length and 64-bit offset for each entry. Once the segment
  * has been built, new entries will be {@link #append(Entry) appended} at the end of the segment.
  * <p>
+ * Once a segment is sealed, its offset and term indexes are persisted to an index file alongside the segment file.
+ * When the segment is loaded, the persisted index is used in place of scanning the segment so long as the index file
+ * is consistent with the segment. The index file is deleted before the segment is modified again.
+ * <p>
+ * Sealed file segments may be {@link #map() mapped} into memory read-only. While a segment is mapped, reads are
+ * served from the mapped view of the segment rather than the file. Reads from the mapped view hold a shared lock
+ * that prevents the view from being {@link #unmap() unmapped} while it's being read.
+ * <p>
  * Additionally, segments are responsible for keeping track of entries that have been {@link #release(long) released}.
- * Entry liveness is tracked in an internal {@link io.atomix.catalyst.buffer.util.BitArray} with a size equal
- * to the segment's entry {@link #count()}.
+ * Entry liveness is tracked by the segment's {@link OffsetPredicate}, which stores the offsets of released entries
+ * in a compressed bitmap rather than allocating a bit for every entry in the segment.
  * <p>
- * An entry in the log is written in binary format. The binary format of an entry is as follows:
+ * An entry in the log is written in binary format. The binary format of an entry depends on the segment's
+ * {@link SegmentDescriptor#format() format}. In {@link SegmentDescriptor#FORMAT_V1} segments, entries are stored as
+ * follows:
  * <ul>
  *   <li>Required 32-bit signed entry length</li>
  *   <li>Required 32-bit unsigned entry checksum</li>
@@ -61,21 +88,46 @@ import static io.atomix.catalyst.buffer.Bytes.LONG;
  *   <li>Required 8-bit term flag</li>
  *   <li>Optional 64-bit term</li>
  * </ul>
+ * In {@link SegmentDescriptor#FORMAT_V2} segments, the record header also stores the entry's compaction mode and type
+ * so that entries can be filtered and compacted without being deserialized:
+ * <ul>
+ *   <li>Required variable-length unsigned entry length</li>
+ *   <li>Required 32-bit unsigned entry checksum</li>
+ *   <li>Required variable-length unsigned offset</li>
+ *   <li>Required 8-bit flags, indicating whether the term is stored</li>
+ *   <li>Required 8-bit {@link Compaction.Mode compaction mode}</li>
+ *   <li>Required variable-length signed entry type</li>
+ *   <li>Optional 64-bit term</li>
+ * </ul>
+ * Segments written in the {@link SegmentDescriptor#FORMAT_V1 original format} remain readable and writable. Their
+ * entries are migrated to the current format when the segment is rewritten by compaction.
  *
  * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
  */
 public class Segment implements AutoCloseable {
+  private static final int INDEX_MAGIC = 0x43435849;
+  private static final int INDEX_VERSION = 1;
+  static final int MAX_HEADER_LENGTH = 32;
+  private static final int TERM_FLAG = 0x01;
+  private static final Compaction.Mode[] MODES = Compaction.Mode.values();
   private final SegmentFile file;
   private final SegmentDescriptor descriptor;
+  private final int format;
   private final Serializer serializer;
   private final Buffer buffer;
   private final HeapBuffer memory = HeapBuffer.allocate();
+  private final HeapBuffer header = HeapBuffer.allocate(MAX_HEADER_LENGTH);
+  private final Checksum checksum = new CRC32();
+  private final SegmentReader reader;
   private final OffsetIndex offsetIndex;
   private final OffsetPredicate offsetPredicate;
   private final TermIndex termIndex = new TermIndex();
   private final SegmentManager manager;
   private long skip = 0;
-  private boolean open = true;
+  private boolean indexPersisted;
+  private final StampedLock mapLock = new StampedLock();
+  private volatile Buffer mappedBuffer;
+  private volatile boolean open = true;
 
   /**
    * @throws NullPointerException if any argument is null
@@ -85,10 +137,14 @@ public class Segment implements AutoCloseable {
     this.file = Assert.notNull(file, "file");
     this.buffer = Assert.notNull(buffer, "buffer");
     this.descriptor = Assert.notNull(descriptor, "descriptor");
+    this.format = descriptor.format();
     this.offsetIndex = Assert.notNull(offsetIndex, "offsetIndex");
     this.offsetPredicate = Assert.notNull(offsetPredicate, "offsetPredicate");
     this.manager = Assert.notNull(manager, "manager");
-    buildIndex();
+    this.reader = new SegmentReader(manager, serializer.clone());
+    if (!loadIndex()) {
+      buildIndex();
+    }
   }
 
   /**
@@ -96,52 +152,202 @@ public class Segment implements AutoCloseable {
    */
   private void buildIndex() {
     // Read the current buffer position.
-    long position = buffer.mark().position();
+    long position = buffer.position();
+
+    // Read the first entry header. A zero-length header indicates the end of the segment.
+    int headerLength = readHeader(buffer, position, reader);
+    while (headerLength > 0) {
+      // Read the entry bytes into memory and verify the checksum.
+      readBytes(buffer, position + headerLength, reader.entryLength, memory);
+
+      // If the computed checksum does not equal the stored checksum, stop reading entries.
+      if (reader.entryChecksum != checksum(memory, this.checksum)) {
+        break;
+      }
 
-    // Read the first entry length.
-    int length = buffer.readInt();
+      // If the entry contained a term, index the term.
+      if (reader.entryHasTerm) {
+        termIndex.index(reader.entryOffset, reader.headerTerm);
+      }
 
-    // While the length is non-zero...
-    while (length != 0) {
-      // Read the 64-bit entry checksum.
-      long checksum = buffer.readUnsignedInt();
+      // Index the entry offset.
+      offsetIndex.index(reader.entryOffset, position);
 
-      // Read the 64-bit entry offset.
-      long offset = buffer.readLong();
+      // Read the next entry header.
+      position += headerLength + reader.entryLength;
+      headerLength = readHeader(buffer, position, reader);
+    }
 
-      // If the term is set on the entry, read the term.
-      Long term = buffer.readBoolean() ? buffer.readLong() : null;
+    // Set the buffer position to the start of the next entry.
+    buffer.position(position);
+  }
 
-      // Read the entry bytes into memory.
-      buffer.read(memory.clear().limit(length));
-      memory.flip();
+  /**
+   * Loads the segment's offset and term indexes from the segment's index file.
+   * <p>
+   * The index file is only used if it exists and is consistent with the segment. The file's checksum must match its
+   * contents, its descriptor fields must match the segment's descriptor, the last indexed entry must be found at its
+   * recorded position, and no entry may have been written beyond the recorded end of the segment. Nothing is indexed
+   * unless the entire index file is valid, so the segment can always fall back to rebuilding the index from the
+   * segment bytes.
+   *
+   * @return Indicates whether the index was loaded from the index file.
+   */
+  private boolean loadIndex() {
+    if (!isPersistent())
+      return false;
 
-      // Compute the checksum for the entry bytes.
-      Checksum crc32 = new CRC32();
-      crc32.update(memory.array(), 0, (int) memory.limit());
+    File indexFile = file.index();
+    if (!indexFile.exists())
+      return false;
+
+    long endPosition;
+    long[] offsets;
+    long[] positions;
+    long[] termOffsets;
+    long[] terms;
+    try (CheckedInputStream checkedInput = new CheckedInputStream(new BufferedInputStream(new FileInputStream(indexFile)), new CRC32());
+         DataInputStream input = new DataInputStream(checkedInput)) {
+      if (input.readInt() != INDEX_MAGIC || input.readInt() != INDEX_VERSION)
+        return false;
+      if (input.readLong() != descriptor.id() || input.readLong() != descriptor.version() || input.readLong() != descriptor.index())
+        return false;
+
+      endPosition = input.readLong();
+
+      int count = input.readInt();
+      offsets = new long[count];
+      positions = new long[count];
+      for (int i = 0; i < count; i++) {
+        offsets[i] = input.readInt() & 0xFFFFFFFFL;
+        positions[i] = input.readInt() & 0xFFFFFFFFL;
+      }
 
-      // If the computed checksum equals the stored checksum...
-      if (checksum == crc32.getValue()) {
-        // If the entry contained a term, index the term.
-        if (term != null) {
-          termIndex.index(offset, term);
+      int termCount = input.readInt();
+      termOffsets = new long[termCount];
+      terms = new long[termCount];
+      for (int i = 0; i < termCount; i++) {
+        termOffsets[i] = input.readInt() & 0xFFFFFFFFL;
+        terms[i] = input.readLong();
+      }
+
+      long checksum = checkedInput.getChecksum().getValue();
+      if (input.readLong() != checksum)
+        return false;
+    } catch (IOException | RuntimeException e) {
+      return false;
+    }
+
+    // Verify that the last indexed entry is where the index file says it is and nothing was written after it.
+    try {
+      if (offsets.length > 0 && (readHeader(buffer, positions[offsets.length - 1], reader) <= 0 || reader.entryOffset != offsets[offsets.length - 1]))
+        return false;
+      if (readHeader(buffer, endPosition, reader) != 0)
+        return false;
+    } catch (RuntimeException e) {
+      return false;
+    }
+
+    for (int i = 0; i < offsets.length; i++) {
+      offsetIndex.index(offsets[i], positions[i]);
+    }
+    for (int i = 0; i < termOffsets.length; i++) {
+      termIndex.index(termOffsets[i], terms[i]);
+    }
+    buffer.position(endPosition);
+    indexPersisted = true;
+    return true;
+  }
+
+  /**
+   * Persists the segment's offset and term indexes to the segment's index file.
+   * <p>
+   * The segment is flushed before the index is written, and the index is written to a temporary file which is synced
+   * to disk and atomically moved into place so that a partially written index file is never observed. If the segment
+   * is stored in memory or its index has already been persisted, this method is a no-op.
+   */
+  void persistIndex() {
+    if (!isPersistent() || indexPersisted)
+      return;
+
+    flush();
+
+    File indexFile = file.index();
+    File tempFile = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+    try (FileOutputStream fileOutput = new FileOutputStream(tempFile)) {
+      CheckedOutputStream checkedOutput = new CheckedOutputStream(new BufferedOutputStream(fileOutput), new CRC32());
+      DataOutputStream output = new DataOutputStream(checkedOutput);
+      output.writeInt(INDEX_MAGIC);
+      output.writeInt(INDEX_VERSION);
+      output.writeLong(descriptor.id());
+      output.writeLong(descriptor.version());
+      output.writeLong(descriptor.index());
+      output.writeLong(buffer.position());
+
+      long lastOffset = offsetIndex.lastOffset();
+      output.writeInt(offsetIndex.size());
+      int termCount = 0;
+      long lastTerm = 0;
+      for (long offset = 0; offset <= lastOffset; offset++) {
+        long position = offsetIndex.position(offset);
+        if (position != -1) {
+          output.writeInt((int) offset);
+          output.writeInt((int) position);
+          if (termIndex.lookup(offset) != lastTerm) {
+            lastTerm = termIndex.lookup(offset);
+            termCount++;
+          }
         }
+      }
 
-        // Index the entry offset.
-        offsetIndex.index(offset, position);
-      } else {
-        break;
+      output.writeInt(termCount);
+      lastTerm = 0;
+      for (long offset = 0; offset <= lastOffset; offset++) {
+        if (offsetIndex.contains(offset)) {
+          long term = termIndex.lookup(offset);
+          if (term != lastTerm) {
+            output.writeInt((int) offset);
+            output.writeLong(term);
+            lastTerm = term;
+          }
+        }
       }
 
-      // Store the next entry start position.
-      position = buffer.position();
+      output.writeLong(checkedOutput.getChecksum().getValue());
+      output.flush();
+      fileOutput.getFD().sync();
+    } catch (IOException e) {
+      throw new StorageException("failed to persist segment index", e);
+    }
+
+    try {
+      Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new StorageException("failed to persist segment index", e);
+    }
+    indexPersisted = true;
+  }
 
-      // Read the next entry length.
-      length = buffer.mark().readInt();
+  /**
+   * Deletes the segment's persisted index file if one exists.
+   * <p>
+   * The index file must be deleted before the segment is modified to ensure a stale index is never loaded.
+   */
+  private void deleteIndex() {
+    try {
+      Files.deleteIfExists(file.index().toPath());
+    } catch (IOException e) {
+      throw new StorageException("failed to delete segment index", e);
     }
+    indexPersisted = false;
+  }
 
-    // Reset the buffer back to the start of the next entry.
-    buffer.reset();
+  /**
+   * Returns a boolean value indicating whether the segment is stored on disk.
+   */
+  private boolean isPersistent() {
+    Buffer buffer = this.buffer instanceof SlicedBuffer ? ((SlicedBuffer) this.buffer).root() : this.buffer;
+    return buffer instanceof FileBuffer || buffer instanceof MappedBuffer;
   }
 
   /**
@@ -335,6 +541,11 @@ public class Segment implements AutoCloseable {
     long index = nextIndex();
     Assert.index(index == entry.getIndex(), "inconsistent index: %s", entry.getIndex());
 
+    // If the segment's index was persisted, delete the index file since it will no longer be consistent.
+    if (indexPersisted) {
+      deleteIndex();
+    }
+
     // Calculate the offset of the entry.
     long offset = relativeOffset(index);
 
@@ -347,15 +558,6 @@ public class Segment implements AutoCloseable {
     // The entry term must be positive and >= the last term in the segment.
     Assert.arg(term > 0 && term >= lastTerm, "term must be monotonically increasing");
 
-    // Mark the starting position of the record and record the starting position of the new entry.
-    long position = buffer.mark().position();
-
-    // Determine whether to skip writing the term to the segment.
-    boolean skipTerm = term == lastTerm;
-
-    // Calculate the length of the entry header bytes.
-    int headerLength = INTEGER + INTEGER + LONG + BOOLEAN + (skipTerm ? 0 : LONG);
-
     // Serialize the object into the in-memory buffer.
     serializer.writeObject(entry, memory.clear());
     memory.flip();
@@ -363,32 +565,151 @@ public class Segment implements AutoCloseable {
     // Calculate the length of the serialized bytes based on the resulting buffer position and the starting position.
     int length = (int) memory.limit();
 
-    // Set the entry size.
+    // Compute the checksum for the entry directly from the serialized bytes.
+    long checksum = checksum(memory, this.checksum);
+
+    // Write the entry and set the entry size.
+    int headerLength = write(offset, term, lastTerm, checksum, entry.getCompactionMode(), StorageSerialization.typeId(entry.getClass()), memory.array(), length);
     entry.setSize(length + headerLength);
+    return index;
+  }
+
+  /**
+   * Appends the entry last read by the given reader to the segment without deserializing or reserializing it.
+   * <p>
+   * The entry's serialized bytes and stored checksum are copied as-is. Only the entry header is rewritten, since the
+   * offset of the entry and whether its term is stored depend on the segment to which the entry is appended. If the
+   * entry was read from a {@link SegmentDescriptor#FORMAT_V1} segment, its header does not contain the entry's
+   * compaction mode and type, so the entry is deserialized to migrate it to this segment's format.
+   *
+   * @param reader The reader that read the entry.
+   * @return The index of the appended entry.
+   * @throws IllegalStateException if the segment is full
+   * @throws IndexOutOfBoundsException if the entry index does not match the next index
+   */
+  long append(SegmentReader reader) {
+    Assert.stateNot(isFull(), "segment is full");
+
+    long index = nextIndex();
+    Assert.index(index == reader.entryIndex, "inconsistent index: %s", reader.entryIndex);
+
+    // If the segment's index was persisted, delete the index file since it will no longer be consistent.
+    if (indexPersisted) {
+      deleteIndex();
+    }
+
+    long term = reader.entryTerm;
+    long lastTerm = termIndex.term();
+    Assert.arg(term > 0 && term >= lastTerm, "term must be monotonically increasing");
+
+    // If the entry's metadata was not stored in its header, read it from the entry.
+    Compaction.Mode mode = reader.entryMode;
+    int type = reader.entryType;
+    if (mode == null && format != SegmentDescriptor.FORMAT_V1) {
+      try (Entry entry = readObject(reader)) {
+        mode = entry.getCompactionMode();
+        type = StorageSerialization.typeId(entry.getClass());
+      }
+    }
+
+    write(relativeOffset(index), term, lastTerm, reader.entryChecksum, mode, type, reader.memory.array(), (int) reader.memory.limit());
+    return index;
+  }
+
+  /**
+   * Appends a serialized entry record to the segment without deserializing or reserializing the entry.
+   * <p>
+   * The record's checksum is verified against the record's bytes before the record is written, and the bytes and
+   * checksum are then written to the segment as-is. The entry will be deserialized when it's read from the segment.
+   *
+   * @param record The record to append.
+   * @return The index of the appended entry.
+   * @throws NullPointerException if {@code record} is null
+   * @throws IllegalStateException if the segment is full
+   * @throws IndexOutOfBoundsException if the record index does not match the next index
+   * @throws StorageException if the record's checksum does not match its bytes
+   */
+  long append(EntryRecord record) {
+    Assert.notNull(record, "record");
+    Assert.stateNot(isFull(), "segment is full");
+
+    long index = nextIndex();
+    Assert.index(index == record.index(), "inconsistent index: %s", record.index());
+
+    byte[] bytes = record.bytes();
+    checksum.reset();
+    checksum.update(bytes, 0, bytes.length);
+    if (checksum.getValue() != record.checksum()) {
+      throw new StorageException("checksum mismatch for entry at index " + index);
+    }
+
+    // If the segment's index was persisted, delete the index file since it will no longer be consistent.
+    if (indexPersisted) {
+      deleteIndex();
+    }
+
+    long term = record.term();
+    long lastTerm = termIndex.term();
+    Assert.arg(term > 0 && term >= lastTerm, "term must be monotonically increasing");
 
-    // Compute the checksum for the entry.
-    Checksum crc32 = new CRC32();
-    crc32.update(memory.array(), 0, (int) memory.limit());
-    long checksum = crc32.getValue();
+    write(relativeOffset(index), term, lastTerm, record.checksum(), record.mode(), record.type(), bytes, bytes.length);
+    return index;
+  }
 
-    // Write the length, checksum, and offset of the entry.
-    buffer.reset()
-      .writeInt(length)
-      .writeUnsignedInt(checksum)
-      .writeLong(offset);
+  /**
+   * Writes an entry with the given header fields and serialized bytes to the segment buffer and indexes the entry.
+   * <p>
+   * The record header is encoded in the segment's format into the header buffer and written to the segment along
+   * with the first {@code length} entry bytes.
+   *
+   * @return The length of the record header.
+   */
+  private int write(long offset, long term, long lastTerm, long checksum, Compaction.Mode mode, int type, byte[] bytes, int length) {
+    // Determine whether to skip writing the term to the segment.
+    boolean skipTerm = term == lastTerm;
 
-    // If the term has not yet been written, write the term to this entry.
-    if (skipTerm) {
-      buffer.writeBoolean(false);
+    header.clear();
+    if (format == SegmentDescriptor.FORMAT_V1) {
+      // Write the length, checksum, and offset of the entry.
+      header.writeInt(length)
+        .writeUnsignedInt(checksum)
+        .writeLong(offset);
+
+      // If the term has not yet been written, write the term to this entry.
+      if (skipTerm) {
+        header.writeBoolean(false);
+      } else {
+        header.writeBoolean(true).writeLong(term);
+      }
     } else {
-      buffer.writeBoolean(true).writeLong(entry.getTerm());
+      // Write the length, checksum, offset, flags, compaction mode, and type of the entry.
+      writeVarLong(header, length);
+      header.writeUnsignedInt(checksum);
+      writeVarLong(header, offset);
+      header.writeByte(skipTerm ? 0 : TERM_FLAG)
+        .writeByte(mode.ordinal());
+      writeVarLong(header, ((type << 1) ^ (type >> 31)) & 0xFFFFFFFFL);
+
+      // If the term has not yet been written, write the term to this entry.
+      if (!skipTerm) {
+        header.writeLong(term);
+      }
     }
+    int headerLength = (int) header.position();
+
+    // Writes to the segment buffer are guarded against concurrent readers. See get(long, SegmentReader).
+    synchronized (buffer) {
+      // Record the starting position of the new entry.
+      long position = buffer.position();
 
-    // Write the entry to the segment.
-    buffer.write(memory);
+      // Write the header and the entry to the segment. The entry bytes are written from the start of the array
+      // regardless of the position of the buffer backing it, since the buffer may have been read by a deserializer.
+      buffer.write(header.bytes(), 0, headerLength);
+      buffer.write(bytes, 0, length);
 
-    // Index the offset, position, and length.
-    offsetIndex.index(offset, position);
+      // Index the offset, position, and length.
+      offsetIndex.index(offset, position);
+    }
 
     // If the entry term is greater than the last indexed term, index the term.
     if (term > lastTerm) {
@@ -397,8 +718,7 @@ public class Segment implements AutoCloseable {
 
     // Reset skip to zero since we wrote a new entry.
     skip = 0;
-
-    return index;
+    return headerLength;
   }
 
   /**
@@ -421,12 +741,31 @@ public class Segment implements AutoCloseable {
 
   /**
    * Reads the entry at the given index.
+   * <p>
+   * Reads performed via this method share the segment's internal read buffer and are therefore synchronized.
+   * Threads that read from the log concurrently should use a {@link SegmentReader} via {@link #get(long, SegmentReader)}.
    *
    * @param index The index from which to read the entry.
    * @return The entry at the given index.
    * @throws IllegalStateException if the segment is not open or {@code index} is inconsistent with the entry
    */
   public synchronized <T extends Entry> T get(long index) {
+    return get(index, reader);
+  }
+
+  /**
+   * Reads the entry at the given index using the given reader.
+   * <p>
+   * The entry is read into the reader's buffer and deserialized with the reader's serializer. No segment state is
+   * shared between readers, so multiple threads may read from the segment concurrently so long as each thread uses
+   * its own {@link SegmentReader}.
+   *
+   * @param index The index from which to read the entry.
+   * @param reader The reader with which to read the entry.
+   * @return The entry at the given index.
+   * @throws IllegalStateException if the segment is not open or {@code index} is inconsistent with the entry
+   */
+  public <T extends Entry> T get(long index, SegmentReader reader) {
     assertSegmentOpen();
     checkRange(index);
 
@@ -438,39 +777,492 @@ public class Segment implements AutoCloseable {
 
     // If the index contained the entry, read the entry from the buffer.
     if (position != -1) {
+      Assert.state(read(position, offset, reader), "inconsistent index: %s", index);
+      return verify(index, offset, reader) ? readObject(reader) : null;
+    }
+    reader.position = -1;
+    return null;
+  }
 
-      // Read the length of the entry.
-      int length = buffer.readInt(position);
+  /**
+   * Reads the entry at the given index, starting at the given position.
+   * <p>
+   * This method is used to read entries sequentially. If the entry at the given position is the entry at the given
+   * index, the entry is read without looking up its position in the segment's offset index. Once the entry has been
+   * read, the reader's {@link SegmentReader#position position} will be set to the position of the following entry. If
+   * the entry is not present in the segment, the reader's position is set to the given position.
+   *
+   * @param index The index from which to read the entry.
+   * @param position The position at which the entry is expected to be stored, or {@code -1} if unknown.
+   * @param reader The reader with which to read the entry.
+   * @return The entry at the given index.
+   * @throws IllegalStateException if the segment is not open or {@code index} is inconsistent with the entry
+   */
+  <T extends Entry> T get(long index, long position, SegmentReader reader) {
+    return get(index, position, reader, null);
+  }
 
-      // Read the checksum of the entry.
-      long checksum = buffer.readUnsignedInt(position + INTEGER);
+  /**
+   * Reads the entry at the given index if it's visible in the given log.
+   * <p>
+   * Reads performed via this method share the segment's internal read buffer and are therefore synchronized.
+   *
+   * @param index The index from which to read the entry.
+   * @param log The log by which to filter the entry.
+   * @return The entry at the given index or {@code null} if the entry doesn't exist or is not visible.
+   * @throws IllegalStateException if the segment is not open or {@code index} is inconsistent with the entry
+   */
+  synchronized <T extends Entry> T get(long index, Log log) {
+    return get(index, -1, reader, log);
+  }
 
-      // Verify that the entry at the given offset matches.
-      long entryOffset = buffer.readLong(position + INTEGER + INTEGER);
-      Assert.state(entryOffset == offset, "inconsistent index: %s", index);
+  /**
+   * Reads the entry at the given index, starting at the given position, if it's visible in the given log.
+   * <p>
+   * If the entry's compaction mode is stored in its record header, entries that are not visible in the log are
+   * filtered without being deserialized. Entries read from {@link SegmentDescriptor#FORMAT_V1} segments are always
+   * deserialized and must be filtered by the caller.
+   *
+   * @param index The index from which to read the entry.
+   * @param position The position at which the entry is expected to be stored, or {@code -1} if unknown.
+   * @param reader The reader with which to read the entry.
+   * @param log The log by which to filter the entry, or {@code null} if the entry should not be filtered.
+   * @return The entry at the given index or {@code null} if the entry doesn't exist or is not visible.
+   * @throws IllegalStateException if the segment is not open or {@code index} is inconsistent with the entry
+   */
+  <T extends Entry> T get(long index, long position, SegmentReader reader, Log log) {
+    if (!readRaw(index, position, reader)) {
+      return null;
+    }
+    if (log != null && reader.entryMode != null && !log.isVisible(index, reader.entryMode, this)) {
+      return null;
+    }
+    return readObject(reader);
+  }
 
-      // Determine whether to skip reading the term from this entry.
-      boolean skipTerm = !buffer.readBoolean(position + INTEGER + INTEGER + LONG);
+  /**
+   * Returns the compaction mode of the entry at the given index.
+   * <p>
+   * If the segment stores entry metadata in record headers, the mode is read from the entry's header without reading
+   * or deserializing the entry. Otherwise, the entry is deserialized to determine its compaction mode.
+   *
+   * @param index The index of the entry.
+   * @return The entry's compaction mode or {@code null} if the entry doesn't exist.
+   * @throws IllegalStateException if the segment is not open
+   */
+  synchronized Compaction.Mode mode(long index) {
+    assertSegmentOpen();
+    checkRange(index);
 
-      // Read the entry buffer and deserialize the entry.
-      try (Buffer value = buffer.slice(position + INTEGER + INTEGER + LONG + BOOLEAN + (skipTerm ? 0 : LONG), length)) {
-        // Read the entry into the in-memory buffer.
-        value.read(memory.clear().limit(length));
-        memory.flip();
+    long offset = relativeOffset(index);
+    if (format == SegmentDescriptor.FORMAT_V1) {
+      try (Entry entry = get(index, -1, reader)) {
+        return entry != null ? entry.getCompactionMode() : null;
+      }
+    }
 
-        // Compute the checksum for the entry bytes.
-        Checksum crc32 = new CRC32();
-        crc32.update(memory.array(), 0, (int) memory.limit());
+    long position = offsetIndex.position(offset);
+    if (position == -1 || readEntryHeader(position, reader) == 0 || reader.entryOffset != offset) {
+      return null;
+    }
+    return reader.entryMode;
+  }
 
-        // If the stored checksum equals the computed checksum, return the entry.
-        if (checksum == crc32.getValue()) {
-          T entry = serializer.readObject(memory);
-          entry.setIndex(index).setTerm(termIndex.lookup(offset)).setSize(length);
-          return entry;
+  /**
+   * Reads the serialized bytes of the entry at the given index into the reader's buffer without deserializing them.
+   * <p>
+   * As with {@link #get(long, long, SegmentReader)}, the entry is read from the given position if it is stored there
+   * and the reader's {@link SegmentReader#position position} is set to the position of the following entry. If the
+   * entry is present and its checksum is valid, the entry's index, term, and checksum are set on the reader.
+   *
+   * @param index The index from which to read the entry.
+   * @param position The position at which the entry is expected to be stored, or {@code -1} if unknown.
+   * @param reader The reader with which to read the entry.
+   * @return Indicates whether a valid entry was read.
+   * @throws IllegalStateException if the segment is not open or {@code index} is inconsistent with the entry
+   */
+  boolean readRaw(long index, long position, SegmentReader reader) {
+    assertSegmentOpen();
+    checkRange(index);
+
+    long offset = relativeOffset(index);
+    if (position == -1 || !read(position, offset, reader)) {
+      // If the entry is not stored at the given position, look up its position in the offset index.
+      long indexPosition = offsetIndex.position(offset);
+      if (indexPosition == -1) {
+        reader.position = position;
+        return false;
+      }
+      Assert.state(read(indexPosition, offset, reader), "inconsistent index: %s", index);
+    }
+    return verify(index, offset, reader);
+  }
+
+  /**
+   * Verifies the checksum of the entry read into the reader's buffer and sets the entry's index and term on the reader.
+   *
+   * @return Indicates whether the stored checksum matches the checksum of the entry bytes.
+   */
+  private boolean verify(long index, long offset, SegmentReader reader) {
+    if (reader.entryChecksum == checksum(reader.memory, reader.checksum)) {
+      reader.entryIndex = index;
+      reader.entryTerm = termIndex.lookup(offset);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Deserializes the entry read into the reader's buffer.
+   */
+  static <T extends Entry> T readObject(SegmentReader reader) {
+    reader.memory.rewind();
+    T entry = reader.serializer.readObject(reader.memory);
+    entry.setIndex(reader.entryIndex).setTerm(reader.entryTerm).setSize((int) reader.memory.limit());
+    return entry;
+  }
+
+  /**
+   * Reads the entry with the given offset at the given position into the reader's buffer.
+   * <p>
+   * Full memory and memory-mapped segments are never resized and are read without locking. While the segment is
+   * mapped, reads are served from the mapped view of the segment. File buffers share a single file pointer, and the
+   * writer may resize segment buffers that are not yet full, so reads from those buffers are guarded against
+   * concurrent writes. If the reader reads ahead, entries in file segments are read from the reader's read-ahead
+   * buffer.
+   *
+   * @return Indicates whether the entry at the given position has the given offset.
+   */
+  private boolean read(long position, long offset, SegmentReader reader) {
+    if (mappedBuffer != null) {
+      long stamp = mapLock.readLock();
+      try {
+        Buffer mappedBuffer = this.mappedBuffer;
+        if (mappedBuffer != null) {
+          return readEntry(mappedBuffer, position, offset, reader);
         }
+      } finally {
+        mapLock.unlockRead(stamp);
       }
     }
-    return null;
+
+    if (buffer.isFile() && reader.readAheadBuffer != null) {
+      return readAhead(position, offset, reader);
+    } else if (buffer.isFile() || !isFull()) {
+      synchronized (buffer) {
+        return readEntry(buffer, position, offset, reader);
+      }
+    } else {
+      return readEntry(buffer, position, offset, reader);
+    }
+  }
+
+  /**
+   * Reads the header of the entry at the given position into the reader.
+   * <p>
+   * Headers are read under the same locking rules as entries. See {@link #read(long, long, SegmentReader)}.
+   *
+   * @return The length of the header, or {@code 0} if no entry is stored at the position.
+   */
+  private int readEntryHeader(long position, SegmentReader reader) {
+    if (mappedBuffer != null) {
+      long stamp = mapLock.readLock();
+      try {
+        Buffer mappedBuffer = this.mappedBuffer;
+        if (mappedBuffer != null) {
+          return readHeader(mappedBuffer, position, reader);
+        }
+      } finally {
+        mapLock.unlockRead(stamp);
+      }
+    }
+
+    if (buffer.isFile() || !isFull()) {
+      synchronized (buffer) {
+        return readHeader(buffer, position, reader);
+      }
+    }
+    return readHeader(buffer, position, reader);
+  }
+
+  /**
+   * Reads the entry with the given offset at the given position via the reader's read-ahead buffer.
+   * <p>
+   * If the entry is not contained in the read-ahead buffer, the buffer is refilled with the bytes following the
+   * given position. Entries that are larger than the read-ahead buffer are read directly from the segment.
+   */
+  private boolean readAhead(long position, long offset, SegmentReader reader) {
+    HeapBuffer readAheadBuffer = reader.readAheadBuffer;
+    int headerLength = readAheadHeader(position, reader);
+    if (headerLength == -1 || !readAheadContains(position, headerLength + reader.entryLength, reader)) {
+      synchronized (buffer) {
+        // Read up to the end of the written bytes in the segment into the read-ahead buffer.
+        long length = Math.min(readAheadBuffer.capacity(), buffer.position() - position);
+        if (length <= 0) {
+          return false;
+        }
+        buffer.read(position, readAheadBuffer.bytes(), 0, length);
+        reader.readAheadSegment = this;
+        reader.readAheadPosition = position;
+        reader.readAheadLimit = position + length;
+
+        // If the entry is larger than the read-ahead buffer, read it directly from the segment.
+        headerLength = readAheadHeader(position, reader);
+        if (headerLength == -1 || !readAheadContains(position, headerLength + reader.entryLength, reader)) {
+          return readEntry(buffer, position, offset, reader);
+        }
+      }
+    }
+
+    // Verify that the entry at the given position has the given offset and read the entry bytes into memory.
+    if (headerLength == 0 || reader.entryOffset != offset) {
+      return false;
+    }
+    readBytes(readAheadBuffer, position - reader.readAheadPosition + headerLength, reader.entryLength, reader.memory);
+    reader.position = position + headerLength + reader.entryLength;
+    return true;
+  }
+
+  /**
+   * Reads the header of the entry at the given position from the reader's read-ahead buffer.
+   *
+   * @return The length of the header, {@code 0} if no entry is stored at the position, or {@code -1} if the header
+   * is not contained in the read-ahead buffer.
+   */
+  private int readAheadHeader(long position, SegmentReader reader) {
+    if (!readAheadContains(position, 1, reader)) {
+      return -1;
+    }
+    return readHeader(reader.readAheadBuffer, position - reader.readAheadPosition, reader.readAheadLimit - reader.readAheadPosition, reader);
+  }
+
+  /**
+   * Returns a boolean indicating whether the reader's read-ahead buffer contains the given range of the segment.
+   */
+  private boolean readAheadContains(long position, long length, SegmentReader reader) {
+    return reader.readAheadSegment == this && position >= reader.readAheadPosition && position + length <= reader.readAheadLimit;
+  }
+
+  /**
+   * Reads the entry at the given position into the reader's buffer.
+   * <p>
+   * If the entry at the given position has the given offset, the entry's header fields are set on the reader, the
+   * entry's bytes are read into the reader's buffer, and the reader's position is set to the position of the next
+   * entry.
+   *
+   * @return Indicates whether the entry at the given position has the given offset.
+   */
+  private boolean readEntry(Buffer buffer, long position, long offset, SegmentReader reader) {
+    // Read the entry header. A zero length indicates the end of the segment.
+    int headerLength = readHeader(buffer, position, reader);
+    if (headerLength == 0) {
+      return false;
+    }
+
+    // Verify that the entry at the given position has the given offset.
+    if (reader.entryOffset != offset) {
+      return false;
+    }
+
+    // Read the entry bytes into memory.
+    long entryPosition = position + headerLength;
+    readBytes(buffer, entryPosition, reader.entryLength, reader.memory);
+    reader.position = entryPosition + reader.entryLength;
+    return true;
+  }
+
+  /**
+   * Reads the header of the entry at the given position in the given segment buffer into the reader.
+   * <p>
+   * Reads from file buffers are relatively expensive, so the header bytes of entries in file buffers are first read
+   * into the reader's header buffer with a single read.
+   *
+   * @return The length of the header, or {@code 0} if no entry is stored at the position.
+   */
+  private int readHeader(Buffer buffer, long position, SegmentReader reader) {
+    if (buffer.isFile()) {
+      long length = Math.min(MAX_HEADER_LENGTH, buffer.capacity() - position);
+      if (length <= 0) {
+        return 0;
+      }
+      buffer.read(position, reader.header.bytes(), 0, length);
+      return Math.max(readHeader(reader.header, 0, length, reader), 0);
+    }
+    return Math.max(readHeader(buffer, position, Long.MAX_VALUE, reader), 0);
+  }
+
+  /**
+   * Reads the header of the entry at the given position in the given buffer into the reader.
+   * <p>
+   * The header is read according to the segment's record format. Bytes at or beyond {@code limit} are never read.
+   *
+   * @return The length of the header, {@code 0} if no entry is stored at the position, or {@code -1} if the header
+   * extends beyond the limit.
+   */
+  private int readHeader(Buffer buffer, long position, long limit, SegmentReader reader) {
+    if (format == SegmentDescriptor.FORMAT_V1) {
+      return readHeaderV1(buffer, position, limit, reader);
+    }
+    return readHeaderV2(buffer, position, limit, reader);
+  }
+
+  /**
+   * Reads a {@link SegmentDescriptor#FORMAT_V1} record header.
+   */
+  private static int readHeaderV1(Buffer buffer, long position, long limit, SegmentReader reader) {
+    if (limit - position < INTEGER) {
+      return -1;
+    }
+
+    int length = buffer.readInt(position);
+    if (length == 0) {
+      reader.entryLength = 0;
+      return 0;
+    }
+
+    int headerLength = INTEGER + INTEGER + LONG + BOOLEAN;
+    if (limit - position < headerLength) {
+      return -1;
+    }
+
+    boolean hasTerm = buffer.readBoolean(position + INTEGER + INTEGER + LONG);
+    if (hasTerm) {
+      headerLength += LONG;
+      if (limit - position < headerLength) {
+        return -1;
+      }
+      reader.headerTerm = buffer.readLong(position + INTEGER + INTEGER + LONG + BOOLEAN);
+    }
+
+    reader.entryLength = length;
+    reader.entryChecksum = buffer.readUnsignedInt(position + INTEGER);
+    reader.entryOffset = buffer.readLong(position + INTEGER + INTEGER);
+    reader.entryHasTerm = hasTerm;
+    reader.entryMode = null;
+    reader.entryType = 0;
+    return headerLength;
+  }
+
+  /**
+   * Reads a {@link SegmentDescriptor#FORMAT_V2} record header.
+   */
+  private static int readHeaderV2(Buffer buffer, long position, long limit, SegmentReader reader) {
+    long length = readVarLong(buffer, position, limit);
+    if (length <= 0) {
+      reader.entryLength = 0;
+      return (int) length;
+    }
+
+    long next = position + varLongLength(length);
+    if (limit - next < INTEGER) {
+      return -1;
+    }
+    long checksum = buffer.readUnsignedInt(next);
+    next += INTEGER;
+
+    long offset = readVarLong(buffer, next, limit);
+    if (offset == -1) {
+      return -1;
+    }
+    next += varLongLength(offset);
+
+    if (limit - next < BYTE + BYTE) {
+      return -1;
+    }
+    int flags = buffer.readByte(next);
+    int mode = buffer.readByte(next + BYTE);
+    next += BYTE + BYTE;
+
+    long type = readVarLong(buffer, next, limit);
+    if (type == -1) {
+      return -1;
+    }
+    next += varLongLength(type);
+
+    boolean hasTerm = (flags & TERM_FLAG) != 0;
+    if (hasTerm) {
+      if (limit - next < LONG) {
+        return -1;
+      }
+      reader.headerTerm = buffer.readLong(next);
+      next += LONG;
+    }
+
+    reader.entryLength = (int) length;
+    reader.entryChecksum = checksum;
+    reader.entryOffset = offset;
+    reader.entryHasTerm = hasTerm;
+    reader.entryMode = mode >= 0 && mode < MODES.length ? MODES[mode] : null;
+    reader.entryType = (int) (type >>> 1) ^ -(int) (type & 1);
+    return (int) (next - position);
+  }
+
+  /**
+   * Writes a non-negative variable-length integer to the given buffer.
+   */
+  private static void writeVarLong(Buffer buffer, long value) {
+    while ((value & ~0x7FL) != 0) {
+      buffer.writeByte((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    buffer.writeByte((int) value);
+  }
+
+  /**
+   * Reads a non-negative variable-length integer from the given position in the given buffer.
+   *
+   * @return The integer, or {@code -1} if the integer extends beyond the given limit.
+   */
+  private static long readVarLong(Buffer buffer, long position, long limit) {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      if (position >= limit) {
+        return -1;
+      }
+      int b = buffer.readByte(position++);
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the number of bytes in the variable-length encoding of the given non-negative integer.
+   */
+  private static int varLongLength(long value) {
+    int length = 1;
+    while ((value & ~0x7FL) != 0) {
+      value >>>= 7;
+      length++;
+    }
+    return length;
+  }
+
+  /**
+   * Reads {@code length} bytes at the given position into the given in-memory buffer.
+   * <p>
+   * The bytes are copied directly from the underlying segment {@link Buffer} into the array backing the in-memory
+   * buffer without allocating any intermediate buffers. Once this method returns, the in-memory buffer is positioned
+   * at the start of the bytes and limited to {@code length}.
+   */
+  private void readBytes(Buffer buffer, long position, int length, HeapBuffer memory) {
+    memory.clear();
+    if (memory.capacity() < length) {
+      memory.capacity(length);
+    }
+    buffer.read(position, memory.bytes(), 0, length);
+    memory.limit(length);
+  }
+
+  /**
+   * Computes the checksum of the bytes in the given in-memory buffer.
+   */
+  private static long checksum(HeapBuffer memory, Checksum checksum) {
+    checksum.reset();
+    checksum.update(memory.array(), 0, (int) memory.limit());
+    return checksum.getValue();
   }
 
   /**
@@ -572,17 +1364,30 @@ public class Segment implements AutoCloseable {
     assertSegmentOpen();
     Assert.index(index >= manager.commitIndex(), "cannot truncate committed index");
 
+    // If the segment's index was persisted, delete the index file since it will no longer be consistent.
+    if (indexPersisted) {
+      deleteIndex();
+    }
+
     long offset = relativeOffset(index);
     long lastOffset = offsetIndex.lastOffset();
 
     long diff = Math.abs(lastOffset - offset);
     skip = Math.max(skip - diff, 0);
 
+    // Unmap the segment since it will be written to after it's truncated.
+    unmap();
+
     if (offset < lastOffset) {
+      // If no entries were indexed after the offset, the index returns -1 and the buffer need not be truncated.
       long position = offsetIndex.truncate(offset);
-      buffer.position(position)
-        .zero(position)
-        .flush();
+      if (position != -1) {
+        synchronized (buffer) {
+          buffer.position(position)
+            .zero(position)
+            .flush();
+        }
+      }
       termIndex.truncate(offset);
     }
     return this;
@@ -599,19 +1404,76 @@ public class Segment implements AutoCloseable {
     return this;
   }
 
+  /**
+   * Maps the segment into memory read-only.
+   * <p>
+   * Only full segments stored in files may be mapped. Once the segment is mapped, reads are served from the mapped
+   * view of the segment file until the segment is {@link #unmap() unmapped}.
+   */
+  void map() {
+    Buffer buffer = this.buffer instanceof SlicedBuffer ? ((SlicedBuffer) this.buffer).root() : this.buffer;
+    if (!(buffer instanceof FileBuffer) || mappedBuffer != null || !isFull())
+      return;
+
+    long stamp = mapLock.writeLock();
+    try {
+      if (open && mappedBuffer == null) {
+        File file = this.file.file();
+        MappedBuffer mappedBuffer = MappedBuffer.allocate(file, FileChannel.MapMode.READ_ONLY, file.length(), file.length());
+        this.mappedBuffer = mappedBuffer.position(SegmentDescriptor.BYTES).slice();
+      }
+    } finally {
+      mapLock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Unmaps the segment from memory.
+   * <p>
+   * The mapped view is unmapped once no reads from the view are in progress. Subsequent reads are served from the
+   * segment file.
+   */
+  void unmap() {
+    if (mappedBuffer == null)
+      return;
+
+    long stamp = mapLock.writeLock();
+    try {
+      Buffer mappedBuffer = this.mappedBuffer;
+      if (mappedBuffer != null) {
+        this.mappedBuffer = null;
+        mappedBuffer.close();
+      }
+    } finally {
+      mapLock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Returns a boolean value indicating whether the segment is mapped into memory.
+   *
+   * @return Indicates whether the segment is mapped into memory.
+   */
+  boolean isMapped() {
+    return mappedBuffer != null;
+  }
+
   @Override
   public void close() {
+    open = false;
+    unmap();
     buffer.close();
+    reader.close();
     offsetIndex.close();
     offsetPredicate.close();
     descriptor.close();
-    open = false;
   }
 
   /**
    * Deletes the segment.
    */
   public void delete() {
+    deleteIndex();
     Buffer buffer = this.buffer instanceof SlicedBuffer ? ((SlicedBuffer) this.buffer).root() : this.buffer;
     if (buffer instanceof FileBuffer) {
       ((FileBuffer) buffer).delete();
@@ -42,6 +42,8 @@ import io.atomix.catalyst.util.Assert;
  *   <li>{@code locked} (8-bit boolean) - A boolean indicating whether the segment is locked. Segments will be locked once
  *   all entries have been committed to the segment. The lock state of each segment is used to determine log compaction
  *   and recovery behavior.</li>
+ *   <li>{@code format} (32-bit signed integer) - The format of the entry records stored in the segment. Segments written
+ *   before the format was recorded have {@code 0} in this position and are read as {@link #FORMAT_V1}.</li>
  * </ul>
  * The remainder of the 64 segment header bytes are reserved for future metadata.
  *
@@ -50,6 +52,24 @@ import io.atomix.catalyst.util.Assert;
 public final class SegmentDescriptor implements AutoCloseable {
   public static final int BYTES = 64;
 
+  /**
+   * Original entry record format. Each record is stored with a fixed-length header containing the entry length,
+   * checksum, offset, and optionally the entry term.
+   */
+  public static final int FORMAT_V1 = 1;
+
+  /**
+   * Entry record format with entry metadata. In addition to the fields stored in {@link #FORMAT_V1} records, each
+   * record header stores the entry's compaction mode and type, and lengths and offsets are stored as variable-length
+   * integers.
+   */
+  public static final int FORMAT_V2 = 2;
+
+  /**
+   * The format in which new segments are written.
+   */
+  public static final int CURRENT_FORMAT = FORMAT_V2;
+
   // The lengths of each field in the header.
   private static final int          ID_LENGTH = Bytes.LONG;    // 64-bit signed integer
   private static final int     VERSION_LENGTH = Bytes.LONG;    // 64-bit signed integer
@@ -58,6 +78,7 @@ public final class SegmentDescriptor implements AutoCloseable {
   private static final int MAX_ENTRIES_LENGTH = Bytes.INTEGER; // 32-bit signed integer
   private static final int     UPDATED_LENGTH = Bytes.LONG;    // 64-bit signed integer
   private static final int      LOCKED_LENGTH = Bytes.BOOLEAN; // 8-bit boolean
+  private static final int      FORMAT_LENGTH = Bytes.INTEGER; // 32-bit signed integer
 
   // The positions of each field in the header.
   private static final long          ID_POSITION = 0;                                         // 0
@@ -67,6 +88,7 @@ public final class SegmentDescriptor implements AutoCloseable {
   private static final long MAX_ENTRIES_POSITION = MAX_SIZE_POSITION + MAX_SIZE_LENGTH;       // 28
   private static final long     UPDATED_POSITION = MAX_ENTRIES_POSITION + MAX_ENTRIES_LENGTH; // 32
   private static final long      LOCKED_POSITION = UPDATED_POSITION + UPDATED_LENGTH;         // 40
+  private static final long      FORMAT_POSITION = LOCKED_POSITION + LOCKED_LENGTH;           // 41
 
   /**
    * Returns a descriptor builder.
@@ -98,6 +120,7 @@ public final class SegmentDescriptor implements AutoCloseable {
   private final int maxEntries;
   private volatile long updated;
   private volatile boolean locked;
+  private final int format;
 
   /**
    * @throws NullPointerException if {@code buffer} is null
@@ -111,6 +134,8 @@ public final class SegmentDescriptor implements AutoCloseable {
     this.maxEntries = buffer.readInt();
     this.updated = buffer.readLong();
     this.locked = buffer.readBoolean();
+    int format = buffer.readInt();
+    this.format = format != 0 ? format : FORMAT_V1;
     buffer.skip(BYTES - buffer.position()); // 64 bytes reserved for the header
   }
 
@@ -150,6 +175,15 @@ public final class SegmentDescriptor implements AutoCloseable {
     return index;
   }
 
+  /**
+   * Returns the format of the entry records stored in the segment.
+   *
+   * @return The segment record format, either {@link #FORMAT_V1} or {@link #FORMAT_V2}.
+   */
+  public int format() {
+    return format;
+  }
+
   /**
    * Returns the maximum count of the segment.
    *
@@ -223,6 +257,7 @@ public final class SegmentDescriptor implements AutoCloseable {
       .writeInt(maxEntries)
       .writeLong(updated)
       .writeBoolean(locked)
+      .writeInt(format)
       .skip(BYTES - buffer.position())
       .flush();
     return this;
@@ -246,7 +281,7 @@ public final class SegmentDescriptor implements AutoCloseable {
 
   @Override
   public String toString() {
-    return String.format("%s[id=%d, version=%d, index=%d, updated=%d, locked=%b]", getClass().getSimpleName(), id, version, index, updated, locked);
+    return String.format("%s[id=%d, version=%d, index=%d, updated=%d, locked=%b, format=%d]", getClass().getSimpleName(), id, version, index, updated, locked, format);
   }
 
   /**
@@ -257,6 +292,7 @@ public final class SegmentDescriptor implements AutoCloseable {
 
     private Builder(Buffer buffer) {
       this.buffer = Assert.notNull(buffer, "buffer");
+      buffer.writeInt(FORMAT_POSITION, CURRENT_FORMAT);
     }
 
     /**
@@ -314,6 +350,21 @@ public final class SegmentDescriptor implements AutoCloseable {
       return this;
     }
 
+    /**
+     * Sets the format of the entry records stored in the segment.
+     * <p>
+     * Segments are written in the {@link #CURRENT_FORMAT current format} by default.
+     *
+     * @param format The segment record format.
+     * @return The segment descriptor builder.
+     * @throws IllegalArgumentException if {@code format} is not a known format
+     */
+    public Builder withFormat(int format) {
+      Assert.arg(format == FORMAT_V1 || format == FORMAT_V2, "unknown segment format: %s", format);
+      buffer.writeInt(FORMAT_POSITION, format);
+      return this;
+    }
+
     /**
      * Builds the segment descriptor.
      *
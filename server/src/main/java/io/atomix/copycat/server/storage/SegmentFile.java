@@ -28,6 +28,7 @@ public final class SegmentFile {
   private static final char PART_SEPARATOR = '-';
   private static final char EXTENSION_SEPARATOR = '.';
   private static final String EXTENSION = "log";
+  private static final String INDEX_EXTENSION = "index";
   private final File file;
 
   /**
@@ -36,10 +37,26 @@ public final class SegmentFile {
    * @throws NullPointerException if {@code file} is null
    */
   public static boolean isSegmentFile(String name, File file) {
+    return isFile(name, file, EXTENSION);
+  }
+
+  /**
+   * Returns a boolean value indicating whether the given file appears to be a parsable segment index file.
+   *
+   * @throws NullPointerException if {@code file} is null
+   */
+  public static boolean isIndexFile(String name, File file) {
+    return isFile(name, file, INDEX_EXTENSION);
+  }
+
+  /**
+   * Returns a boolean value indicating whether the given file appears to be a parsable file with the given extension.
+   */
+  private static boolean isFile(String name, File file, String extension) {
     Assert.notNull(name, "name");
     Assert.notNull(file, "file");
     String fileName = file.getName();
-    if (fileName.lastIndexOf(EXTENSION_SEPARATOR) == -1 || fileName.lastIndexOf(PART_SEPARATOR) == -1 || fileName.lastIndexOf(EXTENSION_SEPARATOR) < fileName.lastIndexOf(PART_SEPARATOR) || !fileName.endsWith(EXTENSION))
+    if (fileName.lastIndexOf(EXTENSION_SEPARATOR) == -1 || fileName.lastIndexOf(PART_SEPARATOR) == -1 || fileName.lastIndexOf(EXTENSION_SEPARATOR) < fileName.lastIndexOf(PART_SEPARATOR) || !fileName.substring(fileName.lastIndexOf(EXTENSION_SEPARATOR) + 1).equals(extension))
       return false;
 
     for (int i = fileName.lastIndexOf(PART_SEPARATOR) + 1; i < fileName.lastIndexOf(EXTENSION_SEPARATOR); i++) {
@@ -64,7 +81,14 @@ public final class SegmentFile {
    * Creates a segment file for the given directory, log name, segment ID, and segment version.
    */
   static File createSegmentFile(String name, File directory, long id, long version) {
-    return new File(directory, String.format("%s-%d-%d.log", Assert.notNull(name, "name"), id, version));
+    return new File(directory, String.format("%s-%d-%d.%s", Assert.notNull(name, "name"), id, version, EXTENSION));
+  }
+
+  /**
+   * Creates a segment index file for the given directory, log name, segment ID, and segment version.
+   */
+  static File createIndexFile(String name, File directory, long id, long version) {
+    return new File(directory, String.format("%s-%d-%d.%s", Assert.notNull(name, "name"), id, version, INDEX_EXTENSION));
   }
 
   /**
@@ -83,6 +107,19 @@ public final class SegmentFile {
     return file;
   }
 
+  /**
+   * Returns the index file for the segment.
+   * <p>
+   * The index file is stored alongside the segment file and holds a persisted copy of the segment's
+   * offset and term indexes.
+   *
+   * @return The segment index file.
+   */
+  public File index() {
+    String fileName = file.getName();
+    return new File(file.getParentFile(), fileName.substring(0, fileName.lastIndexOf(EXTENSION_SEPARATOR) + 1) + INDEX_EXTENSION);
+  }
+
   /**
    * Returns the segment identifier.
    */
@@ -19,6 +19,7 @@ import io.atomix.catalyst.buffer.Buffer;
 import io.atomix.catalyst.buffer.FileBuffer;
 import io.atomix.catalyst.buffer.HeapBuffer;
 import io.atomix.catalyst.buffer.MappedBuffer;
+import io.atomix.catalyst.concurrent.CatalystThreadFactory;
 import io.atomix.catalyst.serializer.Serializer;
 import io.atomix.catalyst.util.Assert;
 import io.atomix.copycat.server.storage.index.DelegatingOffsetIndex;
@@ -29,30 +30,60 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.nio.ByteOrder;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.TreeMap;
-import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Manages creation and deletion of {@link Segment}s of the {@link Log}.
  * <p>
  * The segment manager keeps track of segments in a given {@link Log} and provides an interface to loading, retrieving,
  * and compacting those segments.
+ * <p>
+ * Segments are stored in an immutable, copy-on-write segment table. Segments can be looked up by any thread without
+ * acquiring locks, while changes to the set of segments, which occur only when the log rolls over to a new segment
+ * or segments are replaced by compaction, copy the table and publish the updated copy.
+ * <p>
+ * To keep rollover off the critical path, the segment manager preallocates the file and index buffers for the next
+ * segment on a background thread. When the current segment fills up, the preallocated buffers are used for the new
+ * segment and the full segment is flushed and sealed in the background. Operations that depend on previous segments
+ * being durable, such as {@link #flush()}, wait for outstanding seals to complete.
  *
  * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
  */
 public class SegmentManager implements AutoCloseable {
   private static final Logger LOGGER = LoggerFactory.getLogger(SegmentManager.class);
   private static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+  private static final long MIN_MAP_INTERVAL = 1000;
   
   private final String name;
   private final Storage storage;
   private final Serializer serializer;
-  private final NavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
-  private Segment currentSegment;
+  private volatile NavigableMap<Long, Segment> segments = Collections.emptyNavigableMap();
+  private volatile Segment currentSegment;
+  private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread thread = new Thread(r, "copycat-segment-preallocator");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private CompletableFuture<PreallocatedSegment> preallocateFuture;
+  private ScheduledFuture<?> mapFuture;
+  private CompletableFuture<Void> sealFuture = CompletableFuture.completedFuture(null);
   private long commitIndex;
+  private volatile long compactions;
 
   /**
    * @throws NullPointerException if {@code segments} is null
@@ -82,6 +113,44 @@ public class SegmentManager implements AutoCloseable {
     return serializer;
   }
 
+  /**
+   * Creates a new segment reader.
+   * <p>
+   * The returned reader has its own read buffer and serializer and can be used to read entries concurrently with
+   * other readers and the writer. Readers must not be shared between threads.
+   *
+   * @return A new segment reader.
+   */
+  public SegmentReader createReader() {
+    return new SegmentReader(this, serializer.clone());
+  }
+
+  /**
+   * Creates a new cursor for reading entries sequentially, starting at the given index.
+   * <p>
+   * The returned cursor reads entries as they're stored in segments without regard for their compaction modes.
+   * Cursors have their own read buffers and serializers and must not be shared between threads.
+   *
+   * @param index The index at which to start reading entries.
+   * @return A new log cursor.
+   */
+  public LogCursor createCursor(long index) {
+    return new LogCursor(this, new SegmentReader(this, serializer.clone(), LogCursor.DEFAULT_READ_AHEAD_SIZE), null, index);
+  }
+
+  /**
+   * Creates a new cursor for reading the entries of a single segment sequentially.
+   * <p>
+   * The returned cursor starts at the first index in the segment and does not advance beyond the segment's last
+   * index, so segments that have been removed from the segment table may still be read until they're closed.
+   *
+   * @param segment The segment to read.
+   * @return A new log cursor.
+   */
+  public LogCursor createCursor(Segment segment) {
+    return new LogCursor(this, new SegmentReader(this, serializer.clone(), LogCursor.DEFAULT_READ_AHEAD_SIZE), segment);
+  }
+
   /**
    * Sets the log commit index.
    *
@@ -105,11 +174,13 @@ public class SegmentManager implements AutoCloseable {
   /**
    * Opens the segments.
    */
-  private void open() {
+  private synchronized void open() {
     // Load existing log segments from disk.
+    NavigableMap<Long, Segment> segments = new TreeMap<>();
     for (Segment segment : loadSegments()) {
       segments.put(segment.descriptor().index(), segment);
     }
+    this.segments = Collections.unmodifiableNavigableMap(segments);
 
     // If a segment doesn't already exist, create an initial segment starting at index 1.
     if (!segments.isEmpty()) {
@@ -129,10 +200,41 @@ public class SegmentManager implements AutoCloseable {
       currentSegment.descriptor().update(System.currentTimeMillis());
       currentSegment.descriptor().lock();
 
-      segments.put(1L, currentSegment);
+      putSegment(currentSegment);
+    }
+
+    // Preallocate the segment that will follow the last segment.
+    preallocateSegment(currentSegment.descriptor().id() + 1, currentSegment.size());
+
+    // Map recently written segments into memory in the background, and periodically unmap segments as they age
+    // even if the log doesn't roll over.
+    if (storage.level() == StorageLevel.HYBRID) {
+      executor.execute(this::checkMappedSegments);
+      long interval = Math.max(Math.min(storage.minorCompactionInterval().toMillis(), storage.mappedSegmentAge().toMillis()), MIN_MAP_INTERVAL);
+      mapFuture = executor.scheduleAtFixedRate(this::checkMappedSegments, interval, interval, TimeUnit.MILLISECONDS);
     }
   }
 
+  /**
+   * Publishes a copy of the segment table with the given segment added.
+   */
+  private void putSegment(Segment segment) {
+    NavigableMap<Long, Segment> segments = new TreeMap<>(this.segments);
+    segments.put(segment.index(), segment);
+    this.segments = Collections.unmodifiableNavigableMap(segments);
+  }
+
+  /**
+   * Publishes a copy of the segment table with the given segments removed.
+   */
+  private void removeSegments(Collection<Segment> segments) {
+    NavigableMap<Long, Segment> newSegments = new TreeMap<>(this.segments);
+    for (Segment segment : segments) {
+      newSegments.remove(segment.index());
+    }
+    this.segments = Collections.unmodifiableNavigableMap(newSegments);
+  }
+
   /**
    * Asserts that the manager is open.
    * 
@@ -170,7 +272,7 @@ public class SegmentManager implements AutoCloseable {
 
       currentSegment = createSegment(descriptor);
 
-      segments.put(1L, currentSegment);
+      putSegment(currentSegment);
     }
   }
 
@@ -179,7 +281,7 @@ public class SegmentManager implements AutoCloseable {
    * 
    * @throws IllegalStateException if the segment manager is not open
    */
-  public synchronized Segment firstSegment() {
+  public Segment firstSegment() {
     assertOpen();
     Map.Entry<Long, Segment> segment = segments.firstEntry();
     return segment != null ? segment.getValue() : null;
@@ -190,7 +292,7 @@ public class SegmentManager implements AutoCloseable {
    * 
    * @throws IllegalStateException if the segment manager is not open
    */
-  public synchronized Segment lastSegment() {
+  public Segment lastSegment() {
     assertOpen();
     Map.Entry<Long, Segment> segment = segments.lastEntry();
     return segment != null ? segment.getValue() : null;
@@ -204,20 +306,155 @@ public class SegmentManager implements AutoCloseable {
    */
   public synchronized Segment nextSegment() {
     assertOpen();
+
+    Segment previousSegment = currentSegment;
     Segment lastSegment = lastSegment();
+    long id = lastSegment != null ? lastSegment.descriptor().id() + 1 : 1;
     SegmentDescriptor descriptor = SegmentDescriptor.builder()
-      .withId(lastSegment != null ? lastSegment.descriptor().id() + 1 : 1)
+      .withId(id)
       .withVersion(1)
-      .withIndex(currentSegment.lastIndex() + 1)
+      .withIndex(previousSegment.lastIndex() + 1)
       .withMaxSegmentSize(storage.maxSegmentSize())
       .withMaxEntries(storage.maxEntriesPerSegment())
       .build();
     descriptor.lock();
 
-    currentSegment = createSegment(descriptor);
+    // If the next segment was preallocated, write the descriptor to the preallocated buffer, otherwise create it.
+    PreallocatedSegment preallocatedSegment = takePreallocatedSegment(id);
+    Segment segment = preallocatedSegment != null ? preallocatedSegment.create(descriptor) : createSegment(descriptor);
+    putSegment(segment);
+    currentSegment = segment;
+
+    // Seal the previous segment and preallocate the segment after the new segment in the background.
+    sealSegment(previousSegment);
+    preallocateSegment(id + 1, previousSegment.size());
+    return segment;
+  }
+
+  /**
+   * Flushes the log's segments to disk.
+   * <p>
+   * Waits for previous segments to be sealed and flushes the current segment.
+   *
+   * @throws IllegalStateException if the segment manager is not open
+   * @throws StorageException if a previous segment failed to be sealed
+   */
+  public void flush() {
+    assertOpen();
+    awaitSealed();
+    currentSegment().flush();
+  }
+
+  /**
+   * Seals the given segment in the background by flushing it and persisting its index to disk.
+   * <p>
+   * In hybrid logs, sealed segments are mapped into memory once the segment has been sealed. Mapping failures are
+   * logged rather than failing the seal since they don't affect the durability of the segment.
+   */
+  private void sealSegment(Segment segment) {
+    // Persisting the segment index flushes the segment, so memory segments need not be sealed.
+    if (storage.level() == StorageLevel.MEMORY)
+      return;
+
+    CompletableFuture<Void> future = CompletableFuture.runAsync(segment::persistIndex, executor);
+    sealFuture = sealFuture.isDone() && !sealFuture.isCompletedExceptionally() ? future : CompletableFuture.allOf(sealFuture, future);
+    if (storage.level() == StorageLevel.HYBRID) {
+      executor.execute(this::checkMappedSegments);
+    }
+  }
+
+  /**
+   * Waits for all segments being sealed in the background to be flushed to disk.
+   * <p>
+   * If a segment fails to be sealed, the failure is retained and every subsequent call fails, since entries in the
+   * segment may never have been written to disk.
+   *
+   * @throws StorageException if a segment failed to be sealed
+   */
+  synchronized void awaitSealed() {
+    CompletableFuture<Void> future = sealFuture;
+    try {
+      future.join();
+    } catch (CompletionException e) {
+      throw new StorageException("failed to seal segment", e.getCause());
+    }
+    sealFuture = CompletableFuture.completedFuture(null);
+  }
 
-    segments.put(descriptor.index(), currentSegment);
-    return currentSegment;
+  /**
+   * Maps sealed segments that have been written within the mapped segment age into memory and unmaps older segments.
+   * <p>
+   * Segment ages are determined by the last modified time of segment files, so segments loaded from disk are mapped
+   * according to when they were last written rather than when they were loaded.
+   */
+  private void mapSegments() {
+    long mappedTime = System.currentTimeMillis() - storage.mappedSegmentAge().toMillis();
+    Segment currentSegment = this.currentSegment;
+    for (Segment segment : segments.values()) {
+      if (segment != currentSegment && segment.isFull()) {
+        if (segment.file().file().lastModified() >= mappedTime) {
+          segment.map();
+        } else {
+          segment.unmap();
+        }
+      }
+    }
+  }
+
+  /**
+   * Periodically applies the mapping policy to sealed segments.
+   * <p>
+   * Segments are otherwise only mapped and unmapped when a segment is sealed, so without a periodic check, segments
+   * would remain mapped beyond the mapped segment age until the log rolls over. The check runs at the minor
+   * compaction interval or the mapped segment age, whichever is shorter, but no more than once per second.
+   */
+  private void checkMappedSegments() {
+    try {
+      mapSegments();
+    } catch (Exception e) {
+      LOGGER.warn("Failed to map segments", e);
+    }
+  }
+
+  /**
+   * Preallocates buffers for the segment with the given ID in the background.
+   * <p>
+   * Segments are rolled over once they reach either the maximum segment size or the maximum number of entries, so
+   * the size of the last full segment is used to estimate the size of the next segment. The segment is preallocated
+   * to the estimated size, bounded by the default buffer size and the maximum segment size. Logs that roll over on
+   * size preallocate the maximum segment size, and logs that roll over on entries don't preallocate files that are
+   * much larger than their segments will ever be.
+   */
+  private void preallocateSegment(long id, long lastSegmentSize) {
+    int size = (int) Math.min(Math.max(lastSegmentSize, DEFAULT_BUFFER_SIZE), storage.maxSegmentSize());
+    preallocateFuture = CompletableFuture.supplyAsync(() -> new PreallocatedSegment(id, size), executor);
+  }
+
+  /**
+   * Returns the preallocated segment if it was preallocated for the given segment ID.
+   * <p>
+   * If segments were removed from the end of the log after the segment was preallocated, the preallocated segment
+   * ID will no longer follow the last segment's ID and the preallocated segment is discarded.
+   */
+  private PreallocatedSegment takePreallocatedSegment(long id) {
+    CompletableFuture<PreallocatedSegment> future = preallocateFuture;
+    preallocateFuture = null;
+    if (future == null)
+      return null;
+
+    PreallocatedSegment segment;
+    try {
+      segment = future.join();
+    } catch (CompletionException e) {
+      LOGGER.warn("Failed to preallocate segment", e.getCause());
+      return null;
+    }
+
+    if (segment.id != id) {
+      segment.discard();
+      return null;
+    }
+    return segment;
   }
 
   /**
@@ -229,6 +466,18 @@ public class SegmentManager implements AutoCloseable {
     return segments.values();
   }
 
+  /**
+   * Returns the collection of segments starting with the segment containing the given index.
+   *
+   * @param index The index from which to return segments.
+   * @return An ordered collection of segments.
+   */
+  Collection<Segment> segments(long index) {
+    NavigableMap<Long, Segment> segments = this.segments;
+    Long key = segments.floorKey(index);
+    return key != null ? segments.tailMap(key, true).values() : segments.values();
+  }
+
   /**
    * Returns the collection of segments in reverse order.
    *
@@ -244,9 +493,10 @@ public class SegmentManager implements AutoCloseable {
    * @param index The index for which to return the segment.
    * @throws IllegalStateException if the segment manager is not open
    */
-  public synchronized Segment segment(long index) {
+  public Segment segment(long index) {
     assertOpen();
     // Check if the current segment contains the given index first in order to prevent an unnecessary map lookup.
+    Segment currentSegment = this.currentSegment;
     if (currentSegment != null && currentSegment.validIndex(index))
       return currentSegment;
 
@@ -262,31 +512,53 @@ public class SegmentManager implements AutoCloseable {
    * @throws IllegalStateException if the segment is unknown
    */
   public synchronized void replaceSegments(Collection<Segment> segments, Segment segment) {
+    // Ensure segments being replaced are not concurrently being sealed.
+    awaitSealed();
+
     // Update the segment descriptor and lock the segment.
     segment.descriptor().update(System.currentTimeMillis());
     segment.descriptor().lock();
 
-    // Iterate through old segments and remove them from the segments list.
+    // Seal the new segment by persisting its index to disk.
+    segment.persistIndex();
+
+    // Copy the segment table, removing the old segments and adding the new segment.
+    NavigableMap<Long, Segment> newSegments = new TreeMap<>(this.segments);
     for (Segment oldSegment : segments) {
-      if (!this.segments.containsKey(oldSegment.index())) {
+      if (!newSegments.containsKey(oldSegment.index())) {
         throw new IllegalArgumentException("unknown segment at index: " + oldSegment.index());
       }
-      this.segments.remove(oldSegment.index());
+      newSegments.remove(oldSegment.index());
     }
+    newSegments.put(segment.index(), segment);
 
-    // Put the new segment in the segments list.
-    this.segments.put(segment.index(), segment);
+    // Publish the updated segment table.
+    this.segments = Collections.unmodifiableNavigableMap(newSegments);
+    compactions++;
 
     resetCurrentSegment();
   }
 
+  /**
+   * Returns the number of times segments have been replaced by compaction.
+   * <p>
+   * Segments are replaced on compaction threads, so readers on the log's thread can compare the count against a
+   * previously read count to determine whether entries may have been compacted from the log in the meantime.
+   *
+   * @return The number of segment replacements.
+   */
+  long compactions() {
+    return compactions;
+  }
+
   /**
    * Removes a segment.
    *
    * @param segment The segment to remove.
    */
   public synchronized void removeSegment(Segment segment) {
-    segments.remove(segment.index());
+    awaitSealed();
+    removeSegments(Collections.singletonList(segment));
     segment.close();
     segment.delete();
     resetCurrentSegment();
@@ -306,6 +578,7 @@ public class SegmentManager implements AutoCloseable {
           return createDiskSegment(descriptor);
         }
       case DISK:
+      case HYBRID:
         return createDiskSegment(descriptor);
       default:
         throw new AssertionError();
@@ -317,6 +590,7 @@ public class SegmentManager implements AutoCloseable {
    */
   private Segment createDiskSegment(SegmentDescriptor descriptor) {
     File segmentFile = SegmentFile.createSegmentFile(name, storage.directory(), descriptor.id(), descriptor.version());
+    deleteIndexFile(descriptor.id(), descriptor.version());
     Buffer buffer = FileBuffer.allocate(segmentFile, Math.min(DEFAULT_BUFFER_SIZE, descriptor.maxSegmentSize()), Integer.MAX_VALUE);
     descriptor.copyTo(buffer);
     Segment segment = new Segment(new SegmentFile(segmentFile), buffer.slice(), descriptor, createIndex(descriptor), new OffsetPredicate(), serializer.clone(), this);
@@ -329,6 +603,7 @@ public class SegmentManager implements AutoCloseable {
    */
   private Segment createMappedSegment(SegmentDescriptor descriptor) {
     File segmentFile = SegmentFile.createSegmentFile(name, storage.directory(), descriptor.id(), descriptor.version());
+    deleteIndexFile(descriptor.id(), descriptor.version());
     Buffer buffer = MappedBuffer.allocate(segmentFile, Math.min(DEFAULT_BUFFER_SIZE, descriptor.maxSegmentSize()), Integer.MAX_VALUE);
     descriptor.copyTo(buffer);
     Segment segment = new Segment(new SegmentFile(segmentFile), buffer.slice(), descriptor, createIndex(descriptor), new OffsetPredicate(), serializer.clone(), this);
@@ -336,6 +611,16 @@ public class SegmentManager implements AutoCloseable {
     return segment;
   }
 
+  /**
+   * Deletes a stale index file that may remain for a new segment's ID and version.
+   */
+  private void deleteIndexFile(long id, long version) {
+    File indexFile = SegmentFile.createIndexFile(name, storage.directory(), id, version);
+    if (indexFile.exists() && !indexFile.delete()) {
+      throw new StorageException("failed to delete stale segment index: " + indexFile);
+    }
+  }
+
   /**
    * Creates a new segment.
    */
@@ -358,6 +643,7 @@ public class SegmentManager implements AutoCloseable {
       case MAPPED:
         return loadMappedSegment(segmentId, segmentVersion);
       case DISK:
+      case HYBRID:
         return loadDiskSegment(segmentId, segmentVersion);
       default:
         throw new AssertionError();
@@ -404,11 +690,23 @@ public class SegmentManager implements AutoCloseable {
    * Creates an in memory segment index.
    */
   private OffsetIndex createIndex(SegmentDescriptor descriptor) {
-    return new DelegatingOffsetIndex(HeapBuffer.allocate(Math.min(DEFAULT_BUFFER_SIZE, descriptor.maxEntries()), OffsetIndex.size(descriptor.maxEntries())));
+    return createIndex(descriptor.maxEntries());
+  }
+
+  /**
+   * Creates an in memory segment index.
+   */
+  private OffsetIndex createIndex(int maxEntries) {
+    return new DelegatingOffsetIndex(HeapBuffer.allocate(Math.min(DEFAULT_BUFFER_SIZE, maxEntries), OffsetIndex.size(maxEntries)));
   }
 
   /**
    * Loads all segments from disk.
+   * <p>
+   * Segment descriptors are read on the calling thread, and segments with locked descriptors are then loaded and
+   * indexed in parallel on a bounded pool of threads. Once all segments have been loaded, overlapping segments and
+   * segments superseded by newer versions are resolved in a single deterministic pass over the segments in order of
+   * their starting index and descending version.
    *
    * @return A collection of segments for the log.
    */
@@ -416,12 +714,12 @@ public class SegmentManager implements AutoCloseable {
     // Ensure log directories are created.
     storage.directory().mkdirs();
 
-    TreeMap<Long, Segment> segments = new TreeMap<>();
+    List<SegmentDescriptor> descriptors = new ArrayList<>();
 
     // Iterate through all files in the log directory.
     for (File file : storage.directory().listFiles(File::isFile)) {
 
-      // If the file looks like a segment file, attempt to load the segment.
+      // If the file looks like a segment file, read the segment descriptor.
       if (SegmentFile.isSegmentFile(name, file)) {
         SegmentFile segmentFile = new SegmentFile(file);
         SegmentDescriptor descriptor = new SegmentDescriptor(FileBuffer.allocate(file, SegmentDescriptor.BYTES));
@@ -429,58 +727,7 @@ public class SegmentManager implements AutoCloseable {
         // Valid segments will have been locked. Segments that resulting from failures during log cleaning will be
         // unlocked and should ultimately be deleted from disk.
         if (descriptor.locked()) {
-
-          // Load the segment.
-          Segment segment = loadSegment(descriptor.id(), descriptor.version());
-
-          // If a segment with an equal or lower index has already been loaded, ensure this segment is not superseded
-          // by the earlier segment. This can occur due to segments being combined during log compaction.
-          Map.Entry<Long, Segment> previousEntry = segments.floorEntry(segment.index());
-          if (previousEntry != null) {
-
-            // If an existing descriptor exists with a lower index than this segment's first index, check to determine
-            // whether this segment's first index is contained in that existing index. If it is, determine which segment
-            // should take precedence based on segment versions.
-            Segment previousSegment = previousEntry.getValue();
-
-            // If the two segments start at the same index, the segment with the higher version number is used.
-            if (previousSegment.index() == segment.index()) {
-              if (segment.descriptor().version() > previousSegment.descriptor().version()) {
-                LOGGER.debug("Replaced segment {} with newer version: {} ({})", previousSegment.descriptor().id(), segment.descriptor().version(), segmentFile.file().getName());
-                segments.remove(previousEntry.getKey());
-                previousSegment.close();
-                previousSegment.delete();
-              } else {
-                segment.close();
-                segment.delete();
-                continue;
-              }
-            }
-            // If the existing segment's entries overlap with the loaded segment's entries, the existing segment always
-            // supersedes the loaded segment. Log compaction processes ensure this is always the case.
-            else if (previousSegment.index() + previousSegment.length() > segment.index()) {
-              segment.close();
-              segment.delete();
-              continue;
-            }
-          }
-
-          // Add the segment to the segments list.
-          LOGGER.debug("Found segment: {} ({})", segment.descriptor().id(), segmentFile.file().getName());
-          segments.put(segment.index(), segment);
-
-          // Ensure any segments later in the log with which this segment overlaps are removed.
-          Map.Entry<Long, Segment> nextEntry = segments.higherEntry(segment.index());
-          while (nextEntry != null) {
-            if (nextEntry.getValue().index() < segment.index() + segment.length()) {
-              segments.remove(nextEntry.getKey());
-              nextEntry = segments.higherEntry(segment.index());
-            } else {
-              break;
-            }
-          }
-
-          descriptor.close();
+          descriptors.add(descriptor);
         }
         // If the segment descriptor wasn't locked, close and delete the descriptor.
         else {
@@ -491,6 +738,54 @@ public class SegmentManager implements AutoCloseable {
       }
     }
 
+    // Load and index the segments in parallel. Sort the loaded segments by index and descending version to
+    // ensure overlapping segments are resolved deterministically regardless of the order in which files were listed.
+    List<Segment> loadedSegments = loadSegments(descriptors);
+    loadedSegments.sort((s1, s2) -> {
+      int compare = Long.compare(s1.index(), s2.index());
+      return compare != 0 ? compare : Long.compare(s2.descriptor().version(), s1.descriptor().version());
+    });
+
+    TreeMap<Long, Segment> segments = new TreeMap<>();
+
+    for (Segment segment : loadedSegments) {
+      // If a segment with an equal or lower index has already been loaded, ensure this segment is not superseded
+      // by the earlier segment. This can occur due to segments being combined during log compaction.
+      Map.Entry<Long, Segment> previousEntry = segments.floorEntry(segment.index());
+      if (previousEntry != null) {
+
+        // If an existing descriptor exists with a lower index than this segment's first index, check to determine
+        // whether this segment's first index is contained in that existing index. If it is, determine which segment
+        // should take precedence based on segment versions.
+        Segment previousSegment = previousEntry.getValue();
+
+        // If the two segments start at the same index, the segment with the higher version number is used.
+        if (previousSegment.index() == segment.index()) {
+          if (segment.descriptor().version() > previousSegment.descriptor().version()) {
+            LOGGER.debug("Replaced segment {} with newer version: {} ({})", previousSegment.descriptor().id(), segment.descriptor().version(), segment.file().file().getName());
+            segments.remove(previousEntry.getKey());
+            previousSegment.close();
+            previousSegment.delete();
+          } else {
+            segment.close();
+            segment.delete();
+            continue;
+          }
+        }
+        // If the existing segment's entries overlap with the loaded segment's entries, the existing segment always
+        // supersedes the loaded segment. Log compaction processes ensure this is always the case.
+        else if (previousSegment.index() + previousSegment.length() > segment.index()) {
+          segment.close();
+          segment.delete();
+          continue;
+        }
+      }
+
+      // Add the segment to the segments list.
+      LOGGER.debug("Found segment: {} ({})", segment.descriptor().id(), segment.file().file().getName());
+      segments.put(segment.index(), segment);
+    }
+
     for (Long segmentId : segments.keySet()) {
       Segment segment = segments.get(segmentId);
       Map.Entry<Long, Segment> previousEntry = segments.floorEntry(segmentId - 1);
@@ -505,13 +800,94 @@ public class SegmentManager implements AutoCloseable {
     return segments.values();
   }
 
+  /**
+   * Loads the segments for the given descriptors in parallel, closing each descriptor once its segment is loaded.
+   *
+   * @param descriptors The descriptors of the segments to load.
+   * @return A list of loaded segments.
+   */
+  private List<Segment> loadSegments(List<SegmentDescriptor> descriptors) {
+    List<Segment> segments = new ArrayList<>(descriptors.size());
+    if (descriptors.isEmpty()) {
+      return segments;
+    }
+
+    int threads = Math.min(descriptors.size(), Runtime.getRuntime().availableProcessors());
+    ExecutorService executor = Executors.newFixedThreadPool(threads, new CatalystThreadFactory("copycat-segment-loader-%d"));
+    try {
+      List<Future<Segment>> futures = new ArrayList<>(descriptors.size());
+      for (SegmentDescriptor descriptor : descriptors) {
+        futures.add(executor.submit(() -> {
+          try {
+            return loadSegment(descriptor.id(), descriptor.version());
+          } finally {
+            descriptor.close();
+          }
+        }));
+      }
+
+      StorageException exception = null;
+      for (Future<Segment> future : futures) {
+        try {
+          segments.add(future.get());
+        } catch (ExecutionException e) {
+          if (exception == null) {
+            exception = new StorageException("failed to load segment", e.getCause());
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          if (exception == null) {
+            exception = new StorageException("interrupted while loading segments", e);
+          }
+        }
+      }
+
+      // If any segment failed to load, close the segments that were loaded and fail.
+      if (exception != null) {
+        segments.forEach(Segment::close);
+        throw exception;
+      }
+      return segments;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
   @Override
   public void close() {
-    segments.values().forEach(s -> {
-      LOGGER.trace("Closing segment: {}", s.descriptor().id());
-      s.close();
-    });
-    currentSegment = null;
+    try {
+      awaitSealed();
+    } finally {
+      // Discard the preallocated segment and stop the background thread.
+      synchronized (this) {
+        if (mapFuture != null) {
+          mapFuture.cancel(false);
+          mapFuture = null;
+        }
+        if (preallocateFuture != null) {
+          try {
+            preallocateFuture.join().discard();
+          } catch (CompletionException e) {
+            LOGGER.warn("Failed to preallocate segment", e.getCause());
+          }
+          preallocateFuture = null;
+        }
+      }
+      // Wait for segments being mapped in the background before closing them.
+      executor.shutdown();
+      try {
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+
+      segments.values().forEach(s -> {
+        LOGGER.trace("Closing segment: {}", s.descriptor().id());
+        s.persistIndex();
+        s.close();
+      });
+      currentSegment = null;
+    }
   }
 
   @Override
@@ -519,4 +895,71 @@ public class SegmentManager implements AutoCloseable {
     return String.format("%s[directory=%s, segments=%d]", getClass().getSimpleName(), storage.directory(), segments.size());
   }
 
+  /**
+   * Segment buffers allocated ahead of rollover.
+   * <p>
+   * The segment file is created, sized to the expected size of the segment, and zero-filled, and the segment index
+   * buffer is allocated before the segment is needed, so appends to the segment don't grow the file until the segment
+   * is nearly full. Memory segments have no file to grow and are allocated with the default initial capacity like
+   * other memory segments. Because the segment's first index is not known until the log rolls over, the segment descriptor is
+   * written to the buffer only once the segment is {@link #create(SegmentDescriptor) created}. If the process crashes
+   * before then, the preallocated file's descriptor will not be locked, and the file will be deleted when the log is
+   * next opened.
+   */
+  private final class PreallocatedSegment {
+    private final long id;
+    private final File file;
+    private final Buffer buffer;
+    private final OffsetIndex index;
+    private final Serializer serializer;
+
+    private PreallocatedSegment(long id, int size) {
+      this.id = id;
+      this.file = SegmentFile.createSegmentFile(name, storage.directory(), id, 1);
+      switch (storage.level()) {
+        case MEMORY:
+          this.buffer = HeapBuffer.allocate(Math.min(DEFAULT_BUFFER_SIZE, storage.maxSegmentSize()), Integer.MAX_VALUE);
+          break;
+        case MAPPED:
+          deleteIndexFile(id, 1);
+          this.buffer = MappedBuffer.allocate(file, size, Integer.MAX_VALUE);
+          break;
+        case DISK:
+        case HYBRID:
+          deleteIndexFile(id, 1);
+          this.buffer = FileBuffer.allocate(file, size, Integer.MAX_VALUE);
+          break;
+        default:
+          throw new AssertionError();
+      }
+      buffer.zero();
+      this.index = createIndex(storage.maxEntriesPerSegment());
+      this.serializer = SegmentManager.this.serializer.clone();
+    }
+
+    /**
+     * Writes the given descriptor to the preallocated buffer and creates the segment.
+     */
+    private Segment create(SegmentDescriptor descriptor) {
+      descriptor.copyTo(buffer);
+      Segment segment = new Segment(new SegmentFile(file), buffer.slice(), descriptor, index, new OffsetPredicate(), serializer, SegmentManager.this);
+      LOGGER.debug("Created preallocated segment: {}", segment);
+      return segment;
+    }
+
+    /**
+     * Closes and deletes the preallocated buffers.
+     */
+    private void discard() {
+      index.close();
+      if (buffer instanceof FileBuffer) {
+        ((FileBuffer) buffer).delete();
+      } else if (buffer instanceof MappedBuffer) {
+        ((MappedBuffer) buffer).delete();
+      } else {
+        buffer.close();
+      }
+    }
+  }
+
 }
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.catalyst.buffer.HeapBuffer;
+import io.atomix.catalyst.serializer.Serializer;
+import io.atomix.catalyst.util.Assert;
+import io.atomix.copycat.server.storage.compaction.Compaction;
+import io.atomix.copycat.server.storage.entry.Entry;
+
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+/**
+ * Reads entries from the {@link Segment}s of a {@link Log}.
+ * <p>
+ * Each reader holds its own scratch buffer, checksum, and serializer. Rather than synchronizing on state shared by
+ * all readers of a segment, entries are read into the reader's scratch buffer and deserialized with the reader's
+ * serializer, so any number of readers can read from the log concurrently with one another and with the writer.
+ * Segments are located via the {@link SegmentManager}'s copy-on-write segment table without acquiring any locks.
+ * <pre>
+ *   {@code
+ *   try (SegmentReader reader = log.reader()) {
+ *     try (Entry entry = reader.get(index)) {
+ *       ...
+ *     }
+ *   }
+ *   }
+ * </pre>
+ * Readers are not thread safe. Each thread that reads from the log should create its own reader.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public class SegmentReader implements AutoCloseable {
+  private final SegmentManager segments;
+  final Serializer serializer;
+  final HeapBuffer memory = HeapBuffer.allocate();
+  final HeapBuffer header = HeapBuffer.allocate(Segment.MAX_HEADER_LENGTH);
+  final Checksum checksum = new CRC32();
+  final HeapBuffer readAheadBuffer;
+  int entryLength;
+  long entryChecksum;
+  long entryOffset;
+  boolean entryHasTerm;
+  long headerTerm;
+  Compaction.Mode entryMode;
+  int entryType;
+  long entryIndex;
+  long entryTerm;
+  long position = -1;
+  Segment readAheadSegment;
+  long readAheadPosition;
+  long readAheadLimit;
+
+  SegmentReader(SegmentManager segments, Serializer serializer) {
+    this(segments, serializer, 0);
+  }
+
+  /**
+   * @param readAheadSize The number of bytes to read ahead from file segments, or {@code 0} to disable read-ahead.
+   */
+  SegmentReader(SegmentManager segments, Serializer serializer, int readAheadSize) {
+    this.segments = Assert.notNull(segments, "segments");
+    this.serializer = Assert.notNull(serializer, "serializer");
+    this.readAheadBuffer = readAheadSize > 0 ? HeapBuffer.allocate(readAheadSize) : null;
+  }
+
+  /**
+   * Reads the entry at the given index.
+   * <p>
+   * Unlike {@link Log#get(long)}, this method does not filter entries according to their compaction mode. If the
+   * entry at the given index has been physically removed from its segment, {@code null} will be returned.
+   *
+   * @param index The index of the entry to read.
+   * @return The entry at the given index or {@code null} if the entry doesn't exist.
+   * @throws IndexOutOfBoundsException If the given index is not within the bounds of the log.
+   */
+  public <T extends Entry> T get(long index) {
+    Segment segment = segments.segment(index);
+    Assert.index(segment != null, "invalid index: " + index);
+    return segment.get(index, this);
+  }
+
+  @Override
+  public void close() {
+    memory.close();
+    header.close();
+    if (readAheadBuffer != null) {
+      readAheadBuffer.close();
+    }
+    readAheadSegment = null;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[segments=%s]", getClass().getSimpleName(), segments);
+  }
+
+}
@@ -17,6 +17,8 @@ package io.atomix.copycat.server.storage;
 
 import io.atomix.catalyst.util.Assert;
 import io.atomix.catalyst.concurrent.ThreadContext;
+import io.atomix.copycat.server.storage.compression.Codec;
+import io.atomix.copycat.server.storage.compression.Lz4Codec;
 import io.atomix.copycat.server.storage.snapshot.SnapshotFile;
 import io.atomix.copycat.server.storage.snapshot.SnapshotStore;
 import io.atomix.copycat.server.storage.system.MetaStore;
@@ -64,24 +66,39 @@ public class Storage {
   private static final int DEFAULT_MAX_SEGMENT_SIZE = 1024 * 1024 * 32;
   private static final int DEFAULT_MAX_ENTRIES_PER_SEGMENT = 1024 * 1024;
   private static final int DEFAULT_ENTRY_BUFFER_SIZE = 1024;
+  private static final long DEFAULT_ENTRY_CACHE_SIZE = 1024 * 1024 * 16;
   private static final boolean DEFAULT_FLUSH_ON_COMMIT = false;
+  private static final boolean DEFAULT_GROUP_COMMIT = false;
+  private static final Duration DEFAULT_GROUP_COMMIT_INTERVAL = Duration.ofMillis(2);
+  private static final int DEFAULT_GROUP_COMMIT_SIZE = 1024;
+  private static final Duration DEFAULT_MAPPED_SEGMENT_AGE = Duration.ofMinutes(10);
   private static final boolean DEFAULT_RETAIN_STALE_SNAPSHOTS = false;
+  private static final int DEFAULT_MAX_SNAPSHOT_DELTAS = 8;
   private static final int DEFAULT_COMPACTION_THREADS = max(1, Runtime.getRuntime().availableProcessors() / 2);
   private static final Duration DEFAULT_MINOR_COMPACTION_INTERVAL = Duration.ofMinutes(1);
   private static final Duration DEFAULT_MAJOR_COMPACTION_INTERVAL = Duration.ofHours(1);
   private static final double DEFAULT_COMPACTION_THRESHOLD = 0.5;
+  private static final long DEFAULT_COMPACTION_RATE_LIMIT = 0;
 
   private StorageLevel storageLevel = StorageLevel.DISK;
   private File directory = new File(DEFAULT_DIRECTORY);
   private int maxSegmentSize = DEFAULT_MAX_SEGMENT_SIZE;
   private int maxEntriesPerSegment = DEFAULT_MAX_ENTRIES_PER_SEGMENT;
   private int entryBufferSize = DEFAULT_ENTRY_BUFFER_SIZE;
+  private long entryCacheSize = DEFAULT_ENTRY_CACHE_SIZE;
   private boolean flushOnCommit = DEFAULT_FLUSH_ON_COMMIT;
+  private boolean groupCommit = DEFAULT_GROUP_COMMIT;
+  private Duration groupCommitInterval = DEFAULT_GROUP_COMMIT_INTERVAL;
+  private int groupCommitSize = DEFAULT_GROUP_COMMIT_SIZE;
+  private Duration mappedSegmentAge = DEFAULT_MAPPED_SEGMENT_AGE;
   private boolean retainStaleSnapshots = DEFAULT_RETAIN_STALE_SNAPSHOTS;
+  private int maxSnapshotDeltas = DEFAULT_MAX_SNAPSHOT_DELTAS;
+  private Codec snapshotCodec;
   private int compactionThreads = DEFAULT_COMPACTION_THREADS;
   private Duration minorCompactionInterval = DEFAULT_MINOR_COMPACTION_INTERVAL;
   private Duration majorCompactionInterval = DEFAULT_MAJOR_COMPACTION_INTERVAL;
   private double compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+  private long compactionRateLimit = DEFAULT_COMPACTION_RATE_LIMIT;
 
   public Storage() {
   }
@@ -174,11 +191,26 @@ public class Storage {
    * at the tail of the log.
    *
    * @return The entry buffer size.
+   * @deprecated The entry buffer has been replaced by a size bounded entry cache. See {@link #entryCacheSize()}.
    */
+  @Deprecated
   public int entryBufferSize() {
     return entryBufferSize;
   }
 
+  /**
+   * Returns the entry cache size.
+   * <p>
+   * The entry cache size dictates the maximum total size in bytes of serialized entries that will be held in
+   * memory for read operations. Recently appended and recently read entries are cached, and the least recently
+   * used entries are evicted once the cache exceeds its maximum size.
+   *
+   * @return The entry cache size in bytes.
+   */
+  public long entryCacheSize() {
+    return entryCacheSize;
+  }
+
   /**
    *
    * Returns whether to flush buffers to disk when entries are committed.
@@ -189,6 +221,57 @@ public class Storage {
     return flushOnCommit;
   }
 
+  /**
+   * Returns whether group commit is enabled.
+   * <p>
+   * When group commit is enabled, entries appended to the {@link Log} are not considered durable until a
+   * {@link Log#sync(long) sync} covering the entry's index has completed. Syncs are batched so that a single
+   * flush of the current {@link Segment} is performed for all entries appended within a batch window.
+   *
+   * @return Whether group commit is enabled.
+   */
+  public boolean groupCommit() {
+    return groupCommit;
+  }
+
+  /**
+   * Returns the group commit interval.
+   * <p>
+   * The group commit interval is the maximum amount of time a pending {@link Log#sync(long) sync} will wait
+   * for additional entries before the log is flushed to disk.
+   *
+   * @return The group commit interval.
+   */
+  public Duration groupCommitInterval() {
+    return groupCommitInterval;
+  }
+
+  /**
+   * Returns the group commit size.
+   * <p>
+   * The group commit size is the maximum number of entries that may be appended to the log between flushes
+   * when group commit is enabled. Once the number of unflushed entries reaches the group commit size, the log
+   * will be flushed regardless of the {@link #groupCommitInterval()}.
+   *
+   * @return The maximum number of entries to append between flushes.
+   */
+  public int groupCommitSize() {
+    return groupCommitSize;
+  }
+
+  /**
+   * Returns the maximum age of memory mapped segments.
+   * <p>
+   * When the {@link StorageLevel#HYBRID HYBRID} storage level is used, sealed segments are mapped into memory
+   * until they have not been written for longer than the mapped segment age, after which they are unmapped
+   * and read from disk.
+   *
+   * @return The maximum age of memory mapped segments.
+   */
+  public Duration mappedSegmentAge() {
+    return mappedSegmentAge;
+  }
+
   /**
    * Returns a boolean value indicating whether to retain stale snapshots on disk.
    * <p>
@@ -202,6 +285,30 @@ public class Storage {
     return retainStaleSnapshots;
   }
 
+  /**
+   * Returns the maximum number of delta snapshots to chain to a full snapshot.
+   * <p>
+   * Delta snapshots store only the state that changed since the prior snapshot. Once the number of deltas
+   * chained to a full snapshot exceeds this limit, the chain will be merged into a new full snapshot in the
+   * background.
+   *
+   * @return The maximum number of delta snapshots to chain to a full snapshot.
+   */
+  public int maxSnapshotDeltas() {
+    return maxSnapshotDeltas;
+  }
+
+  /**
+   * Returns the codec with which to compress snapshots.
+   * <p>
+   * If no codec is configured, snapshots are stored uncompressed.
+   *
+   * @return The snapshot codec or {@code null} if snapshots are not compressed.
+   */
+  public Codec snapshotCodec() {
+    return snapshotCodec;
+  }
+
   /**
    * Returns the number of log compaction threads.
    * <p>
@@ -252,6 +359,19 @@ public class Storage {
     return compactionThreshold;
   }
 
+  /**
+   * Returns the compaction rate limit.
+   * <p>
+   * The compaction rate limit is the maximum number of bytes per second that the
+   * {@link io.atomix.copycat.server.storage.compaction.Compactor} will read and write while rewriting segments.
+   * A rate limit of {@code 0} indicates that compaction I/O is not limited.
+   *
+   * @return The compaction rate limit in bytes per second.
+   */
+  public long compactionRateLimit() {
+    return compactionRateLimit;
+  }
+
   /**
    * Opens a new {@link MetaStore}, recovering metadata from disk if it exists.
    * <p>
@@ -330,7 +450,7 @@ public class Storage {
    */
   public void deleteLog(String name) {
     StorageCleaner cleaner = new StorageCleaner(this);
-    cleaner.cleanFiles(f -> SegmentFile.isSegmentFile(name, f));
+    cleaner.cleanFiles(f -> SegmentFile.isSegmentFile(name, f) || SegmentFile.isIndexFile(name, f));
   }
 
   @Override
@@ -454,12 +574,34 @@ public class Storage {
      * @param entryBufferSize The entry buffer size.
      * @return The storage builder.
      * @throws IllegalArgumentException if the buffer size is not positive
+     * @deprecated The entry buffer has been replaced by a size bounded entry cache. Use
+     * {@link #withEntryCacheSize(long)} instead.
      */
+    @Deprecated
     public Builder withEntryBufferSize(int entryBufferSize) {
       storage.entryBufferSize = Assert.arg(entryBufferSize, entryBufferSize > 0, "entryBufferSize must be positive");
       return this;
     }
 
+    /**
+     * Sets the entry cache size, returning the builder for method chaining.
+     * <p>
+     * The entry cache size dictates the maximum total size in bytes of serialized entries to hold in memory.
+     * Recently appended and recently read entries are cached, and the least recently used entries are evicted
+     * once the cache exceeds its maximum size. Increasing the cache size implies greater memory consumption, but
+     * server performance may be improved due to reduced disk access, particularly when replicating entries to
+     * followers at different points in the log. Setting the cache size to {@code 0} disables the cache. By default,
+     * the entry cache size is {@code 16MB}.
+     *
+     * @param entryCacheSize The entry cache size in bytes.
+     * @return The storage builder.
+     * @throws IllegalArgumentException if the cache size is negative
+     */
+    public Builder withEntryCacheSize(long entryCacheSize) {
+      storage.entryCacheSize = Assert.arg(entryCacheSize, entryCacheSize >= 0, "entryCacheSize cannot be negative");
+      return this;
+    }
+
     /**
      * Enables flushing buffers to disk when entries are committed to a segment, returning the builder
      * for method chaining.
@@ -488,6 +630,89 @@ public class Storage {
       return this;
     }
 
+    /**
+     * Enables group commit, returning the builder for method chaining.
+     * <p>
+     * When group commit is enabled, appended entries are flushed to disk in batches. Callers that require
+     * durability must wait for the future returned by {@link Log#sync(long)} to be completed, and the log
+     * will flush entries once per {@link #withGroupCommitInterval(Duration) interval} or once the configured
+     * {@link #withGroupCommitSize(int) number of entries} has been appended, whichever comes first.
+     *
+     * @return The storage builder.
+     */
+    public Builder withGroupCommit() {
+      return withGroupCommit(true);
+    }
+
+    /**
+     * Sets whether to enable group commit, returning the builder for method chaining.
+     * <p>
+     * When group commit is enabled, appended entries are flushed to disk in batches. Callers that require
+     * durability must wait for the future returned by {@link Log#sync(long)} to be completed, and the log
+     * will flush entries once per {@link #withGroupCommitInterval(Duration) interval} or once the configured
+     * {@link #withGroupCommitSize(int) number of entries} has been appended, whichever comes first.
+     *
+     * @param groupCommit Whether to enable group commit.
+     * @return The storage builder.
+     */
+    public Builder withGroupCommit(boolean groupCommit) {
+      storage.groupCommit = groupCommit;
+      return this;
+    }
+
+    /**
+     * Sets the group commit interval, returning the builder for method chaining.
+     * <p>
+     * The group commit interval is the maximum amount of time a pending {@link Log#sync(long) sync} will wait
+     * for additional entries before the log is flushed to disk. Larger intervals result in fewer flushes at the
+     * cost of commit latency. By default, the group commit interval is {@code 2} milliseconds.
+     *
+     * @param interval The group commit interval.
+     * @return The storage builder.
+     * @throws NullPointerException if the interval is null
+     * @throws IllegalArgumentException if the interval is negative
+     */
+    public Builder withGroupCommitInterval(Duration interval) {
+      Assert.argNot(Assert.notNull(interval, "interval").isNegative(), "interval cannot be negative");
+      storage.groupCommitInterval = interval;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of entries to append between group commit flushes, returning the builder for
+     * method chaining.
+     * <p>
+     * Once the number of entries appended since the last flush reaches the group commit size, the log will be
+     * flushed immediately rather than waiting for the {@link #withGroupCommitInterval(Duration) group commit interval}
+     * to expire. By default, the group commit size is {@code 1024}.
+     *
+     * @param groupCommitSize The maximum number of entries to append between flushes.
+     * @return The storage builder.
+     * @throws IllegalArgumentException if the size is not positive
+     */
+    public Builder withGroupCommitSize(int groupCommitSize) {
+      storage.groupCommitSize = Assert.arg(groupCommitSize, groupCommitSize > 0, "groupCommitSize must be positive");
+      return this;
+    }
+
+    /**
+     * Sets the maximum age of memory mapped segments, returning the builder for method chaining.
+     * <p>
+     * When the {@link StorageLevel#HYBRID HYBRID} storage level is used, sealed segments are mapped into memory
+     * until they have not been written for longer than the mapped segment age, after which they are unmapped
+     * and read from disk. By default, the mapped segment age is {@code 10} minutes.
+     *
+     * @param age The maximum age of memory mapped segments.
+     * @return The storage builder.
+     * @throws NullPointerException if the age is null
+     * @throws IllegalArgumentException if the age is negative
+     */
+    public Builder withMappedSegmentAge(Duration age) {
+      Assert.argNot(Assert.notNull(age, "age").isNegative(), "age cannot be negative");
+      storage.mappedSegmentAge = age;
+      return this;
+    }
+
     /**
      * Enables retaining stale snapshots on disk, returning the builder for method chaining.
      * <p>
@@ -520,6 +745,48 @@ public class Storage {
       return this;
     }
 
+    /**
+     * Sets the maximum number of delta snapshots to chain to a full snapshot, returning the builder for method chaining.
+     * <p>
+     * State machines that implement {@link io.atomix.copycat.server.DeltaSnapshottable} write only the state that
+     * changed since the prior snapshot. Restoring state from a delta requires reading the full snapshot and every
+     * delta chained to it, so once the number of chained deltas exceeds this limit, the snapshot store merges the
+     * chain into a new full snapshot in the background. By default, up to {@code 8} deltas will be chained.
+     *
+     * @param maxSnapshotDeltas The maximum number of delta snapshots to chain to a full snapshot.
+     * @return The storage builder.
+     * @throws IllegalArgumentException if the maximum number of deltas is negative
+     */
+    public Builder withMaxSnapshotDeltas(int maxSnapshotDeltas) {
+      storage.maxSnapshotDeltas = Assert.argNot(maxSnapshotDeltas, maxSnapshotDeltas < 0, "maxSnapshotDeltas cannot be negative");
+      return this;
+    }
+
+    /**
+     * Enables snapshot compression with the default {@link Lz4Codec LZ4} codec, returning the builder for method chaining.
+     *
+     * @return The storage builder.
+     */
+    public Builder withSnapshotCompression() {
+      return withSnapshotCodec(new Lz4Codec());
+    }
+
+    /**
+     * Sets the codec with which to compress snapshots, returning the builder for method chaining.
+     * <p>
+     * Snapshots are written in blocks, and each block is compressed independently with the given codec. Compressed
+     * snapshots are replicated to other servers in their compressed form. By default, snapshots are not compressed.
+     *
+     * @param snapshotCodec The snapshot codec, or {@code null} to disable snapshot compression.
+     * @return The storage builder.
+     * @throws IllegalArgumentException if the codec's {@link Codec#id() identifier} is not between {@code 1} and {@code 255}
+     */
+    public Builder withSnapshotCodec(Codec snapshotCodec) {
+      Assert.arg(snapshotCodec == null || (snapshotCodec.id() > 0 && snapshotCodec.id() <= 255), "codec id must be between 1 and 255");
+      storage.snapshotCodec = snapshotCodec;
+      return this;
+    }
+
     /**
      * Sets the number of log compaction threads, returning the builder for method chaining.
      * <p>
@@ -598,6 +865,23 @@ public class Storage {
       return this;
     }
 
+    /**
+     * Sets the compaction rate limit, returning the builder for method chaining.
+     * <p>
+     * The compaction rate limit bounds the number of bytes per second read and written by all compaction tasks
+     * combined. Limiting compaction I/O prevents compaction from saturating the disk and delaying writes to the log.
+     * By default, the rate limit is {@code 0} and compaction I/O is not limited.
+     *
+     * @param bytesPerSecond The maximum number of bytes per second to read and write during compaction, or {@code 0}
+     *                       to disable rate limiting.
+     * @return The storage builder.
+     * @throws IllegalArgumentException if the rate limit is negative
+     */
+    public Builder withCompactionRateLimit(long bytesPerSecond) {
+      storage.compactionRateLimit = Assert.argNot(bytesPerSecond, bytesPerSecond < 0, "bytesPerSecond cannot be negative");
+      return this;
+    }
+
     /**
      * Builds the {@link Storage} object.
      *
@@ -59,6 +59,19 @@ public enum StorageLevel {
    * event of a failure or other restart. Additionally, the use of persistent storage levels reduces the amount of overhead
    * required to catch the log up at startup.
    */
-  DISK
+  DISK,
+
+  /**
+   * Stores logs on disk with recently sealed segments mapped into memory.
+   * <p>
+   * Hybrid logs write the current segment to disk through a {@link io.atomix.catalyst.buffer.FileBuffer} as with
+   * {@link #DISK} storage. Once a segment is full and has been flushed to disk, the segment is remapped read-only
+   * via a {@link io.atomix.catalyst.buffer.MappedBuffer}, and reads from the segment are served from memory without
+   * locking. Segments that have not been written for longer than the configured
+   * {@link Storage#mappedSegmentAge() mapped segment age} are unmapped and read from disk. Hybrid storage provides
+   * the durability of {@code DISK} storage and the read latency of {@link #MAPPED} storage for recent entries
+   * without mapping the entire log into memory.
+   */
+  HYBRID
 
 }
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage.compaction;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Limits the disk bandwidth used by compaction tasks.
+ * <p>
+ * The throttle is shared by all {@link CompactionTask}s run by a {@link Compactor}. Tasks {@link #acquire(long) acquire}
+ * permits for the bytes they read and write from a token bucket that is refilled at the configured rate, with a burst
+ * capacity of one second's worth of bytes. Additionally, the throttle tracks the latency of appends to the log as
+ * reported by the server. While the average append latency exceeds the configured threshold, tasks are paused until
+ * either latency drops or the server stops reporting latencies.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+final class CompactionThrottle {
+  private static final long BACKOFF_INTERVAL = TimeUnit.MILLISECONDS.toNanos(50);
+  private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+  private static final long LATENCY_EXPIRATION = TimeUnit.SECONDS.toNanos(1);
+  private final long bytesPerSecond;
+  private long available;
+  private long refillTime;
+  private volatile long latencyThreshold;
+  private volatile long appendLatency;
+  private volatile long appendTime;
+
+  /**
+   * @param bytesPerSecond The maximum number of bytes to read and write per second, or {@code 0} for no limit.
+   */
+  CompactionThrottle(long bytesPerSecond) {
+    this.bytesPerSecond = bytesPerSecond;
+    this.available = bytesPerSecond;
+    this.refillTime = System.nanoTime();
+  }
+
+  /**
+   * Sets the append latency above which compaction backs off.
+   *
+   * @param threshold The append latency threshold in nanoseconds, or {@code 0} to disable backoff.
+   */
+  void latencyThreshold(long threshold) {
+    this.latencyThreshold = threshold;
+  }
+
+  /**
+   * Records the latency of an append to the log.
+   * <p>
+   * Latencies are averaged with an exponentially weighted moving average. This method is expected to be called
+   * from a single thread.
+   *
+   * @param latency The append latency in nanoseconds.
+   */
+  void recordAppendLatency(long latency) {
+    long average = appendLatency;
+    appendLatency = average == 0 ? latency : average - (average >> 3) + (latency >> 3);
+    appendTime = System.nanoTime();
+  }
+
+  /**
+   * Returns a boolean indicating whether compaction should back off.
+   * <p>
+   * Compaction backs off while the average append latency exceeds the latency threshold. Latencies that have not
+   * been updated recently are ignored to prevent compaction from stalling once the log becomes idle.
+   *
+   * @return Indicates whether compaction should back off.
+   */
+  boolean isBackedOff() {
+    long threshold = latencyThreshold;
+    return threshold > 0 && appendLatency > threshold && System.nanoTime() - appendTime < LATENCY_EXPIRATION;
+  }
+
+  /**
+   * Acquires permits to read or write the given number of bytes, blocking until the bytes can be transferred.
+   * <p>
+   * If the calling thread is interrupted while waiting, the interrupt flag is preserved and this method returns.
+   *
+   * @param bytes The number of bytes to transfer.
+   */
+  void acquire(long bytes) {
+    while (isBackedOff()) {
+      if (!park(BACKOFF_INTERVAL)) {
+        return;
+      }
+    }
+
+    if (bytesPerSecond > 0) {
+      park(reserve(bytes));
+    }
+  }
+
+  /**
+   * Reserves the given number of bytes, returning the number of nanoseconds to wait before transferring them.
+   * <p>
+   * Reservations may exceed the bytes available in the bucket, in which case subsequent reservations wait for the
+   * bucket to be refilled. This allows entries larger than the bucket capacity to be transferred.
+   */
+  private synchronized long reserve(long bytes) {
+    long time = System.nanoTime();
+    long elapsed = Math.min(time - refillTime, TimeUnit.SECONDS.toNanos(1));
+    refillTime = time;
+    available = Math.min(bytesPerSecond, available + (long) (elapsed * (double) bytesPerSecond / NANOS_PER_SECOND));
+    available -= bytes;
+    return available < 0 ? (long) (-available * NANOS_PER_SECOND / bytesPerSecond) : 0;
+  }
+
+  /**
+   * Parks the current thread for the given number of nanoseconds.
+   *
+   * @return Indicates whether the thread was parked without being interrupted.
+   */
+  private static boolean park(long nanos) {
+    long deadline = System.nanoTime() + nanos;
+    long remaining = nanos;
+    while (remaining > 0) {
+      LockSupport.parkNanos(remaining);
+      if (Thread.currentThread().isInterrupted()) {
+        return false;
+      }
+      remaining = deadline - System.nanoTime();
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[bytesPerSecond=%d]", getClass().getSimpleName(), bytesPerSecond);
+  }
+
+}
@@ -24,7 +24,10 @@ import io.atomix.copycat.server.storage.Storage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -38,14 +41,25 @@ import java.util.concurrent.atomic.AtomicInteger;
  * The compactor is responsible for managing log compaction processes. Log {@link Compaction} processes
  * are run in a pool of background threads of the configured number of {@link Storage#compactionThreads()}.
  * {@link Compaction#MINOR} and {@link Compaction#MAJOR} executions are scheduled according to the configured
- * {@link Storage#minorCompactionInterval()} and {@link Storage#majorCompactionInterval()} respectively.
+ * {@link Storage#minorCompactionInterval()} and {@link Storage#majorCompactionInterval()} respectively. Additionally,
+ * at each minor compaction interval the compactor estimates the number of bytes that can be reclaimed from the log
+ * based on the number of entries {@link Segment#releaseCount() released} from each segment. If the reclaimable bytes
+ * exceed the {@link Storage#maxSegmentSize()} and the {@link Storage#compactionThreshold()} of the log's disk usage,
+ * a major compaction is run early.
+ * <p>
+ * Compaction I/O is limited to the configured {@link Storage#compactionRateLimit()}. The server reports the latency
+ * of appends to the log via {@link #recordAppendLatency(long)}, and while the average append latency exceeds the
+ * {@link #withAppendLatencyThreshold(Duration) append latency threshold}, running compaction tasks are paused and
+ * scheduled compactions are deferred.
  * Compaction can also be run synchronously via {@link Compactor#compact()} or {@link Compactor#compact(Compaction)}.
  * <p>
  * When a {@link Compaction} is executed either synchronously or asynchronously, the compaction's associated
  * {@link CompactionManager} is called to build a list of {@link CompactionTask}s to run. Compaction tasks
- * are run in parallel in the compaction thread pool. However, the compactor will not allow multiple compaction
- * executions to run in parallel. If a compaction is attempted while another compaction is already running,
- * it will be ignored.
+ * are run in parallel in the compaction thread pool. However, because minor and major compaction may select the
+ * same segments, the compactor will not allow multiple compaction executions to run in parallel. If a compaction
+ * is attempted while another compaction is already running, it will be queued to run once the running compaction
+ * completes. If a compaction of the same type is already queued, the queued compaction will be shared rather than
+ * queueing another execution.
  *
  * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
  */
@@ -54,6 +68,7 @@ public class Compactor implements AutoCloseable {
   private final Storage storage;
   private final SegmentManager segments;
   private final ScheduledExecutorService executor;
+  private final CompactionThrottle throttle;
   private long minorIndex;
   private long majorIndex;
   private long snapshotIndex;
@@ -61,14 +76,53 @@ public class Compactor implements AutoCloseable {
   private Compaction.Mode defaultCompactionMode = Compaction.Mode.SEQUENTIAL;
   private ScheduledFuture<?> minor;
   private ScheduledFuture<?> major;
+  private volatile boolean majorDeferred;
+  private final Map<Compaction, CompletableFuture<Void>> pending = new EnumMap<>(Compaction.class);
   private CompletableFuture<Void> future = CompletableFuture.completedFuture(null);
 
   public Compactor(Storage storage, SegmentManager segments, ScheduledExecutorService executor) {
     this.storage = Assert.notNull(storage, "storage");
     this.segments = Assert.notNull(segments, "segments");
     this.executor = Assert.notNull(executor, "executor");
-    minor = executor.scheduleAtFixedRate(() -> compact(Compaction.MINOR), storage.minorCompactionInterval().toMillis(), storage.minorCompactionInterval().toMillis(), TimeUnit.MILLISECONDS);
-    major = executor.scheduleAtFixedRate(() -> compact(Compaction.MAJOR), storage.majorCompactionInterval().toMillis(), storage.majorCompactionInterval().toMillis(), TimeUnit.MILLISECONDS);
+    this.throttle = new CompactionThrottle(storage.compactionRateLimit());
+    minor = executor.scheduleAtFixedRate(this::scheduleMinor, storage.minorCompactionInterval().toMillis(), storage.minorCompactionInterval().toMillis(), TimeUnit.MILLISECONDS);
+    major = executor.scheduleAtFixedRate(this::scheduleMajor, storage.majorCompactionInterval().toMillis(), storage.majorCompactionInterval().toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Sets the append latency above which compaction backs off.
+   * <p>
+   * While the average latency {@link #recordAppendLatency(long) reported} for appends to the log exceeds the given
+   * threshold, running compaction tasks will be paused and scheduled compactions will be deferred.
+   *
+   * @param threshold The append latency threshold.
+   * @return The compactor.
+   * @throws NullPointerException if the threshold is {@code null}
+   */
+  public Compactor withAppendLatencyThreshold(Duration threshold) {
+    Assert.notNull(threshold, "threshold");
+    throttle.latencyThreshold(threshold.toNanos());
+    return this;
+  }
+
+  /**
+   * Records the latency of an append to the log.
+   * <p>
+   * This method should be called by the thread that appends entries to the log.
+   *
+   * @param latency The append latency in nanoseconds.
+   * @return The compactor.
+   */
+  public Compactor recordAppendLatency(long latency) {
+    throttle.recordAppendLatency(latency);
+    return this;
+  }
+
+  /**
+   * Returns the throttle shared by compaction tasks.
+   */
+  CompactionThrottle throttle() {
+    return throttle;
   }
 
   /**
@@ -188,17 +242,37 @@ public class Compactor implements AutoCloseable {
    * @return A completable future to be completed once the log has been compacted.
    */
   public synchronized CompletableFuture<Void> compact(Compaction compaction) {
+    // If a compaction of the same type is already waiting to run, share it rather than queueing another execution.
+    CompletableFuture<Void> compactFuture = pending.get(compaction);
+    if (compactFuture == null) {
+      CompletableFuture<Void> nextFuture = new CompletableFuture<>();
+      pending.put(compaction, nextFuture);
+      this.future.whenComplete((result, error) -> compact(compaction, nextFuture));
+      this.future = nextFuture;
+      compactFuture = nextFuture;
+    }
+
+    // Executions are chained on the compaction thread pool. Complete the returned future on the caller's context
+    // so that the next execution does not wait on the caller's thread.
     final CompletableFuture<Void> future = new CompletableFuture<>();
     ThreadContext context = ThreadContext.currentContext();
-    this.future.whenComplete((result, error) -> compact(compaction, future, context));
-    this.future = future;
-    return this.future;
+    compactFuture.whenComplete((result, error) -> {
+      if (context != null) {
+        context.executor().execute(() -> future.complete(null));
+      } else {
+        future.complete(null);
+      }
+    });
+    return future;
   }
 
   /**
    * Compacts the log.
    */
-  private synchronized CompletableFuture<Void> compact(Compaction compaction, CompletableFuture<Void> future, ThreadContext context) {
+  private synchronized void compact(Compaction compaction, CompletableFuture<Void> future) {
+    // Once the execution has started, later compactions of the same type must be queued behind it.
+    pending.remove(compaction, future);
+
     CompactionManager manager = compaction.manager(this);
     AtomicInteger counter = new AtomicInteger();
 
@@ -210,20 +284,74 @@ public class Compactor implements AutoCloseable {
         LOGGER.debug("Executing {}", task);
         ThreadContext taskThread = new ThreadPoolContext(executor, segments.serializer());
         taskThread.execute(task).whenComplete((result, error) -> {
-          LOGGER.debug("{} complete", task);
+          if (error != null) {
+            LOGGER.warn("{} failed: {}", task, error.getMessage());
+          } else {
+            LOGGER.debug("{} complete", task);
+          }
           if (counter.incrementAndGet() == tasks.size()) {
-            if (context != null) {
-              context.executor().execute(() -> future.complete(null));
-            } else {
-              future.complete(null);
-            }
+            future.complete(null);
           }
         });
       }
     } else {
       future.complete(null);
     }
-    return future;
+  }
+
+  /**
+   * Runs a scheduled minor compaction.
+   * <p>
+   * If a major compaction was deferred or enough bytes can be reclaimed from the log, a major compaction is run
+   * in place of the minor compaction.
+   */
+  private void scheduleMinor() {
+    if (throttle.isBackedOff()) {
+      LOGGER.debug("Deferring minor compaction: append latency exceeds threshold");
+    } else if (majorDeferred || isReclaimable()) {
+      majorDeferred = false;
+      compact(Compaction.MAJOR);
+    } else {
+      compact(Compaction.MINOR);
+    }
+  }
+
+  /**
+   * Runs a scheduled major compaction.
+   * <p>
+   * If append latency is high, the major compaction is deferred until the next minor compaction interval at which
+   * latency has dropped.
+   */
+  private void scheduleMajor() {
+    if (throttle.isBackedOff()) {
+      LOGGER.debug("Deferring major compaction: append latency exceeds threshold");
+      majorDeferred = true;
+    } else {
+      majorDeferred = false;
+      compact(Compaction.MAJOR);
+    }
+  }
+
+  /**
+   * Returns a boolean indicating whether enough bytes can be reclaimed from the log to warrant a major compaction.
+   * <p>
+   * The number of reclaimable bytes in each segment is estimated from the proportion of entries that have been
+   * released from the segment.
+   */
+  boolean isReclaimable() {
+    Segment currentSegment = segments.currentSegment();
+    long size = 0;
+    long reclaimable = 0;
+    for (Segment segment : segments.segments()) {
+      if (segment != currentSegment) {
+        long count = segment.count();
+        size += segment.size();
+        if (count > 0) {
+          reclaimable += (long) (segment.size() * (segment.releaseCount() / (double) count));
+        }
+      }
+    }
+    return reclaimable >= storage.maxSegmentSize() && reclaimable >= size * storage.compactionThreshold();
   }
 
   /**
@@ -19,20 +19,22 @@ import io.atomix.catalyst.util.Assert;
 import io.atomix.copycat.server.storage.Segment;
 import io.atomix.copycat.server.storage.SegmentManager;
 import io.atomix.copycat.server.storage.Storage;
+import io.atomix.copycat.server.storage.util.OffsetPredicate;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Builds tasks for the {@link Compaction#MAJOR} compaction process.
  * <p>
  * Major compaction works by iterating through all committed {@link Segment}s in the log and rewriting and
- * combining segments to compact them together. Because of the sequential nature of major compaction, the major
- * compaction manager builds only a single {@link MajorCompactionTask} which will rewrite the log sequentially.
- * Segments are provided to the major compaction task in groups that indicate which segments to combine. A set
- * of segments can be combined if they meet the following criteria:
+ * combining segments to compact them together. The major compaction manager builds a {@link MajorCompactionTask}
+ * for each group of segments to combine, and groups are rewritten in parallel. Because of the sequential nature of
+ * major compaction, the offsets of all groups are snapshotted before any task is run, and each task replaces its
+ * segments in the log only after the task for the preceding group has done so. A set of segments can be combined
+ * if they meet the following criteria:
  * <ul>
  *   <li>The entries in the set of segments are sequential; there are no missing segments in the set
  *   such that combining the segments would result in a segment with missing entries</li>
@@ -52,7 +54,32 @@ public final class MajorCompactionManager implements CompactionManager {
   @Override
   public List<CompactionTask> buildTasks(Storage storage, SegmentManager segments) {
     List<List<Segment>> groups = getCompactableGroups(storage, segments);
-    return !groups.isEmpty() ? Collections.singletonList(new MajorCompactionTask(segments, groups, compactor.snapshotIndex(), compactor.majorIndex(), compactor.getDefaultCompactionMode())) : Collections.emptyList();
+    List<List<OffsetPredicate>> predicates = snapshotPredicates(groups);
+
+    // Chain the tasks for each group so that segments are replaced in the order in which they appear in the log.
+    List<CompactionTask> tasks = new ArrayList<>(groups.size());
+    CompletableFuture<Void> previous = CompletableFuture.completedFuture(null);
+    for (int i = 0; i < groups.size(); i++) {
+      MajorCompactionTask task = new MajorCompactionTask(segments, groups.get(i), predicates.get(i), previous, compactor.throttle(), compactor.snapshotIndex(), compactor.majorIndex(), compactor.getDefaultCompactionMode());
+      tasks.add(task);
+      previous = task.future();
+    }
+    return tasks;
+  }
+
+  /**
+   * Snapshots the offset predicates for all groups prior to compacting any segments to prevent race conditions.
+   */
+  private List<List<OffsetPredicate>> snapshotPredicates(List<List<Segment>> groups) {
+    List<List<OffsetPredicate>> predicates = new ArrayList<>(groups.size());
+    for (List<Segment> group : groups) {
+      List<OffsetPredicate> groupPredicates = new ArrayList<>(group.size());
+      for (Segment segment : group) {
+        groupPredicates.add(segment.offsetPredicate().snapshot());
+      }
+      predicates.add(groupPredicates);
+    }
+    return predicates;
   }
 
   /**
@@ -17,6 +17,7 @@ package io.atomix.copycat.server.storage.compaction;
 
 import io.atomix.catalyst.util.Assert;
 import io.atomix.copycat.server.Commit;
+import io.atomix.copycat.server.storage.LogCursor;
 import io.atomix.copycat.server.storage.Segment;
 import io.atomix.copycat.server.storage.SegmentDescriptor;
 import io.atomix.copycat.server.storage.SegmentManager;
@@ -25,8 +26,8 @@ import io.atomix.copycat.server.storage.util.OffsetPredicate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Removes tombstones from the log and combines {@link Segment}s to reclaim disk space.
@@ -83,61 +84,79 @@ import java.util.List;
  * incorrect, but it will be inconsistent with other servers which are likely to have correctly removed both entry
  * {@code 1} and entry {@code 12345} during major compaction.
  * <p>
- * In order to prevent such a scenario from occurring, the major compaction task takes an immutable snapshot of the
- * state of offsets underlying all the segments to be compacted prior to rewriting any entries. This ensures that any
- * entries released after the start of rewriting segments will not be considered for compaction during the execution
- * of this task.
+ * In order to prevent such a scenario from occurring, the {@link MajorCompactionManager} takes an immutable snapshot of
+ * the state of offsets underlying all the segments to be compacted prior to rewriting any entries. This ensures that
+ * any entries released after the start of rewriting segments will not be considered for compaction during the
+ * execution of any major compaction task.
+ * <p>
+ * <b>Parallel compaction</b>
+ * <p>
+ * Each major compaction task rewrites a single group of segments, and the tasks for independent groups are run in
+ * parallel in the compaction thread pool. Rewriting a group does not modify the log, so groups can be rewritten in
+ * any order. However, to preserve the sequential guarantees described above, each task waits for the task for the
+ * preceding group to replace its segments before replacing its own. If the preceding task fails, the compact segment
+ * is discarded and the group's segments are left in the log.
  *
  * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
  */
 public final class MajorCompactionTask implements CompactionTask {
   private static final Logger LOGGER = LoggerFactory.getLogger(MajorCompactionTask.class);
   private final SegmentManager manager;
-  private final List<List<Segment>> groups;
-  private List<List<OffsetPredicate>> predicates;
+  private final List<Segment> segments;
+  private final List<OffsetPredicate> predicates;
+  private final CompletableFuture<Void> previous;
+  private final CompactionThrottle throttle;
+  private final CompletableFuture<Void> future = new CompletableFuture<>();
   private final long snapshotIndex;
   private final long compactIndex;
   private final Compaction.Mode defaultCompactionMode;
 
-  MajorCompactionTask(SegmentManager manager, List<List<Segment>> groups, long snapshotIndex, long compactIndex, Compaction.Mode defaultCompactionMode) {
+  MajorCompactionTask(SegmentManager manager, List<Segment> segments, List<OffsetPredicate> predicates, CompletableFuture<Void> previous, CompactionThrottle throttle, long snapshotIndex, long compactIndex, Compaction.Mode defaultCompactionMode) {
     this.manager = Assert.notNull(manager, "manager");
-    this.groups = Assert.notNull(groups, "segments");
+    this.segments = Assert.notNull(segments, "segments");
+    this.predicates = Assert.notNull(predicates, "predicates");
+    this.previous = Assert.notNull(previous, "previous");
+    this.throttle = Assert.notNull(throttle, "throttle");
     this.snapshotIndex = snapshotIndex;
     this.compactIndex = compactIndex;
     this.defaultCompactionMode = Assert.notNull(defaultCompactionMode, "defaultCompactionMode");
   }
 
+  /**
+   * Returns a future to be completed once the segments compacted by this task have been replaced in the log.
+   * <p>
+   * The future will be completed exceptionally if this task or the task for any preceding group fails.
+   *
+   * @return A future to be completed once the compacted segments have been replaced.
+   */
+  CompletableFuture<Void> future() {
+    return future;
+  }
+
   @Override
   public void run() {
-    copyPredicates();
-    compactGroups();
-  }
+    Segment compactSegment = null;
+    try {
+      compactSegment = compactGroup(segments, predicates);
 
-  /**
-   * Creates a copy of offset predicates prior to compacting segments to prevent race conditions.
-   */
-  private void copyPredicates() {
-    predicates = new ArrayList<>(groups.size());
-    for (List<Segment> group : groups) {
-      List<OffsetPredicate> groupPredicates = new ArrayList<>(group.size());
-      for (Segment segment : group) {
-        groupPredicates.add(segment.offsetPredicate().copy());
+      // Wait for the preceding group to be replaced before replacing this group. Tasks are submitted to the
+      // compaction thread pool in group order, so the preceding task is either running or has already completed.
+      previous.join();
+
+      // Replace the rewritten segments with the updated segment.
+      manager.replaceSegments(segments, compactSegment);
+    } catch (Throwable e) {
+      if (compactSegment != null) {
+        compactSegment.close();
+        compactSegment.delete();
       }
-      predicates.add(groupPredicates);
+      future.completeExceptionally(e);
+      throw e;
     }
-  }
 
-  /**
-   * Compacts all compactable segments.
-   */
-  private void compactGroups() {
-    for (int i = 0; i < groups.size(); i++) {
-      List<Segment> group = groups.get(i);
-      List<OffsetPredicate> groupPredicates = predicates.get(i);
-      Segment segment = compactGroup(group, groupPredicates);
-      mergeReleased(group, groupPredicates, segment);
-      deleteGroup(group);
-    }
+    mergeReleased(segments, predicates, compactSegment);
+    deleteGroup(segments);
+    future.complete(null);
   }
 
   /**
@@ -158,10 +177,6 @@ public final class MajorCompactionTask implements CompactionTask {
       .build());
 
     compactGroup(segments, predicates, compactSegment);
-
-    // Replace the rewritten segments with the updated segment.
-    manager.replaceSegments(segments, compactSegment);
-
     return compactSegment;
   }
 
@@ -185,36 +200,47 @@ public final class MajorCompactionTask implements CompactionTask {
    * @param compactSegment The segment to which to write the compacted segment.
    */
   private void compactSegment(Segment segment, OffsetPredicate predicate, Segment compactSegment) {
-    for (long i = segment.firstIndex(); i <= segment.lastIndex(); i++) {
-      checkEntry(i, segment, predicate, compactSegment);
+    // Read the segment's entries sequentially rather than looking up the position of each entry.
+    try (LogCursor cursor = manager.createCursor(segment)) {
+      while (cursor.hasNext()) {
+        long index = cursor.index();
+        // If an entry was found, check whether to remove the entry from the segment.
+        if (cursor.advance()) {
+          throttle.acquire(cursor.size());
+          checkEntry(index, cursor, segment, predicate, compactSegment);
+        } else {
+          compactSegment.skip(1);
+        }
+      }
     }
   }
 
   /**
-   * Compacts the entry at the given index.
-   *
-   * @param index The index at which to compact the entry.
-   * @param segment The segment to compact.
-   * @param compactSegment The segment to which to write the uncompacted segment.
+   * Compacts the entry last read by the given cursor.
+   * <p>
+   * Live entries are retained regardless of their compaction mode, so they're transferred to the compact segment
+   * without being deserialized. The compaction mode of released entries is read from the entry header, and entries
+   * are only deserialized if their segment does not store compaction modes in entry headers.
    */
-  private void checkEntry(long index, Segment segment, OffsetPredicate predicate, Segment compactSegment) {
-    try (Entry entry = segment.get(index)) {
-      // If an entry was found, remove the entry from the segment.
-      if (entry != null) {
-        checkEntry(index, entry, segment, predicate, compactSegment);
-      } else {
-        compactSegment.skip(1);
+  private void checkEntry(long index, LogCursor cursor, Segment segment, OffsetPredicate predicate, Segment compactSegment) {
+    if (isLive(index, segment, predicate)) {
+      transferEntry(cursor, compactSegment);
+    } else {
+      Compaction.Mode mode = cursor.mode();
+      if (mode == null) {
+        try (Entry entry = cursor.entry()) {
+          mode = entry.getCompactionMode();
+        }
       }
+      checkEntry(index, mode, cursor, segment, predicate, compactSegment);
     }
   }
 
   /**
    * Compacts a command entry from a segment.
    */
-  private void checkEntry(long index, Entry entry, Segment segment, OffsetPredicate predicate, Segment compactSegment) {
-    // Get the entry compaction mode. If the compaction mode is DEFAULT apply the default compaction
-    // mode to the entry.
-    Compaction.Mode mode = entry.getCompactionMode();
+  private void checkEntry(long index, Compaction.Mode mode, LogCursor cursor, Segment segment, OffsetPredicate predicate, Segment compactSegment) {
+    // If the compaction mode is DEFAULT apply the default compaction mode to the entry.
     if (mode == Compaction.Mode.DEFAULT) {
       mode = defaultCompactionMode;
     }
@@ -228,7 +254,7 @@ public final class MajorCompactionTask implements CompactionTask {
         if (index <= snapshotIndex && !isLive(index, segment, predicate)) {
           compactEntry(index, segment, compactSegment);
         } else {
-          transferEntry(entry, compactSegment);
+          transferEntry(cursor, compactSegment);
         }
         break;
       // RELEASE and QUORUM entries are compacted if the entry has been released from the segment.
@@ -237,7 +263,7 @@ public final class MajorCompactionTask implements CompactionTask {
         if (!isLive(index, segment, predicate)) {
           compactEntry(index, segment, compactSegment);
         } else {
-          transferEntry(entry, compactSegment);
+          transferEntry(cursor, compactSegment);
         }
         break;
       // FULL entries are compacted if the major compact index is greater than the entry index and
@@ -251,7 +277,7 @@ public final class MajorCompactionTask implements CompactionTask {
         if (index <= compactIndex && !isLive(index, segment, predicate)) {
           compactEntry(index, segment, compactSegment);
         } else {
-          transferEntry(entry, compactSegment);
+          transferEntry(cursor, compactSegment);
         }
         break;
       // UNKNOWN entries are compacted if the index is less than both the snapshot and major
@@ -260,7 +286,7 @@ public final class MajorCompactionTask implements CompactionTask {
         if (index <= snapshotIndex && index <= compactIndex && !isLive(index, segment, predicate)) {
           compactEntry(index, segment, compactSegment);
         } else {
-          transferEntry(entry, compactSegment);
+          transferEntry(cursor, compactSegment);
         }
         break;
       default:
@@ -277,10 +303,11 @@ public final class MajorCompactionTask implements CompactionTask {
   }
 
   /**
-   * Transfers an entry to the given segment.
+   * Transfers the entry last read by the given cursor to the given segment.
    */
-  private void transferEntry(Entry entry, Segment compactSegment) {
-    compactSegment.append(entry);
+  private void transferEntry(LogCursor cursor, Segment compactSegment) {
+    throttle.acquire(cursor.size());
+    cursor.transfer(compactSegment);
   }
 
   /**
@@ -325,7 +352,7 @@ public final class MajorCompactionTask implements CompactionTask {
 
   @Override
   public String toString() {
-    return getClass().getSimpleName();
+    return String.format("%s[index=%d, segments=%d]", getClass().getSimpleName(), segments.get(0).firstIndex(), segments.size());
   }
 
 }
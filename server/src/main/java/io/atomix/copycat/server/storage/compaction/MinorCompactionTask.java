@@ -16,6 +16,7 @@
 package io.atomix.copycat.server.storage.compaction;
 
 import io.atomix.catalyst.util.Assert;
+import io.atomix.copycat.server.storage.LogCursor;
 import io.atomix.copycat.server.storage.Segment;
 import io.atomix.copycat.server.storage.SegmentDescriptor;
 import io.atomix.copycat.server.storage.SegmentManager;
@@ -47,13 +48,15 @@ public final class MinorCompactionTask implements CompactionTask {
   private static final Logger LOGGER = LoggerFactory.getLogger(MinorCompactionTask.class);
   private final SegmentManager manager;
   private final Segment segment;
+  private final CompactionThrottle throttle;
   private final long snapshotIndex;
   private final long compactIndex;
   private final Compaction.Mode defaultCompactionMode;
 
-  MinorCompactionTask(SegmentManager manager, Segment segment, long snapshotIndex, long compactIndex, Compaction.Mode defaultCompactionMode) {
+  MinorCompactionTask(SegmentManager manager, Segment segment, CompactionThrottle throttle, long snapshotIndex, long compactIndex, Compaction.Mode defaultCompactionMode) {
     this.manager = Assert.notNull(manager, "manager");
     this.segment = Assert.notNull(segment, "segment");
+    this.throttle = Assert.notNull(throttle, "throttle");
     this.snapshotIndex = snapshotIndex;
     this.compactIndex = compactIndex;
     this.defaultCompactionMode = Assert.notNull(defaultCompactionMode, "defaultCompactionMode");
@@ -97,36 +100,47 @@ public final class MinorCompactionTask implements CompactionTask {
    * @param compactSegment The compact segment.
    */
   private void compactEntries(Segment segment, Segment compactSegment) {
-    for (long i = segment.firstIndex(); i <= segment.lastIndex(); i++) {
-      checkEntry(i, segment, compactSegment);
+    // Read the segment's entries sequentially rather than looking up the position of each entry.
+    try (LogCursor cursor = manager.createCursor(segment)) {
+      while (cursor.hasNext()) {
+        long index = cursor.index();
+        // If an entry was found, only remove the entry from the segment if it's not a tombstone that has been released.
+        if (cursor.advance()) {
+          throttle.acquire(cursor.size());
+          checkEntry(index, cursor, segment, compactSegment);
+        } else {
+          compactSegment.skip(1);
+        }
+      }
     }
   }
 
   /**
-   * Compacts the entry at the given index.
-   *
-   * @param index The index at which to compact the entry.
-   * @param segment The segment to compact.
-   * @param compactSegment The segment to which to write the compacted segment.
+   * Compacts the entry last read by the given cursor.
+   * <p>
+   * Live entries are retained regardless of their compaction mode, so they're transferred to the compact segment
+   * without being deserialized. The compaction mode of released entries is read from the entry header, and entries
+   * are only deserialized if their segment does not store compaction modes in entry headers.
    */
-  private void checkEntry(long index, Segment segment, Segment compactSegment) {
-    try (Entry entry = segment.get(index)) {
-      // If an entry was found, only remove the entry from the segment if it's not a tombstone that has been released.
-      if (entry != null) {
-        checkEntry(index, entry, segment, compactSegment);
-      } else {
-        compactSegment.skip(1);
+  private void checkEntry(long index, LogCursor cursor, Segment segment, Segment compactSegment) {
+    if (segment.isLive(index)) {
+      transferEntry(index, cursor, compactSegment);
+    } else {
+      Compaction.Mode mode = cursor.mode();
+      if (mode == null) {
+        try (Entry entry = cursor.entry()) {
+          mode = entry.getCompactionMode();
+        }
       }
+      checkEntry(index, mode, cursor, segment, compactSegment);
     }
   }
 
   /**
    * Compacts a command entry from a segment.
    */
-  private void checkEntry(long index, Entry entry, Segment segment, Segment compactSegment) {
-    // Get the entry compaction mode. If the compaction mode is DEFAULT apply the default compaction
-    // mode to the entry.
-    Compaction.Mode mode = entry.getCompactionMode();
+  private void checkEntry(long index, Compaction.Mode mode, LogCursor cursor, Segment segment, Segment compactSegment) {
+    // If the compaction mode is DEFAULT apply the default compaction mode to the entry.
     if (mode == Compaction.Mode.DEFAULT) {
       mode = defaultCompactionMode;
     }
@@ -140,7 +154,7 @@ public final class MinorCompactionTask implements CompactionTask {
         if (index <= snapshotIndex && !segment.isLive(index)) {
           compactEntry(index, segment, compactSegment);
         } else {
-          transferEntry(index, entry, compactSegment);
+          transferEntry(index, cursor, compactSegment);
         }
         break;
       // RELEASE and QUORUM entries are compacted if the entry has been released in the segment.
@@ -149,7 +163,7 @@ public final class MinorCompactionTask implements CompactionTask {
         if (!segment.isLive(index)) {
           compactEntry(index, segment, compactSegment);
         } else {
-          transferEntry(index, entry, compactSegment);
+          transferEntry(index, cursor, compactSegment);
         }
         break;
       // FULL entries are compacted if the major compact index is greater than the entry index
@@ -158,7 +172,7 @@ public final class MinorCompactionTask implements CompactionTask {
         if (index <= compactIndex && !segment.isLive(index)) {
           compactEntry(index, segment, compactSegment);
         } else {
-          transferEntry(index, entry, compactSegment);
+          transferEntry(index, cursor, compactSegment);
         }
         break;
       // SEQUENTIAL, EXPIRING, and TOMBSTONE entries can only be compacted during major compaction.
@@ -167,7 +181,7 @@ public final class MinorCompactionTask implements CompactionTask {
       case EXPIRING:
       case TOMBSTONE:
       case UNKNOWN:
-        transferEntry(index, entry, compactSegment);
+        transferEntry(index, cursor, compactSegment);
         break;
       default:
         break;
@@ -183,10 +197,11 @@ public final class MinorCompactionTask implements CompactionTask {
   }
 
   /**
-   * Transfers an entry to the given compact segment.
+   * Transfers the entry last read by the given cursor to the given compact segment.
    */
-  private void transferEntry(long index, Entry entry, Segment compactSegment) {
-    compactSegment.append(entry);
+  private void transferEntry(long index, LogCursor cursor, Segment compactSegment) {
+    throttle.acquire(cursor.size());
+    cursor.transfer(compactSegment);
 
     // If the entry was released in the prior segment, mark it as released in the compact segment.
     if (!segment.isLive(index)) {
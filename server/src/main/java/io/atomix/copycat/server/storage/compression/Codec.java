@@ -0,0 +1,75 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package io.atomix.copycat.server.storage.compression;
+
+/**
+ * Compresses and decompresses blocks of bytes.
+ * <p>
+ * Codecs compress independent blocks of bytes. Callers are responsible for storing the length of each block
+ * before compression, which must be provided to {@link #decompress(byte[], int, int, byte[], int, int)}.
+ * Codecs must be thread safe, and all servers in a cluster must use the same codec since compressed state may
+ * be replicated between servers without being decompressed.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public interface Codec {
+
+  /**
+   * Returns the unique identifier of the codec.
+   * <p>
+   * The identifier is stored with compressed state to ensure the state is decompressed with the codec with which
+   * it was compressed. Identifiers must be between {@code 1} and {@code 255}, and identifier {@code 1} is reserved
+   * for the built-in {@link Lz4Codec}.
+   *
+   * @return The codec identifier.
+   */
+  int id();
+
+  /**
+   * Returns the maximum length of a compressed block of the given length.
+   *
+   * @param length The length of the block to compress.
+   * @return The maximum length of the compressed block.
+   */
+  int maxCompressedLength(int length);
+
+  /**
+   * Compresses a block of bytes.
+   *
+   * @param source The bytes to compress.
+   * @param sourceOffset The offset of the block to compress.
+   * @param length The length of the block to compress.
+   * @param target The array to which to write the compressed block. The array must have at least
+   *               {@link #maxCompressedLength(int)} bytes remaining after the target offset.
+   * @param targetOffset The offset at which to write the compressed block.
+   * @return The length of the compressed block.
+   */
+  int compress(byte[] source, int sourceOffset, int length, byte[] target, int targetOffset);
+
+  /**
+   * Decompresses a block of bytes.
+   *
+   * @param source The compressed bytes.
+   * @param sourceOffset The offset of the compressed block.
+   * @param length The length of the compressed block.
+   * @param target The array to which to write the decompressed block.
+   * @param targetOffset The offset at which to write the decompressed block.
+   * @param decompressedLength The length of the block before it was compressed.
+   * @throws io.atomix.copycat.server.storage.StorageException if the compressed block is corrupt
+   */
+  void decompress(byte[] source, int sourceOffset, int length, byte[] target, int targetOffset, int decompressedLength);
+
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package io.atomix.copycat.server.storage.compression;
+
+import io.atomix.copycat.server.storage.StorageException;
+
+/**
+ * Pure Java codec for the LZ4 block format.
+ * <p>
+ * Blocks are compressed with a single pass over the input, locating matches of at least four bytes via a hash
+ * table of recent positions. Each compressed block is a sequence of tokens, where each token is followed by a
+ * run of literal bytes and a back reference of up to {@code 65535} bytes to a match in the decompressed output.
+ * The compressor trades compression ratio for speed, typically compressing and decompressing at several hundred
+ * megabytes per second.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public class Lz4Codec implements Codec {
+  public static final int ID = 1;
+  private static final int MIN_MATCH = 4;
+  private static final int LAST_LITERALS = 5;
+  private static final int MATCH_FIND_LIMIT = 12;
+  private static final int MAX_DISTANCE = 65535;
+  private static final int HASH_LOG = 12;
+  private static final int RUN_MASK = 15;
+
+  @Override
+  public int id() {
+    return ID;
+  }
+
+  @Override
+  public int maxCompressedLength(int length) {
+    return length + length / 255 + 16;
+  }
+
+  @Override
+  public int compress(byte[] source, int sourceOffset, int length, byte[] target, int targetOffset) {
+    int end = sourceOffset + length;
+    int matchLimit = end - LAST_LITERALS;
+    int findLimit = end - MATCH_FIND_LIMIT;
+    int anchor = sourceOffset;
+    int position = sourceOffset;
+    int output = targetOffset;
+
+    // The hash table stores the position of the last sequence with each hash, offset by one so that zero is empty.
+    int[] table = new int[1 << HASH_LOG];
+    while (position < findLimit) {
+      int sequence = readInt(source, position);
+      int hash = hash(sequence);
+      int match = table[hash] - 1;
+      table[hash] = position + 1;
+      if (match < 0 || position - match > MAX_DISTANCE || readInt(source, match) != sequence) {
+        position++;
+        continue;
+      }
+
+      // Extend the match backwards into pending literals and forwards up to the last literals.
+      while (position > anchor && match > sourceOffset && source[position - 1] == source[match - 1]) {
+        position--;
+        match--;
+      }
+      int matchLength = MIN_MATCH;
+      while (position + matchLength < matchLimit && source[position + matchLength] == source[match + matchLength]) {
+        matchLength++;
+      }
+
+      output = writeSequence(source, anchor, position - anchor, position - match, matchLength, target, output);
+      position += matchLength;
+      anchor = position;
+    }
+
+    // Write the remaining bytes as literals.
+    int literals = end - anchor;
+    int token = output++;
+    output = writeLiteralLength(literals, target, token, output);
+    System.arraycopy(source, anchor, target, output, literals);
+    output += literals;
+    return output - targetOffset;
+  }
+
+  /**
+   * Writes a sequence of literals followed by a match.
+   */
+  private static int writeSequence(byte[] source, int literalOffset, int literals, int offset, int matchLength, byte[] target, int output) {
+    int token = output++;
+    output = writeLiteralLength(literals, target, token, output);
+    System.arraycopy(source, literalOffset, target, output, literals);
+    output += literals;
+
+    target[output++] = (byte) offset;
+    target[output++] = (byte) (offset >>> 8);
+
+    int length = matchLength - MIN_MATCH;
+    if (length >= RUN_MASK) {
+      target[token] |= RUN_MASK;
+      output = writeLength(length - RUN_MASK, target, output);
+    } else {
+      target[token] |= length;
+    }
+    return output;
+  }
+
+  /**
+   * Writes the literal length to the token at the given position, followed by any additional length bytes.
+   */
+  private static int writeLiteralLength(int literals, byte[] target, int token, int output) {
+    if (literals >= RUN_MASK) {
+      target[token] = (byte) (RUN_MASK << 4);
+      return writeLength(literals - RUN_MASK, target, output);
+    }
+    target[token] = (byte) (literals << 4);
+    return output;
+  }
+
+  /**
+   * Writes the remainder of a length that didn't fit in a token.
+   */
+  private static int writeLength(int length, byte[] target, int output) {
+    while (length >= 255) {
+      target[output++] = (byte) 255;
+      length -= 255;
+    }
+    target[output++] = (byte) length;
+    return output;
+  }
+
+  @Override
+  public void decompress(byte[] source, int sourceOffset, int length, byte[] target, int targetOffset, int decompressedLength) {
+    int input = sourceOffset;
+    int end = sourceOffset + length;
+    int output = targetOffset;
+    int outputEnd = targetOffset + decompressedLength;
+
+    try {
+      while (input < end) {
+        int token = source[input++] & 0xFF;
+
+        int literals = token >>> 4;
+        if (literals == RUN_MASK) {
+          int b;
+          do {
+            b = source[input++] & 0xFF;
+            literals += b;
+          } while (b == 255);
+        }
+        if (input + literals > end || output + literals > outputEnd) {
+          throw new StorageException("corrupt compressed block");
+        }
+        System.arraycopy(source, input, target, output, literals);
+        input += literals;
+        output += literals;
+
+        // The last sequence in a block contains only literals.
+        if (input == end) {
+          break;
+        }
+
+        int offset = (source[input++] & 0xFF) | (source[input++] & 0xFF) << 8;
+        int matchLength = token & RUN_MASK;
+        if (matchLength == RUN_MASK) {
+          int b;
+          do {
+            b = source[input++] & 0xFF;
+            matchLength += b;
+          } while (b == 255);
+        }
+        matchLength += MIN_MATCH;
+
+        int match = output - offset;
+        if (offset == 0 || match < targetOffset || output + matchLength > outputEnd) {
+          throw new StorageException("corrupt compressed block");
+        }
+
+        // Matches may overlap the bytes being written, in which case bytes must be copied one at a time.
+        if (offset >= matchLength) {
+          System.arraycopy(target, match, target, output, matchLength);
+        } else {
+          for (int i = 0; i < matchLength; i++) {
+            target[output + i] = target[match + i];
+          }
+        }
+        output += matchLength;
+      }
+    } catch (ArrayIndexOutOfBoundsException e) {
+      throw new StorageException("corrupt compressed block", e);
+    }
+
+    if (output != outputEnd) {
+      throw new StorageException("corrupt compressed block");
+    }
+  }
+
+  /**
+   * Reads a little-endian integer from the given array.
+   */
+  private static int readInt(byte[] bytes, int offset) {
+    return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8 | (bytes[offset + 2] & 0xFF) << 16 | (bytes[offset + 3] & 0xFF) << 24;
+  }
+
+  /**
+   * Hashes a four byte sequence.
+   */
+  private static int hash(int sequence) {
+    return (sequence * -1640531535) >>> (32 - HASH_LOG);
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName();
+  }
+
+}
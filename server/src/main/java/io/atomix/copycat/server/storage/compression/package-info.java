@@ -0,0 +1,26 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+/**
+ * Block compression codecs for compressing stored state.
+ * <p>
+ * Compression is performed on independent blocks of bytes by a {@link io.atomix.copycat.server.storage.compression.Codec}.
+ * The default {@link io.atomix.copycat.server.storage.compression.Lz4Codec} is a pure Java implementation of the
+ * LZ4 block format which favors speed over compression ratio.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+package io.atomix.copycat.server.storage.compression;
@@ -15,38 +15,46 @@
  */
 package io.atomix.copycat.server.storage.index;
 
-import io.atomix.catalyst.buffer.Buffer;
-import io.atomix.catalyst.buffer.FileBuffer;
-import io.atomix.catalyst.buffer.HeapBuffer;
-import io.atomix.catalyst.buffer.MappedBuffer;
 import io.atomix.catalyst.util.Assert;
 
 /**
- * Ordered offset index;
+ * Ordered offset index for segments with missing entries.
+ * <p>
+ * The searchable index is used once entries have been removed from a segment by compaction, so the offset of an entry
+ * no longer corresponds to its position in the index. Offsets and positions are stored in sorted parallel {@code int}
+ * arrays. Offsets are relative to the start of the segment and positions are stored as unsigned 32-bit integers, so each
+ * entry in the index consumes 8 bytes. To find the position of an offset, the offsets are binary searched. Because
+ * offsets are unique and increasing, the entry for offset {@code n} can only be stored at an array index between
+ * {@code n} minus the number of missing offsets and {@code n}, so searches are limited to that range.
+ * <p>
+ * This class is thread safe for a single writer and any number of concurrent readers. Entries are written to the
+ * arrays before the index size is published via a volatile write, and grown arrays are published before the size that
+ * depends on them, so reads never require locking.
  *
  * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
  */
 public class SearchableOffsetIndex implements OffsetIndex {
   private static final long MAX_POSITION = (long) Math.pow(2, 32) - 1;
-  private static final int OFFSET_SIZE = 8;
-  private static final int POSITION_SIZE = 4;
-  private static final int ENTRY_SIZE = OFFSET_SIZE + POSITION_SIZE;
+  private static final int DEFAULT_CAPACITY = 1024;
 
-  private final Buffer buffer;
-  private int size;
-  private long lastOffset = -1;
-  private long currentOffset = -1;
-  private long currentMatch = -1;
+  private volatile Entries entries;
+  private volatile int size;
+  private volatile long lastOffset = -1;
 
   /**
-   * @throws NullPointerException if {@code buffer} is null
+   * @throws NullPointerException if {@code index} is null
    */
   public SearchableOffsetIndex(OffsetIndex index) {
-    this.buffer = HeapBuffer.allocate();
-    for (long i = 0; i < index.size(); i++) {
-      this.buffer.writeLong(i).writeUnsignedInt(index.position(i));
-      size++;
+    Assert.notNull(index, "index");
+    int size = index.size();
+    Entries entries = new Entries(Math.max(DEFAULT_CAPACITY, size));
+    for (int i = 0; i < size; i++) {
+      entries.offsets[i] = i;
+      entries.positions[i] = (int) index.position(i);
     }
+    this.entries = entries;
+    this.size = size;
+    this.lastOffset = index.lastOffset();
   }
 
   @Override
@@ -55,14 +63,23 @@ public class SearchableOffsetIndex implements OffsetIndex {
   }
 
   @Override
-  public synchronized boolean index(long offset, long position) {
+  public boolean index(long offset, long position) {
     Assert.argNot(offset, lastOffset > -1 && offset <= lastOffset, "offset cannot be less than or equal to the last offset in the index");
+    Assert.argNot(offset > Integer.MAX_VALUE, "offset cannot be greater than " + Integer.MAX_VALUE);
     Assert.argNot(position > MAX_POSITION, "position cannot be greater than " + MAX_POSITION);
 
-    buffer.writeLong(offset).writeUnsignedInt(position);
+    // If the arrays are full, copy them to larger arrays and publish the new arrays before the size.
+    int size = this.size;
+    Entries entries = this.entries;
+    if (size == entries.offsets.length) {
+      entries = entries.grow(size);
+      this.entries = entries;
+    }
 
-    size++;
+    entries.offsets[size] = (int) offset;
+    entries.positions[size] = (int) position;
     lastOffset = offset;
+    this.size = size + 1;
     return true;
   }
 
@@ -78,86 +95,58 @@ public class SearchableOffsetIndex implements OffsetIndex {
 
   @Override
   public boolean contains(long offset) {
-    return position(offset) != -1;
+    return find(offset) != -1;
   }
 
   @Override
-  public synchronized long position(long offset) {
-    long relativeOffset = find(offset);
-    return relativeOffset != -1 ? buffer.readUnsignedInt(relativeOffset * ENTRY_SIZE + OFFSET_SIZE) : -1;
+  public long position(long offset) {
+    int size = this.size;
+    Entries entries = this.entries;
+    int index = search(entries.offsets, size, offset);
+    return index >= 0 ? entries.positions[index] & MAX_POSITION : -1;
   }
 
   @Override
-  public synchronized long find(long offset) {
-    if (size == 0) {
-      return -1;
-    }
-
-    if (offset == currentOffset) {
-      return currentMatch;
-    } else if (currentOffset != -1 && currentMatch + 1 < size && buffer.readLong((currentMatch + 1) * ENTRY_SIZE) == offset) {
-      currentOffset = offset;
-      return ++currentMatch;
-    }
-
-    int lo = 0;
-    int hi = size - 1;
-
-    while (lo < hi) {
-      int mid = lo + (hi - lo) / 2;
-      long i = buffer.readLong(mid * ENTRY_SIZE);
-      if (i == offset) {
-        currentOffset = offset;
-        currentMatch = mid;
-        return mid;
-      } else if (lo == mid) {
-        i = buffer.readLong(hi * ENTRY_SIZE);
-        if (i == offset) {
-          currentOffset = offset;
-          currentMatch = hi;
-          return hi;
-        }
-        return -1;
-      } else if (i < offset) {
-        lo = mid;
-      } else {
-        hi = mid - 1;
-      }
-    }
-
-    if (buffer.readLong(hi * ENTRY_SIZE) == offset) {
-      currentOffset = offset;
-      currentMatch = hi;
-      return hi;
-    }
-    return -1;
+  public long find(long offset) {
+    int size = this.size;
+    Entries entries = this.entries;
+    int index = search(entries.offsets, size, offset);
+    return index >= 0 ? index : -1;
   }
 
   /**
-   * Returns the real offset for the given relative offset.
+   * Searches the first {@code size} offsets for the given offset.
+   *
+   * @return The array index of the offset if found, otherwise {@code -(insertion point) - 1}.
    */
-  private long findAfter(long offset) {
-    if (size == 0) {
+  private static int search(int[] offsets, int size, long offset) {
+    if (size == 0 || offset < 0) {
       return -1;
     }
 
-    int low  = 0;
-    int high = size-1;
+    // Most lookups are for recently written entries, so check the last offset before searching.
+    int lastOffset = offsets[size - 1];
+    if (offset >= lastOffset) {
+      return offset == lastOffset ? size - 1 : -size - 1;
+    }
 
+    // The offset can be stored no later than array index {@code offset} and no earlier than {@code offset} minus the
+    // number of offsets missing from the index.
+    int missing = lastOffset + 1 - size;
+    int low = (int) Math.max(0, offset - missing);
+    int high = (int) Math.min(size - 1, offset);
     while (low <= high) {
-      int mid = low + ((high - low) / 2);
-
-      long i = buffer.readLong(mid * ENTRY_SIZE);
-      if (i < offset) {
+      int mid = (low + high) >>> 1;
+      int midOffset = offsets[mid];
+      if (midOffset < offset) {
         low = mid + 1;
-      } else if (i > offset) {
+      } else if (midOffset > offset) {
         high = mid - 1;
       } else {
         return mid;
       }
     }
-
-    return (low < high) ? low + 1 : high + 1;
+    return -(low + 1);
   }
 
   @Override
@@ -166,51 +155,68 @@ public class SearchableOffsetIndex implements OffsetIndex {
       return -1;
 
     if (offset == -1) {
-      buffer.position(0).zero();
-      currentOffset = currentMatch = lastOffset = -1;
+      size = 0;
+      lastOffset = -1;
       return 0;
     }
 
-    long nearestOffset = findAfter(offset + 1);
-
-    if (nearestOffset == -1)
+    // Find the first entry following the given offset. The position of that entry is the position to which the
+    // segment must be truncated.
+    int size = this.size;
+    Entries entries = this.entries;
+    int index = search(entries.offsets, size, offset);
+    int next = index >= 0 ? index + 1 : -(index + 1);
+    if (next >= size) {
+      lastOffset = offset;
       return -1;
-
-    long nearestIndex = nearestOffset * ENTRY_SIZE;
-
-    long lastOffset = lastOffset();
-    for (long i = lastOffset; i > offset; i--) {
-      if (position(i) != -1) {
-        size--;
-      }
     }
 
-    long position = buffer.readUnsignedInt(nearestIndex + OFFSET_SIZE);
-
-    buffer.position(nearestIndex)
-      .zero(nearestIndex);
-    this.lastOffset = offset;
-    currentOffset = currentMatch = -1;
-
+    long position = entries.positions[next] & MAX_POSITION;
+    this.size = next;
+    lastOffset = offset;
     return position;
   }
 
   @Override
   public void flush() {
-    buffer.flush();
+    // The index is held in memory.
   }
 
   @Override
   public void close() {
-    buffer.close();
+    // The index is held in memory.
   }
 
   @Override
   public void delete() {
-    if (buffer instanceof FileBuffer) {
-      ((FileBuffer) buffer).delete();
-    } else if (buffer instanceof MappedBuffer) {
-      ((MappedBuffer) buffer).delete();
+    // The index is held in memory.
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[size=%d, lastOffset=%d]", getClass().getSimpleName(), size, lastOffset);
+  }
+
+  /**
+   * Parallel offset and position arrays.
+   */
+  private static final class Entries {
+    private final int[] offsets;
+    private final int[] positions;
+
+    private Entries(int capacity) {
+      this.offsets = new int[capacity];
+      this.positions = new int[capacity];
+    }
+
+    /**
+     * Returns a copy of the first {@code size} entries in arrays with double the capacity.
+     */
+    private Entries grow(int size) {
+      Entries entries = new Entries(offsets.length * 2);
+      System.arraycopy(offsets, 0, entries.offsets, 0, size);
+      System.arraycopy(positions, 0, entries.positions, 0, size);
+      return entries;
     }
   }
 
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package io.atomix.copycat.server.storage.snapshot;
+
+import io.atomix.catalyst.buffer.Buffer;
+import io.atomix.catalyst.util.Assert;
+
+/**
+ * Reads keyed state written by a {@link DeltaSnapshotWriter} from a snapshot.
+ * <p>
+ * The reader iterates through the records of a snapshot in the order in which they were written. Each call to
+ * {@link #next()} advances the reader to the next record, after which the record's {@link #key() key} and
+ * {@link #value() value} can be read.
+ * <pre>
+ *   {@code
+ *   while (reader.next()) {
+ *     if (reader.isRemove()) {
+ *       map.remove(reader.key());
+ *     } else {
+ *       map.put(reader.key(), reader.value());
+ *     }
+ *   }
+ *   }
+ * </pre>
+ * If the snapshot being read is a {@link #isDelta() delta}, records must be applied on top of the existing state.
+ * Otherwise, the snapshot contains the complete keyed state.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public final class DeltaSnapshotReader {
+  private final SnapshotReader reader;
+  private final boolean delta;
+  private int type;
+  private String key;
+  private int length;
+  private boolean consumed;
+  private Object value;
+
+  /**
+   * @param reader The snapshot reader from which to read records.
+   * @param delta Whether the snapshot is a delta snapshot.
+   */
+  public DeltaSnapshotReader(SnapshotReader reader, boolean delta) {
+    this.reader = Assert.notNull(reader, "reader");
+    this.delta = delta;
+  }
+
+  /**
+   * Returns a boolean indicating whether the snapshot being read is a delta snapshot.
+   *
+   * @return Indicates whether records should be applied on top of the existing state.
+   */
+  public boolean isDelta() {
+    return delta;
+  }
+
+  /**
+   * Advances the reader to the next record.
+   *
+   * @return Indicates whether a record was read. If {@code false}, the end of the snapshot has been reached.
+   */
+  public boolean next() {
+    // If the value of the previous record was not read, skip it.
+    if (!consumed && length > 0) {
+      reader.skip(length);
+    }
+
+    value = null;
+    length = 0;
+    consumed = false;
+
+    if (!reader.hasRemaining()) {
+      key = null;
+      return false;
+    }
+
+    type = reader.readByte();
+    key = reader.readUTF8();
+    if (type == DeltaSnapshotWriter.PUT) {
+      length = reader.readInt();
+    }
+    return true;
+  }
+
+  /**
+   * Returns the key of the current record.
+   *
+   * @return The key of the current record.
+   * @throws IllegalStateException if the reader is not positioned at a record
+   */
+  public String key() {
+    Assert.state(key != null, "no current record");
+    return key;
+  }
+
+  /**
+   * Returns a boolean indicating whether the current record removes its key.
+   *
+   * @return Indicates whether the current record removes its key.
+   */
+  public boolean isRemove() {
+    return type == DeltaSnapshotWriter.REMOVE;
+  }
+
+  /**
+   * Returns the value of the current record.
+   *
+   * @param <T> The value type.
+   * @return The value of the current record.
+   * @throws IllegalStateException if the reader is not positioned at a record or the record removes its key
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T value() {
+    Assert.state(key != null, "no current record");
+    Assert.stateNot(isRemove(), "cannot read value of removed key");
+    if (!consumed) {
+      value = reader.readObject();
+      consumed = true;
+    }
+    return (T) value;
+  }
+
+  /**
+   * Returns the serialized value of the current record without deserializing it.
+   */
+  Buffer rawValue() {
+    Assert.state(!consumed, "value already read");
+    consumed = true;
+    return reader.readSlice(length);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[delta=%b]", getClass().getSimpleName(), delta);
+  }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package io.atomix.copycat.server.storage.snapshot;
+
+import io.atomix.catalyst.buffer.Buffer;
+import io.atomix.catalyst.util.Assert;
+
+/**
+ * Writes keyed state to a snapshot.
+ * <p>
+ * Keyed snapshots are written as a sequence of records, each of which either {@link #put(String, Object) puts}
+ * a value for a key or {@link #remove(String) removes} a key. Because the snapshot store understands the record
+ * format, it can merge a {@link Snapshot#isDelta() delta} snapshot with the snapshots on which it is based without
+ * involving the state machine.
+ * <pre>
+ *   {@code
+ *   DeltaSnapshotWriter writer = new DeltaSnapshotWriter(snapshot.writer());
+ *   writer.put("foo", "bar");
+ *   writer.remove("baz");
+ *   }
+ * </pre>
+ * Each record is written as a type byte followed by the UTF-8 key and, for puts, the length of the serialized
+ * value followed by the value itself.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public final class DeltaSnapshotWriter {
+  static final byte PUT = 1;
+  static final byte REMOVE = 2;
+  private final SnapshotWriter writer;
+
+  public DeltaSnapshotWriter(SnapshotWriter writer) {
+    this.writer = Assert.notNull(writer, "writer");
+  }
+
+  /**
+   * Writes the value of a key to the snapshot.
+   *
+   * @param key The key to write.
+   * @param value The value of the key. The value will be serialized with the snapshot serializer.
+   * @return The delta snapshot writer.
+   * @throws NullPointerException if {@code key} is null
+   */
+  public DeltaSnapshotWriter put(String key, Object value) {
+    writer.writeByte(PUT)
+      .writeUTF8(Assert.notNull(key, "key"))
+      .writeLengthPrefixedObject(value);
+    return this;
+  }
+
+  /**
+   * Writes a serialized value of a key to the snapshot.
+   */
+  DeltaSnapshotWriter putRaw(String key, Buffer value) {
+    writer.writeByte(PUT)
+      .writeUTF8(key)
+      .writeInt((int) value.remaining())
+      .write(value);
+    return this;
+  }
+
+  /**
+   * Writes a serialized value of a key to the snapshot.
+   */
+  DeltaSnapshotWriter putRaw(String key, byte[] value) {
+    writer.writeByte(PUT)
+      .writeUTF8(key)
+      .writeInt(value.length)
+      .write(value);
+    return this;
+  }
+
+  /**
+   * Writes the removal of a key to the snapshot.
+   * <p>
+   * Removals only need to be written to {@link Snapshot#isDelta() delta} snapshots to indicate that a key
+   * present in a prior snapshot has since been removed.
+   *
+   * @param key The key to remove.
+   * @return The delta snapshot writer.
+   * @throws NullPointerException if {@code key} is null
+   */
+  public DeltaSnapshotWriter remove(String key) {
+    writer.writeByte(REMOVE).writeUTF8(Assert.notNull(key, "key"));
+    return this;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[writer=%s]", getClass().getSimpleName(), writer);
+  }
+
+}
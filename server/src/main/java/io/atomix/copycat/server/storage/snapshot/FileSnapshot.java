@@ -17,9 +17,12 @@ package io.atomix.copycat.server.storage.snapshot;
 
 import io.atomix.catalyst.buffer.Buffer;
 import io.atomix.catalyst.buffer.FileBuffer;
+import io.atomix.catalyst.buffer.MappedBuffer;
 import io.atomix.catalyst.util.Assert;
+import io.atomix.copycat.server.storage.compression.Codec;
 
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
@@ -30,14 +33,25 @@ import java.nio.file.Path;
  */
 final class FileSnapshot extends Snapshot {
   private final SnapshotFile file;
+  private final long baseIndex;
+  private final int codec;
   private final SnapshotStore store;
 
-  FileSnapshot(SnapshotFile file, SnapshotStore store) {
+  FileSnapshot(SnapshotFile file, long baseIndex, int codec, SnapshotStore store) {
     super(store);
     this.file = Assert.notNull(file, "file");
+    this.baseIndex = baseIndex;
+    this.codec = codec;
     this.store = Assert.notNull(store, "store");
   }
 
+  /**
+   * Returns the snapshot file.
+   */
+  SnapshotFile file() {
+    return file;
+  }
+
   @Override
   public long index() {
     return file.index();
@@ -48,19 +62,43 @@ final class FileSnapshot extends Snapshot {
     return file.timestamp();
   }
 
+  @Override
+  public long baseIndex() {
+    return baseIndex;
+  }
+
+  @Override
+  public int codec() {
+    return codec;
+  }
+
   @Override
   public synchronized SnapshotWriter writer() {
+    return openWriter(store.codec(codec));
+  }
+
+  @Override
+  public synchronized SnapshotWriter streamWriter() {
+    return openWriter(null);
+  }
+
+  /**
+   * Opens a writer that compresses the snapshot with the given codec.
+   */
+  private SnapshotWriter openWriter(Codec codec) {
     checkWriter();
     SnapshotDescriptor descriptor = SnapshotDescriptor.builder()
       .withIndex(file.index())
       .withTimestamp(file.timestamp())
+      .withBaseIndex(baseIndex)
+      .withCodec(this.codec)
       .build();
 
     Buffer buffer = FileBuffer.allocate(file.file(), SnapshotDescriptor.BYTES);
     descriptor.copyTo(buffer);
 
     int length = buffer.position(SnapshotDescriptor.BYTES).readInt();
-    return openWriter(new SnapshotWriter(buffer.skip(length).mark(), this, store.serializer()), descriptor);
+    return openWriter(new SnapshotWriter(buffer.skip(length).mark(), this, store.serializer(), codec), descriptor);
   }
 
   @Override
@@ -76,17 +114,31 @@ final class FileSnapshot extends Snapshot {
     Buffer buffer = FileBuffer.allocate(file.file(), SnapshotDescriptor.BYTES);
     SnapshotDescriptor descriptor = new SnapshotDescriptor(buffer);
     int length = buffer.position(SnapshotDescriptor.BYTES).readInt();
+    return openReader(new SnapshotReader(buffer.mark().limit(SnapshotDescriptor.BYTES + Integer.BYTES + length), this, store.serializer(), store.codec(codec)), descriptor);
+  }
+
+  /**
+   * Returns a reader that reads the snapshot file from memory-mapped memory.
+   * <p>
+   * Mapping the snapshot file allows slices of the snapshot to be read directly from the page cache. Compressed
+   * snapshots are read as stored on disk.
+   */
+  @Override
+  public synchronized SnapshotReader streamReader() {
+    Assert.state(file.file().exists(), "missing snapshot file: %s", file.file());
+    Buffer buffer = MappedBuffer.allocate(file.file(), FileChannel.MapMode.READ_ONLY, file.file().length());
+    SnapshotDescriptor descriptor = new SnapshotDescriptor(buffer);
+    int length = buffer.position(SnapshotDescriptor.BYTES).readInt();
     return openReader(new SnapshotReader(buffer.mark().limit(SnapshotDescriptor.BYTES + Integer.BYTES + length), this, store.serializer()), descriptor);
   }
 
   @Override
-  public Snapshot complete() {
+  void lock() {
     Buffer buffer = FileBuffer.allocate(file.file(), SnapshotDescriptor.BYTES);
     try (SnapshotDescriptor descriptor = new SnapshotDescriptor(buffer)) {
       Assert.stateNot(descriptor.locked(), "cannot complete locked snapshot descriptor");
       descriptor.lock();
     }
-    return super.complete();
   }
 
   /**
@@ -105,7 +157,7 @@ final class FileSnapshot extends Snapshot {
 
   @Override
   public String toString() {
-    return String.format("%s[index=%d]", getClass().getSimpleName(), index());
+    return String.format("%s[index=%d, baseIndex=%d, codec=%d]", getClass().getSimpleName(), index(), baseIndex, codec);
   }
 
 }
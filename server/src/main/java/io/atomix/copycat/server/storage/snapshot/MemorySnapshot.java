@@ -47,8 +47,24 @@ final class MemorySnapshot extends Snapshot {
     return descriptor.timestamp();
   }
 
+  @Override
+  public long baseIndex() {
+    return descriptor.baseIndex();
+  }
+
+  @Override
+  public int codec() {
+    return descriptor.codec();
+  }
+
   @Override
   public SnapshotWriter writer() {
+    checkWriter();
+    return new SnapshotWriter(buffer.reset().slice(), this, store.serializer(), store.codec(descriptor.codec()));
+  }
+
+  @Override
+  public SnapshotWriter streamWriter() {
     checkWriter();
     return new SnapshotWriter(buffer.reset().slice(), this, store.serializer());
   }
@@ -61,14 +77,18 @@ final class MemorySnapshot extends Snapshot {
 
   @Override
   public synchronized SnapshotReader reader() {
+    return openReader(new SnapshotReader(buffer.reset().slice(), this, store.serializer(), store.codec(descriptor.codec())), descriptor);
+  }
+
+  @Override
+  public synchronized SnapshotReader streamReader() {
     return openReader(new SnapshotReader(buffer.reset().slice(), this, store.serializer()), descriptor);
   }
 
   @Override
-  public Snapshot complete() {
+  void lock() {
     descriptor.lock();
     buffer.flip().position(SnapshotDescriptor.BYTES).mark();
-    return super.complete();
   }
 
   @Override
@@ -78,7 +98,7 @@ final class MemorySnapshot extends Snapshot {
 
   @Override
   public String toString() {
-    return String.format("%s[index=%d]", getClass().getSimpleName(), descriptor.index());
+    return String.format("%s[index=%d, baseIndex=%d, codec=%d]", getClass().getSimpleName(), descriptor.index(), descriptor.baseIndex(), descriptor.codec());
   }
 
 }
@@ -78,6 +78,48 @@ public abstract class Snapshot implements AutoCloseable {
    */
   public abstract long timestamp();
 
+  /**
+   * Returns the index of the snapshot on which this snapshot is based.
+   * <p>
+   * Full snapshots contain the complete state of the state machine and have a base index of {@code 0}.
+   * {@link #isDelta() Delta} snapshots contain only the state that changed since the snapshot at the base
+   * index, and the state at this snapshot's {@link #index() index} is restored by installing the
+   * {@link SnapshotStore#chain(Snapshot) chain} of snapshots ending with this snapshot.
+   *
+   * @return The base snapshot index.
+   */
+  public abstract long baseIndex();
+
+  /**
+   * Returns a boolean indicating whether the snapshot is a delta snapshot.
+   *
+   * @return Indicates whether the snapshot contains only the state that changed since its base snapshot.
+   */
+  public boolean isDelta() {
+    return baseIndex() > 0;
+  }
+
+  /**
+   * Returns a boolean indicating whether the snapshot is compressed.
+   * <p>
+   * Compressed snapshots are transparently compressed by {@link #writer() writers} and decompressed by
+   * {@link #reader() readers}. {@link #streamReader() Stream readers} and {@link #streamWriter() stream writers}
+   * read and write the snapshot as stored.
+   *
+   * @return Indicates whether the snapshot is compressed.
+   */
+  public boolean isCompressed() {
+    return codec() != 0;
+  }
+
+  /**
+   * Returns the identifier of the codec with which the snapshot is compressed.
+   *
+   * @return The snapshot {@link io.atomix.copycat.server.storage.compression.Codec#id() codec identifier}, or
+   * {@code 0} if the snapshot is not compressed.
+   */
+  public abstract int codec();
+
   /**
    * Returns a new snapshot writer.
    * <p>
@@ -90,6 +132,20 @@ public abstract class Snapshot implements AutoCloseable {
    */
   public abstract SnapshotWriter writer();
 
+  /**
+   * Returns a new snapshot writer for writing the snapshot as stored.
+   * <p>
+   * Stream writers write bytes read from another snapshot's {@link #streamReader() stream reader}, such as when
+   * a snapshot is replicated from another server, without compressing them. By default, this method returns a
+   * standard {@link #writer()}.
+   *
+   * @return A new snapshot writer.
+   * @throws IllegalStateException if a writer was already created or the snapshot is {@link #complete() complete}
+   */
+  public SnapshotWriter streamWriter() {
+    return writer();
+  }
+
   /**
    * Checks that the snapshot can be written.
    */
@@ -126,6 +182,22 @@ public abstract class Snapshot implements AutoCloseable {
    */
   public abstract SnapshotReader reader();
 
+  /**
+   * Returns a new snapshot reader for streaming the snapshot sequentially.
+   * <p>
+   * Stream readers are intended for reading a snapshot in chunks over a long period of time, such as when a
+   * snapshot is replicated to another server. {@link SnapshotReader#readSlice(long) Slices} of a stream reader
+   * can be read without copying the snapshot bytes. Stream readers read the snapshot as stored and do not
+   * decompress {@link #isCompressed() compressed} snapshots. By default, this method returns a standard
+   * {@link #reader()}.
+   *
+   * @return A new snapshot reader.
+   * @throws IllegalStateException if the snapshot is not {@link #complete() complete}
+   */
+  public SnapshotReader streamReader() {
+    return reader();
+  }
+
   /**
    * Opens the given snapshot reader.
    */
@@ -152,10 +224,17 @@ public abstract class Snapshot implements AutoCloseable {
    * @return The completed snapshot.
    */
   public Snapshot complete() {
+    lock();
     store.completeSnapshot(this);
     return this;
   }
 
+  /**
+   * Locks the snapshot to persist it without completing it in the snapshot store.
+   */
+  void lock() {
+  }
+
   /**
    * Closes the snapshot.
    */
@@ -58,6 +58,8 @@ public final class SnapshotDescriptor implements AutoCloseable {
   private final long index;
   private final long timestamp;
   private boolean locked;
+  private final long baseIndex;
+  private final int codec;
 
   /**
    * @throws NullPointerException if {@code buffer} is null
@@ -67,6 +69,8 @@ public final class SnapshotDescriptor implements AutoCloseable {
     this.index = buffer.readLong();
     this.timestamp = buffer.readLong();
     this.locked = buffer.readBoolean();
+    this.baseIndex = buffer.readLong();
+    this.codec = buffer.readUnsignedByte();
     buffer.skip(BYTES - buffer.position());
   }
 
@@ -88,6 +92,39 @@ public final class SnapshotDescriptor implements AutoCloseable {
     return timestamp;
   }
 
+  /**
+   * Returns the index of the snapshot on which the snapshot is based.
+   * <p>
+   * Full snapshots have a base index of {@code 0}. Delta snapshots store only the state that changed since
+   * the snapshot at the base index.
+   *
+   * @return The snapshot base index.
+   */
+  public long baseIndex() {
+    return baseIndex;
+  }
+
+  /**
+   * Returns whether the snapshot is compressed.
+   * <p>
+   * Compressed snapshots are stored as a sequence of independently compressed blocks.
+   *
+   * @return Indicates whether the snapshot is compressed.
+   */
+  public boolean compressed() {
+    return codec != 0;
+  }
+
+  /**
+   * Returns the identifier of the codec with which the snapshot is compressed.
+   *
+   * @return The snapshot {@link io.atomix.copycat.server.storage.compression.Codec#id() codec identifier}, or
+   * {@code 0} if the snapshot is not compressed.
+   */
+  public int codec() {
+    return codec;
+  }
+
   /**
    * Returns whether the snapshot has been locked by commitment.
    * <p>
@@ -117,6 +154,8 @@ public final class SnapshotDescriptor implements AutoCloseable {
       .writeLong(index)
       .writeLong(timestamp)
       .writeBoolean(locked)
+      .writeLong(baseIndex)
+      .writeUnsignedByte(codec)
       .skip(BYTES - buffer.position())
       .flush();
     return this;
@@ -167,6 +206,31 @@ public final class SnapshotDescriptor implements AutoCloseable {
       return this;
     }
 
+    /**
+     * Sets the snapshot base index.
+     *
+     * @param baseIndex The index of the snapshot on which the snapshot is based.
+     * @return The snapshot builder.
+     */
+    public Builder withBaseIndex(long baseIndex) {
+      buffer.writeLong(17, baseIndex);
+      return this;
+    }
+
+    /**
+     * Sets the identifier of the codec with which the snapshot is compressed.
+     *
+     * @param codec The snapshot {@link io.atomix.copycat.server.storage.compression.Codec#id() codec identifier},
+     *              or {@code 0} if the snapshot is not compressed.
+     * @return The snapshot builder.
+     * @throws IllegalArgumentException if the codec identifier is not between {@code 0} and {@code 255}
+     */
+    public Builder withCodec(int codec) {
+      Assert.arg(codec >= 0 && codec <= 255, "codec must be between 0 and 255");
+      buffer.writeUnsignedByte(25, codec);
+      return this;
+    }
+
     /**
      * Builds the segment descriptor.
      *
@@ -31,6 +31,7 @@ public final class SnapshotFile {
   private static final char PART_SEPARATOR = '-';
   private static final char EXTENSION_SEPARATOR = '.';
   private static final String EXTENSION = "snapshot";
+  private static final String MERGE_EXTENSION = "merge";
   private final File file;
 
   /**
@@ -63,6 +64,24 @@ public final class SnapshotFile {
     return fileName.substring(0, fileName.lastIndexOf(PART_SEPARATOR, fileName.lastIndexOf(PART_SEPARATOR) - 1)).equals(name);
   }
 
+  /**
+   * Returns a boolean value indicating whether the given file appears to be a partially merged snapshot file.
+   */
+  static boolean isMergeFile(String name, File file) {
+    return file.getName().startsWith(name + PART_SEPARATOR) && file.getName().endsWith(EXTENSION_SEPARATOR + MERGE_EXTENSION);
+  }
+
+  /**
+   * Creates a file to which to merge the chain of snapshots ending with the given snapshot file.
+   * <p>
+   * Merge files are named like the snapshot file they replace so that the snapshot index and timestamp
+   * can be read from the merge file name.
+   */
+  static File createMergeFile(File file) {
+    String name = file.getName();
+    return new File(file.getParentFile(), name.substring(0, name.lastIndexOf(EXTENSION_SEPARATOR) + 1) + MERGE_EXTENSION);
+  }
+
   /**
    * Creates a snapshot file for the given directory, log name, and snapshot index.
    */
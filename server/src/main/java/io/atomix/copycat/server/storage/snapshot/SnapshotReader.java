@@ -15,13 +15,17 @@
  */
 package io.atomix.copycat.server.storage.snapshot;
 
+import java.nio.BufferUnderflowException;
 import java.nio.charset.Charset;
 
 import io.atomix.catalyst.buffer.Buffer;
 import io.atomix.catalyst.buffer.BufferInput;
 import io.atomix.catalyst.buffer.Bytes;
+import io.atomix.catalyst.buffer.HeapBuffer;
 import io.atomix.catalyst.serializer.Serializer;
 import io.atomix.catalyst.util.Assert;
+import io.atomix.copycat.server.storage.StorageException;
+import io.atomix.copycat.server.storage.compression.Codec;
 
 /**
  * Reads bytes from a state machine {@link Snapshot}.
@@ -33,6 +37,10 @@ import io.atomix.catalyst.util.Assert;
  * In addition to standard {@link BufferInput} methods, snapshot readers support reading serializable objects
  * from the snapshot via the {@link #readObject()} method. Serializable types must be registered on the
  * {@link io.atomix.copycat.server.CopycatServer} serializer to be supported in snapshots.
+ * <p>
+ * Readers of compressed snapshots decompress one block at a time as the snapshot is read. Since each value written
+ * to a compressed snapshot is stored within a single block, values should be read with the same granularity as
+ * they were written.
  *
  * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
  */
@@ -40,29 +48,124 @@ public class SnapshotReader implements BufferInput<SnapshotReader> {
   private final Buffer buffer;
   private final Snapshot snapshot;
   private final Serializer serializer;
+  private final Codec codec;
+  private final HeapBuffer block;
+  private byte[] compressed;
 
   SnapshotReader(Buffer buffer, Snapshot snapshot, Serializer serializer) {
+    this(buffer, snapshot, serializer, null);
+  }
+
+  /**
+   * @param codec The codec with which to decompress the snapshot, or {@code null} to read the snapshot as stored.
+   */
+  SnapshotReader(Buffer buffer, Snapshot snapshot, Serializer serializer, Codec codec) {
     this.buffer = Assert.notNull(buffer, "buffer");
     this.snapshot = Assert.notNull(snapshot, "snapshot");
     this.serializer = Assert.notNull(serializer, "serializer");
+    this.codec = codec;
+    this.block = codec != null ? HeapBuffer.allocate(SnapshotWriter.BLOCK_SIZE, Integer.MAX_VALUE) : null;
+    if (block != null) {
+      block.limit(0);
+    }
+  }
+
+  /**
+   * Returns the buffer from which to read the next value, decompressing the next block if necessary.
+   */
+  private Buffer input() {
+    if (block == null) {
+      return buffer;
+    }
+    if (!block.hasRemaining() && buffer.hasRemaining()) {
+      readBlock();
+    }
+    return block;
+  }
+
+  /**
+   * Reads and decompresses the next block of the snapshot.
+   */
+  private void readBlock() {
+    int length = buffer.readInt();
+    int storedLength = buffer.readInt();
+    if (length < 0 || storedLength < 0 || storedLength > length) {
+      throw new StorageException("corrupt snapshot block");
+    }
+
+    block.clear();
+    if (block.capacity() < length) {
+      block.capacity(length);
+    }
+
+    if (storedLength == length) {
+      buffer.read(block.array(), 0, length);
+    } else {
+      if (compressed == null || compressed.length < storedLength) {
+        compressed = new byte[storedLength];
+      }
+      buffer.read(compressed, 0, storedLength);
+      codec.decompress(compressed, 0, storedLength, block.array(), 0, length);
+    }
+    block.limit(length);
   }
 
+  /**
+   * Returns the number of bytes remaining in the snapshot.
+   * <p>
+   * For compressed snapshots, the number of bytes remaining is the number of bytes remaining in the current
+   * decompressed block plus the number of stored bytes remaining in the snapshot.
+   *
+   * @return The number of bytes remaining in the snapshot.
+   */
   @Override
   public long remaining() {
-    return buffer.remaining();
+    return block != null ? block.remaining() + buffer.remaining() : buffer.remaining();
   }
 
   @Override
   public boolean hasRemaining() {
-    return buffer.hasRemaining();
+    return (block != null && block.hasRemaining()) || buffer.hasRemaining();
   }
 
   @Override
   public SnapshotReader skip(long bytes) {
-    buffer.skip(bytes);
+    if (block == null) {
+      buffer.skip(bytes);
+    } else {
+      while (bytes > 0) {
+        Buffer input = input();
+        long skipped = Math.min(bytes, input.remaining());
+        if (skipped == 0) {
+          throw new BufferUnderflowException();
+        }
+        input.skip(skipped);
+        bytes -= skipped;
+      }
+    }
     return this;
   }
 
+  /**
+   * Reads a view of the next {@code length} bytes in the snapshot.
+   * <p>
+   * The returned buffer shares memory with the snapshot reader, so no bytes are copied. The reader is advanced
+   * past the returned bytes. The returned buffer is only valid until the reader is {@link #close() closed}.
+   *
+   * @param length The number of bytes to read.
+   * @return A view of the next {@code length} bytes in the snapshot.
+   * @throws java.nio.BufferUnderflowException if fewer than {@code length} bytes remain in the snapshot
+   */
+  public Buffer readSlice(long length) {
+    Buffer input = input();
+    if (length > input.remaining()) {
+      throw new BufferUnderflowException();
+    }
+    Buffer slice = input.slice(input.position(), length);
+    input.skip(length);
+    return slice;
+  }
+
   /**
    * Reads an object from the buffer.
    *
@@ -70,122 +173,138 @@ public class SnapshotReader implements BufferInput<SnapshotReader> {
    * @return The read object.
    */
   public <T> T readObject() {
-    return serializer.readObject(buffer);
+    return serializer.readObject(input());
   }
 
   @Override
   public SnapshotReader read(Bytes bytes) {
-    buffer.read(bytes);
+    input().read(bytes);
     return this;
   }
 
   @Override
   public SnapshotReader read(byte[] bytes) {
-    buffer.read(bytes);
-    return this;
+    return read(bytes, 0, bytes.length);
   }
 
   @Override
   public SnapshotReader read(Bytes bytes, long offset, long length) {
-    buffer.read(bytes, offset, length);
+    input().read(bytes, offset, length);
     return this;
   }
 
   @Override
   public SnapshotReader read(byte[] bytes, long offset, long length) {
-    buffer.read(bytes, offset, length);
+    if (block == null) {
+      buffer.read(bytes, offset, length);
+    } else {
+      // Byte arrays may be read with a different granularity than they were written, so read across blocks.
+      while (length > 0) {
+        Buffer input = input();
+        long read = Math.min(length, input.remaining());
+        if (read == 0) {
+          throw new BufferUnderflowException();
+        }
+        input.read(bytes, offset, read);
+        offset += read;
+        length -= read;
+      }
+    }
     return this;
   }
 
   @Override
   public SnapshotReader read(Buffer buffer) {
-    this.buffer.read(buffer);
+    input().read(buffer);
     return this;
   }
 
   @Override
   public int readByte() {
-    return buffer.readByte();
+    return input().readByte();
   }
 
   @Override
   public int readUnsignedByte() {
-    return buffer.readUnsignedByte();
+    return input().readUnsignedByte();
   }
 
   @Override
   public char readChar() {
-    return buffer.readChar();
+    return input().readChar();
   }
 
   @Override
   public short readShort() {
-    return buffer.readShort();
+    return input().readShort();
   }
 
   @Override
   public int readUnsignedShort() {
-    return buffer.readUnsignedShort();
+    return input().readUnsignedShort();
   }
 
   @Override
   public int readMedium() {
-    return buffer.readMedium();
+    return input().readMedium();
   }
 
   @Override
   public int readUnsignedMedium() {
-    return buffer.readUnsignedMedium();
+    return input().readUnsignedMedium();
   }
 
   @Override
   public int readInt() {
-    return buffer.readInt();
+    return input().readInt();
   }
 
   @Override
   public long readUnsignedInt() {
-    return buffer.readUnsignedInt();
+    return input().readUnsignedInt();
   }
 
   @Override
   public long readLong() {
-    return buffer.readLong();
+    return input().readLong();
   }
 
   @Override
   public float readFloat() {
-    return buffer.readFloat();
+    return input().readFloat();
   }
 
   @Override
   public double readDouble() {
-    return buffer.readDouble();
+    return input().readDouble();
   }
 
   @Override
   public boolean readBoolean() {
-    return buffer.readBoolean();
+    return input().readBoolean();
   }
 
   @Override
   public String readString() {
-    return buffer.readString();
+    return input().readString();
   }
 
   @Override
   public String readString(Charset charset) {
-    return buffer.readString(charset);
+    return input().readString(charset);
   }
 
   @Override
   public String readUTF8() {
-    return buffer.readUTF8();
+    return input().readUTF8();
   }
 
   @Override
   public void close() {
     buffer.close();
+    if (block != null) {
+      block.close();
+    }
     snapshot.closeReader(this);
   }
 
@@ -15,18 +15,29 @@
  */
 package io.atomix.copycat.server.storage.snapshot;
 
+import io.atomix.catalyst.buffer.Buffer;
 import io.atomix.catalyst.buffer.FileBuffer;
 import io.atomix.catalyst.buffer.HeapBuffer;
+import io.atomix.catalyst.concurrent.CatalystThreadFactory;
 import io.atomix.catalyst.serializer.Serializer;
 import io.atomix.catalyst.util.Assert;
 import io.atomix.copycat.Command;
 import io.atomix.copycat.server.storage.Storage;
+import io.atomix.copycat.server.storage.StorageException;
 import io.atomix.copycat.server.storage.StorageLevel;
+import io.atomix.copycat.server.storage.compression.Codec;
+import io.atomix.copycat.server.storage.compression.Lz4Codec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Persists server snapshots via the {@link Storage} module.
@@ -67,16 +78,36 @@ import java.util.*;
  * the state machine state, only prior entries that contributed to the state stored in the snapshot -
  * commands marked with the {@link Command.CompactionMode#SNAPSHOT SNAPSHOT}
  * compaction mode - are removed from the log prior to the snapshot.
+ * <p>
+ * In addition to full snapshots, the store supports {@link #createDeltaSnapshot(long, long) delta snapshots}
+ * which contain only the keyed state that changed since a prior snapshot. The state at a delta snapshot's index
+ * is the {@link #chain(Snapshot) chain} of snapshots beginning with the last full snapshot and ending with the
+ * delta. Snapshots in the chain of the current snapshot are retained on disk, and once the chain grows beyond
+ * the configured {@link Storage#maxSnapshotDeltas() maximum number of deltas}, the chain is merged into a single
+ * full snapshot in a background thread.
+ * <p>
+ * Snapshots that are read or transferred across threads or over time should be {@link #acquireChain(Snapshot) acquired}
+ * for the duration of the read and {@link #releaseChain(List) released} afterwards. Acquired snapshots that become
+ * stale are not deleted until they've been released, and the head of an acquired chain is not replaced by a merge.
+ * <p>
+ * If a {@link Storage#snapshotCodec() snapshot codec} is configured, new snapshots are compressed in blocks as
+ * they're written and decompressed as they're read.
  *
  * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
  */
 public class SnapshotStore implements AutoCloseable {
   private static final Logger LOGGER = LoggerFactory.getLogger(SnapshotStore.class);
+  private static final Codec DEFAULT_CODEC = new Lz4Codec();
   private final String name;
   final Storage storage;
   private final Serializer serializer;
   private final TreeMap<Long, Snapshot> snapshots = new TreeMap<>();
-  private Snapshot currentSnapshot;
+  private volatile Snapshot currentSnapshot;
+  private final Map<Snapshot, Integer> references = new IdentityHashMap<>();
+  private final Set<Snapshot> pendingDeletes = Collections.newSetFromMap(new IdentityHashMap<>());
+  private ExecutorService mergeExecutor;
+  private boolean merging;
+  private CompletableFuture<Void> mergeFuture;
 
   public SnapshotStore(String name, Storage storage, Serializer serializer) {
     this.name = Assert.notNull(name, "name");
@@ -93,8 +124,12 @@ public class SnapshotStore implements AutoCloseable {
       snapshots.put(snapshot.index(), snapshot);
     }
 
-    if (!snapshots.isEmpty()) {
-      currentSnapshot = snapshots.lastEntry().getValue();
+    // The current snapshot is the most recent snapshot for which the complete chain of snapshots is stored.
+    for (Snapshot snapshot : snapshots.descendingMap().values()) {
+      if (findChain(snapshot) != null) {
+        currentSnapshot = snapshot;
+        break;
+      }
     }
   }
 
@@ -107,6 +142,40 @@ public class SnapshotStore implements AutoCloseable {
     return serializer;
   }
 
+  /**
+   * Returns the codec with which to read and write snapshots compressed with the given codec.
+   * <p>
+   * Compressed snapshots must have been compressed with the configured {@link Storage#snapshotCodec() codec}. If
+   * snapshot compression is not configured, snapshots recovered from disk or replicated from other servers that
+   * were compressed with the default {@link Lz4Codec} can still be read.
+   *
+   * @param id The identifier of the codec with which the snapshot is compressed, or {@code 0} if not compressed.
+   * @return The codec with which to read and write the snapshot, or {@code null} if the snapshot is not compressed.
+   * @throws StorageException if the snapshot was compressed with a different codec
+   */
+  Codec codec(int id) {
+    if (id == 0) {
+      return null;
+    }
+
+    Codec codec = storage.snapshotCodec();
+    if (codec == null) {
+      codec = DEFAULT_CODEC;
+    }
+    if (codec.id() != id) {
+      throw new StorageException(String.format("snapshot compressed with codec %d cannot be read with %s (codec %d)", id, codec.getClass().getSimpleName(), codec.id()));
+    }
+    return codec;
+  }
+
+  /**
+   * Returns the identifier of the codec with which to compress new snapshots.
+   */
+  private int codecId() {
+    Codec codec = storage.snapshotCodec();
+    return codec != null ? codec.id() : 0;
+  }
+
   /**
    * Returns the most recent completed snapshot.
    * <p>
@@ -129,8 +198,8 @@ public class SnapshotStore implements AutoCloseable {
    *
    * @return A collection of all snapshots.
    */
-  public Collection<Snapshot> snapshots() {
-    return snapshots.values();
+  public synchronized Collection<Snapshot> snapshots() {
+    return new ArrayList<>(snapshots.values());
   }
 
   /**
@@ -139,10 +208,121 @@ public class SnapshotStore implements AutoCloseable {
    * @param index The snapshot index.
    * @return The snapshot.
    */
-  public Snapshot snapshot(long index) {
+  public synchronized Snapshot snapshot(long index) {
     return snapshots.get(index);
   }
 
+  /**
+   * Returns the chain of snapshots required to restore the state at the given snapshot.
+   * <p>
+   * The chain begins with a full snapshot and is followed by each {@link Snapshot#isDelta() delta} snapshot
+   * up to and including the given snapshot. If the given snapshot is a full snapshot, the chain contains only
+   * the given snapshot.
+   *
+   * @param snapshot The snapshot for which to return the chain.
+   * @return The chain of snapshots ending with the given snapshot.
+   * @throws IllegalStateException if a snapshot in the chain is missing from the store
+   */
+  public synchronized List<Snapshot> chain(Snapshot snapshot) {
+    List<Snapshot> chain = findChain(Assert.notNull(snapshot, "snapshot"));
+    Assert.state(chain != null, "incomplete snapshot chain: %s", snapshot);
+    return chain;
+  }
+
+  /**
+   * Returns and acquires the chain of snapshots required to restore the state at the given snapshot.
+   * <p>
+   * Each snapshot in the returned chain is {@link #acquire(Snapshot) acquired} and must be
+   * {@link #releaseChain(List) released} once the chain has been read.
+   *
+   * @param snapshot The snapshot for which to return the chain.
+   * @return The chain of snapshots ending with the given snapshot.
+   * @throws IllegalStateException if a snapshot in the chain is missing from the store
+   */
+  public synchronized List<Snapshot> acquireChain(Snapshot snapshot) {
+    List<Snapshot> chain = chain(snapshot);
+    for (Snapshot next : chain) {
+      acquire(next);
+    }
+    return chain;
+  }
+
+  /**
+   * Acquires a reference to the given snapshot.
+   * <p>
+   * While a snapshot is referenced, it will not be deleted from disk even if it becomes stale, and if it's the head
+   * of a chain being merged the merged snapshot will not replace it. Each call to this method must be followed by a
+   * call to {@link #release(Snapshot)} once the snapshot is no longer being read.
+   *
+   * @param snapshot The snapshot to acquire.
+   */
+  public synchronized void acquire(Snapshot snapshot) {
+    references.merge(Assert.notNull(snapshot, "snapshot"), 1, Integer::sum);
+  }
+
+  /**
+   * Releases a chain of snapshots acquired via {@link #acquireChain(Snapshot)}.
+   *
+   * @param chain The chain of snapshots to release.
+   */
+  public synchronized void releaseChain(List<Snapshot> chain) {
+    for (Snapshot snapshot : chain) {
+      release(snapshot);
+    }
+  }
+
+  /**
+   * Releases a reference to the given snapshot.
+   * <p>
+   * Once the last reference to a stale snapshot is released, the snapshot is deleted. If a merge of the current
+   * snapshot chain was deferred while the chain was referenced, the merge is started.
+   *
+   * @param snapshot The snapshot to release.
+   * @throws IllegalStateException if the snapshot is not referenced
+   */
+  public synchronized void release(Snapshot snapshot) {
+    Integer count = references.get(Assert.notNull(snapshot, "snapshot"));
+    Assert.state(count != null, "snapshot not acquired: %s", snapshot);
+    if (count > 1) {
+      references.put(snapshot, count - 1);
+    } else {
+      references.remove(snapshot);
+      if (pendingDeletes.remove(snapshot)) {
+        snapshot.close();
+        snapshot.delete();
+      }
+      mergeIfNecessary();
+    }
+  }
+
+  /**
+   * Returns a future to be completed once the merge of the current snapshot chain, if any, completes.
+   * <p>
+   * If the chain is not being merged, the returned future is already completed.
+   *
+   * @return A future to be completed once the in-progress merge completes.
+   */
+  public synchronized CompletableFuture<Void> mergeFuture() {
+    return merging ? mergeFuture : CompletableFuture.completedFuture(null);
+  }
+
+  /**
+   * Finds the chain of snapshots ending with the given snapshot, returning {@code null} if the chain is incomplete.
+   */
+  private List<Snapshot> findChain(Snapshot snapshot) {
+    LinkedList<Snapshot> chain = new LinkedList<>();
+    Snapshot next = snapshot;
+    chain.addFirst(next);
+    while (next.isDelta()) {
+      next = snapshots.get(next.baseIndex());
+      if (next == null) {
+        return null;
+      }
+      chain.addFirst(next);
+    }
+    return new ArrayList<>(chain);
+  }
+
   /**
    * Loads all available snapshots from disk.
    *
@@ -157,8 +337,14 @@ public class SnapshotStore implements AutoCloseable {
     // Iterate through all files in the log directory.
     for (File file : storage.directory().listFiles(File::isFile)) {
 
+      // If the file is a partially merged snapshot, delete it. The snapshot chain from which it was being
+      // merged is still stored on disk.
+      if (SnapshotFile.isMergeFile(name, file)) {
+        LOGGER.debug("Deleting partial snapshot merge: {}", file.getName());
+        file.delete();
+      }
       // If the file looks like a segment file, attempt to load the segment.
-      if (SnapshotFile.isSnapshotFile(name, file)) {
+      else if (SnapshotFile.isSnapshotFile(name, file)) {
         SnapshotFile snapshotFile = new SnapshotFile(file);
         SnapshotDescriptor descriptor = new SnapshotDescriptor(FileBuffer.allocate(file, SnapshotDescriptor.BYTES));
 
@@ -166,8 +352,11 @@ public class SnapshotStore implements AutoCloseable {
         // unlocked and should ultimately be deleted from disk.
         if (descriptor.locked()) {
           LOGGER.debug("Loaded disk snapshot: {} ({})", snapshotFile.index(), snapshotFile.file().getName());
-          snapshots.add(new FileSnapshot(snapshotFile, this));
           descriptor.close();
+
+          // Fail to open the store if the snapshot can't be read with the configured codec.
+          codec(descriptor.codec());
+          snapshots.add(new FileSnapshot(snapshotFile, descriptor.baseIndex(), descriptor.codec(), this));
         }
         // If the segment descriptor wasn't locked, close and delete the descriptor.
         else {
@@ -191,14 +380,50 @@ public class SnapshotStore implements AutoCloseable {
     SnapshotDescriptor descriptor = SnapshotDescriptor.builder()
       .withIndex(index)
       .withTimestamp(System.currentTimeMillis())
+      .withCodec(codecId())
       .build();
     return createSnapshot(descriptor);
   }
 
   /**
-   * Creates a new snapshot buffer.
+   * Creates a new delta snapshot.
+   * <p>
+   * Delta snapshots should be written with a {@link DeltaSnapshotWriter} and contain only the keys that changed
+   * since the snapshot at the given base index. The base snapshot must have been written with a
+   * {@link DeltaSnapshotWriter} as well. A delta snapshot will not become the {@link #currentSnapshot() current}
+   * snapshot until every snapshot in its {@link #chain(Snapshot) chain} has been completed.
+   *
+   * @param index The snapshot index.
+   * @param baseIndex The index of the snapshot on which the delta is based.
+   * @return The snapshot.
+   * @throws IllegalArgumentException if the base index is not less than the snapshot index
    */
-  private Snapshot createSnapshot(SnapshotDescriptor descriptor) {
+  public Snapshot createDeltaSnapshot(long index, long baseIndex) {
+    Assert.arg(baseIndex, baseIndex > 0 && baseIndex < index, "baseIndex must be positive and less than index");
+    SnapshotDescriptor descriptor = SnapshotDescriptor.builder()
+      .withIndex(index)
+      .withTimestamp(System.currentTimeMillis())
+      .withBaseIndex(baseIndex)
+      .withCodec(codecId())
+      .build();
+    return createSnapshot(descriptor);
+  }
+
+  /**
+   * Creates a new snapshot from the given descriptor.
+   * <p>
+   * This method is used to create snapshots replicated from other servers, which must be stored with the same
+   * {@link SnapshotDescriptor#baseIndex() base index} and {@link SnapshotDescriptor#codec() codec}
+   * as the original snapshot.
+   *
+   * @param descriptor The snapshot descriptor.
+   * @return The snapshot.
+   * @throws IllegalArgumentException if the descriptor's base index is not less than its index
+   * @throws StorageException if the descriptor's codec is not the configured snapshot codec
+   */
+  public Snapshot createSnapshot(SnapshotDescriptor descriptor) {
+    Assert.argNot(descriptor.baseIndex() >= descriptor.index(), "baseIndex must be less than index");
+    codec(descriptor.codec());
     if (storage.level() == StorageLevel.MEMORY) {
       return createMemorySnapshot(descriptor);
     } else {
@@ -221,7 +446,7 @@ public class SnapshotStore implements AutoCloseable {
    */
   private Snapshot createDiskSnapshot(SnapshotDescriptor descriptor) {
     SnapshotFile file = new SnapshotFile(SnapshotFile.createSnapshotFile(name, storage.directory(), descriptor.index(), descriptor.timestamp()));
-    Snapshot snapshot = new FileSnapshot(file, this);
+    Snapshot snapshot = new FileSnapshot(file, descriptor.baseIndex(), descriptor.codec(), this);
     LOGGER.debug("Created disk snapshot: {}", snapshot);
     return snapshot;
   }
@@ -229,21 +454,75 @@ public class SnapshotStore implements AutoCloseable {
   /**
    * Completes writing a snapshot.
    */
-  protected void completeSnapshot(Snapshot snapshot) {
+  protected synchronized void completeSnapshot(Snapshot snapshot) {
     Assert.notNull(snapshot, "snapshot");
     snapshots.put(snapshot.index(), snapshot);
 
-    if (currentSnapshot == null || snapshot.index() > currentSnapshot.index()) {
-      currentSnapshot = snapshot;
+    // The current snapshot is the most recent snapshot for which the complete chain of snapshots is stored.
+    // Completing a snapshot may complete the chain of a more recent delta snapshot.
+    for (Snapshot nextSnapshot : snapshots.descendingMap().values()) {
+      if (currentSnapshot != null && nextSnapshot.index() <= currentSnapshot.index()) {
+        break;
+      } else if (findChain(nextSnapshot) != null) {
+        currentSnapshot = nextSnapshot;
+        break;
+      }
+    }
+
+    deleteStaleSnapshots();
+    mergeIfNecessary();
+  }
+
+  /**
+   * Merges the chain of the current snapshot in the background if the chain has grown too long.
+   * <p>
+   * The merge is deferred while the current snapshot is referenced, and the snapshots in the chain are referenced
+   * while they're being merged.
+   */
+  private void mergeIfNecessary() {
+    if (merging || currentSnapshot == null || references.containsKey(currentSnapshot)) {
+      return;
+    }
+
+    List<Snapshot> chain = findChain(currentSnapshot);
+    if (chain != null && chain.size() - 1 > storage.maxSnapshotDeltas()) {
+      merging = true;
+      mergeFuture = new CompletableFuture<>();
+      for (Snapshot snapshot : chain) {
+        acquire(snapshot);
+      }
+      mergeExecutor().execute(() -> mergeChain(chain));
+    }
+  }
+
+  /**
+   * Deletes snapshots that precede the current snapshot and are not in the chain of the current snapshot or
+   * any later snapshot.
+   * <p>
+   * Snapshots in the partial chain of a later snapshot are retained so that a chain of snapshots can be completed
+   * from its last snapshot to its first.
+   */
+  private void deleteStaleSnapshots() {
+    if (storage.retainStaleSnapshots() || currentSnapshot == null) {
+      return;
+    }
+
+    Set<Long> retained = new HashSet<>();
+    for (Snapshot snapshot : snapshots.tailMap(currentSnapshot.index(), true).values()) {
+      Snapshot next = snapshot;
+      while (next != null && retained.add(next.index()) && next.isDelta()) {
+        next = snapshots.get(next.baseIndex());
+      }
     }
 
-    // Delete old snapshots if necessary.
-    if (!storage.retainStaleSnapshots()) {
-      Iterator<Map.Entry<Long, Snapshot>> iterator = snapshots.entrySet().iterator();
-      while (iterator.hasNext()) {
-        Snapshot oldSnapshot = iterator.next().getValue();
-        if (oldSnapshot.index() < currentSnapshot.index()) {
-          iterator.remove();
+    Iterator<Map.Entry<Long, Snapshot>> iterator = snapshots.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Snapshot oldSnapshot = iterator.next().getValue();
+      if (oldSnapshot.index() < currentSnapshot.index() && !retained.contains(oldSnapshot.index())) {
+        iterator.remove();
+        if (references.containsKey(oldSnapshot)) {
+          pendingDeletes.add(oldSnapshot);
+        } else {
           oldSnapshot.close();
           oldSnapshot.delete();
         }
@@ -251,8 +530,143 @@ public class SnapshotStore implements AutoCloseable {
     }
   }
 
+  /**
+   * Returns the executor with which to merge snapshot chains, creating it if necessary.
+   */
+  private ExecutorService mergeExecutor() {
+    if (mergeExecutor == null) {
+      mergeExecutor = Executors.newSingleThreadExecutor(new CatalystThreadFactory("copycat-snapshot-merge-%d"));
+    }
+    return mergeExecutor;
+  }
+
+  /**
+   * Merges a chain of snapshots into a single full snapshot.
+   * <p>
+   * The changes in all deltas in the chain are read into memory, with later deltas overriding earlier ones. The
+   * base snapshot is then streamed into a new snapshot, skipping keys that were changed by a delta, and finally
+   * the changed keys are appended. Values are copied in their serialized form without being deserialized.
+   */
+  private void mergeChain(List<Snapshot> chain) {
+    Snapshot head = chain.get(chain.size() - 1);
+    Snapshot merged = null;
+    try {
+      Map<String, byte[]> changes = new LinkedHashMap<>();
+      for (Snapshot delta : chain.subList(1, chain.size())) {
+        try (SnapshotReader reader = delta.reader()) {
+          DeltaSnapshotReader records = new DeltaSnapshotReader(reader, true);
+          while (records.next()) {
+            if (records.isRemove()) {
+              changes.put(records.key(), null);
+            } else {
+              Buffer value = records.rawValue();
+              byte[] bytes = new byte[(int) value.remaining()];
+              value.read(bytes);
+              changes.put(records.key(), bytes);
+            }
+          }
+        }
+      }
+
+      merged = createMergeSnapshot(head);
+      try (SnapshotWriter writer = merged.writer(); SnapshotReader reader = chain.get(0).reader()) {
+        DeltaSnapshotWriter output = new DeltaSnapshotWriter(writer);
+        DeltaSnapshotReader records = new DeltaSnapshotReader(reader, false);
+        while (records.next()) {
+          if (!records.isRemove() && !changes.containsKey(records.key())) {
+            output.putRaw(records.key(), records.rawValue());
+          }
+        }
+
+        for (Map.Entry<String, byte[]> entry : changes.entrySet()) {
+          if (entry.getValue() != null) {
+            output.putRaw(entry.getKey(), entry.getValue());
+          }
+        }
+      }
+      merged.lock();
+    } catch (Exception e) {
+      LOGGER.warn("Failed to merge snapshot chain ending with {}: {}", head, e.getMessage());
+      if (merged != null) {
+        merged.close();
+        merged.delete();
+        merged = null;
+      }
+    } finally {
+      releaseChain(chain);
+    }
+    completeMerge(head, merged);
+  }
+
+  /**
+   * Creates a full snapshot to which to merge the chain of snapshots ending with the given snapshot.
+   */
+  private Snapshot createMergeSnapshot(Snapshot head) {
+    SnapshotDescriptor descriptor = SnapshotDescriptor.builder()
+      .withIndex(head.index())
+      .withTimestamp(head.timestamp())
+      .withCodec(codecId())
+      .build();
+    if (head instanceof FileSnapshot) {
+      SnapshotFile file = new SnapshotFile(SnapshotFile.createMergeFile(((FileSnapshot) head).file().file()));
+      return new FileSnapshot(file, 0, descriptor.codec(), this);
+    }
+    return createMemorySnapshot(descriptor);
+  }
+
+  /**
+   * Replaces the head of a merged chain with the merged snapshot.
+   * <p>
+   * Merged file snapshots are atomically moved over the head snapshot's file so that a failure during the merge
+   * never leaves the store without a complete chain. If the merge failed, {@code merged} is {@code null}.
+   */
+  private synchronized void completeMerge(Snapshot head, Snapshot merged) {
+    merging = false;
+    try {
+      if (merged == null) {
+        return;
+      }
+
+      // If the head of the chain was deleted while the chain was being merged, discard the merged snapshot.
+      // If the head is being read, discard the merged snapshot as well. The chain will be merged again once
+      // the head has been released.
+      if (snapshots.get(head.index()) != head || references.containsKey(head)) {
+        merged.close();
+        merged.delete();
+        return;
+      }
+
+      Snapshot replacement = merged;
+      if (head instanceof FileSnapshot) {
+        SnapshotFile file = ((FileSnapshot) head).file();
+        try {
+          Files.move(((FileSnapshot) merged).file().file().toPath(), file.file().toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+          LOGGER.warn("Failed to merge snapshot chain ending with {}: {}", head, e.getMessage());
+          merged.close();
+          merged.delete();
+          return;
+        }
+        replacement = new FileSnapshot(file, 0, merged.codec(), this);
+      }
+
+      LOGGER.debug("Merged snapshot chain ending with {}", head);
+      snapshots.put(head.index(), replacement);
+      if (currentSnapshot == head) {
+        currentSnapshot = replacement;
+      }
+      deleteStaleSnapshots();
+    } finally {
+      mergeFuture.complete(null);
+    }
+  }
+
   @Override
-  public void close() {
+  public synchronized void close() {
+    if (mergeExecutor != null) {
+      mergeExecutor.shutdownNow();
+      mergeExecutor = null;
+    }
   }
 
   @Override
@@ -20,8 +20,10 @@ import java.nio.charset.Charset;
 import io.atomix.catalyst.buffer.Buffer;
 import io.atomix.catalyst.buffer.BufferOutput;
 import io.atomix.catalyst.buffer.Bytes;
+import io.atomix.catalyst.buffer.HeapBuffer;
 import io.atomix.catalyst.serializer.Serializer;
 import io.atomix.catalyst.util.Assert;
+import io.atomix.copycat.server.storage.compression.Codec;
 
 /**
  * Writes bytes to a state machine {@link Snapshot}.
@@ -33,18 +35,91 @@ import io.atomix.catalyst.util.Assert;
  * In addition to standard {@link BufferOutput} methods, snapshot readers support writing serializable objects
  * to the snapshot via the {@link #writeObject(Object)} method. Serializable types must be registered on the
  * {@link io.atomix.copycat.server.CopycatServer} serializer to be supported in snapshots.
+ * <p>
+ * If snapshot compression is {@link io.atomix.copycat.server.storage.Storage#snapshotCodec() enabled}, bytes are
+ * buffered in memory and compressed in blocks of {@code 64KB}. Each value written to the snapshot is stored
+ * within a single block, so values should be read in the same order and with the same granularity as they were
+ * written.
  *
  * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
  */
 public class SnapshotWriter implements BufferOutput<SnapshotWriter> {
+  static final int BLOCK_SIZE = 1024 * 64;
   final Buffer buffer;
   private final Snapshot snapshot;
   private final Serializer serializer;
+  private final Codec codec;
+  private final HeapBuffer block;
+  private byte[] compressed;
 
   SnapshotWriter(Buffer buffer, Snapshot snapshot, Serializer serializer) {
+    this(buffer, snapshot, serializer, null);
+  }
+
+  /**
+   * @param codec The codec with which to compress the snapshot, or {@code null} to write the snapshot uncompressed.
+   */
+  SnapshotWriter(Buffer buffer, Snapshot snapshot, Serializer serializer, Codec codec) {
     this.buffer = Assert.notNull(buffer, "buffer");
     this.snapshot = Assert.notNull(snapshot, "snapshot");
     this.serializer = Assert.notNull(serializer, "serializer");
+    this.codec = codec;
+    this.block = codec != null ? HeapBuffer.allocate(BLOCK_SIZE, Integer.MAX_VALUE) : null;
+  }
+
+  /**
+   * Returns the buffer to which to write the next value.
+   * <p>
+   * When the snapshot is compressed, values are written to a block buffer which is compressed and written to the
+   * snapshot once it's full. Blocks are only written before a value, so each value is stored within a single block.
+   */
+  private Buffer output() {
+    if (block == null) {
+      return buffer;
+    }
+    if (block.position() >= BLOCK_SIZE) {
+      flushBlock();
+    }
+    return block;
+  }
+
+  /**
+   * Compresses the current block and writes it to the snapshot.
+   * <p>
+   * Each block is written as the uncompressed length followed by the stored length and the stored bytes. Blocks
+   * that do not compress are stored uncompressed, in which case the stored length equals the uncompressed length.
+   */
+  private void flushBlock() {
+    if (block == null || block.position() == 0) {
+      return;
+    }
+
+    int length = (int) block.position();
+    byte[] bytes = block.array();
+    int maxLength = codec.maxCompressedLength(length);
+    if (compressed == null || compressed.length < maxLength) {
+      compressed = new byte[maxLength];
+    }
+
+    int compressedLength = codec.compress(bytes, 0, length, compressed, 0);
+    if (compressedLength < length) {
+      buffer.writeInt(length).writeInt(compressedLength).write(compressed, 0, compressedLength);
+    } else {
+      buffer.writeInt(length).writeInt(length).write(bytes, 0, length);
+    }
+    block.clear();
+  }
+
+  /**
+   * Writes an object to the snapshot prefixed with its serialized length.
+   */
+  SnapshotWriter writeLengthPrefixedObject(Object object) {
+    Buffer output = output();
+    long lengthPosition = output.position();
+    output.writeInt(0);
+    serializer.writeObject(object, output);
+    output.writeInt(lengthPosition, (int) (output.position() - lengthPosition - Integer.BYTES));
+    return this;
   }
 
   /**
@@ -54,146 +129,151 @@ public class SnapshotWriter implements BufferOutput<SnapshotWriter> {
    * @return The snapshot writer.
    */
   public SnapshotWriter writeObject(Object object) {
-    serializer.writeObject(object, buffer);
+    serializer.writeObject(object, output());
     return this;
   }
 
   @Override
   public SnapshotWriter write(Bytes bytes) {
-    buffer.write(bytes);
+    output().write(bytes);
     return this;
   }
 
   @Override
   public SnapshotWriter write(byte[] bytes) {
-    buffer.write(bytes);
+    output().write(bytes);
     return this;
   }
 
   @Override
   public SnapshotWriter write(Bytes bytes, long offset, long length) {
-    buffer.write(bytes, offset, length);
+    output().write(bytes, offset, length);
     return this;
   }
 
   @Override
   public SnapshotWriter write(byte[] bytes, long offset, long length) {
-    buffer.write(bytes, offset, length);
+    output().write(bytes, offset, length);
     return this;
   }
 
   @Override
   public SnapshotWriter write(Buffer buffer) {
-    this.buffer.write(buffer);
+    output().write(buffer);
     return this;
   }
 
   @Override
   public SnapshotWriter writeByte(int b) {
-    buffer.writeByte(b);
+    output().writeByte(b);
     return this;
   }
 
   @Override
   public SnapshotWriter writeUnsignedByte(int b) {
-    buffer.writeUnsignedByte(b);
+    output().writeUnsignedByte(b);
     return this;
   }
 
   @Override
   public SnapshotWriter writeChar(char c) {
-    buffer.writeChar(c);
+    output().writeChar(c);
     return this;
   }
 
   @Override
   public SnapshotWriter writeShort(short s) {
-    buffer.writeShort(s);
+    output().writeShort(s);
     return this;
   }
 
   @Override
   public SnapshotWriter writeUnsignedShort(int s) {
-    buffer.writeUnsignedShort(s);
+    output().writeUnsignedShort(s);
     return this;
   }
 
   @Override
   public SnapshotWriter writeMedium(int m) {
-    buffer.writeMedium(m);
+    output().writeMedium(m);
     return this;
   }
 
   @Override
   public SnapshotWriter writeUnsignedMedium(int m) {
-    buffer.writeUnsignedMedium(m);
+    output().writeUnsignedMedium(m);
     return this;
   }
 
   @Override
   public SnapshotWriter writeInt(int i) {
-    buffer.writeInt(i);
+    output().writeInt(i);
     return this;
   }
 
   @Override
   public SnapshotWriter writeUnsignedInt(long i) {
-    buffer.writeUnsignedInt(i);
+    output().writeUnsignedInt(i);
     return this;
   }
 
   @Override
   public SnapshotWriter writeLong(long l) {
-    buffer.writeLong(l);
+    output().writeLong(l);
     return this;
   }
 
   @Override
   public SnapshotWriter writeFloat(float f) {
-    buffer.writeFloat(f);
+    output().writeFloat(f);
     return this;
   }
 
   @Override
   public SnapshotWriter writeDouble(double d) {
-    buffer.writeDouble(d);
+    output().writeDouble(d);
     return this;
   }
 
   @Override
   public SnapshotWriter writeBoolean(boolean b) {
-    buffer.writeBoolean(b);
+    output().writeBoolean(b);
     return this;
   }
 
   @Override
   public SnapshotWriter writeString(String s) {
-    buffer.writeString(s);
+    output().writeString(s);
     return this;
   }
 
   @Override
   public SnapshotWriter writeString(String s, Charset charset) {
-    buffer.writeString(s, charset);
+    output().writeString(s, charset);
     return this;
   }
 
   @Override
   public SnapshotWriter writeUTF8(String s) {
-    buffer.writeUTF8(s);
+    output().writeUTF8(s);
     return this;
   }
 
   @Override
   public SnapshotWriter flush() {
+    flushBlock();
     buffer.flush();
     return this;
   }
 
   @Override
   public void close() {
+    flushBlock();
     snapshot.closeWriter(this);
     buffer.close();
+    if (block != null) {
+      block.close();
+    }
   }
 
 }
@@ -21,11 +21,14 @@ import io.atomix.catalyst.buffer.HeapBuffer;
 import io.atomix.catalyst.serializer.Serializer;
 import io.atomix.catalyst.util.Assert;
 import io.atomix.copycat.server.storage.Storage;
+import io.atomix.copycat.server.storage.StorageException;
 import io.atomix.copycat.server.storage.StorageLevel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
 
 /**
  * Manages persistence of server configurations.
@@ -35,24 +38,122 @@ import java.io.File;
  * and last {@link #loadVote() vote} as is dictated by the Raft consensus algorithm. Additionally, the
  * metastore is responsible for storing the last know server {@link Configuration}, including cluster
  * membership.
+ * <p>
+ * The term, vote, and configuration are stored together in a single checksummed record. The metastore file
+ * contains two fixed-size slots, and each update writes the complete record to the slot that does not hold the
+ * current record before flushing the file once. Because the current record is never overwritten in place, a
+ * failure during an update leaves either the previous or the new record intact. When the metastore is opened,
+ * the valid record with the highest version is recovered. Files written in the original unversioned layout are
+ * recovered as well and are rewritten in the slotted layout on the next update.
  *
  * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
  */
 public class MetaStore implements AutoCloseable {
   private static final Logger LOGGER = LoggerFactory.getLogger(MetaStore.class);
+  private static final int SLOT_SIZE = 1024 * 64;
+  private static final int HEADER_LENGTH = Integer.BYTES + Long.BYTES;
+  private static final int TERM_OFFSET = Long.BYTES;
+  private static final int VOTE_OFFSET = TERM_OFFSET + Long.BYTES;
+  private static final int CONFIGURATION_OFFSET = VOTE_OFFSET + Integer.BYTES;
+  private static final int MIN_RECORD_LENGTH = CONFIGURATION_OFFSET + Byte.BYTES;
   private final Storage storage;
   private final Serializer serializer;
   private final Buffer buffer;
+  private final HeapBuffer record = HeapBuffer.allocate(MIN_RECORD_LENGTH, SLOT_SIZE - HEADER_LENGTH);
+  private final Checksum checksum = new CRC32();
+  private int recordLength = MIN_RECORD_LENGTH;
+  private long version;
+  private int slot;
 
   public MetaStore(String name, Storage storage, Serializer serializer) {
     this.storage = Assert.notNull(storage, "storage");
     this.serializer = Assert.notNull(serializer, "serializer");
     if (storage.level() == StorageLevel.MEMORY) {
-      buffer = HeapBuffer.allocate(12);
+      buffer = HeapBuffer.allocate(SLOT_SIZE * 2);
     } else {
       storage.directory().mkdirs();
       File file = new File(storage.directory(), String.format("%s.meta", name));
-      buffer = FileBuffer.allocate(file, 12);
+      buffer = FileBuffer.allocate(file, SLOT_SIZE * 2);
+    }
+    load();
+  }
+
+  /**
+   * Recovers the most recent valid record from the metastore.
+   */
+  private void load() {
+    int loadSlot = -1;
+    long loadVersion = -1;
+    for (int i = 0; i < 2; i++) {
+      long recordVersion = readSlot(i);
+      if (recordVersion > loadVersion) {
+        loadSlot = i;
+        loadVersion = recordVersion;
+      }
+    }
+
+    if (loadSlot != -1) {
+      readSlot(loadSlot);
+      slot = loadSlot;
+      version = loadVersion;
+    } else {
+      loadLegacy();
+    }
+  }
+
+  /**
+   * Reads the record in the given slot into memory.
+   *
+   * @return The record version, or {@code -1} if the slot does not contain a valid record.
+   */
+  private long readSlot(int slot) {
+    long offset = (long) slot * SLOT_SIZE;
+    if (offset + HEADER_LENGTH > buffer.capacity()) {
+      return -1;
+    }
+
+    int length = buffer.readInt(offset);
+    long recordChecksum = buffer.readLong(offset + Integer.BYTES);
+    if (length < MIN_RECORD_LENGTH || length > SLOT_SIZE - HEADER_LENGTH || offset + HEADER_LENGTH + length > buffer.capacity()) {
+      return -1;
+    }
+
+    if (record.capacity() < length) {
+      record.capacity(length);
+    }
+    buffer.read(offset + HEADER_LENGTH, record.array(), 0, length);
+    checksum.reset();
+    checksum.update(record.array(), 0, length);
+    if (checksum.getValue() != recordChecksum) {
+      return -1;
+    }
+
+    recordLength = length;
+    return record.readLong(0);
+  }
+
+  /**
+   * Loads the term, vote, and configuration from a metastore written in the unversioned layout.
+   * <p>
+   * Unversioned metastores store the term at offset {@code 0}, the vote at offset {@code 8}, and the configuration
+   * at offset {@code 12}. The legacy record is copied to memory, and the next update is written to the second slot
+   * so that the legacy record is not overwritten until a slotted record has been persisted.
+   */
+  private void loadLegacy() {
+    record.writeLong(0, 0).writeLong(TERM_OFFSET, buffer.readLong(0)).writeInt(VOTE_OFFSET, buffer.readInt(8)).writeByte(CONFIGURATION_OFFSET, 0);
+    recordLength = MIN_RECORD_LENGTH;
+    slot = 0;
+    version = 0;
+
+    if (buffer.readByte(12) == 1) {
+      buffer.position(13);
+      writeConfiguration(new Configuration(
+        buffer.readLong(),
+        buffer.readLong(),
+        buffer.readLong(),
+        serializer.readObject(buffer)
+      ));
+      LOGGER.debug("Recovered unversioned metastore {}", this);
     }
   }
 
@@ -73,7 +174,8 @@ public class MetaStore implements AutoCloseable {
    */
   public synchronized MetaStore storeTerm(long term) {
     LOGGER.trace("Store term {}", term);
-    buffer.writeLong(0, term).flush();
+    record.writeLong(TERM_OFFSET, term);
+    persist();
     return this;
   }
 
@@ -83,7 +185,7 @@ public class MetaStore implements AutoCloseable {
    * @return The stored server term.
    */
   public synchronized long loadTerm() {
-    return buffer.readLong(0);
+    return record.readLong(TERM_OFFSET);
   }
 
   /**
@@ -94,7 +196,24 @@ public class MetaStore implements AutoCloseable {
    */
   public synchronized MetaStore storeVote(int vote) {
     LOGGER.trace("Store vote {}", vote);
-    buffer.writeInt(8, vote).flush();
+    record.writeInt(VOTE_OFFSET, vote);
+    persist();
+    return this;
+  }
+
+  /**
+   * Stores the current server term and the last voted server.
+   * <p>
+   * The term and vote are persisted atomically with a single write and flush.
+   *
+   * @param term The current server term.
+   * @param vote The server vote.
+   * @return The metastore.
+   */
+  public synchronized MetaStore storeTermAndVote(long term, int vote) {
+    LOGGER.trace("Store term {} and vote {}", term, vote);
+    record.writeLong(TERM_OFFSET, term).writeInt(VOTE_OFFSET, vote);
+    persist();
     return this;
   }
 
@@ -104,7 +223,7 @@ public class MetaStore implements AutoCloseable {
    * @return The last vote for the server.
    */
   public synchronized int loadVote() {
-    return buffer.readInt(8);
+    return record.readInt(VOTE_OFFSET);
   }
 
   /**
@@ -112,38 +231,78 @@ public class MetaStore implements AutoCloseable {
    *
    * @param configuration The current cluster configuration.
    * @return The metastore.
+   * @throws StorageException if the serialized configuration exceeds the maximum record size
    */
   public synchronized MetaStore storeConfiguration(Configuration configuration) {
     LOGGER.trace("Store configuration {}", configuration);
-    serializer.writeObject(configuration.members(), buffer.position(12)
-      .writeByte(1)
-      .writeLong(configuration.index())
-      .writeLong(configuration.term())
-      .writeLong(configuration.time()));
-    buffer.flush();
+    writeConfiguration(configuration);
+    persist();
     return this;
   }
 
+  /**
+   * Writes the given configuration to the in-memory record.
+   * <p>
+   * The configuration is serialized to a separate buffer first so that the current record is left intact if the
+   * configuration is too large to be stored.
+   */
+  private void writeConfiguration(Configuration configuration) {
+    try (HeapBuffer buffer = HeapBuffer.allocate()) {
+      serializer.writeObject(configuration.members(), buffer
+        .writeByte(1)
+        .writeLong(configuration.index())
+        .writeLong(configuration.term())
+        .writeLong(configuration.time()));
+
+      int length = CONFIGURATION_OFFSET + (int) buffer.position();
+      if (length > SLOT_SIZE - HEADER_LENGTH) {
+        throw new StorageException("configuration exceeds maximum metastore record size");
+      }
+      if (record.capacity() < length) {
+        record.capacity(length);
+      }
+      record.write(CONFIGURATION_OFFSET, buffer.array(), 0, buffer.position());
+      recordLength = length;
+    }
+  }
+
   /**
    * Loads the current cluster configuration.
    *
    * @return The current cluster configuration.
    */
   public synchronized Configuration loadConfiguration() {
-    if (buffer.position(12).readByte() == 1) {
+    if (record.position(CONFIGURATION_OFFSET).readByte() == 1) {
       return new Configuration(
-        buffer.readLong(),
-        buffer.readLong(),
-        buffer.readLong(),
-        serializer.readObject(buffer)
+        record.readLong(),
+        record.readLong(),
+        record.readLong(),
+        serializer.readObject(record)
       );
     }
     return null;
   }
 
+  /**
+   * Writes the in-memory record to the slot that does not hold the current record and flushes the metastore.
+   */
+  private void persist() {
+    record.writeLong(0, ++version);
+    checksum.reset();
+    checksum.update(record.array(), 0, recordLength);
+
+    slot ^= 1;
+    long offset = (long) slot * SLOT_SIZE;
+    buffer.writeInt(offset, recordLength)
+      .writeLong(offset + Integer.BYTES, checksum.getValue())
+      .write(offset + HEADER_LENGTH, record.array(), 0, recordLength)
+      .flush();
+  }
+
   @Override
   public synchronized void close() {
     buffer.close();
+    record.close();
   }
 
   @Override
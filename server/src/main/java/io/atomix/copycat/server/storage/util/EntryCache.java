@@ -0,0 +1,188 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package io.atomix.copycat.server.storage.util;
+
+import io.atomix.copycat.server.storage.entry.Entry;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size bounded log entry cache.
+ * <p>
+ * The entry cache holds recently appended and recently read entries in memory to avoid repeatedly deserializing
+ * entries from segments, for instance when replicating the same range of entries to multiple followers. The size of
+ * the cache is bounded by the total serialized {@link Entry#size() size} of cached entries. Once the cache exceeds
+ * its maximum size, the least recently used entries are evicted.
+ * <p>
+ * Cached entries are {@link Entry#acquire() acquired} by the cache and {@link Entry#release() released} once they're
+ * evicted. Entries returned by {@link #get(long)} are acquired on behalf of the caller and must be released.
+ * <p>
+ * This class is not thread safe. The cache must only be accessed on the thread on which its log is accessed.
+ *
+ * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
+ */
+public class EntryCache {
+  private final long maxSize;
+  private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, .75f, true);
+  private long size;
+  private long hits;
+  private long misses;
+
+  public EntryCache(long maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Adds an entry to the cache.
+   * <p>
+   * If an entry with the same index is already cached, it will be replaced. Entries larger than the maximum size of
+   * the cache are not cached.
+   *
+   * @param entry The entry to add.
+   * @return The entry cache.
+   */
+  public EntryCache put(Entry entry) {
+    if (maxSize == 0 || entry.size() > maxSize) {
+      return this;
+    }
+
+    Entry oldEntry = entries.put(entry.getIndex(), entry.acquire());
+    size += entry.size();
+    if (oldEntry != null) {
+      size -= oldEntry.size();
+      oldEntry.release();
+    }
+
+    // Evict the least recently used entries until the cache is within its maximum size.
+    Iterator<Entry> iterator = entries.values().iterator();
+    while (size > maxSize && iterator.hasNext()) {
+      Entry eldest = iterator.next();
+      iterator.remove();
+      size -= eldest.size();
+      eldest.release();
+    }
+    return this;
+  }
+
+  /**
+   * Looks up an entry in the cache.
+   *
+   * @param index The entry index.
+   * @param <T> The entry type.
+   * @return The entry or {@code null} if the entry is not present in the cache.
+   */
+  @SuppressWarnings("unchecked")
+  public <T extends Entry> T get(long index) {
+    Entry entry = entries.get(index);
+    if (entry != null) {
+      hits++;
+      return (T) entry.acquire();
+    }
+    misses++;
+    return null;
+  }
+
+  /**
+   * Looks up an entry in the cache without recording a cache hit or miss.
+   * <p>
+   * This method should be used for lookups that only inspect cached entries rather than reading them on behalf of
+   * the log's users, so that such lookups don't skew the cache's hit rate.
+   *
+   * @param index The entry index.
+   * @param <T> The entry type.
+   * @return The entry or {@code null} if the entry is not present in the cache.
+   */
+  @SuppressWarnings("unchecked")
+  public <T extends Entry> T peek(long index) {
+    Entry entry = entries.get(index);
+    return entry != null ? (T) entry.acquire() : null;
+  }
+
+  /**
+   * Removes all entries with an index greater than the given index from the cache.
+   *
+   * @param index The index after which to remove entries.
+   * @return The entry cache.
+   */
+  public EntryCache truncate(long index) {
+    Iterator<Map.Entry<Long, Entry>> iterator = entries.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Entry entry = iterator.next().getValue();
+      if (entry.getIndex() > index) {
+        iterator.remove();
+        size -= entry.size();
+        entry.release();
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Removes all entries from the cache.
+   *
+   * @return The entry cache.
+   */
+  public EntryCache clear() {
+    entries.values().forEach(Entry::release);
+    entries.clear();
+    size = 0;
+    return this;
+  }
+
+  /**
+   * Returns the number of entries in the cache.
+   *
+   * @return The number of entries in the cache.
+   */
+  public int count() {
+    return entries.size();
+  }
+
+  /**
+   * Returns the total serialized size of entries in the cache.
+   *
+   * @return The total size of entries in the cache in bytes.
+   */
+  public long size() {
+    return size;
+  }
+
+  /**
+   * Returns the number of lookups that found an entry in the cache.
+   *
+   * @return The number of cache hits.
+   */
+  public long hits() {
+    return hits;
+  }
+
+  /**
+   * Returns the number of lookups that did not find an entry in the cache.
+   *
+   * @return The number of cache misses.
+   */
+  public long misses() {
+    return misses;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[count=%d, size=%d, hits=%d, misses=%d]", getClass().getSimpleName(), entries.size(), size, hits, misses);
+  }
+
+}
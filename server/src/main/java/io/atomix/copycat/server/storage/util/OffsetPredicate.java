@@ -15,31 +15,53 @@
  */
 package io.atomix.copycat.server.storage.util;
 
-import io.atomix.catalyst.buffer.util.BitArray;
 import io.atomix.catalyst.util.Assert;
 
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 
 /**
  * Segment offset liveness predicate.
  * <p>
- * The offset predicate tracks the liveness of relative offsets within a segment. Liveness is tracked
- * in a {@link BitArray} that is resized to accommodate offsets as necessary. Each bit in the array
- * represents the liveness of a relative offset in the segment. When an offset is
- * {@link #release(long) released} from a segment, the bit at that offset is flipped in the bit array.
- * {@link #test(Long) Testing} the predicate indicates whether an offset is still live in the segment.
+ * The offset predicate tracks the liveness of relative offsets within a segment. When an offset is
+ * {@link #release(long) released} from a segment, it's added to a compressed set of released offsets.
+ * {@link #test(long) Testing} the predicate indicates whether an offset is still live in the segment.
+ * <p>
+ * Released offsets are stored in a roaring-style bitmap. Offsets are partitioned into chunks of {@code 65536}
+ * offsets, and each chunk is stored in the most compact of four containers: a sorted array of released offsets for
+ * sparse chunks, a bitmap for chunks in which many but not most offsets have been released, a sorted array of live
+ * offsets for chunks in which most offsets have been released, and a shared constant for chunks in which all offsets
+ * have been released. Because compaction tends to release long runs of offsets, most chunks in older segments are
+ * represented by the constant full container and consume no memory.
+ * <p>
+ * {@link #snapshot() Snapshots} and {@link #copy() copies} share containers with the source predicate. Containers
+ * are copied on write, so a snapshot costs a copy of the chunk table and does not copy any offsets. The predicate
+ * supports a single writer and any number of concurrent readers. Readers do not acquire locks.
  *
  * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
  */
 public final class OffsetPredicate implements Predicate<Long>, AutoCloseable {
-  private final BitArray bits;
+  private static final AtomicLong VERSIONS = new AtomicLong();
+  private static final int CHUNK_BITS = 16;
+  private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+  private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+  private static final int ARRAY_MAX = 4096;
+  private static final Container[] EMPTY = new Container[0];
+
+  private final boolean immutable;
+  private long version = VERSIONS.incrementAndGet();
+  private volatile Container[] containers;
+  private volatile long count;
 
   public OffsetPredicate() {
-    this(BitArray.allocate(1024));
+    this(EMPTY, 0, false);
   }
 
-  OffsetPredicate(BitArray bits) {
-    this.bits = Assert.notNull(bits, "bits");
+  private OffsetPredicate(Container[] containers, long count, boolean immutable) {
+    this.containers = containers;
+    this.count = count;
+    this.immutable = immutable;
   }
 
   /**
@@ -50,7 +72,30 @@ public final class OffsetPredicate implements Predicate<Long>, AutoCloseable {
    */
   @Override
   public boolean test(Long offset) {
-    return offset != -1 && (bits.size() <= offset || !bits.get(offset));
+    return test(offset.longValue());
+  }
+
+  /**
+   * Returns a boolean value indicating whether an offset is live.
+   *
+   * @param offset The offset to check.
+   * @return Indicates whether the given offset is live.
+   */
+  public boolean test(long offset) {
+    if (offset < 0) {
+      return false;
+    }
+    // Read the count before the containers to ensure released offsets are visible.
+    if (count == 0) {
+      return true;
+    }
+    Container[] containers = this.containers;
+    long chunk = offset >>> CHUNK_BITS;
+    if (chunk >= containers.length) {
+      return true;
+    }
+    Container container = containers[(int) chunk];
+    return container == null || !container.contains((int) offset & CHUNK_MASK);
   }
 
   /**
@@ -58,15 +103,33 @@ public final class OffsetPredicate implements Predicate<Long>, AutoCloseable {
    *
    * @param offset The offset to release.
    * @return Indicates whether the offset was newly released.
+   * @throws IllegalStateException if the predicate is a {@link #snapshot() snapshot}
    */
-  public boolean release(long offset) {
+  public synchronized boolean release(long offset) {
     Assert.argNot(offset < 0, "offset must be positive");
-    if (bits.size() <= offset) {
-      while (bits.size() <= offset) {
-        bits.resize(bits.size() * 2);
-      }
+    Assert.state(!immutable, "cannot release offsets from a snapshot");
+
+    Container[] containers = this.containers;
+    int chunk = (int) (offset >>> CHUNK_BITS);
+    if (chunk >= containers.length) {
+      containers = Arrays.copyOf(containers, Math.max(chunk + 1, containers.length * 2));
     }
-    return bits.set(offset);
+
+    int value = (int) offset & CHUNK_MASK;
+    Container container = containers[chunk];
+    if (container == null) {
+      container = new ArrayContainer(new char[]{(char) value}, version);
+    } else if (container.contains(value)) {
+      return false;
+    } else {
+      container = container.add(value, version);
+    }
+
+    // Publish the container by writing the count after the container table.
+    containers[chunk] = container;
+    this.containers = containers;
+    count = count + 1;
+    return true;
   }
 
   /**
@@ -75,21 +138,201 @@ public final class OffsetPredicate implements Predicate<Long>, AutoCloseable {
    * @return The number of offsets released from the segment.
    */
   public long count() {
-    return bits.count();
+    return count;
+  }
+
+  /**
+   * Returns an immutable snapshot of the offset predicate.
+   * <p>
+   * Offsets released from this predicate after the snapshot is taken are not reflected in the snapshot. Snapshots
+   * share memory with this predicate until offsets in the same chunk are released.
+   *
+   * @return An immutable snapshot of the offset predicate.
+   */
+  public synchronized OffsetPredicate snapshot() {
+    return new OffsetPredicate(share(), count, true);
   }
 
   /**
    * Copies the offset predicate.
+   * <p>
+   * The copy shares memory with this predicate until offsets in the same chunk are released from either predicate.
    *
    * @return The copied offset predicate.
    */
-  public OffsetPredicate copy() {
-    return new OffsetPredicate(bits.copy());
+  public synchronized OffsetPredicate copy() {
+    return new OffsetPredicate(share(), count, false);
+  }
+
+  /**
+   * Returns a copy of the container table, ensuring shared containers are copied before they're next modified.
+   */
+  private Container[] share() {
+    version = VERSIONS.incrementAndGet();
+    return containers.clone();
   }
 
   @Override
   public void close() {
-    bits.close();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[count=%d]", getClass().getSimpleName(), count);
+  }
+
+  /**
+   * Set of released offsets within a chunk.
+   * <p>
+   * Containers may only be modified in place by the predicate with the same version that created them. Once a
+   * predicate has been snapshotted or copied, its version is changed and existing containers are copied on write.
+   */
+  private static abstract class Container {
+    final long version;
+
+    Container(long version) {
+      this.version = version;
+    }
+
+    /**
+     * Returns a boolean indicating whether the given value has been released.
+     */
+    abstract boolean contains(int value);
+
+    /**
+     * Adds the given value to the container, returning the container in which the value is stored.
+     */
+    abstract Container add(int value, long version);
+  }
+
+  /**
+   * Sorted array of released values.
+   */
+  private static final class ArrayContainer extends Container {
+    private final char[] values;
+
+    ArrayContainer(char[] values, long version) {
+      super(version);
+      this.values = values;
+    }
+
+    @Override
+    boolean contains(int value) {
+      return Arrays.binarySearch(values, (char) value) >= 0;
+    }
+
+    @Override
+    Container add(int value, long version) {
+      if (values.length == ARRAY_MAX) {
+        BitmapContainer bitmap = new BitmapContainer(new long[CHUNK_SIZE / Long.SIZE], 0, version);
+        for (char released : values) {
+          bitmap.set(released);
+        }
+        return bitmap.add(value, version);
+      }
+      int index = -Arrays.binarySearch(values, (char) value) - 1;
+      char[] newValues = new char[values.length + 1];
+      System.arraycopy(values, 0, newValues, 0, index);
+      newValues[index] = (char) value;
+      System.arraycopy(values, index, newValues, index + 1, values.length - index);
+      return new ArrayContainer(newValues, version);
+    }
+  }
+
+  /**
+   * Bitmap of released values.
+   */
+  private static final class BitmapContainer extends Container {
+    private final long[] words;
+    private int cardinality;
+
+    BitmapContainer(long[] words, int cardinality, long version) {
+      super(version);
+      this.words = words;
+      this.cardinality = cardinality;
+    }
+
+    @Override
+    boolean contains(int value) {
+      return (words[value >>> 6] & (1L << value)) != 0;
+    }
+
+    /**
+     * Sets the given value in place.
+     */
+    void set(int value) {
+      words[value >>> 6] |= 1L << value;
+      cardinality++;
+    }
+
+    @Override
+    Container add(int value, long version) {
+      // Once most values have been released, store the remaining live values instead.
+      if (cardinality + 1 >= CHUNK_SIZE - ARRAY_MAX) {
+        char[] live = new char[CHUNK_SIZE - cardinality - 1];
+        int index = 0;
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+          if (i != value && !contains(i)) {
+            live[index++] = (char) i;
+          }
+        }
+        return live.length == 0 ? FullContainer.INSTANCE : new InvertedContainer(live, version);
+      }
+
+      BitmapContainer bitmap = this.version == version ? this : new BitmapContainer(words.clone(), cardinality, version);
+      bitmap.set(value);
+      return bitmap;
+    }
+  }
+
+  /**
+   * Sorted array of live values.
+   */
+  private static final class InvertedContainer extends Container {
+    private final char[] live;
+
+    InvertedContainer(char[] live, long version) {
+      super(version);
+      this.live = live;
+    }
+
+    @Override
+    boolean contains(int value) {
+      return Arrays.binarySearch(live, (char) value) < 0;
+    }
+
+    @Override
+    Container add(int value, long version) {
+      if (live.length == 1) {
+        return FullContainer.INSTANCE;
+      }
+      int index = Arrays.binarySearch(live, (char) value);
+      char[] newLive = new char[live.length - 1];
+      System.arraycopy(live, 0, newLive, 0, index);
+      System.arraycopy(live, index + 1, newLive, index, live.length - index - 1);
+      return new InvertedContainer(newLive, version);
+    }
+  }
+
+  /**
+   * Container in which all values have been released.
+   */
+  private static final class FullContainer extends Container {
+    private static final FullContainer INSTANCE = new FullContainer();
+
+    private FullContainer() {
+      super(0);
+    }
+
+    @Override
+    boolean contains(int value) {
+      return true;
+    }
+
+    @Override
+    Container add(int value, long version) {
+      return this;
+    }
   }
 
 }
@@ -40,6 +40,17 @@ public final class StorageSerialization implements SerializableTypeResolver {
     put(UnregisterEntry.class, -43);
   }};
 
+  /**
+   * Returns the serialization type identifier for the given entry type.
+   *
+   * @param type The entry type.
+   * @return The type identifier, or {@code 0} if the type is not a built-in entry type.
+   */
+  public static int typeId(Class<?> type) {
+    Integer id = TYPES.get(type);
+    return id != null ? id : 0;
+  }
+
   @Override
   public void resolve(SerializerRegistry registry) {
     for (Map.Entry<Class<? extends Request>, Integer> entry : TYPES.entrySet()) {
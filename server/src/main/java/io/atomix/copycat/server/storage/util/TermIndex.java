@@ -15,8 +15,7 @@
  */
 package io.atomix.copycat.server.storage.util;
 
-import java.util.Map;
-import java.util.TreeMap;
+import io.atomix.catalyst.util.Assert;
 
 /**
  * Log entry term index.
@@ -26,37 +25,73 @@ import java.util.TreeMap;
  * we can assume that if entry {@code n}'s term is {@code t} then entry {@code n + 1}'s term
  * will be {@code t} or greater.
  * <p>
- * The implementation of the term index uses a {@link TreeMap} to store a map of offsets to
- * terms. To look up the term for any given offset, we use {@code map.floorEntry(offset)}
- * to loop up the term for the offset.
+ * The implementation of the term index stores offsets and terms in sorted parallel {@code long}
+ * arrays. To look up the term for any given offset, we binary search the offsets for the greatest
+ * offset less than or equal to the given offset and return the associated term. Because offsets
+ * are only ever appended to the end of the index, indexing a new term and truncating the index
+ * never shift existing entries.
  * <p>
- * This class is thread safe.
+ * This class is thread safe for a single writer and any number of concurrent readers. Writes must
+ * be performed by a single thread. New entries are written to the arrays before the index size is
+ * published via a volatile write, and grown arrays are published before the size that depends on
+ * them, so readers never observe a partially written entry.
  *
  * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
  */
 public final class TermIndex {
-  private final TreeMap<Long, Long> terms = new TreeMap<>();
+  private static final int DEFAULT_CAPACITY = 8;
+
+  private volatile Entries entries = new Entries(DEFAULT_CAPACITY);
+  private volatile int size;
 
   /**
    * Returns the highest term in the index.
    *
    * @return The highest term in the index.
    */
-  public synchronized long term() {
-    Map.Entry<Long, Long> entry = terms.lastEntry();
-    return entry != null ? entry.getValue() : 0;
+  public long term() {
+    int size = this.size;
+    return size > 0 ? entries.terms[size - 1] : 0;
   }
 
   /**
    * Indexes the given offset with the given term.
+   * <p>
+   * Offsets must be indexed in increasing order. To index an offset lower than the last indexed
+   * offset, the index must first be {@link #truncate(long) truncated}.
    *
    * @param offset The offset to index.
    * @param term The term to index.
    */
-  public synchronized void index(long offset, long term) {
-    if (lookup(offset) != term) {
-      terms.put(offset, term);
+  public void index(long offset, long term) {
+    int size = this.size;
+    Entries entries = this.entries;
+    if (size > 0) {
+      long lastOffset = entries.offsets[size - 1];
+      Assert.argNot(offset < lastOffset, "offset must be greater than or equal to the last indexed offset");
+      if (entries.terms[size - 1] == term) {
+        return;
+      }
+
+      // If the offset is already indexed, overwrite the term rather than indexing a second entry for the offset.
+      if (offset == lastOffset) {
+        size--;
+        this.size = size;
+        if (size > 0 && entries.terms[size - 1] == term) {
+          return;
+        }
+      }
     }
+
+    // If the arrays are full, copy them to larger arrays and publish the new arrays before the size.
+    if (size == entries.offsets.length) {
+      entries = entries.grow(size);
+      this.entries = entries;
+    }
+
+    entries.offsets[size] = offset;
+    entries.terms[size] = term;
+    this.size = size + 1;
   }
 
   /**
@@ -65,9 +100,11 @@ public final class TermIndex {
    * @param offset The offset for which to look up the term.
    * @return The term for the entry at the given offset.
    */
-  public synchronized long lookup(long offset) {
-    Map.Entry<Long, Long> entry = terms.floorEntry(offset);
-    return entry != null ? entry.getValue() : 0;
+  public long lookup(long offset) {
+    int size = this.size;
+    Entries entries = this.entries;
+    int index = floor(entries.offsets, size, offset);
+    return index != -1 ? entries.terms[index] : 0;
   }
 
   /**
@@ -75,8 +112,36 @@ public final class TermIndex {
    *
    * @param offset The offset to which to truncate the index.
    */
-  public synchronized void truncate(long offset) {
-    terms.tailMap(offset, false).clear();
+  public void truncate(long offset) {
+    int size = this.size;
+    this.size = floor(entries.offsets, size, offset) + 1;
+  }
+
+  /**
+   * Returns the array index of the greatest offset less than or equal to the given offset.
+   */
+  private static int floor(long[] offsets, int size, long offset) {
+    // Most lookups are for recently written entries, so check the last term before searching.
+    if (size == 0) {
+      return -1;
+    } else if (offsets[size - 1] <= offset) {
+      return size - 1;
+    }
+
+    int low = 0;
+    int high = size - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      long midOffset = offsets[mid];
+      if (midOffset < offset) {
+        low = mid + 1;
+      } else if (midOffset > offset) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return high;
   }
 
   @Override
@@ -84,4 +149,27 @@ public final class TermIndex {
     return getClass().getSimpleName();
   }
 
+  /**
+   * Parallel offset and term arrays.
+   */
+  private static final class Entries {
+    private final long[] offsets;
+    private final long[] terms;
+
+    private Entries(int capacity) {
+      this.offsets = new long[capacity];
+      this.terms = new long[capacity];
+    }
+
+    /**
+     * Returns a copy of the first {@code size} entries in arrays with double the capacity.
+     */
+    private Entries grow(int size) {
+      Entries entries = new Entries(offsets.length * 2);
+      System.arraycopy(offsets, 0, entries.offsets, 0, size);
+      System.arraycopy(terms, 0, entries.terms, 0, size);
+      return entries;
+    }
+  }
+
 }
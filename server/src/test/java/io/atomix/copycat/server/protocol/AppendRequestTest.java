@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package io.atomix.copycat.server.protocol;
+
+import io.atomix.catalyst.buffer.Buffer;
+import io.atomix.catalyst.buffer.HeapBuffer;
+import io.atomix.catalyst.serializer.Serializer;
+import io.atomix.copycat.server.storage.EntryRecord;
+import io.atomix.copycat.server.storage.compaction.Compaction;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Append request test.
+ *
+ * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
+ */
+@Test
+public class AppendRequestTest {
+
+  /**
+   * Returns a builder for an append request.
+   */
+  private AppendRequest.Builder builder() {
+    return AppendRequest.builder()
+      .withTerm(2)
+      .withLeader(3)
+      .withLogIndex(4)
+      .withLogTerm(1)
+      .withCommitIndex(5)
+      .withGlobalIndex(3);
+  }
+
+  /**
+   * Returns a list of records following index 4.
+   */
+  private List<EntryRecord> records(int count) {
+    List<EntryRecord> records = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      byte[] bytes = new byte[i + 1];
+      for (int j = 0; j < bytes.length; j++) {
+        bytes[j] = (byte) (i + j);
+      }
+      CRC32 crc32 = new CRC32();
+      crc32.update(bytes, 0, bytes.length);
+      records.add(new EntryRecord(i + 5, 2, crc32.getValue(), Compaction.Mode.values()[i % Compaction.Mode.values().length], i, bytes));
+    }
+    return records;
+  }
+
+  /**
+   * Serializes the given request.
+   */
+  private byte[] serialize(AppendRequest request) {
+    Buffer buffer = HeapBuffer.allocate();
+    request.writeObject(buffer, new Serializer());
+    buffer.flip();
+    byte[] bytes = new byte[(int) buffer.remaining()];
+    buffer.read(bytes);
+    return bytes;
+  }
+
+  /**
+   * Deserializes a request from the given bytes.
+   */
+  private AppendRequest deserialize(byte[] bytes) {
+    AppendRequest request = new AppendRequest();
+    request.readObject(HeapBuffer.wrap(bytes), new Serializer());
+    return request;
+  }
+
+  /**
+   * Asserts that the given records are equal.
+   */
+  private void assertRecords(List<EntryRecord> records, List<EntryRecord> expected) {
+    assertEquals(records.size(), expected.size());
+    for (int i = 0; i < expected.size(); i++) {
+      EntryRecord record = records.get(i);
+      assertEquals(record.index(), expected.get(i).index());
+      assertEquals(record.term(), expected.get(i).term());
+      assertEquals(record.checksum(), expected.get(i).checksum());
+      assertEquals(record.mode(), expected.get(i).mode());
+      assertEquals(record.type(), expected.get(i).type());
+      assertEquals(record.bytes(), expected.get(i).bytes());
+      assertTrue(record.isValid());
+    }
+  }
+
+  /**
+   * Tests that a request built with an encoded batch is serialized identically to a request built with a record list.
+   */
+  public void testSerializeBatch() {
+    List<EntryRecord> records = records(10);
+    byte[] bytes = serialize(builder().withEntries(EntryBatch.encode(records)).build());
+    assertEquals(bytes, serialize(builder().withRecords(records).build()));
+
+    AppendRequest result = deserialize(bytes);
+    assertEquals(result.term(), 2);
+    assertEquals(result.leader(), 3);
+    assertEquals(result.logIndex(), 4);
+    assertEquals(result.logTerm(), 1);
+    assertEquals(result.commitIndex(), 5);
+    assertEquals(result.globalIndex(), 3);
+    assertTrue(result.entries().isEmpty());
+    assertRecords(result.records(), records);
+  }
+
+  /**
+   * Tests that a batch shared by multiple requests is serialized identically for each request.
+   */
+  public void testSerializeSharedBatch() {
+    List<EntryRecord> records = records(3);
+    EntryBatch batch = EntryBatch.encode(records);
+    byte[] bytes = serialize(builder().withEntries(batch).build());
+    assertEquals(serialize(builder().withEntries(batch).build()), bytes);
+    assertRecords(deserialize(bytes).records(), records);
+  }
+
+  /**
+   * Tests serializing a request with no entries.
+   */
+  public void testSerializeEmptyBatch() {
+    List<EntryRecord> records = records(0);
+    byte[] bytes = serialize(builder().withEntries(EntryBatch.encode(records)).build());
+    assertEquals(bytes, serialize(builder().withRecords(records).build()));
+
+    AppendRequest result = deserialize(bytes);
+    assertTrue(result.isEmpty());
+    assertEquals(result.commitIndex(), 5);
+  }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package io.atomix.copycat.server.protocol;
+
+import io.atomix.catalyst.buffer.Buffer;
+import io.atomix.catalyst.buffer.HeapBuffer;
+import io.atomix.catalyst.serializer.Serializer;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Install request test.
+ *
+ * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
+ */
+@Test
+public class InstallRequestTest {
+
+  /**
+   * Returns a builder for an install request with the given data.
+   */
+  private InstallRequest.Builder builder() {
+    return InstallRequest.builder()
+      .withTerm(2)
+      .withLeader(3)
+      .withIndex(10)
+      .withBaseIndex(5)
+      .withCodec(1)
+      .withOffset(4)
+      .withComplete(true);
+  }
+
+  /**
+   * Serializes the given request.
+   */
+  private byte[] serialize(InstallRequest request) {
+    Buffer buffer = HeapBuffer.allocate();
+    request.writeObject(buffer, new Serializer());
+    buffer.flip();
+    byte[] bytes = new byte[(int) buffer.remaining()];
+    buffer.read(bytes);
+    return bytes;
+  }
+
+  /**
+   * Deserializes a request from the given bytes.
+   */
+  private InstallRequest deserialize(byte[] bytes) {
+    InstallRequest request = new InstallRequest();
+    request.readObject(HeapBuffer.wrap(bytes), new Serializer());
+    return request;
+  }
+
+  /**
+   * Tests serializing and deserializing a request with array data.
+   */
+  public void testSerializeArrayData() {
+    InstallRequest request = builder().withData(new byte[]{1, 2, 3, 4, 5}).build();
+    InstallRequest result = deserialize(serialize(request));
+    assertEquals(result.term(), 2);
+    assertEquals(result.leader(), 3);
+    assertEquals(result.index(), 10);
+    assertEquals(result.baseIndex(), 5);
+    assertEquals(result.codec(), 1);
+    assertEquals(result.offset(), 4);
+    assertTrue(result.complete());
+    assertEquals(result.data(), new byte[]{1, 2, 3, 4, 5});
+    assertEquals(result, request);
+  }
+
+  /**
+   * Tests that a request with buffer data is serialized with the same length prefixed data as array data.
+   */
+  public void testSerializeBufferData() {
+    Buffer data = HeapBuffer.wrap(new byte[]{0, 1, 2, 3, 4, 5, 6}).slice(1, 5);
+    InstallRequest request = builder().withData(data).build();
+    byte[] bytes = serialize(request);
+    assertEquals(bytes, serialize(builder().withData(new byte[]{1, 2, 3, 4, 5}).build()));
+
+    InstallRequest result = deserialize(bytes);
+    assertEquals(result.data(), new byte[]{1, 2, 3, 4, 5});
+    assertEquals(result, request);
+  }
+
+  /**
+   * Tests serializing and deserializing a request with empty data.
+   */
+  public void testSerializeEmptyData() {
+    InstallRequest request = builder().withData(new byte[0]).build();
+    InstallRequest result = deserialize(serialize(request));
+    assertEquals(result.data().length, 0);
+    assertEquals(result, request);
+  }
+
+}
@@ -23,6 +23,8 @@ import io.atomix.copycat.server.protocol.VoteRequest;
 import io.atomix.copycat.server.protocol.AppendResponse;
 import io.atomix.copycat.server.protocol.PollResponse;
 import io.atomix.copycat.server.protocol.VoteResponse;
+import io.atomix.copycat.server.storage.EntryRecord;
+import io.atomix.copycat.server.storage.compaction.Compaction;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
@@ -89,6 +91,29 @@ public class ActiveStateTest extends AbstractStateTest<ActiveState> {
     });
   }
 
+  public void testRejectCorruptRecord() throws Throwable {
+    runOnServer(() -> {
+      serverContext.setTerm(1);
+
+      AppendRequest request = AppendRequest.builder()
+        .withTerm(1)
+        .withLeader(serverContext.getClusterState().getActiveMemberStates().iterator().next().getMember().id())
+        .withLogIndex(0)
+        .withLogTerm(0)
+        .withCommitIndex(1)
+        .withGlobalIndex(0)
+        .withRecords(Collections.singletonList(new EntryRecord(1, 1, 0, Compaction.Mode.QUORUM, 0, new byte[]{1, 2, 3})))
+        .build();
+
+      AppendResponse response = state.append(request).get();
+
+      assertEquals(response.status(), Status.ERROR);
+      assertEquals(response.term(), 1L);
+      assertEquals(serverContext.getLog().length(), 0L);
+      assertEquals(serverContext.getCommitIndex(), 0L);
+    });
+  }
+
   public void testIncrementTermOnPoll() throws Throwable {
     runOnServer(() -> {
       serverContext.setTerm(1);
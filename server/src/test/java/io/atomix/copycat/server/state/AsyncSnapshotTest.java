@@ -0,0 +1,236 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.state;
+
+import io.atomix.catalyst.concurrent.SingleThreadContext;
+import io.atomix.catalyst.concurrent.ThreadContext;
+import io.atomix.catalyst.serializer.Serializer;
+import io.atomix.catalyst.transport.Address;
+import io.atomix.catalyst.transport.local.LocalServerRegistry;
+import io.atomix.catalyst.transport.local.LocalTransport;
+import io.atomix.copycat.protocol.ClientRequestTypeResolver;
+import io.atomix.copycat.protocol.ClientResponseTypeResolver;
+import io.atomix.copycat.server.AsyncSnapshottable;
+import io.atomix.copycat.server.StateMachine;
+import io.atomix.copycat.server.StateMachineExecutor;
+import io.atomix.copycat.server.cluster.Member;
+import io.atomix.copycat.server.storage.Storage;
+import io.atomix.copycat.server.storage.StorageLevel;
+import io.atomix.copycat.server.storage.entry.KeepAliveEntry;
+import io.atomix.copycat.server.storage.entry.RegisterEntry;
+import io.atomix.copycat.server.storage.snapshot.SnapshotReader;
+import io.atomix.copycat.server.storage.snapshot.SnapshotWriter;
+import io.atomix.copycat.server.storage.util.StorageSerialization;
+import io.atomix.copycat.server.util.ServerSerialization;
+import io.atomix.copycat.util.ProtocolSerialization;
+import net.jodah.concurrentunit.ConcurrentTestCase;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.*;
+
+/**
+ * Asynchronous snapshot test.
+ *
+ * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
+ */
+@Test
+public class AsyncSnapshotTest extends ConcurrentTestCase {
+  private ThreadContext callerContext;
+  private ServerContext state;
+  private AsyncTestStateMachine stateMachine;
+  private long timestamp;
+
+  @BeforeMethod
+  public void createStateMachine() throws Throwable {
+    Serializer serializer = new Serializer().resolve(
+      new ClientRequestTypeResolver(),
+      new ClientResponseTypeResolver(),
+      new ProtocolSerialization(),
+      new ServerSerialization(),
+      new StorageSerialization()
+    ).disableWhitelist();
+
+    callerContext = new SingleThreadContext("caller", serializer.clone());
+    LocalServerRegistry registry = new LocalServerRegistry();
+    Storage storage = new Storage(StorageLevel.MEMORY);
+    ServerMember member = new ServerMember(Member.Type.ACTIVE, new Address("localhost", 5000), new Address("localhost", 6000), Instant.now());
+    stateMachine = new AsyncTestStateMachine();
+
+    new SingleThreadContext("test", serializer.clone()).executor().execute(() -> {
+      state = new ServerContext("test", member.type(), member.serverAddress(), member.clientAddress(), storage, serializer, () -> stateMachine, new ConnectionManager(new LocalTransport(registry).client()), callerContext);
+      resume();
+    });
+    await(1000);
+    timestamp = System.currentTimeMillis();
+  }
+
+  /**
+   * Appends and applies a register entry.
+   */
+  private void register() throws Throwable {
+    callerContext.execute(() -> {
+      long index;
+      try (RegisterEntry entry = state.getLog().create(RegisterEntry.class)) {
+        entry.setTerm(1)
+          .setTimestamp(timestamp)
+          .setTimeout(5000)
+          .setClient(UUID.randomUUID().toString());
+        index = state.getLog().append(entry);
+      }
+
+      state.getStateMachine().apply(index).whenComplete((result, error) -> {
+        threadAssertNull(error);
+        resume();
+      });
+    });
+    await(5000);
+  }
+
+  /**
+   * Appends and applies a keep-alive entry for the registered session.
+   */
+  private void keepAlive() throws Throwable {
+    timestamp += 100;
+    callerContext.execute(() -> {
+      long index;
+      try (KeepAliveEntry entry = state.getLog().create(KeepAliveEntry.class)) {
+        entry.setTerm(1)
+          .setSession(1)
+          .setTimestamp(timestamp)
+          .setCommandSequence(0)
+          .setEventIndex(0);
+        index = state.getLog().append(entry);
+      }
+
+      state.getStateMachine().apply(index).whenComplete((result, error) -> {
+        threadAssertNull(error);
+        resume();
+      });
+    });
+    await(5000);
+  }
+
+  /**
+   * Tests that a snapshot view is written in the background while entries continue to be applied.
+   */
+  public void testWriteSnapshotViewInBackground() throws Throwable {
+    // Applying the first entry takes a snapshot.
+    register();
+    assertTrue(stateMachine.writing.await(5, TimeUnit.SECONDS));
+
+    // Entries continue to be applied while the view is being written.
+    keepAlive();
+    keepAlive();
+    assertEquals(stateMachine.written.getCount(), 1);
+
+    assertEquals(stateMachine.views.get(), 1);
+    assertTrue(stateMachine.writeThread.startsWith("copycat-snapshot"));
+    assertNotEquals(stateMachine.writeThread, stateMachine.viewThread);
+
+    stateMachine.release.countDown();
+    assertTrue(stateMachine.written.await(5, TimeUnit.SECONDS));
+    assertTrue(stateMachine.closed.await(5, TimeUnit.SECONDS));
+  }
+
+  /**
+   * Tests that a snapshot whose view fails to be written is discarded.
+   */
+  public void testDiscardFailedSnapshot() throws Throwable {
+    stateMachine.fail = true;
+    register();
+    assertTrue(stateMachine.writing.await(5, TimeUnit.SECONDS));
+    stateMachine.release.countDown();
+    assertTrue(stateMachine.closed.await(5, TimeUnit.SECONDS));
+
+    // Once the failed snapshot has been discarded, the next applied entry takes a new snapshot.
+    for (int i = 0; i < 100 && stateMachine.views.get() < 2; i++) {
+      keepAlive();
+    }
+    assertTrue(stateMachine.views.get() >= 2);
+
+    callerContext.execute(() -> {
+      threadAssertNull(state.getSnapshotStore().currentSnapshot());
+      resume();
+    });
+    await(5000);
+  }
+
+  @AfterMethod
+  public void closeStateMachine() {
+    stateMachine.release.countDown();
+    state.close();
+    callerContext.close();
+  }
+
+  /**
+   * State machine that writes snapshot views asynchronously.
+   */
+  private static class AsyncTestStateMachine extends StateMachine implements AsyncSnapshottable {
+    private final CountDownLatch writing = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch written = new CountDownLatch(1);
+    private final CountDownLatch closed = new CountDownLatch(1);
+    private final AtomicInteger views = new AtomicInteger();
+    private volatile boolean fail;
+    private volatile String viewThread;
+    private volatile String writeThread;
+
+    @Override
+    protected void configure(StateMachineExecutor executor) {
+    }
+
+    @Override
+    public SnapshotView snapshotView() {
+      views.incrementAndGet();
+      viewThread = Thread.currentThread().getName();
+      return new SnapshotView() {
+        @Override
+        public void write(SnapshotWriter writer) {
+          writeThread = Thread.currentThread().getName();
+          writing.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+          }
+          if (fail) {
+            throw new IllegalStateException("failed to write snapshot");
+          }
+          writer.writeLong(1);
+          written.countDown();
+        }
+
+        @Override
+        public void close() {
+          closed.countDown();
+        }
+      };
+    }
+
+    @Override
+    public void install(SnapshotReader reader) {
+    }
+  }
+
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package io.atomix.copycat.server.state;
+
+import io.atomix.copycat.server.protocol.EntryBatch;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+/**
+ * Entry batch cache test.
+ *
+ * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
+ */
+@Test
+public class EntryBatchCacheTest {
+
+  /**
+   * Tests reusing a batch read up to the requested last index.
+   */
+  public void testReusePartialBatch() {
+    EntryBatchCache cache = new EntryBatchCache();
+    EntryBatch batch = EntryBatch.encode(Collections.emptyList());
+    cache.put(1, 10, false, batch);
+    assertSame(cache.get(1, 10), batch);
+    assertNull(cache.get(1, 11));
+    assertNull(cache.get(1, 9));
+    assertNull(cache.get(2, 10));
+  }
+
+  /**
+   * Tests reusing a batch that reached the maximum batch size.
+   */
+  public void testReuseFullBatch() {
+    EntryBatchCache cache = new EntryBatchCache();
+    EntryBatch batch = EntryBatch.encode(Collections.emptyList());
+    cache.put(1, 10, true, batch);
+    assertSame(cache.get(1, 10), batch);
+    assertSame(cache.get(1, 100), batch);
+    assertNull(cache.get(1, 9));
+    cache.clear();
+    assertNull(cache.get(1, 100));
+  }
+
+}
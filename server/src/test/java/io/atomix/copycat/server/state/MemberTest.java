@@ -17,7 +17,11 @@ package io.atomix.copycat.server.state;
 
 import io.atomix.catalyst.serializer.Serializer;
 import io.atomix.catalyst.transport.Address;
+import io.atomix.copycat.protocol.Response;
 import io.atomix.copycat.server.cluster.Member;
+import io.atomix.copycat.server.protocol.AppendRequest;
+import io.atomix.copycat.server.protocol.AppendResponse;
+import io.atomix.copycat.server.storage.TestEntry;
 import io.atomix.copycat.server.storage.util.StorageSerialization;
 import io.atomix.copycat.server.util.ServerSerialization;
 import io.atomix.copycat.util.ProtocolSerialization;
@@ -26,7 +30,9 @@ import org.testng.annotations.Test;
 import java.time.Instant;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
 
 /**
  * Member test.
@@ -82,4 +88,84 @@ public class MemberTest {
     assertEquals(member.updated(), instant);
   }
 
+  /**
+   * Tests growing and shrinking the append window.
+   */
+  public void testAppendWindow() {
+    MemberState state = new MemberState(new ServerMember(Member.Type.ACTIVE, new Address("localhost", 5000), null, Instant.now()), null);
+    assertEquals(state.getAppendWindow(), 2);
+    assertTrue(state.canAppend());
+    state.startAppend(100);
+    assertTrue(state.canAppend());
+    state.startAppend(100);
+    assertFalse(state.canAppend());
+
+    state.succeedAppend(100);
+    state.succeedAppend(100);
+    assertEquals(state.getAppendWindow(), 3);
+
+    for (int i = 0; i < 3; i++) {
+      state.startAppend(100);
+    }
+    assertFalse(state.canAppend());
+    state.failAppend(100);
+    assertEquals(state.getAppendWindow(), 1);
+    assertFalse(state.canAppend());
+    state.completeAppend(100);
+    state.completeAppend(100);
+    assertTrue(state.canAppend());
+  }
+
+  /**
+   * Tests that the append window is limited by the number of bytes in flight.
+   */
+  public void testAppendWindowBytes() {
+    MemberState state = new MemberState(new ServerMember(Member.Type.ACTIVE, new Address("localhost", 5000), null, Instant.now()), null);
+    state.startAppend(1024 * 1024 * 4);
+    assertFalse(state.canAppend());
+    state.succeedAppend(1024 * 1024 * 4);
+    assertTrue(state.canAppend());
+  }
+
+  /**
+   * Tests that rejected append requests do not grow the append window.
+   */
+  public void testAppendWindowRejections() {
+    MemberState state = new MemberState(new ServerMember(Member.Type.ACTIVE, new Address("localhost", 5000), null, Instant.now()), null);
+    AppendRequest request = AppendRequest.builder()
+      .withTerm(1)
+      .withLeader(1)
+      .withLogIndex(1)
+      .withLogTerm(1)
+      .withEntries(new TestEntry().setIndex(2).setTerm(1))
+      .withCommitIndex(0)
+      .withGlobalIndex(0)
+      .build();
+    AppendResponse rejection = AppendResponse.builder()
+      .withStatus(Response.Status.OK)
+      .withTerm(1)
+      .withSucceeded(false)
+      .withLogIndex(0)
+      .build();
+    AppendResponse success = AppendResponse.builder()
+      .withStatus(Response.Status.OK)
+      .withTerm(1)
+      .withSucceeded(true)
+      .withLogIndex(2)
+      .build();
+
+    for (int i = 0; i < 4; i++) {
+      state.startAppend(100);
+      AbstractAppender.completeAppend(state, request, rejection, null, 100);
+    }
+    assertEquals(state.getAppendWindow(), 2);
+    assertTrue(state.canAppend());
+
+    for (int i = 0; i < 2; i++) {
+      state.startAppend(100);
+      AbstractAppender.completeAppend(state, request, success, null, 100);
+    }
+    assertEquals(state.getAppendWindow(), 3);
+  }
+
 }
@@ -23,7 +23,11 @@ import io.atomix.copycat.protocol.Response.Status;
 import io.atomix.copycat.server.TestStateMachine.TestCommand;
 import io.atomix.copycat.server.TestStateMachine.TestQuery;
 import io.atomix.copycat.server.protocol.*;
+import io.atomix.copycat.server.storage.EntryRecord;
 import io.atomix.copycat.server.storage.TestEntry;
+import io.atomix.copycat.server.storage.compaction.Compaction;
+import io.atomix.copycat.server.storage.snapshot.Snapshot;
+import io.atomix.copycat.server.storage.snapshot.SnapshotReader;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
@@ -205,6 +209,80 @@ public class PassiveStateTest extends AbstractStateTest<PassiveState> {
     });
   }
 
+  public void testRejectCorruptRecord() throws Throwable {
+    runOnServer(() -> {
+      serverContext.setTerm(1);
+
+      AppendRequest request = AppendRequest.builder()
+        .withTerm(1)
+        .withLeader(serverContext.getClusterState().getActiveMemberStates().iterator().next().getMember().id())
+        .withLogIndex(0)
+        .withLogTerm(0)
+        .withCommitIndex(1)
+        .withGlobalIndex(0)
+        .withRecords(Collections.singletonList(new EntryRecord(1, 1, 0, Compaction.Mode.QUORUM, 0, new byte[]{1, 2, 3})))
+        .build();
+
+      AppendResponse response = state.append(request).get();
+
+      assertEquals(response.status(), Status.ERROR);
+      assertEquals(response.term(), 1L);
+      assertEquals(serverContext.getLog().length(), 0L);
+      assertEquals(serverContext.getCommitIndex(), 0L);
+    });
+  }
+
+  /**
+   * Returns an install request for a chunk of the snapshot at index 10.
+   */
+  private InstallRequest install(int offset, byte[] data, boolean complete) {
+    return InstallRequest.builder()
+      .withTerm(1)
+      .withLeader(serverContext.getClusterState().getActiveMemberStates().iterator().next().getMember().id())
+      .withIndex(10)
+      .withOffset(offset)
+      .withData(data)
+      .withComplete(complete)
+      .build();
+  }
+
+  public void testInstallDuplicateAndOutOfOrderChunks() throws Throwable {
+    runOnServer(() -> {
+      serverContext.setTerm(1);
+
+      assertEquals(state.install(install(0, new byte[]{1, 2}, false)).get().status(), Status.OK);
+
+      // Duplicate chunks are acknowledged without being written again.
+      assertEquals(state.install(install(0, new byte[]{1, 2}, false)).get().status(), Status.OK);
+
+      // Chunks following a missing chunk are rejected.
+      assertEquals(state.install(install(2, new byte[]{5, 6}, true)).get().status(), Status.ERROR);
+
+      assertEquals(state.install(install(1, new byte[]{3, 4}, false)).get().status(), Status.OK);
+      assertEquals(state.install(install(1, new byte[]{3, 4}, false)).get().status(), Status.OK);
+      assertNull(serverContext.getSnapshotStore().currentSnapshot());
+
+      assertEquals(state.install(install(2, new byte[]{5, 6}, true)).get().status(), Status.OK);
+
+      Snapshot snapshot = serverContext.getSnapshotStore().currentSnapshot();
+      assertEquals(snapshot.index(), 10L);
+      try (SnapshotReader reader = snapshot.reader()) {
+        byte[] bytes = new byte[(int) reader.remaining()];
+        reader.read(bytes);
+        assertEquals(bytes, new byte[]{1, 2, 3, 4, 5, 6});
+      }
+    });
+  }
+
+  public void testInstallRejectsResumedChunkWithoutSnapshot() throws Throwable {
+    runOnServer(() -> {
+      serverContext.setTerm(1);
+      assertEquals(state.install(install(1, new byte[]{3, 4}, false)).get().status(), Status.ERROR);
+      assertEquals(state.install(install(0, new byte[]{1, 2}, true)).get().status(), Status.OK);
+      assertEquals(serverContext.getSnapshotStore().currentSnapshot().index(), 10L);
+    });
+  }
+
   public void testCommandWithoutLeader() throws Throwable {
     runOnServer(() -> {
       CommandRequest request = CommandRequest.builder().withSession(1).withCommand(new TestCommand("test")).build();
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package io.atomix.copycat.server.state;
+
+import io.atomix.catalyst.transport.Address;
+import io.atomix.copycat.server.cluster.Member;
+import org.testng.annotations.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Quorum tracker test.
+ *
+ * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
+ */
+@Test
+public class QuorumTrackerTest {
+
+  /**
+   * Creates a list of member states.
+   */
+  private List<MemberState> createMembers(int count) {
+    List<MemberState> members = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      members.add(new MemberState(new ServerMember(Member.Type.ACTIVE, new Address("localhost", 5000 + i), null, Instant.now()), null));
+    }
+    return members;
+  }
+
+  /**
+   * Asserts that the tracker orders the match indexes of the given members in descending order.
+   */
+  private void assertOrdered(QuorumTracker tracker, List<MemberState> members) {
+    long[] expected = members.stream().mapToLong(MemberState::getMatchIndex).sorted().toArray();
+    assertEquals(tracker.size(), expected.length);
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(tracker.get(i), expected[expected.length - i - 1]);
+    }
+  }
+
+  /**
+   * Tests resetting the tracker to a set of members.
+   */
+  public void testReset() {
+    List<MemberState> members = createMembers(5);
+    for (int i = 0; i < members.size(); i++) {
+      members.get(i).setMatchIndex(Arrays.asList(3L, 9L, 1L, 9L, 4L).get(i));
+    }
+    QuorumTracker tracker = new QuorumTracker(MemberState::getMatchIndex);
+    tracker.reset(members);
+    assertOrdered(tracker, members);
+
+    tracker.reset(members.subList(0, 3));
+    assertOrdered(tracker, members.subList(0, 3));
+  }
+
+  /**
+   * Tests updating the values of tracked members.
+   */
+  public void testUpdate() {
+    List<MemberState> members = createMembers(7);
+    QuorumTracker tracker = new QuorumTracker(MemberState::getMatchIndex);
+    tracker.reset(members);
+    assertOrdered(tracker, members);
+
+    Random random = new Random(1);
+    for (int i = 0; i < 1000; i++) {
+      MemberState member = members.get(random.nextInt(members.size()));
+      member.setMatchIndex(random.nextInt(100));
+      tracker.update(member);
+      assertOrdered(tracker, members);
+    }
+  }
+
+  /**
+   * Tests that updates to untracked members are ignored.
+   */
+  public void testUpdateUntrackedMember() {
+    List<MemberState> members = createMembers(3);
+    QuorumTracker tracker = new QuorumTracker(MemberState::getMatchIndex);
+    tracker.reset(members.subList(0, 2));
+    members.get(2).setMatchIndex(10);
+    tracker.update(members.get(2));
+    assertOrdered(tracker, members.subList(0, 2));
+  }
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package io.atomix.copycat.server.state;
+
+import io.atomix.catalyst.buffer.Buffer;
+import io.atomix.catalyst.serializer.Serializer;
+import io.atomix.catalyst.transport.Address;
+import io.atomix.copycat.server.cluster.Member;
+import io.atomix.copycat.server.storage.Storage;
+import io.atomix.copycat.server.storage.StorageLevel;
+import io.atomix.copycat.server.storage.snapshot.Snapshot;
+import io.atomix.copycat.server.storage.snapshot.SnapshotStore;
+import io.atomix.copycat.server.storage.snapshot.SnapshotWriter;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.time.Instant;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Snapshot transfer test.
+ *
+ * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
+ */
+@Test
+public class SnapshotTransferTest {
+  private SnapshotStore store;
+  private Snapshot snapshot;
+
+  @BeforeMethod
+  public void createSnapshot() {
+    store = new SnapshotStore("test", new Storage(StorageLevel.MEMORY), new Serializer());
+    snapshot = store.createSnapshot(1);
+    try (SnapshotWriter writer = snapshot.writer()) {
+      writer.write(new byte[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9});
+    }
+    snapshot.complete();
+  }
+
+  /**
+   * Reads the bytes of the given chunk.
+   */
+  private byte[] read(Buffer chunk) {
+    byte[] bytes = new byte[(int) chunk.remaining()];
+    chunk.read(bytes);
+    return bytes;
+  }
+
+  /**
+   * Tests reading a snapshot in chunks.
+   */
+  public void testReadChunks() {
+    SnapshotTransfer transfer = new SnapshotTransfer(store, snapshot, 4);
+    assertEquals(transfer.nextOffset(), 0);
+    assertTrue(transfer.hasNext());
+    assertEquals(read(transfer.next()), new byte[]{0, 1, 2, 3});
+    assertFalse(transfer.isComplete());
+    assertEquals(read(transfer.next()), new byte[]{4, 5, 6, 7});
+    assertFalse(transfer.isComplete());
+    assertEquals(read(transfer.next()), new byte[]{8, 9});
+    assertTrue(transfer.isComplete());
+    assertFalse(transfer.hasNext());
+    assertEquals(transfer.nextOffset(), 3);
+    transfer.release();
+    transfer.release();
+    transfer.release();
+    transfer.close();
+  }
+
+  /**
+   * Tests resuming a transfer from a chunk offset.
+   */
+  public void testResumeTransfer() {
+    SnapshotTransfer transfer = new SnapshotTransfer(store, snapshot, 4, 1);
+    assertEquals(transfer.nextOffset(), 1);
+    assertTrue(transfer.hasNext());
+    assertEquals(read(transfer.next()), new byte[]{4, 5, 6, 7});
+    assertEquals(read(transfer.next()), new byte[]{8, 9});
+    assertTrue(transfer.isComplete());
+    transfer.release();
+    transfer.release();
+    transfer.close();
+  }
+
+  /**
+   * Tests that a transfer releases its snapshot once the transfer is closed and all chunks have been released.
+   */
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void testTransferReleasesSnapshot() {
+    SnapshotTransfer transfer = new SnapshotTransfer(store, snapshot, 4);
+    transfer.next();
+    transfer.close();
+    transfer.release();
+    store.release(snapshot);
+  }
+
+  /**
+   * Tests limiting the number of install requests in flight to a member.
+   */
+  public void testInstallLimit() {
+    MemberState member = new MemberState(new ServerMember(Member.Type.ACTIVE, new Address("localhost", 5000), null, Instant.now()), null);
+
+    // A single install request can be sent before a transfer has been started.
+    assertTrue(member.canInstall());
+    member.startInstall();
+    assertFalse(member.canInstall());
+    member.completeInstall();
+
+    // Once chunks are being read from a transfer, up to four requests can be in flight.
+    SnapshotTransfer transfer = new SnapshotTransfer(store, snapshot, 1);
+    member.setSnapshotTransfer(transfer);
+    for (int i = 0; i < 4; i++) {
+      assertTrue(member.canInstall());
+      member.startInstall();
+      transfer.next();
+    }
+    assertFalse(member.canInstall());
+    member.completeInstall();
+    assertTrue(member.canInstall());
+
+    // No more requests are pipelined once the last chunk has been read.
+    while (transfer.hasNext()) {
+      transfer.next();
+    }
+    assertFalse(member.canInstall());
+  }
+
+  /**
+   * Tests that changing a member's transfer begins a new transfer generation.
+   */
+  public void testTransferGeneration() {
+    MemberState member = new MemberState(new ServerMember(Member.Type.ACTIVE, new Address("localhost", 5000), null, Instant.now()), null);
+    long generation = member.getSnapshotTransferGeneration();
+    SnapshotTransfer transfer = new SnapshotTransfer(store, snapshot, 4);
+    member.setSnapshotTransfer(transfer);
+    assertEquals(member.getSnapshotTransferGeneration(), generation + 1);
+    member.setSnapshotTransfer(transfer);
+    assertEquals(member.getSnapshotTransferGeneration(), generation + 1);
+    member.setSnapshotTransfer(null);
+    assertEquals(member.getSnapshotTransferGeneration(), generation + 2);
+  }
+
+}
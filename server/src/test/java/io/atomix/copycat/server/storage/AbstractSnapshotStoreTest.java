@@ -15,12 +15,13 @@
  */
 package io.atomix.copycat.server.storage;
 
-import io.atomix.copycat.server.storage.snapshot.Snapshot;
-import io.atomix.copycat.server.storage.snapshot.SnapshotReader;
-import io.atomix.copycat.server.storage.snapshot.SnapshotStore;
-import io.atomix.copycat.server.storage.snapshot.SnapshotWriter;
+import io.atomix.copycat.server.storage.compression.Lz4Codec;
+import io.atomix.copycat.server.storage.snapshot.*;
 import org.testng.annotations.Test;
 
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 import static org.testng.Assert.*;
 
 /**
@@ -36,6 +37,11 @@ public abstract class AbstractSnapshotStoreTest {
    */
   protected abstract SnapshotStore createSnapshotStore();
 
+  /**
+   * Returns a new snapshot store with the given storage configuration.
+   */
+  protected abstract SnapshotStore createSnapshotStore(Storage.Builder builder);
+
   /**
    * Tests writing a snapshot.
    */
@@ -74,4 +80,289 @@ public abstract class AbstractSnapshotStoreTest {
     }
   }
 
+  /**
+   * Tests writing a chain of delta snapshots.
+   */
+  public void testDeltaSnapshotChain() {
+    SnapshotStore store = createSnapshotStore();
+    Snapshot snapshot = store.createSnapshot(1);
+    try (SnapshotWriter writer = snapshot.writer()) {
+      new DeltaSnapshotWriter(writer).put("a", 1).put("b", 2);
+    }
+    snapshot.complete();
+
+    Snapshot delta = store.createDeltaSnapshot(2, 1);
+    assertTrue(delta.isDelta());
+    assertEquals(delta.baseIndex(), 1);
+    try (SnapshotWriter writer = delta.writer()) {
+      new DeltaSnapshotWriter(writer).put("b", 3).remove("a");
+    }
+    delta.complete();
+
+    assertEquals(store.currentSnapshot().index(), 2);
+    List<Snapshot> chain = store.chain(store.currentSnapshot());
+    assertEquals(chain.size(), 2);
+    assertEquals(chain.get(0).index(), 1);
+    assertEquals(chain.get(1).index(), 2);
+
+    try (SnapshotReader reader = chain.get(1).reader()) {
+      DeltaSnapshotReader records = new DeltaSnapshotReader(reader, true);
+      assertTrue(records.next());
+      assertEquals(records.key(), "b");
+      assertEquals((int) records.value(), 3);
+      assertTrue(records.next());
+      assertEquals(records.key(), "a");
+      assertTrue(records.isRemove());
+      assertFalse(records.next());
+    }
+  }
+
+  /**
+   * Tests merging a chain of delta snapshots into a full snapshot.
+   */
+  public void testMergeSnapshotChain() throws Exception {
+    SnapshotStore store = createSnapshotStore(Storage.builder().withMaxSnapshotDeltas(1));
+    Snapshot snapshot = store.createSnapshot(1);
+    try (SnapshotWriter writer = snapshot.writer()) {
+      new DeltaSnapshotWriter(writer).put("a", 1).put("b", 2).put("c", 3);
+    }
+    snapshot.complete();
+
+    Snapshot delta1 = store.createDeltaSnapshot(2, 1);
+    try (SnapshotWriter writer = delta1.writer()) {
+      new DeltaSnapshotWriter(writer).put("b", 4);
+    }
+    delta1.complete();
+
+    Snapshot delta2 = store.createDeltaSnapshot(3, 2);
+    try (SnapshotWriter writer = delta2.writer()) {
+      new DeltaSnapshotWriter(writer).remove("a").put("d", 5);
+    }
+    delta2.complete();
+
+    store.mergeFuture().get(10, TimeUnit.SECONDS);
+
+    assertEquals(store.currentSnapshot().index(), 3);
+    assertFalse(store.currentSnapshot().isDelta());
+    assertEquals(store.chain(store.currentSnapshot()).size(), 1);
+    assertEquals(store.snapshots().size(), 1);
+
+    try (SnapshotReader reader = store.currentSnapshot().reader()) {
+      DeltaSnapshotReader records = new DeltaSnapshotReader(reader, false);
+      assertTrue(records.next());
+      assertEquals(records.key(), "c");
+      assertEquals((int) records.value(), 3);
+      assertTrue(records.next());
+      assertEquals(records.key(), "b");
+      assertEquals((int) records.value(), 4);
+      assertTrue(records.next());
+      assertEquals(records.key(), "d");
+      assertEquals((int) records.value(), 5);
+      assertFalse(records.next());
+    }
+    store.close();
+  }
+
+  /**
+   * Tests that snapshots acquired by a reader are not deleted when a merge makes them stale.
+   */
+  public void testMergeAcquiredSnapshotChain() throws Exception {
+    SnapshotStore store = createSnapshotStore(Storage.builder().withMaxSnapshotDeltas(1));
+    Snapshot snapshot = store.createSnapshot(1);
+    try (SnapshotWriter writer = snapshot.writer()) {
+      new DeltaSnapshotWriter(writer).put("a", 1).put("b", 2);
+    }
+    snapshot.complete();
+
+    Snapshot delta1 = store.createDeltaSnapshot(2, 1);
+    try (SnapshotWriter writer = delta1.writer()) {
+      new DeltaSnapshotWriter(writer).put("b", 3);
+    }
+    delta1.complete();
+
+    // Acquire the chain as if it's being installed or transferred.
+    List<Snapshot> chain = store.acquireChain(store.currentSnapshot());
+    assertEquals(chain.size(), 2);
+
+    Snapshot delta2 = store.createDeltaSnapshot(3, 2);
+    try (SnapshotWriter writer = delta2.writer()) {
+      new DeltaSnapshotWriter(writer).put("c", 4);
+    }
+    delta2.complete();
+
+    store.mergeFuture().get(10, TimeUnit.SECONDS);
+    assertEquals(store.currentSnapshot().index(), 3);
+    assertFalse(store.currentSnapshot().isDelta());
+    assertEquals(store.snapshots().size(), 1);
+
+    // The stale snapshots in the acquired chain can still be read.
+    try (SnapshotReader reader = chain.get(0).reader()) {
+      DeltaSnapshotReader records = new DeltaSnapshotReader(reader, false);
+      assertTrue(records.next());
+      assertEquals(records.key(), "a");
+      assertEquals((int) records.value(), 1);
+    }
+    try (SnapshotReader reader = chain.get(1).reader()) {
+      DeltaSnapshotReader records = new DeltaSnapshotReader(reader, true);
+      assertTrue(records.next());
+      assertEquals(records.key(), "b");
+      assertEquals((int) records.value(), 3);
+      assertFalse(records.next());
+    }
+
+    store.releaseChain(chain);
+    assertEquals(store.snapshots().size(), 1);
+    store.close();
+  }
+
+  /**
+   * Tests that merging a chain is deferred until the head of the chain is released.
+   */
+  public void testMergeDeferredWhileHeadAcquired() throws Exception {
+    SnapshotStore store = createSnapshotStore(Storage.builder().withMaxSnapshotDeltas(1));
+    Snapshot snapshot = store.createSnapshot(1);
+    try (SnapshotWriter writer = snapshot.writer()) {
+      new DeltaSnapshotWriter(writer).put("a", 1);
+    }
+    snapshot.complete();
+
+    Snapshot delta1 = store.createDeltaSnapshot(2, 1);
+    try (SnapshotWriter writer = delta1.writer()) {
+      new DeltaSnapshotWriter(writer).put("b", 2);
+    }
+
+    // Complete the head of the chain before the delta on which it's based.
+    Snapshot delta2 = store.createDeltaSnapshot(3, 2);
+    try (SnapshotWriter writer = delta2.writer()) {
+      new DeltaSnapshotWriter(writer).put("c", 3);
+    }
+    delta2.complete();
+    assertEquals(store.currentSnapshot().index(), 1);
+
+    // Acquire the head as if it's being transferred, then complete the chain.
+    Snapshot head = store.snapshot(3);
+    store.acquire(head);
+    delta1.complete();
+    assertEquals(store.currentSnapshot().index(), 3);
+
+    // The chain is not merged while the head is acquired.
+    assertTrue(store.mergeFuture().isDone());
+    assertTrue(store.currentSnapshot().isDelta());
+    assertEquals(store.chain(store.currentSnapshot()).size(), 3);
+
+    // Releasing the head merges the chain.
+    store.release(head);
+    store.mergeFuture().get(10, TimeUnit.SECONDS);
+    assertEquals(store.currentSnapshot().index(), 3);
+    assertFalse(store.currentSnapshot().isDelta());
+    assertEquals(store.snapshots().size(), 1);
+
+    try (SnapshotReader reader = store.currentSnapshot().reader()) {
+      DeltaSnapshotReader records = new DeltaSnapshotReader(reader, false);
+      assertTrue(records.next());
+      assertEquals(records.key(), "a");
+      assertTrue(records.next());
+      assertEquals(records.key(), "b");
+      assertTrue(records.next());
+      assertEquals(records.key(), "c");
+      assertFalse(records.next());
+    }
+    store.close();
+  }
+
+  /**
+   * Tests writing and reading a compressed snapshot.
+   */
+  public void testCompressedSnapshot() {
+    SnapshotStore store = createSnapshotStore(Storage.builder().withSnapshotCompression());
+    Snapshot snapshot = store.createSnapshot(1);
+    assertTrue(snapshot.isCompressed());
+
+    byte[] bytes = new byte[1024 * 100];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) (i % 7);
+    }
+
+    try (SnapshotWriter writer = snapshot.writer()) {
+      for (int i = 0; i < 20000; i++) {
+        writer.writeLong(i % 10);
+      }
+      writer.write(bytes);
+    }
+    try (SnapshotWriter writer = snapshot.writer()) {
+      writer.writeString("Hello world!");
+    }
+    snapshot.complete();
+
+    try (SnapshotReader reader = store.currentSnapshot().streamReader()) {
+      assertTrue(reader.remaining() < 20000 * Long.BYTES + bytes.length);
+    }
+
+    try (SnapshotReader reader = store.currentSnapshot().reader()) {
+      for (int i = 0; i < 20000; i++) {
+        assertEquals(reader.readLong(), i % 10);
+      }
+      byte[] read = new byte[bytes.length];
+      reader.read(read);
+      assertEquals(read, bytes);
+      assertEquals(reader.readString(), "Hello world!");
+      assertFalse(reader.hasRemaining());
+    }
+    store.close();
+  }
+
+  /**
+   * Tests copying a compressed snapshot as stored to a new snapshot.
+   */
+  public void testStreamCompressedSnapshot() {
+    SnapshotStore store = createSnapshotStore(Storage.builder().withSnapshotCompression());
+    Snapshot snapshot = store.createSnapshot(1);
+    try (SnapshotWriter writer = snapshot.writer()) {
+      new DeltaSnapshotWriter(writer).put("a", 1).put("b", 2);
+    }
+    snapshot.complete();
+
+    Snapshot copy = store.createSnapshot(SnapshotDescriptor.builder()
+      .withIndex(2)
+      .withTimestamp(snapshot.timestamp())
+      .withCodec(snapshot.codec())
+      .build());
+    try (SnapshotReader reader = snapshot.streamReader(); SnapshotWriter writer = copy.streamWriter()) {
+      writer.write(reader.readSlice(reader.remaining()));
+    }
+    copy.complete();
+
+    assertEquals(store.currentSnapshot().index(), 2);
+    assertTrue(store.currentSnapshot().isCompressed());
+
+    try (SnapshotReader reader = store.currentSnapshot().reader()) {
+      DeltaSnapshotReader records = new DeltaSnapshotReader(reader, false);
+      assertTrue(records.next());
+      assertEquals(records.key(), "a");
+      assertEquals((int) records.value(), 1);
+      assertTrue(records.next());
+      assertEquals(records.key(), "b");
+      assertEquals((int) records.value(), 2);
+      assertFalse(records.next());
+    }
+    store.close();
+  }
+
+  /**
+   * Tests that a snapshot compressed with a codec other than the configured codec is rejected.
+   */
+  @Test(expectedExceptions = StorageException.class)
+  public void testRejectMismatchedCodec() {
+    SnapshotStore store = createSnapshotStore(Storage.builder().withSnapshotCompression());
+    try {
+      store.createSnapshot(SnapshotDescriptor.builder()
+        .withIndex(1)
+        .withTimestamp(System.currentTimeMillis())
+        .withCodec(Lz4Codec.ID + 1)
+        .build());
+    } finally {
+      store.close();
+    }
+  }
+
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.copycat.server.storage.util.EntryCache;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * Entry cache test.
+ *
+ * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
+ */
+@Test
+public class EntryCacheTest {
+
+  /**
+   * Creates a test entry with the given index and size.
+   */
+  private TestEntry entry(long index, int size) {
+    TestEntry entry = new TestEntry();
+    entry.setIndex(index).setSize(size);
+    entry.acquire();
+    return entry;
+  }
+
+  /**
+   * Tests caching entries and counting hits and misses.
+   */
+  public void testGet() {
+    EntryCache cache = new EntryCache(1024);
+    TestEntry entry = entry(1, 100);
+    cache.put(entry);
+    assertEquals(entry.references(), 2);
+    assertEquals(cache.size(), 100);
+    assertSame(cache.get(1), entry);
+    assertEquals(entry.references(), 3);
+    assertNull(cache.get(2));
+    assertEquals(cache.hits(), 1);
+    assertEquals(cache.misses(), 1);
+  }
+
+  /**
+   * Tests evicting the least recently used entries once the cache exceeds its maximum size.
+   */
+  public void testEvictLeastRecentlyUsed() {
+    EntryCache cache = new EntryCache(300);
+    TestEntry entry1 = entry(1, 100);
+    TestEntry entry2 = entry(2, 100);
+    TestEntry entry3 = entry(3, 100);
+    cache.put(entry1).put(entry2).put(entry3);
+    assertNotNull(cache.get(1));
+    cache.put(entry(4, 100));
+    assertEquals(cache.count(), 3);
+    assertEquals(cache.size(), 300);
+    assertNotNull(cache.get(1));
+    assertNull(cache.get(2));
+    assertEquals(entry2.references(), 1);
+    assertNotNull(cache.get(3));
+    assertNotNull(cache.get(4));
+  }
+
+  /**
+   * Tests that entries larger than the cache are not cached.
+   */
+  public void testSkipLargeEntries() {
+    EntryCache cache = new EntryCache(100);
+    cache.put(entry(1, 101));
+    assertEquals(cache.count(), 0);
+    assertNull(cache.get(1));
+  }
+
+  /**
+   * Tests that peeking at cached entries does not count hits or misses.
+   */
+  public void testPeek() {
+    EntryCache cache = new EntryCache(1024);
+    TestEntry entry = entry(1, 100);
+    cache.put(entry);
+    assertSame(cache.peek(1), entry);
+    assertEquals(entry.references(), 3);
+    assertNull(cache.peek(2));
+    assertEquals(cache.hits(), 0);
+    assertEquals(cache.misses(), 0);
+  }
+
+  /**
+   * Tests truncating the cache.
+   */
+  public void testTruncate() {
+    EntryCache cache = new EntryCache(1024);
+    TestEntry entry1 = entry(1, 100);
+    TestEntry entry2 = entry(2, 100);
+    cache.put(entry1).put(entry2);
+    cache.truncate(1);
+    assertEquals(cache.count(), 1);
+    assertEquals(cache.size(), 100);
+    assertEquals(entry2.references(), 1);
+    assertNull(cache.get(2));
+    cache.clear();
+    assertEquals(cache.count(), 0);
+    assertEquals(cache.size(), 0);
+    assertEquals(entry1.references(), 1);
+  }
+
+}
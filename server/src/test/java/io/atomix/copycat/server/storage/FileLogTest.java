@@ -19,6 +19,9 @@ import io.atomix.copycat.server.storage.entry.Entry;
 import org.testng.annotations.Factory;
 import org.testng.annotations.Test;
 
+import java.io.File;
+import java.nio.file.Files;
+
 import static org.testng.Assert.*;
 
 /**
@@ -116,4 +119,113 @@ public class FileLogTest extends LogTest {
     }
   }
 
+  /**
+   * Tests that segment indexes are persisted and used to recover the log.
+   */
+  public void testRecoverFromIndexFiles() {
+    appendEntries(entriesPerSegment * 5);
+    log.close();
+
+    for (Segment segment : log.segments.segments()) {
+      assertTrue(segment.file().index().exists());
+    }
+
+    try (Log log = createLog()) {
+      assertEquals(log.length(), entriesPerSegment * 5);
+      for (long i = log.firstIndex(); i <= log.lastIndex(); i++) {
+        try (Entry entry = log.get(i)) {
+          assertEquals(entry.getIndex(), i);
+          assertEquals(log.term(i), 1);
+        }
+      }
+    }
+  }
+
+  /**
+   * Tests that the log is recovered by scanning segments when index files are invalid.
+   */
+  public void testRecoverFromInvalidIndexFiles() throws Throwable {
+    appendEntries(entriesPerSegment * 5);
+    log.close();
+
+    for (Segment segment : log.segments.segments()) {
+      Files.write(segment.file().index().toPath(), new byte[]{1, 2, 3, 4});
+    }
+
+    try (Log log = createLog()) {
+      assertEquals(log.length(), entriesPerSegment * 5);
+      for (long i = log.firstIndex(); i <= log.lastIndex(); i++) {
+        try (Entry entry = log.get(i)) {
+          assertEquals(entry.getIndex(), i);
+        }
+      }
+    }
+  }
+
+  /**
+   * Tests that a preallocated segment left behind by a crash is deleted when the log is recovered.
+   */
+  public void testRecoverWithPreallocatedSegment() throws Throwable {
+    appendEntries(entriesPerSegment * 5);
+    long nextId = log.segments.lastSegment().descriptor().id() + 1;
+    log.close();
+
+    // The log preallocates the next segment once reopened, so use a later segment ID for the stale file.
+    assertFalse(SegmentFile.createSegmentFile(logId, storage.directory(), nextId, 1).exists());
+    File preallocatedFile = SegmentFile.createSegmentFile(logId, storage.directory(), nextId + 1, 1);
+    Files.write(preallocatedFile.toPath(), new byte[SegmentDescriptor.BYTES * 2]);
+
+    try (Log log = createLog()) {
+      assertFalse(preallocatedFile.exists());
+      assertEquals(log.length(), entriesPerSegment * 5);
+      for (long i = log.firstIndex(); i <= log.lastIndex(); i++) {
+        try (Entry entry = log.get(i)) {
+          assertEquals(entry.getIndex(), i);
+        }
+      }
+    }
+  }
+
+  /**
+   * Tests that a failure to seal a segment fails every subsequent flush.
+   */
+  public void testFlushAfterFailedSeal() throws Throwable {
+    // Block the index file with a directory so that persisting the first segment's index fails.
+    File indexFile = log.segments.currentSegment().file().index();
+    File blockingFile = new File(indexFile, "block");
+    assertTrue(indexFile.mkdirs());
+    assertTrue(blockingFile.createNewFile());
+
+    try {
+      appendEntries(entriesPerSegment + 1);
+      for (int i = 0; i < 2; i++) {
+        try {
+          log.flush();
+          fail();
+        } catch (StorageException e) {
+        }
+      }
+    } finally {
+      blockingFile.delete();
+      indexFile.delete();
+    }
+  }
+
+  /**
+   * Tests that segments are preallocated to the size of the last full segment.
+   */
+  public void testPreallocateSegment() {
+    int padding = entryPadding;
+    entryPadding = 1024 * 512;
+    try {
+      appendEntries(entriesPerSegment * 2 + 1);
+    } finally {
+      entryPadding = padding;
+    }
+
+    Segment segment = log.segments.currentSegment();
+    assertEquals(segment.descriptor().id(), 3);
+    assertTrue(segment.file().file().length() >= log.segments.firstSegment().size());
+  }
+
 }
@@ -15,8 +15,13 @@
  */
 package io.atomix.copycat.server.storage;
 
+import io.atomix.catalyst.buffer.Buffer;
+import io.atomix.catalyst.buffer.HeapBuffer;
 import io.atomix.catalyst.serializer.Serializer;
+import io.atomix.copycat.server.storage.compression.Lz4Codec;
+import io.atomix.copycat.server.storage.snapshot.DeltaSnapshotWriter;
 import io.atomix.copycat.server.storage.snapshot.Snapshot;
+import io.atomix.copycat.server.storage.snapshot.SnapshotReader;
 import io.atomix.copycat.server.storage.snapshot.SnapshotStore;
 import io.atomix.copycat.server.storage.snapshot.SnapshotWriter;
 import org.testng.annotations.AfterMethod;
@@ -45,7 +50,14 @@ public class FileSnapshotStoreTest extends AbstractSnapshotStoreTest {
    * Returns a new snapshot store.
    */
   protected SnapshotStore createSnapshotStore() {
-    Storage storage = Storage.builder()
+    return createSnapshotStore(Storage.builder());
+  }
+
+  /**
+   * Returns a new snapshot store with the given storage configuration.
+   */
+  protected SnapshotStore createSnapshotStore(Storage.Builder builder) {
+    Storage storage = builder
       .withStorageLevel(StorageLevel.DISK)
       .withDirectory(new File(String.format("target/test-logs/%s", testId)))
       .build();
@@ -71,6 +83,89 @@ public class FileSnapshotStoreTest extends AbstractSnapshotStoreTest {
     assertEquals(store.currentSnapshot().index(), 1);
   }
 
+  /**
+   * Tests storing and loading a chain of delta snapshots.
+   */
+  public void testStoreLoadDeltaSnapshot() {
+    SnapshotStore store = createSnapshotStore();
+
+    Snapshot snapshot = store.createSnapshot(1);
+    try (SnapshotWriter writer = snapshot.writer()) {
+      new DeltaSnapshotWriter(writer).put("foo", "bar");
+    }
+    snapshot.complete();
+
+    Snapshot delta = store.createDeltaSnapshot(2, 1);
+    try (SnapshotWriter writer = delta.writer()) {
+      new DeltaSnapshotWriter(writer).put("foo", "baz");
+    }
+    delta.complete();
+    store.close();
+
+    store = createSnapshotStore();
+    assertEquals(store.currentSnapshot().index(), 2);
+    assertEquals(store.currentSnapshot().baseIndex(), 1);
+    assertEquals(store.chain(store.currentSnapshot()).size(), 2);
+  }
+
+  /**
+   * Tests streaming a stored snapshot in chunks.
+   */
+  public void testStreamReader() {
+    SnapshotStore store = createSnapshotStore();
+
+    Snapshot snapshot = store.createSnapshot(1);
+    try (SnapshotWriter writer = snapshot.writer()) {
+      for (int i = 0; i < 1000; i++) {
+        writer.writeLong(i);
+      }
+    }
+    snapshot.complete();
+    store.close();
+
+    store = createSnapshotStore();
+    try (SnapshotReader reader = store.currentSnapshot().streamReader()) {
+      assertEquals(reader.remaining(), 1000 * Long.BYTES);
+
+      // Read the snapshot in chunks that don't align with the values in the snapshot.
+      Buffer bytes = HeapBuffer.allocate(1000 * Long.BYTES);
+      while (reader.hasRemaining()) {
+        bytes.write(reader.readSlice(Math.min(100, reader.remaining())));
+      }
+      bytes.flip();
+      for (int i = 0; i < 1000; i++) {
+        assertEquals(bytes.readLong(), i);
+      }
+    }
+    store.close();
+  }
+
+  /**
+   * Tests that loading a snapshot compressed with a codec other than the configured codec fails.
+   */
+  @Test(expectedExceptions = StorageException.class)
+  public void testLoadMismatchedCodec() {
+    SnapshotStore store = createSnapshotStore(Storage.builder().withSnapshotCompression());
+    Snapshot snapshot = store.createSnapshot(1);
+    try (SnapshotWriter writer = snapshot.writer()) {
+      writer.writeLong(10);
+    }
+    snapshot.complete();
+    store.close();
+
+    createSnapshotStore(Storage.builder().withSnapshotCodec(new TestCodec()));
+  }
+
+  /**
+   * LZ4 codec with a different identifier.
+   */
+  private static class TestCodec extends Lz4Codec {
+    @Override
+    public int id() {
+      return ID + 1;
+    }
+  }
+
   @BeforeMethod
   @AfterMethod
   protected void cleanupStorage() throws IOException {
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.copycat.server.storage.entry.Entry;
+import org.testng.annotations.Factory;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+
+import static org.testng.Assert.*;
+
+/**
+ * Hybrid file log test.
+ *
+ * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
+ */
+@Test
+public class HybridLogTest extends FileLogTest {
+  @Factory
+  public Object[] createTests() throws Throwable {
+    return testsFor(HybridLogTest.class);
+  }
+
+  @Override
+  protected StorageLevel storageLevel() {
+    return StorageLevel.HYBRID;
+  }
+
+  /**
+   * Tests that sealed segments are mapped into memory and the current segment is not.
+   */
+  public void testMapSealedSegments() throws Throwable {
+    appendEntries(entriesPerSegment * 5 + 1);
+    log.flush();
+
+    for (Segment segment : log.segments.segments()) {
+      boolean sealed = segment != log.segments.currentSegment();
+      for (int i = 0; i < 100 && segment.isMapped() != sealed; i++) {
+        Thread.sleep(100);
+      }
+      assertEquals(segment.isMapped(), sealed);
+    }
+
+    for (long i = log.firstIndex(); i <= log.lastIndex(); i++) {
+      try (Entry entry = log.get(i)) {
+        assertEquals(entry.getIndex(), i);
+      }
+    }
+  }
+
+  /**
+   * Tests that a mapped segment is unmapped when it's truncated.
+   */
+  public void testUnmapTruncatedSegment() throws Throwable {
+    appendEntries(entriesPerSegment * 2 + 1);
+    log.flush();
+
+    Segment segment = log.segments.firstSegment();
+    for (int i = 0; i < 100 && !segment.isMapped(); i++) {
+      Thread.sleep(100);
+    }
+    assertTrue(segment.isMapped());
+    log.truncate(segment.index());
+    assertFalse(segment.isMapped());
+    assertEquals(log.lastIndex(), segment.index());
+  }
+
+  /**
+   * Tests that segments are unmapped once they age even if the log doesn't roll over.
+   */
+  public void testUnmapAgedSegments() throws Throwable {
+    log.close();
+    storage = tempStorageBuilder()
+      .withMaxSegmentSize(Integer.MAX_VALUE)
+      .withMaxEntriesPerSegment(entriesPerSegment)
+      .withStorageLevel(storageLevel())
+      .withMappedSegmentAge(Duration.ofMillis(500))
+      .build();
+    log = createLog();
+
+    appendEntries(entriesPerSegment * 2 + 1);
+    log.flush();
+
+    Segment segment = log.segments.firstSegment();
+    for (int i = 0; i < 100 && segment.isMapped(); i++) {
+      Thread.sleep(100);
+    }
+    assertFalse(segment.isMapped());
+    assertEquals(log.segments.firstSegment(), segment);
+
+    for (long i = log.firstIndex(); i <= log.lastIndex(); i++) {
+      try (Entry entry = log.get(i)) {
+        assertEquals(entry.getIndex(), i);
+      }
+    }
+  }
+
+}
@@ -15,11 +15,14 @@
  */
 package io.atomix.copycat.server.storage;
 
+import io.atomix.catalyst.serializer.Serializer;
 import io.atomix.copycat.server.storage.compaction.Compaction;
+import io.atomix.copycat.server.storage.util.StorageSerialization;
 import org.testng.annotations.Test;
 
 import java.io.File;
 import java.util.List;
+import java.util.UUID;
 
 import static org.testng.Assert.*;
 
@@ -359,4 +362,255 @@ public abstract class LogTest extends AbstractLogTest {
     assertEquals(log.firstIndex(), 1);
     assertEquals(log.lastIndex(), 10);
   }
+
+  /**
+   * Tests syncing entries with group commit enabled.
+   */
+  public void testGroupCommitSync() throws Throwable {
+    log.close();
+    storage = tempStorageBuilder()
+      .withMaxSegmentSize(Integer.MAX_VALUE)
+      .withMaxEntriesPerSegment(entriesPerSegment)
+      .withStorageLevel(storageLevel())
+      .withGroupCommit()
+      .withGroupCommitSize(10)
+      .build();
+    log = createLog();
+
+    appendEntries(5);
+    assertEquals(log.syncIndex(), 0);
+    appendEntries(5);
+    assertEquals(log.syncIndex(), 10);
+    appendEntries(1);
+    assertEquals(log.syncIndex(), 10);
+    assertEquals(log.sync(11).get().longValue(), 11);
+    assertEquals(log.syncIndex(), 11);
+    assertTrue(log.sync(5).isDone());
+  }
+
+  /**
+   * Tests that syncing is a no-op with group commit disabled.
+   */
+  public void testSyncWithoutGroupCommit() throws Throwable {
+    appendEntries(5);
+    assertEquals(log.syncIndex(), 5);
+    assertTrue(log.sync(5).isDone());
+  }
+
+  /**
+   * Tests reading entries with a log reader.
+   */
+  public void testReader() throws Throwable {
+    List<Long> indexes = appendEntries(entriesPerSegment * 3);
+    try (SegmentReader reader = log.reader()) {
+      for (long index : indexes) {
+        try (TestEntry entry = reader.get(index)) {
+          assertEquals(entry.getIndex(), index);
+          assertEquals(entry.getTerm(), 1);
+        }
+      }
+    }
+  }
+
+  /**
+   * Tests reading entries sequentially across segments with a log cursor.
+   */
+  public void testCursor() throws Throwable {
+    List<Long> indexes = appendEntries(entriesPerSegment * 3);
+    try (LogCursor cursor = log.cursor(indexes.get(0))) {
+      for (long index : indexes) {
+        assertTrue(cursor.hasNext());
+        assertEquals(cursor.index(), index);
+        try (TestEntry entry = cursor.next()) {
+          assertEquals(entry.getIndex(), index);
+          assertEquals(entry.getTerm(), 1);
+        }
+      }
+      assertFalse(cursor.hasNext());
+
+      // Entries appended after the cursor was created should be visible to the cursor.
+      List<Long> moreIndexes = appendEntries(entriesPerSegment * 2);
+      for (long index : moreIndexes) {
+        assertTrue(cursor.hasNext());
+        try (TestEntry entry = cursor.next()) {
+          assertEquals(entry.getIndex(), index);
+        }
+      }
+      assertFalse(cursor.hasNext());
+    }
+  }
+
+  /**
+   * Tests reading entries from a segment in the original format and migrating them to the current format.
+   */
+  public void testMigrateSegmentFormat() throws Throwable {
+    Segment segment = log.segments.createSegment(SegmentDescriptor.builder()
+      .withId(100)
+      .withVersion(1)
+      .withIndex(1)
+      .withMaxSegmentSize(1024 * 1024)
+      .withMaxEntries(1024)
+      .withFormat(SegmentDescriptor.FORMAT_V1)
+      .build());
+    Segment compactSegment = log.segments.createSegment(SegmentDescriptor.builder()
+      .withId(100)
+      .withVersion(2)
+      .withIndex(1)
+      .withMaxSegmentSize(1024 * 1024)
+      .withMaxEntries(1024)
+      .build());
+    assertEquals(segment.descriptor().format(), SegmentDescriptor.FORMAT_V1);
+    assertEquals(compactSegment.descriptor().format(), SegmentDescriptor.CURRENT_FORMAT);
+
+    for (long index = 1; index <= 10; index++) {
+      try (TestEntry entry = log.create(TestEntry.class)) {
+        entry.setIndex(index).setTerm(index / 3 + 1);
+        entry.setCompactionMode(Compaction.Mode.TOMBSTONE);
+        segment.append(entry);
+      }
+    }
+
+    // Entries in the original format do not store their compaction modes in their headers.
+    try (LogCursor cursor = log.segments.createCursor(segment)) {
+      while (cursor.hasNext()) {
+        assertTrue(cursor.advance());
+        assertNull(cursor.mode());
+        cursor.transfer(compactSegment);
+      }
+    }
+
+    try (LogCursor cursor = log.segments.createCursor(compactSegment)) {
+      for (long index = 1; index <= 10; index++) {
+        assertTrue(cursor.advance());
+        assertEquals(cursor.mode(), Compaction.Mode.TOMBSTONE);
+        try (TestEntry entry = cursor.entry()) {
+          assertEquals(entry.getIndex(), index);
+          assertEquals(entry.getTerm(), index / 3 + 1);
+          assertEquals(entry.getCompactionMode(), Compaction.Mode.TOMBSTONE);
+        }
+      }
+      assertFalse(cursor.hasNext());
+    }
+
+    segment.close();
+    segment.delete();
+    compactSegment.close();
+    compactSegment.delete();
+  }
+
+  /**
+   * Tests that a log cursor does not return entries that have been compacted from the log.
+   */
+  public void testCursorCompactedEntries() throws Throwable {
+    appendEntries(entriesPerSegment * 3);
+    for (int i = entriesPerSegment; i < entriesPerSegment * 2; i++) {
+      log.release(i);
+    }
+    log.commit(entriesPerSegment * 2).compactor().minorIndex(entriesPerSegment * 2);
+    try (LogCursor cursor = log.cursor(entriesPerSegment)) {
+      for (int i = entriesPerSegment; i < entriesPerSegment * 2; i++) {
+        assertEquals(cursor.index(), i);
+        assertNull(cursor.next());
+      }
+      try (TestEntry entry = cursor.next()) {
+        assertEquals(entry.getIndex(), entriesPerSegment * 2);
+      }
+    }
+  }
+
+  /**
+   * Tests that entries compacted from the log are removed from the entry cache.
+   */
+  public void testCacheInvalidatedOnCompaction() throws Throwable {
+    appendEntries(entriesPerSegment * 5);
+    for (long i = 1; i <= entriesPerSegment * 5; i++) {
+      log.release(i);
+    }
+    assertEquals(log.cache().count(), entriesPerSegment * 5);
+
+    log.commit(entriesPerSegment * 5).compactor().minorIndex(entriesPerSegment * 5).compact().join();
+    assertEquals(log.cache().count(), 0);
+    for (long i = 1; i <= entriesPerSegment * 4; i++) {
+      assertNull(log.get(i));
+    }
+  }
+
+  /**
+   * Tests that visibility checks are not counted as cache hits or misses.
+   */
+  public void testIsVisibleSkipsCacheStats() throws Throwable {
+    appendEntries(entriesPerSegment * 2);
+    for (long i = 1; i <= entriesPerSegment * 2; i++) {
+      assertTrue(log.isVisible(i));
+    }
+    assertEquals(log.cache().hits(), 0);
+    assertEquals(log.cache().misses(), 0);
+  }
+
+  /**
+   * Tests reading entry records from a log and appending them to another log.
+   */
+  public void testAppendRecords() throws Throwable {
+    appendEntries(entriesPerSegment * 3, Compaction.Mode.TOMBSTONE);
+    String id = UUID.randomUUID().toString();
+    try (Log copy = new Log(id, storage, new Serializer().resolve(new StorageSerialization()).register(TestEntry.class))) {
+      try (LogCursor cursor = log.cursor(1)) {
+        while (cursor.hasNext()) {
+          assertTrue(cursor.advance());
+          EntryRecord record = cursor.record();
+          assertTrue(record.isValid());
+          assertEquals(record.mode(), Compaction.Mode.TOMBSTONE);
+          assertEquals(copy.append(record), record.index());
+        }
+      }
+
+      assertEquals(copy.lastIndex(), entriesPerSegment * 3);
+      for (long index = 1; index <= entriesPerSegment * 3; index++) {
+        try (TestEntry entry = copy.get(index)) {
+          assertEquals(entry.getIndex(), index);
+          assertEquals(entry.getTerm(), 1);
+          assertEquals(entry.getCompactionMode(), Compaction.Mode.TOMBSTONE);
+        }
+      }
+    } finally {
+      storage.deleteLog(id);
+    }
+  }
+
+  /**
+   * Tests that a log cursor does not read records for entries that have been compacted from the log.
+   */
+  public void testCursorCompactedRecords() throws Throwable {
+    appendEntries(entriesPerSegment * 3);
+    for (int i = entriesPerSegment; i < entriesPerSegment * 2; i++) {
+      log.release(i);
+    }
+    log.commit(entriesPerSegment * 2).compactor().minorIndex(entriesPerSegment * 2);
+    try (LogCursor cursor = log.cursor(entriesPerSegment)) {
+      for (int i = entriesPerSegment; i < entriesPerSegment * 2; i++) {
+        assertFalse(cursor.advance());
+      }
+      assertTrue(cursor.advance());
+      assertEquals(cursor.record().index(), entriesPerSegment * 2);
+    }
+  }
+
+  /**
+   * Tests that appending a record with an invalid checksum fails.
+   */
+  @Test(expectedExceptions = StorageException.class)
+  public void testAppendCorruptRecord() throws Throwable {
+    appendEntries(1);
+    EntryRecord record;
+    try (LogCursor cursor = log.cursor(1)) {
+      assertTrue(cursor.advance());
+      record = cursor.record();
+    }
+    byte[] bytes = record.bytes().clone();
+    bytes[bytes.length - 1] ^= 1;
+    EntryRecord corrupt = new EntryRecord(2, record.term(), record.checksum(), record.mode(), record.type(), bytes);
+    assertFalse(corrupt.isValid());
+    log.append(corrupt);
+  }
+
 }
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.copycat.server.storage.compression.Codec;
+import io.atomix.copycat.server.storage.compression.Lz4Codec;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.testng.Assert.*;
+
+/**
+ * LZ4 codec test.
+ *
+ * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
+ */
+@Test
+public class Lz4CodecTest {
+
+  /**
+   * Compresses and decompresses the given bytes, returning the compressed length.
+   */
+  private int roundTrip(byte[] bytes) {
+    Codec codec = new Lz4Codec();
+    byte[] compressed = new byte[codec.maxCompressedLength(bytes.length) + 3];
+    int length = codec.compress(bytes, 0, bytes.length, compressed, 3);
+    assertTrue(length <= codec.maxCompressedLength(bytes.length));
+
+    byte[] decompressed = new byte[bytes.length + 5];
+    codec.decompress(compressed, 3, length, decompressed, 5, bytes.length);
+    assertEquals(Arrays.copyOfRange(decompressed, 5, decompressed.length), bytes);
+    return length;
+  }
+
+  /**
+   * Tests compressing repetitive bytes.
+   */
+  public void testCompressRepetitiveBytes() {
+    byte[] bytes = new byte[1024 * 64];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) (i % 13);
+    }
+    assertTrue(roundTrip(bytes) < bytes.length / 10);
+  }
+
+  /**
+   * Tests compressing random bytes.
+   */
+  public void testCompressRandomBytes() {
+    Random random = new Random(1);
+    for (int length : new int[]{0, 1, 4, 12, 13, 100, 1024 * 64 + 7}) {
+      byte[] bytes = new byte[length];
+      random.nextBytes(bytes);
+      roundTrip(bytes);
+    }
+  }
+
+  /**
+   * Tests that decompressing a corrupt block fails.
+   */
+  @Test(expectedExceptions = StorageException.class)
+  public void testDecompressCorruptBlock() {
+    byte[] bytes = new byte[1024];
+    Arrays.fill(bytes, (byte) 1);
+    Codec codec = new Lz4Codec();
+    byte[] compressed = new byte[codec.maxCompressedLength(bytes.length)];
+    int length = codec.compress(bytes, 0, bytes.length, compressed, 0);
+    codec.decompress(compressed, 0, length - 1, new byte[bytes.length], 0, bytes.length);
+  }
+
+}
@@ -34,6 +34,7 @@ public class MajorCompactionTest extends AbstractLogTest {
   protected Storage createStorage() {
     return tempStorageBuilder()
       .withMaxEntriesPerSegment(10)
+      .withCompactionThreads(4)
       .build();
   }
 
@@ -65,6 +66,41 @@ public class MajorCompactionTest extends AbstractLogTest {
     }
   }
 
+  /**
+   * Tests compacting multiple segment groups in parallel.
+   */
+  public void testParallelMajorCompaction() throws Throwable {
+    writeEntries(61);
+
+    assertEquals(log.segments.segments().size(), 7);
+
+    for (long index = 1; index <= 60; index++) {
+      if (index % 10 < 3) {
+        log.release(index);
+      }
+    }
+    log.commit(61).compactor().minorIndex(61).majorIndex(61);
+
+    CountDownLatch latch = new CountDownLatch(1);
+    log.compactor().compact(Compaction.MAJOR).thenRun(latch::countDown);
+    latch.await();
+
+    assertEquals(log.length(), 61L);
+    assertEquals(log.segments.segments().size(), 7);
+
+    for (long index = 1; index <= 60; index++) {
+      assertEquals(log.segments.segment(index).descriptor().version(), 2L);
+      try (TestEntry entry = log.get(index)) {
+        if (index % 10 < 3) {
+          assertNull(entry);
+        } else {
+          assertNotNull(entry);
+          assertEquals(entry.getIndex(), index);
+        }
+      }
+    }
+  }
+
   /**
    * Writes a set of session entries to the log.
    */
@@ -31,7 +31,14 @@ public class MemorySnapshotStoreTest extends AbstractSnapshotStoreTest {
    * Returns a new snapshot store.
    */
   protected SnapshotStore createSnapshotStore() {
-    Storage storage = Storage.builder()
+    return createSnapshotStore(Storage.builder());
+  }
+
+  /**
+   * Returns a new snapshot store with the given storage configuration.
+   */
+  protected SnapshotStore createSnapshotStore(Storage.Builder builder) {
+    Storage storage = builder
       .withStorageLevel(StorageLevel.MEMORY)
       .build();
     return new SnapshotStore("test", storage, new Serializer());
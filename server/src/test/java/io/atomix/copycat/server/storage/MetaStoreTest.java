@@ -33,6 +33,7 @@ import org.testng.annotations.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.time.Instant;
@@ -44,6 +45,7 @@ import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 
 /**
@@ -116,6 +118,75 @@ public class MetaStoreTest {
     assertEquals(meta.loadVote(), 0);
   }
 
+  /**
+   * Tests storing the term and vote together.
+   */
+  public void testStoreTermAndVote() {
+    MetaStore meta = createMetaStore();
+    meta.storeTermAndVote(3, 4);
+    assertEquals(meta.loadTerm(), 3);
+    assertEquals(meta.loadVote(), 4);
+    meta.close();
+
+    meta = createMetaStore();
+    assertEquals(meta.loadTerm(), 3);
+    assertEquals(meta.loadVote(), 4);
+    assertNull(meta.loadConfiguration());
+    meta.close();
+  }
+
+  /**
+   * Tests recovering the previous record when the most recent record is corrupt.
+   */
+  public void testRecoverFromCorruptRecord() throws Exception {
+    MetaStore meta = createMetaStore();
+    Collection<Member> members = new ArrayList<>(Arrays.asList(
+      new TestMember(Member.Type.ACTIVE, new Address("localhost", 5000), new Address("localhost", 6000))
+    ));
+    meta.storeConfiguration(new Configuration(1, 1, System.currentTimeMillis(), members));
+    meta.storeTermAndVote(1, 2);
+    meta.storeTermAndVote(2, 3);
+    meta.close();
+
+    // Updates alternate between slots beginning with the second slot, so the last update is in the second slot.
+    try (RandomAccessFile file = new RandomAccessFile(new File(String.format("target/test-logs/%s/test.meta", testId)), "rw")) {
+      file.seek(1024 * 64 + 20);
+      file.writeLong(100);
+    }
+
+    meta = createMetaStore();
+    assertEquals(meta.loadTerm(), 1);
+    assertEquals(meta.loadVote(), 2);
+    assertEquals(meta.loadConfiguration().index(), 1);
+    assertEquals(meta.loadConfiguration().members().size(), 1);
+    meta.close();
+  }
+
+  /**
+   * Tests loading a metastore written in the unversioned layout.
+   */
+  public void testLoadUnversionedMetaStore() throws Exception {
+    File directory = new File(String.format("target/test-logs/%s", testId));
+    directory.mkdirs();
+    try (RandomAccessFile file = new RandomAccessFile(new File(directory, "test.meta"), "rw")) {
+      file.writeLong(5);
+      file.writeInt(3);
+      file.writeByte(0);
+    }
+
+    MetaStore meta = createMetaStore();
+    assertEquals(meta.loadTerm(), 5);
+    assertEquals(meta.loadVote(), 3);
+    assertNull(meta.loadConfiguration());
+    meta.storeVote(4);
+    meta.close();
+
+    meta = createMetaStore();
+    assertEquals(meta.loadTerm(), 5);
+    assertEquals(meta.loadVote(), 4);
+    meta.close();
+  }
+
   @BeforeMethod
   @AfterMethod
   protected void cleanupStorage() throws IOException {
@@ -72,6 +72,45 @@ public class MinorCompactionTest extends AbstractLogTest {
     }
   }
 
+  /**
+   * Tests that entries transferred to the compact segment retain their terms and contents.
+   */
+  public void testMinorCompactionPreservesEntries() throws Throwable {
+    for (int i = 0; i < 31; i++) {
+      try (TestEntry entry = log.create(TestEntry.class)) {
+        entry.setTerm(entry.getIndex() / 5 + 1);
+        entry.setPadding(10);
+        entry.setCompactionMode(Compaction.Mode.QUORUM);
+        log.append(entry);
+      }
+    }
+
+    // Release the first entries in each term so the compact segment must store terms on later entries.
+    for (long index = 11; index < 21; index++) {
+      if (index % 5 <= 2) {
+        log.release(index);
+      }
+    }
+    log.commit(31).compactor().minorIndex(31);
+
+    CountDownLatch latch = new CountDownLatch(1);
+    log.compactor().compact(Compaction.MINOR).thenRun(latch::countDown);
+    latch.await();
+
+    for (long index = 11; index < 21; index++) {
+      try (TestEntry entry = log.get(index)) {
+        if (index % 5 <= 2) {
+          assertNull(entry);
+        } else {
+          assertNotNull(entry);
+          assertEquals(entry.getIndex(), index);
+          assertEquals(entry.getTerm(), index / 5 + 1);
+          assertEquals(entry.getPadding().length, 10);
+        }
+      }
+    }
+  }
+
   /**
    * Writes a set of session entries to the log.
    */
@@ -136,4 +136,48 @@ public class OffsetIndexTest {
     assertEquals(index.truncate(1), 30);
   }
 
+  /**
+   * Tests looking up and truncating entries in an index with many missing offsets.
+   */
+  public void testSearchableIndex() {
+    OffsetIndex index = new DelegatingOffsetIndex(HeapBuffer.allocate(1024 * 8));
+    for (int i = 0; i < 10000; i++) {
+      index.index(i * 3, i * 10);
+    }
+    assertEquals(index.size(), 10000);
+    assertEquals(index.lastOffset(), 29997);
+    for (int i = 0; i < 10000; i++) {
+      assertEquals(index.position(i * 3), i * 10);
+      assertEquals(index.find(i * 3), i);
+      assertFalse(index.contains(i * 3 + 1));
+      assertEquals(index.position(i * 3 + 2), -1);
+    }
+
+    assertEquals(index.truncate(15001), 50010);
+    assertEquals(index.size(), 5001);
+    assertEquals(index.lastOffset(), 15001);
+    assertTrue(index.contains(15000));
+    assertFalse(index.contains(15003));
+
+    index.index(15002, 50010);
+    assertEquals(index.position(15002), 50010);
+    assertEquals(index.find(15002), 5001);
+  }
+
+  /**
+   * Tests truncating all entries from an index with missing offsets.
+   */
+  public void testTruncateSearchableIndex() {
+    OffsetIndex index = new DelegatingOffsetIndex(HeapBuffer.allocate(1024 * 8));
+    index.index(0, 0);
+    index.index(2, 20);
+    index.index(4, 40);
+    assertEquals(index.truncate(-1), 0);
+    assertTrue(index.isEmpty());
+    assertEquals(index.lastOffset(), -1);
+    assertFalse(index.contains(0));
+    index.index(0, 0);
+    assertEquals(index.position(0), 0);
+  }
+
 }
@@ -44,4 +44,69 @@ public class OffsetPredicateTest {
     assertFalse(cleaner.test(2048L));
   }
 
+  /**
+   * Tests releasing all offsets in a chunk.
+   */
+  public void testReleaseChunk() {
+    OffsetPredicate predicate = new OffsetPredicate();
+    for (long offset = 0; offset < 65536 * 2; offset += 2) {
+      assertTrue(predicate.release(offset));
+    }
+    assertEquals(predicate.count(), 65536);
+    for (long offset = 1; offset < 65536 * 2; offset += 2) {
+      assertTrue(predicate.release(offset));
+      assertFalse(predicate.release(offset));
+    }
+    assertEquals(predicate.count(), 65536 * 2);
+    for (long offset = 0; offset < 65536 * 2; offset++) {
+      assertFalse(predicate.test(offset));
+    }
+    assertTrue(predicate.test(65536 * 2));
+    assertFalse(predicate.test(-1));
+  }
+
+  /**
+   * Tests that snapshots are unaffected by later releases.
+   */
+  public void testSnapshot() {
+    OffsetPredicate predicate = new OffsetPredicate();
+    for (long offset = 0; offset < 10000; offset += 3) {
+      predicate.release(offset);
+    }
+    OffsetPredicate snapshot = predicate.snapshot();
+    assertEquals(snapshot.count(), predicate.count());
+    for (long offset = 1; offset < 10000; offset += 3) {
+      predicate.release(offset);
+    }
+    assertEquals(snapshot.count(), 3334);
+    for (long offset = 0; offset < 10000; offset++) {
+      assertEquals(snapshot.test(offset), offset % 3 != 0);
+      assertEquals(predicate.test(offset), offset % 3 == 2);
+    }
+    try {
+      snapshot.release(2);
+      fail();
+    } catch (IllegalStateException e) {
+    }
+  }
+
+  /**
+   * Tests that copies can be modified independently of the source predicate.
+   */
+  public void testCopy() {
+    OffsetPredicate predicate = new OffsetPredicate();
+    for (long offset = 0; offset < 8192; offset++) {
+      predicate.release(offset);
+    }
+    OffsetPredicate copy = predicate.copy();
+    predicate.release(10000);
+    copy.release(10001);
+    assertFalse(predicate.test(10000));
+    assertTrue(predicate.test(10001));
+    assertTrue(copy.test(10000));
+    assertFalse(copy.test(10001));
+    assertEquals(predicate.count(), 8193);
+    assertEquals(copy.count(), 8193);
+  }
+
 }
@@ -17,6 +17,7 @@ package io.atomix.copycat.server.storage;
 
 import io.atomix.catalyst.buffer.Buffer;
 import io.atomix.catalyst.buffer.FileBuffer;
+import io.atomix.catalyst.buffer.HeapBuffer;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.Test;
 
@@ -133,6 +134,44 @@ public class SegmentDescriptorTest {
     assertTrue(descriptor.locked());
   }
 
+  /**
+   * Tests persisting the segment record format.
+   */
+  public void testDescriptorFormat() {
+    SegmentDescriptor descriptor = SegmentDescriptor.builder(FileBuffer.allocate(file, SegmentDescriptor.BYTES))
+      .withId(2)
+      .withVersion(3)
+      .withIndex(1025)
+      .withMaxSegmentSize(1024 * 1024)
+      .withMaxEntries(2048)
+      .build();
+    assertEquals(descriptor.format(), SegmentDescriptor.CURRENT_FORMAT);
+    descriptor.close();
+
+    descriptor = new SegmentDescriptor(FileBuffer.allocate(file, SegmentDescriptor.BYTES));
+    assertEquals(descriptor.format(), SegmentDescriptor.CURRENT_FORMAT);
+
+    descriptor = descriptor.copyTo(HeapBuffer.allocate(SegmentDescriptor.BYTES));
+    assertEquals(descriptor.format(), SegmentDescriptor.CURRENT_FORMAT);
+  }
+
+  /**
+   * Tests that segments written before the record format was stored are read in the original format.
+   */
+  public void testDescriptorWithoutFormat() {
+    SegmentDescriptor descriptor = new SegmentDescriptor(HeapBuffer.allocate(SegmentDescriptor.BYTES)
+      .writeLong(2)
+      .writeLong(3)
+      .writeLong(1025)
+      .writeUnsignedInt(1024 * 1024)
+      .writeInt(2048)
+      .writeLong(0)
+      .writeBoolean(false)
+      .rewind());
+    assertEquals(descriptor.index(), 1025);
+    assertEquals(descriptor.format(), SegmentDescriptor.FORMAT_V1);
+  }
+
   /**
    * Deletes the descriptor file.
    */
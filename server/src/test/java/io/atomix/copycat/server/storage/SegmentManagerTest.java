@@ -1,27 +1,196 @@
 package io.atomix.copycat.server.storage;
 
-import static org.testng.Assert.assertEquals;
-
+import io.atomix.catalyst.serializer.Serializer;
+import io.atomix.copycat.server.storage.util.StorageSerialization;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.testng.Assert.*;
+
 /**
  * Tests SegmentManager.
- * 
+ *
  * @author Jonathan Halterman
  */
 @Test
 public class SegmentManagerTest {
-  // /**
-  // * Tests segments.
-  // */
-  // public void testSegments() {
-  // assertEquals(log.segments.count(), 1);
-  // appendEntries(entriesPerSegment * 3);
-  // assertEquals(log.segments.count(), 3);
-  // assertEquals(log.lastIndex(), entriesPerSegment * 3);
-  // }
-
-  // public void testMaxEntriesPerSegment() {
-  // // TODO
-  // }
+  private static final int ENTRIES_PER_SEGMENT = 5;
+  private String logId;
+  private Storage storage;
+
+  /**
+   * Returns a new serializer for test entries.
+   */
+  private Serializer serializer() {
+    return new Serializer().resolve(new StorageSerialization()).register(TestEntry.class);
+  }
+
+  /**
+   * Writes a locked segment with the given ID, version, and entries.
+   */
+  private File writeSegment(SegmentManager manager, long id, long version, long index, int entries) {
+    SegmentDescriptor descriptor = SegmentDescriptor.builder()
+      .withId(id)
+      .withVersion(version)
+      .withIndex(index)
+      .withMaxSegmentSize(storage.maxSegmentSize())
+      .withMaxEntries(ENTRIES_PER_SEGMENT)
+      .build();
+    descriptor.lock();
+
+    Segment segment = manager.createSegment(descriptor);
+    for (int i = 0; i < entries; i++) {
+      segment.append(new TestEntry().setIndex(index + i).setTerm(1));
+    }
+    segment.flush();
+    File file = segment.file().file();
+    segment.close();
+    return file;
+  }
+
+  /**
+   * Returns the first and last index of each of the manager's segments.
+   */
+  private List<List<Long>> ranges(SegmentManager manager) {
+    List<List<Long>> ranges = new ArrayList<>();
+    for (Segment segment : manager.segments()) {
+      List<Long> range = new ArrayList<>();
+      range.add(segment.index());
+      range.add(segment.lastIndex());
+      ranges.add(range);
+    }
+    return ranges;
+  }
+
+  /**
+   * Returns a range of indexes.
+   */
+  private List<Long> range(long firstIndex, long lastIndex) {
+    List<Long> range = new ArrayList<>();
+    range.add(firstIndex);
+    range.add(lastIndex);
+    return range;
+  }
+
+  /**
+   * Tests loading segments written by a log.
+   */
+  public void testLoadSegments() {
+    try (Log log = new Log(logId, storage, serializer())) {
+      for (int i = 0; i < ENTRIES_PER_SEGMENT * 4; i++) {
+        try (TestEntry entry = log.create(TestEntry.class)) {
+          entry.setTerm(1);
+          log.append(entry);
+        }
+      }
+    }
+
+    SegmentManager manager = new SegmentManager(logId, storage, serializer());
+    try {
+      List<List<Long>> expected = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        expected.add(range(i * ENTRIES_PER_SEGMENT + 1, (i + 1) * ENTRIES_PER_SEGMENT));
+      }
+      assertEquals(ranges(manager), expected);
+      assertEquals(manager.currentSegment().index(), ENTRIES_PER_SEGMENT * 3 + 1);
+      for (long i = 1; i <= ENTRIES_PER_SEGMENT * 4; i++) {
+        assertEquals(manager.segment(i).index(), (i - 1) / ENTRIES_PER_SEGMENT * ENTRIES_PER_SEGMENT + 1);
+      }
+    } finally {
+      manager.close();
+    }
+  }
+
+  /**
+   * Tests that overlapping and compacted segments are resolved when segments are loaded in parallel.
+   */
+  public void testLoadOverlappingSegments() {
+    SegmentManager manager = new SegmentManager(logId, storage, serializer());
+    manager.close();
+
+    // Write a chain of full segments, a compacted version of the second segment that contains fewer entries, an
+    // older copy of the third segment, and a segment that starts within the third segment. The manager preallocates
+    // a file for the segment following the first segment, so segment IDs start at 3.
+    manager = new SegmentManager(logId, storage, serializer());
+    File[] files;
+    try {
+      files = new File[]{
+        writeSegment(manager, 3, 1, ENTRIES_PER_SEGMENT + 1, ENTRIES_PER_SEGMENT),
+        writeSegment(manager, 3, 2, ENTRIES_PER_SEGMENT + 1, 2),
+        writeSegment(manager, 4, 1, ENTRIES_PER_SEGMENT * 2 + 1, ENTRIES_PER_SEGMENT),
+        writeSegment(manager, 4, 2, ENTRIES_PER_SEGMENT * 2 + 1, ENTRIES_PER_SEGMENT),
+        writeSegment(manager, 5, 1, ENTRIES_PER_SEGMENT * 2 + 3, 3),
+        writeSegment(manager, 6, 1, ENTRIES_PER_SEGMENT * 3 + 1, ENTRIES_PER_SEGMENT),
+      };
+      for (long i = 1; i <= ENTRIES_PER_SEGMENT; i++) {
+        manager.currentSegment().append(new TestEntry().setIndex(i).setTerm(1));
+      }
+    } finally {
+      manager.close();
+    }
+
+    manager = new SegmentManager(logId, storage, serializer());
+    try {
+      // The compacted second segment is extended to the start of the third segment.
+      List<List<Long>> expected = new ArrayList<>();
+      expected.add(range(1, ENTRIES_PER_SEGMENT));
+      expected.add(range(ENTRIES_PER_SEGMENT + 1, ENTRIES_PER_SEGMENT * 2));
+      expected.add(range(ENTRIES_PER_SEGMENT * 2 + 1, ENTRIES_PER_SEGMENT * 3));
+      expected.add(range(ENTRIES_PER_SEGMENT * 3 + 1, ENTRIES_PER_SEGMENT * 4));
+      assertEquals(ranges(manager), expected);
+
+      List<Segment> segments = new ArrayList<>(manager.segments());
+      assertEquals(segments.get(1).descriptor().version(), 2);
+      assertEquals(segments.get(1).count(), 2);
+      assertEquals(segments.get(2).descriptor().version(), 2);
+      assertEquals(manager.currentSegment(), segments.get(3));
+
+      // Superseded and overlapping segments are deleted.
+      assertFalse(files[0].exists());
+      assertTrue(files[1].exists());
+      assertFalse(files[2].exists());
+      assertTrue(files[3].exists());
+      assertFalse(files[4].exists());
+      assertTrue(files[5].exists());
+    } finally {
+      manager.close();
+    }
+  }
+
+  @BeforeMethod
+  @AfterMethod
+  protected void cleanupStorage() throws IOException {
+    Path directory = Paths.get("target/test-logs/");
+    if (Files.exists(directory)) {
+      Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+          Files.delete(file);
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+          Files.delete(dir);
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    }
+    logId = UUID.randomUUID().toString();
+    storage = Storage.builder()
+      .withDirectory(new File(String.format("target/test-logs/%s", logId)))
+      .withStorageLevel(StorageLevel.DISK)
+      .withMaxEntriesPerSegment(ENTRIES_PER_SEGMENT)
+      .build();
+  }
+
 }
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package io.atomix.copycat.server.storage.compaction;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Compaction throttle test.
+ *
+ * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
+ */
+@Test
+public class CompactionThrottleTest {
+
+  /**
+   * Tests that bytes within the burst capacity are acquired immediately and further bytes wait for a refill.
+   */
+  public void testRateLimit() {
+    CompactionThrottle throttle = new CompactionThrottle(1000);
+    long start = System.nanoTime();
+    throttle.acquire(1000);
+    assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(250));
+    throttle.acquire(500);
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(400));
+  }
+
+  /**
+   * Tests that a throttle without a rate limit never waits.
+   */
+  public void testUnlimited() {
+    CompactionThrottle throttle = new CompactionThrottle(0);
+    long start = System.nanoTime();
+    throttle.acquire(Integer.MAX_VALUE);
+    throttle.acquire(Integer.MAX_VALUE);
+    assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(250));
+  }
+
+  /**
+   * Tests backing off while the average append latency is above the threshold.
+   */
+  public void testBackoffAboveThreshold() {
+    CompactionThrottle throttle = new CompactionThrottle(0);
+    throttle.recordAppendLatency(TimeUnit.MILLISECONDS.toNanos(10));
+    assertFalse(throttle.isBackedOff());
+
+    throttle.latencyThreshold(TimeUnit.MILLISECONDS.toNanos(1));
+    assertTrue(throttle.isBackedOff());
+
+    throttle.latencyThreshold(0);
+    assertFalse(throttle.isBackedOff());
+  }
+
+  /**
+   * Tests recovering from backoff as the average append latency decays.
+   */
+  public void testRecoverAsLatencyDecays() {
+    CompactionThrottle throttle = new CompactionThrottle(0);
+    throttle.latencyThreshold(TimeUnit.MILLISECONDS.toNanos(1));
+    throttle.recordAppendLatency(TimeUnit.MILLISECONDS.toNanos(10));
+    assertTrue(throttle.isBackedOff());
+
+    // A single fast append does not end the backoff.
+    throttle.recordAppendLatency(0);
+    assertTrue(throttle.isBackedOff());
+
+    int appends = 1;
+    while (throttle.isBackedOff() && appends < 100) {
+      throttle.recordAppendLatency(0);
+      appends++;
+    }
+    assertFalse(throttle.isBackedOff());
+    assertTrue(appends > 10);
+  }
+
+  /**
+   * Tests that latencies that have not been updated recently are ignored.
+   */
+  public void testBackoffExpires() throws Throwable {
+    CompactionThrottle throttle = new CompactionThrottle(0);
+    throttle.latencyThreshold(TimeUnit.MILLISECONDS.toNanos(1));
+    throttle.recordAppendLatency(TimeUnit.MILLISECONDS.toNanos(10));
+    assertTrue(throttle.isBackedOff());
+    Thread.sleep(1100);
+    assertFalse(throttle.isBackedOff());
+  }
+
+  /**
+   * Tests that acquiring permits waits while the throttle is backed off.
+   */
+  public void testAcquireWaitsForBackoff() throws Throwable {
+    CompactionThrottle throttle = new CompactionThrottle(0);
+    throttle.latencyThreshold(TimeUnit.MILLISECONDS.toNanos(1));
+    throttle.recordAppendLatency(TimeUnit.MILLISECONDS.toNanos(10));
+
+    CountDownLatch latch = new CountDownLatch(1);
+    Thread thread = new Thread(() -> {
+      throttle.acquire(1);
+      latch.countDown();
+    });
+    thread.start();
+    assertFalse(latch.await(200, TimeUnit.MILLISECONDS));
+
+    for (int i = 0; i < 100; i++) {
+      throttle.recordAppendLatency(0);
+    }
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+  }
+
+  /**
+   * Tests that interrupting a thread waiting for permits stops the wait.
+   */
+  public void testAcquireInterrupted() throws Throwable {
+    CompactionThrottle throttle = new CompactionThrottle(0);
+    throttle.latencyThreshold(TimeUnit.MILLISECONDS.toNanos(1));
+    throttle.recordAppendLatency(TimeUnit.MILLISECONDS.toNanos(10));
+
+    CountDownLatch latch = new CountDownLatch(1);
+    Thread thread = new Thread(() -> {
+      throttle.acquire(1);
+      if (Thread.currentThread().isInterrupted()) {
+        latch.countDown();
+      }
+    });
+    thread.start();
+    thread.interrupt();
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+  }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package io.atomix.copycat.server.storage.compaction;
+
+import io.atomix.catalyst.serializer.Serializer;
+import io.atomix.copycat.server.storage.Log;
+import io.atomix.copycat.server.storage.Storage;
+import io.atomix.copycat.server.storage.StorageLevel;
+import io.atomix.copycat.server.storage.TestEntry;
+import io.atomix.copycat.server.storage.util.StorageSerialization;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Log compactor test.
+ *
+ * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
+ */
+@Test
+public class CompactorTest {
+  private Log log;
+
+  @BeforeMethod
+  public void createLog() {
+    Storage storage = Storage.builder()
+      .withStorageLevel(StorageLevel.MEMORY)
+      .withMaxSegmentSize(1024 * 64)
+      .withMaxEntriesPerSegment(10)
+      .withCompactionThreshold(0.75)
+      .build();
+    log = new Log("test", storage, new Serializer().resolve(new StorageSerialization()).register(TestEntry.class)) {
+    };
+
+    // Write four segments of roughly 40KB each.
+    for (int i = 0; i < 40; i++) {
+      try (TestEntry entry = log.create(TestEntry.class)) {
+        entry.setTerm(1);
+        entry.setPadding(4000);
+        log.append(entry);
+      }
+    }
+  }
+
+  /**
+   * Releases the entries in the given range of indexes.
+   */
+  private void release(long from, long to) {
+    for (long index = from; index <= to; index++) {
+      log.release(index);
+    }
+  }
+
+  /**
+   * Tests that a log with no released entries is not reclaimable.
+   */
+  public void testNothingReclaimable() {
+    assertFalse(log.compactor().isReclaimable());
+  }
+
+  /**
+   * Tests that entries released from the current segment are not counted as reclaimable.
+   */
+  public void testSkipCurrentSegment() {
+    release(31, 40);
+    assertFalse(log.compactor().isReclaimable());
+  }
+
+  /**
+   * Tests that the log is reclaimable once the released entries exceed a segment and the compaction threshold.
+   */
+  public void testReclaimable() {
+    // Releasing a single segment does not reclaim a maximum segment's worth of bytes.
+    release(1, 10);
+    assertFalse(log.compactor().isReclaimable());
+
+    // Releasing two segments reclaims more than a segment's worth of bytes but less than the compaction threshold.
+    release(11, 20);
+    assertFalse(log.compactor().isReclaimable());
+
+    // Releasing half of the third segment exceeds the compaction threshold.
+    release(21, 25);
+    assertTrue(log.compactor().isReclaimable());
+  }
+
+  @AfterMethod
+  public void closeLog() {
+    log.close();
+  }
+
+}
@@ -387,7 +387,7 @@ public class FuzzTest implements Runnable {
         .withMaxEntriesPerSegment(randomNumber(10000) + 1000)
         .withCompactionThreads(randomNumber(4) + 1)
         .withCompactionThreshold(Math.random() / (double) 2)
-        .withEntryBufferSize(randomNumber(10000) + 1)
+        .withEntryCacheSize(randomNumber(1024 * 1024 * 16))
         .withFlushOnCommit(randomBoolean())
         .withMinorCompactionInterval(Duration.ofSeconds(randomNumber(30) + 15))
         .withMajorCompactionInterval(Duration.ofSeconds(randomNumber(60) + 60))